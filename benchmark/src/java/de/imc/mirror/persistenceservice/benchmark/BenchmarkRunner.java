@@ -0,0 +1,34 @@
+package de.imc.mirror.persistenceservice.benchmark;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmark suite and writes the results as JSON file, so they can be compared over time.
+ * Usage: <code>BenchmarkRunner [result file] [benchmark regex]</code>
+ * By default, all benchmarks are run and the results are written to <code>benchmark-results-&lt;timestamp&gt;.json</code>.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public class BenchmarkRunner {
+	public static void main(String[] args) throws RunnerException {
+		String resultFile;
+		if (args.length > 0) {
+			resultFile = args[0];
+		} else {
+			resultFile = "benchmark-results-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".json";
+		}
+		String include = args.length > 1 ? args[1] : BenchmarkRunner.class.getPackage().getName() + ".*Benchmark";
+		Options options = new OptionsBuilder()
+			.include(include)
+			.resultFormat(ResultFormatType.JSON)
+			.result(resultFile)
+			.build();
+		new Runner(options).run();
+	}
+}
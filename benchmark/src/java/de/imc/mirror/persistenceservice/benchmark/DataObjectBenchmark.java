@@ -0,0 +1,60 @@
+package de.imc.mirror.persistenceservice.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.dom4j.DocumentException;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.imc.mirror.persistenceservice.DataObject;
+
+/**
+ * Compares the access to the CDM attributes of a stored data object with a full parse of the element string.
+ * @author simon.schwantzer(at)im-c.de
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataObjectBenchmark {
+	@Param({"10", "1000"})
+	public int payloadElements;
+
+	private String elementString;
+
+	@Setup
+	public void setUp() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("<mood xmlns=\"mirror:application:benchmark:mood\" id=\"1\" timestamp=\"2014-01-01T00:00:00.000Z\" publisher=\"user@example.org\" ref=\"0\">");
+		for (int i = 0; i < payloadElements; i++) {
+			builder.append("<value index=\"").append(i).append("\">positive</value>");
+		}
+		builder.append("</mood>");
+		elementString = builder.toString();
+	}
+
+	@Benchmark
+	public Object rootAttributes() throws DocumentException {
+		DataObject dataObject = new DataObject(elementString, "benchmark");
+		return dataObject.getId() + dataObject.getNamespace() + dataObject.getPublisher() + dataObject.getRef() + dataObject.getTimestamp();
+	}
+
+	@Benchmark
+	public Object fullParse() throws DocumentException {
+		Element element = DocumentHelper.parseText(elementString).getRootElement();
+		return element.attributeValue("id") + element.getNamespaceURI() + element.attributeValue("publisher") + element.attributeValue("ref") + element.attributeValue("timestamp");
+	}
+}
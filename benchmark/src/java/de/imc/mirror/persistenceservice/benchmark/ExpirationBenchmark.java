@@ -0,0 +1,116 @@
+package de.imc.mirror.persistenceservice.benchmark;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.dom4j.DocumentException;
+import org.dom4j.DocumentHelper;
+import org.jivesoftware.database.DbConnectionManager;
+import org.jivesoftware.util.JiveGlobals;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.imc.mirror.persistenceservice.DataObject;
+import de.imc.mirror.persistenceservice.config.ExpirationConfig;
+import de.imc.mirror.persistenceservice.connectors.HSQLDBConnector;
+import de.imc.mirror.persistenceservice.exceptions.DBAccessException;
+
+/**
+ * Measures the deletion of expired data objects including the pruning of references, using an in-memory HSQLDB database.
+ * The data objects form reference chains, each object referencing its predecessor. The first object of a chain expires first,
+ * so it can only be deleted after all its referrers are deleted. The last object of some chains does not expire, which retains the complete chain.
+ * @author simon.schwantzer(at)im-c.de
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ExpirationBenchmark {
+	@Param({"1000", "10000"})
+	public int objectCount;
+
+	@Param({"1", "5"})
+	public int chainLength;
+
+	@Param({"0", "20"})
+	public int retainedChainsPercentage;
+
+	private HSQLDBConnector connector;
+
+	@Setup(Level.Trial)
+	public void setUpDatabase() throws IOException, SQLException {
+		InMemoryDatabase.create("expirationBenchmark");
+		connector = new HSQLDBConnector();
+	}
+
+	@Setup(Level.Iteration)
+	public void populate() throws SQLException, DBAccessException, DocumentException {
+		Connection connection = DbConnectionManager.getConnection();
+		Statement stmt = connection.createStatement();
+		try {
+			stmt.execute("DELETE FROM ofSpacePersistenceDependencies");
+			stmt.execute("DELETE FROM ofSpacePersistenceData");
+		} finally {
+			DbConnectionManager.closeConnection(stmt, connection);
+		}
+		JiveGlobals.deleteProperty(ExpirationConfig.PROPERTY_CURSOR);
+
+		long now = System.currentTimeMillis();
+		int chainCount = objectCount / chainLength;
+		List<DataObject> dataObjects = new ArrayList<DataObject>(1000);
+		for (int chain = 0; chain < chainCount; chain++) {
+			boolean retained = chain % 100 < retainedChainsPercentage;
+			for (int i = 0; i < chainLength; i++) {
+				StringBuilder builder = new StringBuilder();
+				builder.append("<mood xmlns=\"mirror:application:benchmark:mood\" id=\"o").append(chain).append('-').append(i).append('"');
+				if (i > 0) {
+					builder.append(" ref=\"o").append(chain).append('-').append(i - 1).append('"');
+				}
+				builder.append("><value>positive</value></mood>");
+				DataObject dataObject = new DataObject(DocumentHelper.parseText(builder.toString()).getRootElement(), "benchmark");
+				if (retained && i == chainLength - 1) {
+					dataObject.setExpirationDate(new Date(now + 3600000));
+				} else {
+					dataObject.setExpirationDate(new Date(now - 3600000 + chain * chainLength + i));
+				}
+				dataObjects.add(dataObject);
+				if (dataObjects.size() == 1000) {
+					connector.storeDataObjects(dataObjects);
+					dataObjects.clear();
+				}
+			}
+		}
+		if (!dataObjects.isEmpty()) {
+			connector.storeDataObjects(dataObjects);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDownDatabase() throws SQLException {
+		InMemoryDatabase.shutdown();
+	}
+
+	@Benchmark
+	public int deleteExpired() throws DBAccessException {
+		return connector.deleteExpiredDataObjects();
+	}
+}
@@ -0,0 +1,166 @@
+package de.imc.mirror.persistenceservice.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.dom4j.DocumentException;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.imc.mirror.persistenceservice.DataObject;
+import de.imc.mirror.persistenceservice.Filter;
+import de.imc.mirror.persistenceservice.FilterSet;
+import de.imc.mirror.persistenceservice.SQLCondition;
+import de.imc.mirror.persistenceservice.filters.DataModelFilter;
+import de.imc.mirror.persistenceservice.filters.NamespaceFilter;
+import de.imc.mirror.persistenceservice.filters.PeriodFilter;
+import de.imc.mirror.persistenceservice.filters.PublisherFilter;
+import de.imc.mirror.persistenceservice.filters.ReferencesFilter;
+
+/**
+ * Evaluates single filters and typical filter mixes for data objects without extracted metadata.
+ * The root attributes of the data objects are read during the setup, so only the filter evaluation is measured.
+ * The compiled filter set is compared with the former evaluation in hash order, which compiled regular expressions for every data object.
+ * Every tenth data object references the filtered object, every second one is published by the filtered publisher.
+ * @author simon.schwantzer(at)im-c.de
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+	private static final int OBJECT_COUNT = 1000;
+
+	/**
+	 * Former regular expression evaluation, used as baseline.
+	 */
+	static class LegacyRegexFilter implements Filter {
+		private final String regex;
+
+		LegacyRegexFilter(String regex) {
+			this.regex = regex;
+		}
+
+		@Override
+		public boolean isDataObjectValid(DataObject object) throws DocumentException {
+			return object.getNamespace().matches(regex);
+		}
+
+		@Override
+		public SQLCondition getSQLCondition() {
+			return null;
+		}
+
+		@Override
+		public int getEvaluationCost() {
+			return COST_REGEX;
+		}
+
+		@Override
+		public String getCanonicalForm() {
+			return "legacyregex:" + regex;
+		}
+	}
+
+	@Param({"references", "namespace", "contains", "regex", "period", "publisher", "datamodel",
+		"references+regex", "namespace+period", "publisher+period+regex", "datamodel+publisher"})
+	public String mix;
+
+	private List<DataObject> dataObjects;
+	private FilterSet filterSet;
+	private Set<Filter> legacyFilters;
+
+	@Setup
+	public void setUp() throws DocumentException {
+		dataObjects = new ArrayList<DataObject>(OBJECT_COUNT);
+		for (int i = 0; i < OBJECT_COUNT; i++) {
+			StringBuilder builder = new StringBuilder();
+			builder.append("<mood xmlns=\"mirror:application:benchmark:").append(i % 3 == 0 ? "mood" : "emotion")
+				.append("\" modelVersion=\"1.0\" id=\"").append(i)
+				.append("\" timestamp=\"2014-01-").append(i % 28 + 1 < 10 ? "0" : "").append(i % 28 + 1).append("T12:00:00.000Z\"")
+				.append(" publisher=\"").append(i % 2 == 0 ? "alice" : "bob").append("@example.org/client\"");
+			if (i % 10 == 0) {
+				builder.append(" ref=\"root\"");
+			}
+			builder.append("><value>positive</value></mood>");
+			DataObject dataObject = new DataObject(builder.toString(), "benchmark");
+			dataObject.getId();
+			dataObjects.add(dataObject);
+		}
+
+		filterSet = new FilterSet();
+		legacyFilters = new HashSet<Filter>();
+		for (String filterName : mix.split("\\+")) {
+			Filter filter;
+			if ("references".equals(filterName)) {
+				filter = new ReferencesFilter(element("<references id=\"root\"/>"));
+			} else if ("regex".equals(filterName)) {
+				filter = new NamespaceFilter(element("<namespace compareType=\"regex\">mirror:application:.*:mood</namespace>"));
+				legacyFilters.add(new LegacyRegexFilter("mirror:application:.*:mood"));
+				filterSet.addFilter(filter);
+				continue;
+			} else if ("namespace".equals(filterName)) {
+				filter = new NamespaceFilter(element("<namespace>mirror:application:benchmark:mood</namespace>"));
+			} else if ("contains".equals(filterName)) {
+				filter = new NamespaceFilter(element("<namespace compareType=\"contains\">:mood</namespace>"));
+			} else if ("period".equals(filterName)) {
+				filter = new PeriodFilter(element("<period from=\"2014-01-05T00:00:00Z\" to=\"2014-01-20T00:00:00Z\"/>"));
+			} else if ("publisher".equals(filterName)) {
+				filter = new PublisherFilter(element("<publisher>alice@example.org</publisher>"));
+			} else {
+				filter = new DataModelFilter(element("<dataModel namespace=\"mirror:application:benchmark:mood\" version=\"1.0\"/>"));
+			}
+			filterSet.addFilter(filter);
+			legacyFilters.add(filter);
+		}
+	}
+
+	private static Element element(String xml) throws DocumentException {
+		return DocumentHelper.parseText(xml).getRootElement();
+	}
+
+	@Benchmark
+	public int compiled() {
+		int valid = 0;
+		for (DataObject dataObject : dataObjects) {
+			if (filterSet.isValid(dataObject)) {
+				valid++;
+			}
+		}
+		return valid;
+	}
+
+	@Benchmark
+	public int legacy() throws DocumentException {
+		int valid = 0;
+		for (DataObject dataObject : dataObjects) {
+			boolean isValid = true;
+			for (Filter filter : legacyFilters) {
+				if (!filter.isDataObjectValid(dataObject)) {
+					isValid = false;
+					break;
+				}
+			}
+			if (isValid) {
+				valid++;
+			}
+		}
+		return valid;
+	}
+}
@@ -0,0 +1,93 @@
+package de.imc.mirror.persistenceservice.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.jivesoftware.database.ConnectionProvider;
+import org.jivesoftware.database.DbConnectionManager;
+
+/**
+ * In-memory HSQLDB database registered as Openfire connection provider.
+ * The database contains the Openfire tables required by the service and the tables of the plugin.
+ * The schema of the plugin is read from the file given with the system property <code>benchmark.schema</code>, by default the HSQLDB script of the plugin.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public class InMemoryDatabase {
+	private static final String DEFAULT_SCHEMA = "src/database/spacePersistenceService_hsqldb.sql";
+
+	/**
+	 * Provides unpooled connections to the in-memory database.
+	 */
+	private static class InMemoryConnectionProvider implements ConnectionProvider {
+		private final String url;
+
+		private InMemoryConnectionProvider(String url) {
+			this.url = url;
+		}
+
+		@Override
+		public boolean isPooled() {
+			return false;
+		}
+
+		@Override
+		public Connection getConnection() throws SQLException {
+			return DriverManager.getConnection(url, "SA", "");
+		}
+
+		@Override
+		public void start() {}
+
+		@Override
+		public void restart() {}
+
+		@Override
+		public void destroy() {}
+	}
+
+	/**
+	 * Creates an in-memory database and registers it as connection provider of Openfire.
+	 * @param name Name of the database.
+	 * @throws IOException Failed to read the schema.
+	 * @throws SQLException Failed to create the tables.
+	 */
+	public static void create(String name) throws IOException, SQLException {
+		DbConnectionManager.setConnectionProvider(new InMemoryConnectionProvider("jdbc:hsqldb:mem:" + name));
+		String schema = new String(Files.readAllBytes(Paths.get(System.getProperty("benchmark.schema", DEFAULT_SCHEMA))), Charset.forName("UTF-8"));
+		Connection connection = DbConnectionManager.getConnection();
+		Statement stmt = connection.createStatement();
+		try {
+			// tables maintained by Openfire
+			stmt.execute("CREATE TABLE ofVersion (name VARCHAR(50) NOT NULL, version INTEGER NOT NULL)");
+			stmt.execute("CREATE TABLE ofProperty (name VARCHAR(100) NOT NULL, propValue VARCHAR(4000) NOT NULL, CONSTRAINT ofProperty_pk PRIMARY KEY (name))");
+			for (String statement : schema.split(";")) {
+				statement = statement.replaceAll("--.*", "").trim();
+				if (!statement.isEmpty()) {
+					stmt.execute(statement);
+				}
+			}
+		} finally {
+			DbConnectionManager.closeConnection(stmt, connection);
+		}
+	}
+
+	/**
+	 * Shuts down the database registered as connection provider.
+	 * @throws SQLException Failed to shut down the database.
+	 */
+	public static void shutdown() throws SQLException {
+		Connection connection = DbConnectionManager.getConnection();
+		Statement stmt = connection.createStatement();
+		try {
+			stmt.execute("SHUTDOWN");
+		} finally {
+			DbConnectionManager.closeConnection(stmt, connection);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package de.imc.mirror.persistenceservice.benchmark;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.dom4j.DocumentException;
+import org.dom4j.DocumentHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.imc.mirror.persistenceservice.DataObject;
+import de.imc.mirror.persistenceservice.StripedWorkerPool;
+import de.imc.mirror.persistenceservice.connectors.HSQLDBConnector;
+import de.imc.mirror.persistenceservice.exceptions.DBAccessException;
+
+/**
+ * Measures how the processing of inserts scales with the number of ingest lanes.
+ * A batch of inserts distributed over several spaces is submitted to a striped worker pool, each insert storing one data object in an in-memory HSQLDB database.
+ * As an in-memory database has no network round trip, a round trip to a database server can be simulated by delaying each insert.
+ * @author simon.schwantzer(at)im-c.de
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class IngestLaneBenchmark {
+	@Param({"1", "2", "4", "8"})
+	public int lanes;
+
+	@Param({"0", "500"})
+	public int roundTripMicros;
+
+	@Param({"64"})
+	public int spaces;
+
+	@Param({"2000"})
+	public int inserts;
+
+	private HSQLDBConnector connector;
+	private StripedWorkerPool workerPool;
+	private AtomicInteger objectCounter;
+	private AtomicInteger failures;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, SQLException {
+		InMemoryDatabase.create("ingestLaneBenchmark");
+		connector = new HSQLDBConnector();
+		workerPool = new StripedWorkerPool("benchmark", lanes, inserts);
+		objectCounter = new AtomicInteger();
+		failures = new AtomicInteger();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws SQLException {
+		workerPool.shutdown(10000);
+		InMemoryDatabase.shutdown();
+		if (failures.get() > 0) {
+			throw new IllegalStateException(failures.get() + " insert(s) failed.");
+		}
+	}
+
+	/**
+	 * Stores a data object in a space.
+	 * @param spaceId Space identifier.
+	 */
+	private void insert(String spaceId) {
+		String xml = "<mood xmlns=\"mirror:application:benchmark:mood\" id=\"o" + objectCounter.getAndIncrement() + "\"><value>positive</value></mood>";
+		try {
+			DataObject dataObject = new DataObject(DocumentHelper.parseText(xml).getRootElement(), spaceId);
+			connector.storeDataObject(dataObject);
+		} catch (DocumentException e) {
+			failures.incrementAndGet();
+		} catch (DBAccessException e) {
+			failures.incrementAndGet();
+		}
+		if (roundTripMicros > 0) {
+			LockSupport.parkNanos(roundTripMicros * 1000L);
+		}
+	}
+
+	@Benchmark
+	public int insertBatch() throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(inserts);
+		for (int i = 0; i < inserts; i++) {
+			final String spaceId = "space" + (i % spaces);
+			boolean submitted = workerPool.submit(spaceId, new Runnable() {
+				@Override
+				public void run() {
+					try {
+						insert(spaceId);
+					} finally {
+						latch.countDown();
+					}
+				}
+			});
+			if (!submitted) {
+				throw new IllegalStateException("Insert rejected.");
+			}
+		}
+		latch.await();
+		return inserts;
+	}
+}
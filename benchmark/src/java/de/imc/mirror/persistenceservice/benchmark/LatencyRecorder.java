@@ -0,0 +1,69 @@
+package de.imc.mirror.persistenceservice.benchmark;
+
+import java.util.Arrays;
+
+/**
+ * Records latencies of requests and computes percentiles.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public class LatencyRecorder {
+	private long[] latencies;
+	private int size;
+	private long errors;
+
+	/**
+	 * Creates an empty recorder.
+	 */
+	public LatencyRecorder() {
+		this.latencies = new long[1024];
+	}
+
+	/**
+	 * Records the latency of a successful request.
+	 * @param nanos Latency in nanoseconds.
+	 */
+	public synchronized void record(long nanos) {
+		if (size == latencies.length) {
+			latencies = Arrays.copyOf(latencies, size * 2);
+		}
+		latencies[size++] = nanos;
+	}
+
+	/**
+	 * Records a failed request.
+	 */
+	public synchronized void recordError() {
+		errors++;
+	}
+
+	/**
+	 * Returns the number of successful requests.
+	 * @return Number of recorded latencies.
+	 */
+	public synchronized int getCount() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of failed requests.
+	 * @return Number of errors.
+	 */
+	public synchronized long getErrors() {
+		return errors;
+	}
+
+	/**
+	 * Returns a percentile of the recorded latencies.
+	 * @param percentile Percentile between <code>0</code> and <code>100</code>.
+	 * @return Latency in milliseconds, or <code>0</code> if nothing was recorded.
+	 */
+	public synchronized double getPercentile(double percentile) {
+		if (size == 0) {
+			return 0d;
+		}
+		long[] sorted = Arrays.copyOf(latencies, size);
+		Arrays.sort(sorted);
+		int index = (int) Math.ceil(percentile / 100d * size) - 1;
+		return sorted[Math.max(0, Math.min(index, size - 1))] / 1000000d;
+	}
+}
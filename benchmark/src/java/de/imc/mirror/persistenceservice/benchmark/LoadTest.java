@@ -0,0 +1,403 @@
+package de.imc.mirror.persistenceservice.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.jivesoftware.util.JiveGlobals;
+import org.xmpp.component.ComponentManagerFactory;
+import org.xmpp.packet.IQ;
+import org.xmpp.packet.JID;
+import org.xmpp.packet.Packet;
+
+import de.imc.mirror.persistenceservice.DataObject;
+import de.imc.mirror.persistenceservice.DatabaseConnector;
+import de.imc.mirror.persistenceservice.PersistenceService;
+import de.imc.mirror.persistenceservice.config.ComponentConfig;
+import de.imc.mirror.persistenceservice.config.NamespaceConfig;
+import de.imc.mirror.persistenceservice.config.StorageConfig;
+import de.imc.mirror.persistenceservice.connectors.HSQLDBConnector;
+import de.imc.mirror.persistenceservice.connectors.LogStructuredConnector;
+
+/**
+ * End-to-end load test of the persistence service without Openfire and MIRROR Spaces Service.
+ * The service is connected to an in-memory HSQLDB database and a {@link LoadTestComponentManager}.
+ * Insert, query and delete requests are sent at a fixed rate, independent of the response times. The latency of a request is measured
+ * from the time it was scheduled to be sent until its response is received, so a service falling behind the rate is not hidden.
+ * The test is configured with the following system properties:
+ * <ul>
+ * <li><code>loadtest.rate</code>: Requests per second, default 200.</li>
+ * <li><code>loadtest.duration</code>: Duration of the measurement in seconds, default 60.</li>
+ * <li><code>loadtest.warmup</code>: Duration in seconds before the measurement starts, default 10.</li>
+ * <li><code>loadtest.mix</code>: Weights of the request types, default <code>insert=50,query=40,delete=10</code>.</li>
+ * <li><code>loadtest.spaces</code>: Number of spaces, default 100.</li>
+ * <li><code>loadtest.members</code>: Number of members per space, default 20.</li>
+ * <li><code>loadtest.preload</code>: Number of data objects stored per space before the test, default 100.</li>
+ * <li><code>loadtest.payload</code>: Number of child elements of each data object, default 10.</li>
+ * <li><code>loadtest.pageSize</code>: Maximum number of data objects requested per query, default 0 for all.</li>
+ * <li><code>loadtest.recentPeriod</code>: If set, data objects are stored with the current time as timestamp and queries request the data objects
+ * published within the given number of milliseconds, e.g., to test the hot tier. Default 0 for queries without period.</li>
+ * <li><code>loadtest.spacesLatency</code>: Response time of the simulated Spaces Service in milliseconds, default 0.</li>
+ * <li><code>loadtest.seed</code>: Seed for the random choice of requests, default 1.</li>
+ * </ul>
+ * System properties starting with <code>msf.persistence.</code> are set as Openfire properties before the service is started.
+ * With <code>msf.persistence.storage.engine=log</code>, the embedded log store is used with a temporary directory instead of HSQLDB.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public class LoadTest {
+	private static final String DOMAIN = "loadtest.local";
+	private static final String DATA_NAMESPACE = "mirror:application:loadtest:mood";
+
+	/**
+	 * Types of requests sent by the load test.
+	 */
+	private enum RequestType {
+		INSERT, QUERY, DELETE;
+	}
+
+	/**
+	 * Request waiting for its response.
+	 */
+	private static class PendingRequest {
+		private final RequestType type;
+		private final long scheduledTime;
+		private final boolean measured;
+		private final String objectId;
+
+		private PendingRequest(RequestType type, long scheduledTime, boolean measured, String objectId) {
+			this.type = type;
+			this.scheduledTime = scheduledTime;
+			this.measured = measured;
+			this.objectId = objectId;
+		}
+	}
+
+	private final int rate;
+	private final int duration;
+	private final int warmup;
+	private final int spaceCount;
+	private final int memberCount;
+	private final int preload;
+	private final int payload;
+	private final int pageSize;
+	private final long recentPeriod;
+	private final long spacesServiceLatency;
+	private final Map<RequestType, Integer> weights;
+	private final int totalWeight;
+	private final Random random;
+
+	private final Map<String, PendingRequest> pendingRequests;
+	private final Map<RequestType, LatencyRecorder> recorders;
+	// identifiers of stored data objects, which can be deleted
+	private final ConcurrentLinkedQueue<String> storedObjects;
+	private final AtomicLong objectCounter;
+	private final AtomicLong requestCounter;
+	private LoadTestComponentManager componentManager;
+	private JID serviceJID;
+
+	/**
+	 * Creates a load test configured by the system properties.
+	 */
+	public LoadTest() {
+		rate = Integer.getInteger("loadtest.rate", 200);
+		duration = Integer.getInteger("loadtest.duration", 60);
+		warmup = Integer.getInteger("loadtest.warmup", 10);
+		spaceCount = Integer.getInteger("loadtest.spaces", 100);
+		memberCount = Integer.getInteger("loadtest.members", 20);
+		preload = Integer.getInteger("loadtest.preload", 100);
+		payload = Integer.getInteger("loadtest.payload", 10);
+		pageSize = Integer.getInteger("loadtest.pageSize", 0);
+		recentPeriod = Long.getLong("loadtest.recentPeriod", 0);
+		spacesServiceLatency = Long.getLong("loadtest.spacesLatency", 0);
+		weights = parseMix(System.getProperty("loadtest.mix", "insert=50,query=40,delete=10"));
+		int weightSum = 0;
+		for (int weight : weights.values()) {
+			weightSum += weight;
+		}
+		totalWeight = weightSum;
+		random = new Random(Long.getLong("loadtest.seed", 1));
+		pendingRequests = new ConcurrentHashMap<String, PendingRequest>();
+		recorders = new EnumMap<RequestType, LatencyRecorder>(RequestType.class);
+		for (RequestType type : RequestType.values()) {
+			recorders.put(type, new LatencyRecorder());
+		}
+		storedObjects = new ConcurrentLinkedQueue<String>();
+		objectCounter = new AtomicLong();
+		requestCounter = new AtomicLong();
+	}
+
+	/**
+	 * Parses the weights of the request types.
+	 * @param mix Comma separated list of <code>type=weight</code> entries.
+	 * @return Map of request types to weights.
+	 * @throws IllegalArgumentException The mix is invalid.
+	 */
+	private static Map<RequestType, Integer> parseMix(String mix) throws IllegalArgumentException {
+		Map<RequestType, Integer> weights = new EnumMap<RequestType, Integer>(RequestType.class);
+		int totalWeight = 0;
+		for (String entry : mix.split(",")) {
+			String[] parts = entry.split("=");
+			if (parts.length != 2) {
+				throw new IllegalArgumentException("Invalid request mix entry: " + entry);
+			}
+			int weight = Integer.parseInt(parts[1].trim());
+			weights.put(RequestType.valueOf(parts[0].trim().toUpperCase()), weight);
+			totalWeight += weight;
+		}
+		if (totalWeight <= 0) {
+			throw new IllegalArgumentException("The request mix requires at least one positive weight.");
+		}
+		return weights;
+	}
+
+	/**
+	 * Runs the load test and prints the results.
+	 * @throws Exception The test environment could not be set up.
+	 */
+	public void run() throws Exception {
+		InMemoryDatabase.create("loadtest");
+		Properties systemProperties = System.getProperties();
+		for (String name : systemProperties.stringPropertyNames()) {
+			if (name.startsWith("msf.persistence.")) {
+				JiveGlobals.setProperty(name, systemProperties.getProperty(name));
+			}
+		}
+		componentManager = new LoadTestComponentManager(DOMAIN, spaceCount, memberCount, spacesServiceLatency, new LoadTestComponentManager.PacketHandler() {
+			@Override
+			public void handlePacket(Packet packet) {
+				handleResponse(packet);
+			}
+		});
+		ComponentManagerFactory.setComponentManager(componentManager);
+
+		DatabaseConnector connector;
+		File logDirectory = null;
+		if (StorageConfig.ENGINE_LOG.equals(JiveGlobals.getProperty(StorageConfig.PROPERTY_ENGINE))) {
+			logDirectory = File.createTempFile("loadtest", "");
+			logDirectory.delete();
+			connector = new LogStructuredConnector(logDirectory);
+		} else {
+			connector = new HSQLDBConnector();
+		}
+		connector.initialize();
+		System.out.println("Storing " + (spaceCount * preload) + " data objects...");
+		for (int space = 0; space < spaceCount; space++) {
+			List<DataObject> dataObjects = new ArrayList<DataObject>(preload);
+			for (int i = 0; i < preload; i++) {
+				String objectId = "o" + objectCounter.getAndIncrement();
+				dataObjects.add(new DataObject(createDataObjectElement(objectId), "space" + space));
+				storedObjects.add(objectId);
+			}
+			connector.storeDataObjects(dataObjects);
+		}
+
+		PersistenceService service = new PersistenceService(connector);
+		componentManager.addComponent(ComponentConfig.SUBDOMAIN, service);
+		serviceJID = service.getJID();
+
+		System.out.println("Sending " + rate + " requests per second for " + warmup + " s warmup and " + duration + " s measurement...");
+		long sent = dispatch(service);
+		long deadline = System.currentTimeMillis() + 30000;
+		while (!pendingRequests.isEmpty() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(100);
+		}
+		printReport(sent);
+
+		componentManager.removeComponent(ComponentConfig.SUBDOMAIN);
+		InMemoryDatabase.shutdown();
+		if (logDirectory != null) {
+			((LogStructuredConnector) connector).close();
+			for (File file : logDirectory.listFiles()) {
+				file.delete();
+			}
+			logDirectory.delete();
+		}
+	}
+
+	/**
+	 * Sends requests at the configured rate.
+	 * @param service Service to send requests to.
+	 * @return Number of requests sent during the measurement.
+	 */
+	private long dispatch(PersistenceService service) {
+		long interval = 1000000000L / rate;
+		long start = System.nanoTime();
+		long measurementStart = start + warmup * 1000000000L;
+		long end = measurementStart + duration * 1000000000L;
+		long sent = 0;
+		for (long i = 0; ; i++) {
+			long scheduledTime = start + i * interval;
+			if (scheduledTime >= end) {
+				break;
+			}
+			long waitTime = scheduledTime - System.nanoTime();
+			if (waitTime > 0) {
+				LockSupport.parkNanos(waitTime);
+			}
+			boolean measured = scheduledTime >= measurementStart;
+			RequestType type = nextRequestType();
+			String objectId = null;
+			if (type == RequestType.DELETE) {
+				objectId = storedObjects.poll();
+				if (objectId == null) {
+					// nothing to delete
+					type = RequestType.INSERT;
+				}
+			}
+			IQ requestIq;
+			switch (type) {
+			case DELETE:
+				requestIq = createDeleteRequest(objectId);
+				break;
+			case INSERT:
+				objectId = "o" + objectCounter.getAndIncrement();
+				requestIq = createInsertRequest(objectId);
+				break;
+			default:
+				requestIq = createQueryRequest();
+			}
+			pendingRequests.put(requestIq.getID(), new PendingRequest(type, scheduledTime, measured, objectId));
+			service.processPacket(requestIq);
+			if (measured) {
+				sent++;
+			}
+		}
+		return sent;
+	}
+
+	/**
+	 * Records the response for a pending request.
+	 * @param packet Packet sent by the service.
+	 */
+	private void handleResponse(Packet packet) {
+		if (!(packet instanceof IQ)) {
+			// chunks of streamed results
+			return;
+		}
+		IQ responseIq = (IQ) packet;
+		if (responseIq.getType() != IQ.Type.result && responseIq.getType() != IQ.Type.error) {
+			return;
+		}
+		PendingRequest request = pendingRequests.remove(responseIq.getID());
+		if (request == null) {
+			return;
+		}
+		boolean success = responseIq.getType() == IQ.Type.result;
+		if (success && request.type == RequestType.INSERT) {
+			storedObjects.add(request.objectId);
+		}
+		if (!request.measured) {
+			return;
+		}
+		LatencyRecorder recorder = recorders.get(request.type);
+		if (success) {
+			recorder.record(System.nanoTime() - request.scheduledTime);
+		} else {
+			recorder.recordError();
+		}
+	}
+
+	private RequestType nextRequestType() {
+		int value = random.nextInt(totalWeight);
+		for (Map.Entry<RequestType, Integer> entry : weights.entrySet()) {
+			value -= entry.getValue();
+			if (value < 0) {
+				return entry.getKey();
+			}
+		}
+		return RequestType.QUERY;
+	}
+
+	private Element createDataObjectElement(String objectId) {
+		Element element = DocumentHelper.createElement(DocumentHelper.createQName("mood", DocumentHelper.createNamespace("", DATA_NAMESPACE)));
+		element.addAttribute("id", objectId);
+		element.addAttribute("timestamp", recentPeriod > 0 ? formatTime(System.currentTimeMillis()) : "2014-01-01T00:00:00.000Z");
+		element.addAttribute("publisher", componentManager.getMemberJID(random.nextInt(memberCount)).toString());
+		for (int i = 0; i < payload; i++) {
+			element.addElement("value", DATA_NAMESPACE).setText("positive");
+		}
+		return element;
+	}
+
+	private static String formatTime(long time) {
+		Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+		calendar.setTimeInMillis(time);
+		return DatatypeConverter.printDateTime(calendar);
+	}
+
+	private IQ createRequest(IQ.Type type, JID from) {
+		IQ requestIq = new IQ(type, "loadtest-" + requestCounter.getAndIncrement());
+		requestIq.setFrom(from);
+		requestIq.setTo(serviceJID);
+		return requestIq;
+	}
+
+	private IQ createInsertRequest(String objectId) {
+		IQ requestIq = createRequest(IQ.Type.set, componentManager.getSpacesServiceJID());
+		Element insertElement = requestIq.setChildElement("insert", NamespaceConfig.SERVICE);
+		insertElement.addAttribute("spaceId", "space" + random.nextInt(spaceCount));
+		insertElement.add(createDataObjectElement(objectId));
+		return requestIq;
+	}
+
+	private IQ createQueryRequest() {
+		IQ requestIq = createRequest(IQ.Type.get, componentManager.getMemberJID(random.nextInt(memberCount)));
+		Element queryElement = requestIq.setChildElement("query", NamespaceConfig.SERVICE);
+		queryElement.addElement("objectsForSpace", NamespaceConfig.SERVICE).addAttribute("id", "space" + random.nextInt(spaceCount));
+		if (recentPeriod > 0) {
+			queryElement.addElement("filters", NamespaceConfig.SERVICE).addElement("period", NamespaceConfig.SERVICE).addAttribute("from", formatTime(System.currentTimeMillis() - recentPeriod));
+		}
+		if (pageSize > 0) {
+			queryElement.addElement("set", NamespaceConfig.RSM).addElement("max", NamespaceConfig.RSM).setText(String.valueOf(pageSize));
+		}
+		return requestIq;
+	}
+
+	private IQ createDeleteRequest(String objectId) {
+		// the first member is moderator of all spaces
+		IQ requestIq = createRequest(IQ.Type.set, componentManager.getMemberJID(0));
+		Element deleteElement = requestIq.setChildElement("delete", NamespaceConfig.SERVICE);
+		deleteElement.addElement("object", NamespaceConfig.SERVICE).addAttribute("id", objectId);
+		return requestIq;
+	}
+
+	private void printReport(long sent) {
+		Map<RequestType, Integer> lost = new EnumMap<RequestType, Integer>(RequestType.class);
+		for (PendingRequest request : pendingRequests.values()) {
+			if (request.measured) {
+				Integer count = lost.get(request.type);
+				lost.put(request.type, count != null ? count + 1 : 1);
+			}
+		}
+		System.out.println();
+		System.out.println(String.format("Requests sent: %d (%.1f/s)", sent, sent / (double) duration));
+		System.out.println(String.format("%-8s %10s %8s %8s %12s %10s %10s %10s", "Type", "Completed", "Errors", "Lost", "Throughput", "p50 [ms]", "p99 [ms]", "p999 [ms]"));
+		for (RequestType type : RequestType.values()) {
+			LatencyRecorder recorder = recorders.get(type);
+			Integer lostCount = lost.get(type);
+			System.out.println(String.format("%-8s %10d %8d %8d %10.1f/s %10.2f %10.2f %10.2f",
+					type.toString().toLowerCase(), recorder.getCount(), recorder.getErrors(), lostCount != null ? lostCount : 0,
+					recorder.getCount() / (double) duration, recorder.getPercentile(50), recorder.getPercentile(99), recorder.getPercentile(99.9)));
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		new LoadTest().run();
+		// stop the threads of the Openfire task engine
+		System.exit(0);
+	}
+}
@@ -0,0 +1,180 @@
+package de.imc.mirror.persistenceservice.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.dom4j.Element;
+import org.xmpp.component.Component;
+import org.xmpp.component.ComponentException;
+import org.xmpp.component.ComponentManager;
+import org.xmpp.component.IQResultListener;
+import org.xmpp.forms.DataForm;
+import org.xmpp.forms.FormField;
+import org.xmpp.packet.IQ;
+import org.xmpp.packet.JID;
+import org.xmpp.packet.Packet;
+import org.xmpp.packet.PacketError;
+
+/**
+ * Local component manager for load tests, replacing Openfire and the MIRROR Spaces Service.
+ * Disco#info requests for a space are answered with a generated configuration, packets sent by components are passed to a handler.
+ * The spaces <code>space0</code> to <code>space&lt;n-1&gt;</code> are persistent and have the members <code>user0</code> to <code>user&lt;m-1&gt;</code>, <code>user0</code> is moderator.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public class LoadTestComponentManager implements ComponentManager {
+	/**
+	 * Handler for packets sent by components.
+	 */
+	public interface PacketHandler {
+		/**
+		 * Called when a component sends a packet.
+		 * @param packet Packet sent.
+		 */
+		public void handlePacket(Packet packet);
+	}
+
+	private final String domain;
+	private final int spaceCount;
+	private final int memberCount;
+	private final long spacesServiceLatency;
+	private final PacketHandler packetHandler;
+	private final Map<String, Component> components;
+	private final Map<String, String> properties;
+
+	/**
+	 * Creates a component manager.
+	 * @param domain XMPP domain.
+	 * @param spaceCount Number of spaces known by the simulated Spaces Service.
+	 * @param memberCount Number of members of each space.
+	 * @param spacesServiceLatency Time in milliseconds the simulated Spaces Service takes to answer a request.
+	 * @param packetHandler Handler for packets sent by components.
+	 */
+	public LoadTestComponentManager(String domain, int spaceCount, int memberCount, long spacesServiceLatency, PacketHandler packetHandler) {
+		this.domain = domain;
+		this.spaceCount = spaceCount;
+		this.memberCount = memberCount;
+		this.spacesServiceLatency = spacesServiceLatency;
+		this.packetHandler = packetHandler;
+		this.components = new ConcurrentHashMap<String, Component>();
+		this.properties = new ConcurrentHashMap<String, String>();
+	}
+
+	/**
+	 * Returns the JID of a space member.
+	 * @param index Index of the member.
+	 * @return Full JID of the member.
+	 */
+	public JID getMemberJID(int index) {
+		return new JID("user" + index, domain, "loadtest");
+	}
+
+	/**
+	 * Returns the JID of the simulated MIRROR Spaces Service.
+	 * @return Component JID.
+	 */
+	public JID getSpacesServiceJID() {
+		return new JID(null, "spaces." + domain, null);
+	}
+
+	@Override
+	public void addComponent(String subdomain, Component component) throws ComponentException {
+		component.initialize(new JID(null, subdomain + "." + domain, null), this);
+		components.put(subdomain, component);
+		component.start();
+	}
+
+	@Override
+	public void removeComponent(String subdomain) throws ComponentException {
+		Component component = components.remove(subdomain);
+		if (component != null) {
+			component.shutdown();
+		}
+	}
+
+	@Override
+	public void sendPacket(Component component, Packet packet) throws ComponentException {
+		packetHandler.handlePacket(packet);
+	}
+
+	@Override
+	public IQ query(Component component, IQ packet, long timeout) throws ComponentException {
+		if (!packet.getTo().equals(getSpacesServiceJID())) {
+			throw new ComponentException("Only requests to the Spaces Service are supported.");
+		}
+		if (spacesServiceLatency > 0) {
+			try {
+				Thread.sleep(spacesServiceLatency);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+		}
+		return answerSpaceRequest(packet);
+	}
+
+	@Override
+	public void query(Component component, IQ packet, IQResultListener listener) throws ComponentException {
+		listener.receivedAnswer(query(component, packet, 0));
+	}
+
+	/**
+	 * Answers a disco#info request for a space.
+	 * @param requestIq Request IQ.
+	 * @return Space configuration or an item-not-found error.
+	 */
+	private IQ answerSpaceRequest(IQ requestIq) {
+		IQ responseIq = IQ.createResultIQ(requestIq);
+		Element queryElement = requestIq.getChildElement();
+		String spaceId = queryElement != null ? queryElement.attributeValue("node") : null;
+		int spaceIndex = -1;
+		if (spaceId != null && spaceId.startsWith("space")) {
+			try {
+				spaceIndex = Integer.parseInt(spaceId.substring("space".length()));
+			} catch (NumberFormatException e) {
+				// unknown space
+			}
+		}
+		if (spaceIndex < 0 || spaceIndex >= spaceCount) {
+			responseIq.setError(new PacketError(PacketError.Condition.item_not_found, PacketError.Type.cancel));
+			return responseIq;
+		}
+		Element responseQueryElement = responseIq.setChildElement("query", queryElement.getNamespaceURI());
+		responseQueryElement.addAttribute("node", spaceId);
+		DataForm dataForm = new DataForm(DataForm.Type.result);
+		FormField membersField = dataForm.addField();
+		membersField.setVariable("spaces#members");
+		membersField.setType(FormField.Type.jid_multi);
+		for (int i = 0; i < memberCount; i++) {
+			membersField.addValue(getMemberJID(i).toBareJID());
+		}
+		FormField moderatorsField = dataForm.addField();
+		moderatorsField.setVariable("spaces#moderators");
+		moderatorsField.setType(FormField.Type.jid_multi);
+		moderatorsField.addValue(getMemberJID(0).toBareJID());
+		FormField persistentField = dataForm.addField();
+		persistentField.setVariable("spaces#persistent");
+		persistentField.addValue("true");
+		responseQueryElement.add(dataForm.getElement());
+		return responseIq;
+	}
+
+	@Override
+	public String getProperty(String name) {
+		return properties.get(name);
+	}
+
+	@Override
+	public void setProperty(String name, String value) {
+		properties.put(name, value);
+	}
+
+	@Override
+	public String getServerName() {
+		return domain;
+	}
+
+	@Override
+	public boolean isExternalMode() {
+		return false;
+	}
+}
@@ -0,0 +1,88 @@
+package de.imc.mirror.persistenceservice.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.dom4j.DocumentException;
+import org.dom4j.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xmpp.packet.IQ;
+
+import de.imc.mirror.persistenceservice.DataObject;
+
+/**
+ * Compares the assembly and serialization of query responses with parsed data objects and with spliced data object strings.
+ * @author simon.schwantzer(at)im-c.de
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryResponseBenchmark {
+	private static final String NAMESPACE = "mirror:application:benchmark:mood";
+
+	@Param({"10", "100", "1000"})
+	public int objectCount;
+
+	@Param({"10", "100"})
+	public int payloadElements;
+
+	private List<String> elementStrings;
+
+	@Setup
+	public void setUp() {
+		elementStrings = new ArrayList<String>(objectCount);
+		for (int i = 0; i < objectCount; i++) {
+			StringBuilder builder = new StringBuilder();
+			builder.append("<mood xmlns=\"").append(NAMESPACE).append("\" id=\"").append(i)
+				.append("\" timestamp=\"2014-01-01T00:00:00.000Z\" publisher=\"user@example.org\">");
+			for (int j = 0; j < payloadElements; j++) {
+				builder.append("<value index=\"").append(j).append("\">positive &amp; calm</value>");
+			}
+			builder.append("</mood>");
+			elementStrings.add(builder.toString());
+		}
+	}
+
+	private IQ createResponse() {
+		IQ responseIq = new IQ(IQ.Type.result);
+		responseIq.setChildElement("query", "urn:xmpp:spaces:persistence").addElement("result", "urn:xmpp:spaces:persistence");
+		return responseIq;
+	}
+
+	@Benchmark
+	public String parsed() throws DocumentException {
+		IQ responseIq = createResponse();
+		Element resultElement = responseIq.getChildElement().element("result");
+		for (String elementString : elementStrings) {
+			DataObject dataObject = new DataObject(elementString, "benchmark");
+			dataObject.parseElementString();
+			resultElement.add(dataObject.getXMLElement());
+		}
+		return responseIq.toXML();
+	}
+
+	@Benchmark
+	public String spliced() throws DocumentException {
+		IQ responseIq = createResponse();
+		Element resultElement = responseIq.getChildElement().element("result");
+		for (String elementString : elementStrings) {
+			DataObject dataObject = new DataObject(elementString, "benchmark", NAMESPACE);
+			resultElement.add(dataObject.getXMLNode());
+		}
+		return responseIq.toXML();
+	}
+}
@@ -0,0 +1,145 @@
+package de.imc.mirror.persistenceservice.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xmpp.forms.DataForm;
+import org.xmpp.forms.FormField;
+
+import de.imc.mirror.persistenceservice.Space;
+import de.imc.mirror.persistenceservice.SpaceMember;
+import de.imc.mirror.persistenceservice.SpaceMember.Role;
+
+/**
+ * Compares construction and member lookups of spaces with the former list based implementation.
+ * Every tenth member is a moderator. Lookups are performed for the last member, which is the worst case for a linear scan.
+ * @author simon.schwantzer(at)im-c.de
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpaceBenchmark {
+	/**
+	 * Former implementation of the space member handling, used as baseline.
+	 */
+	static class LegacySpace {
+		private final Set<SpaceMember> members;
+
+		LegacySpace(DataForm dataForm) {
+			this.members = new HashSet<SpaceMember>();
+			FormField membersFormField = dataForm.getField("spaces#members");
+			FormField moderatorsFormField = dataForm.getField("spaces#moderators");
+			for (String membersFormFieldValue : membersFormField.getValues()) {
+				if (moderatorsFormField.getValues().contains(membersFormFieldValue)) {
+					members.add(new SpaceMember(membersFormFieldValue, Role.MODERATOR));
+				} else {
+					members.add(new SpaceMember(membersFormFieldValue, Role.MEMBER));
+				}
+			}
+		}
+
+		boolean isMember(String bareJIDString) {
+			for (SpaceMember member : members) {
+				if (member.getJIDString().equals(bareJIDString)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		boolean isModerator(String bareJIDString) {
+			for (SpaceMember member : members) {
+				if (member.getJIDString().equals(bareJIDString) && member.getRole() == Role.MODERATOR) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	@Param({"10", "1000", "50000"})
+	public int memberCount;
+
+	private DataForm dataForm;
+	private Space space;
+	private LegacySpace legacySpace;
+	private String lastMember;
+	private String nonMember;
+
+	@Setup
+	public void setUp() {
+		dataForm = new DataForm(DataForm.Type.result);
+		List<String> members = new ArrayList<String>(memberCount);
+		List<String> moderators = new ArrayList<String>(memberCount / 10 + 1);
+		for (int i = 0; i < memberCount; i++) {
+			String jid = "user" + i + "@example.org";
+			members.add(jid);
+			if (i % 10 == 9) {
+				moderators.add(jid);
+			}
+		}
+		FormField membersField = dataForm.addField();
+		membersField.setVariable("spaces#members");
+		membersField.setType(FormField.Type.jid_multi);
+		for (String member : members) {
+			membersField.addValue(member);
+		}
+		FormField moderatorsField = dataForm.addField();
+		moderatorsField.setVariable("spaces#moderators");
+		moderatorsField.setType(FormField.Type.jid_multi);
+		for (String moderator : moderators) {
+			moderatorsField.addValue(moderator);
+		}
+		space = new Space("benchmark", dataForm);
+		legacySpace = new LegacySpace(dataForm);
+		lastMember = members.get(members.size() - 1);
+		nonMember = "stranger@example.org";
+	}
+
+	@Benchmark
+	public Space construct() {
+		return new Space("benchmark", dataForm);
+	}
+
+	@Benchmark
+	public Object constructLegacy() {
+		return new LegacySpace(dataForm);
+	}
+
+	@Benchmark
+	public boolean isMember() {
+		return space.isMember(lastMember) & !space.isMember(nonMember);
+	}
+
+	@Benchmark
+	public boolean isMemberLegacy() {
+		return legacySpace.isMember(lastMember) & !legacySpace.isMember(nonMember);
+	}
+
+	@Benchmark
+	public boolean isModerator() {
+		return space.isModerator(lastMember);
+	}
+
+	@Benchmark
+	public boolean isModeratorLegacy() {
+		return legacySpace.isModerator(lastMember);
+	}
+}
@@ -0,0 +1,113 @@
+package de.imc.mirror.persistenceservice.benchmark;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+
+import org.dom4j.DocumentException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.imc.mirror.persistenceservice.DataObject;
+import de.imc.mirror.persistenceservice.connectors.BinaryXMLCodec;
+import de.imc.mirror.persistenceservice.connectors.PayloadCodec;
+
+/**
+ * Compares the storage formats of data objects: plain text, deflate compressed text with a namespace dictionary, and binary XML.
+ * <code>encode</code> measures the additional cost of an insert, <code>decode</code> the creation of a data object from a stored row,
+ * including the access to the CDM attributes and the node added to the response.
+ * The stored size of each format is printed during the setup.
+ * @author simon.schwantzer(at)im-c.de
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageFormatBenchmark {
+	private static final String NAMESPACE = "mirror:application:benchmark:mood";
+
+	@Param({"text", "deflate", "binary"})
+	public String format;
+
+	@Param({"10", "1000"})
+	public int payloadElements;
+
+	private PayloadCodec payloadCodec;
+	private String elementString;
+	private byte[] payload;
+
+	/**
+	 * Creates a data object with the given number of payload elements.
+	 * @param id Data object identifier.
+	 * @param elements Number of payload elements.
+	 * @return XML string of the data object.
+	 */
+	private static String createElementString(int id, int elements) {
+		StringBuilder builder = new StringBuilder();
+		builder.append("<mood xmlns=\"").append(NAMESPACE).append("\" id=\"").append(id).append("\" timestamp=\"2014-01-01T00:00:00.000Z\" publisher=\"user@example.org\" modelVersion=\"1.0\">");
+		for (int i = 0; i < elements; i++) {
+			builder.append("<value index=\"").append(i).append("\" confidence=\"").append((id + i) % 100).append("\">").append(i % 3 == 0 ? "positive" : "neutral").append("</value>");
+		}
+		builder.append("</mood>");
+		return builder.toString();
+	}
+
+	@Setup
+	public void setUp() throws DocumentException {
+		elementString = createElementString(1, payloadElements);
+		payloadCodec = new PayloadCodec();
+		List<String> samples = new ArrayList<String>();
+		for (int i = 2; i < 22; i++) {
+			samples.add(createElementString(i, payloadElements));
+		}
+		payloadCodec.addDictionary(1, NAMESPACE, PayloadCodec.trainDictionary(samples));
+		if ("deflate".equals(format)) {
+			payload = payloadCodec.compress(elementString, NAMESPACE);
+		} else if ("binary".equals(format)) {
+			payload = BinaryXMLCodec.encode(elementString);
+		} else {
+			payload = elementString.getBytes(Charset.forName("UTF-8"));
+		}
+		System.out.println("Stored size (" + format + "): " + payload.length + " bytes, text: " + elementString.length() + " characters");
+	}
+
+	@Benchmark
+	public Object encode() throws DocumentException {
+		if ("deflate".equals(format)) {
+			return payloadCodec.compress(elementString, NAMESPACE);
+		} else if ("binary".equals(format)) {
+			return BinaryXMLCodec.encode(elementString);
+		} else {
+			return elementString;
+		}
+	}
+
+	@Benchmark
+	public Object decode() throws DocumentException, DataFormatException {
+		DataObject dataObject;
+		if ("deflate".equals(format)) {
+			dataObject = new DataObject(payloadCodec.decompress(payload), "benchmark", NAMESPACE);
+		} else if ("binary".equals(format)) {
+			dataObject = BinaryXMLCodec.decodeDataObject(payload, "benchmark");
+		} else {
+			dataObject = new DataObject(elementString, "benchmark", NAMESPACE);
+		}
+		dataObject.getId();
+		dataObject.getPublisher();
+		dataObject.getTimestamp();
+		return dataObject.getXMLNode();
+	}
+}
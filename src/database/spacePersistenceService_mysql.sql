@@ -6,9 +6,22 @@ CREATE TABLE ofSpacePersistenceData (
   spaceId               VARCHAR(255)  NOT NULL,
   expirationDate        TIMESTAMP,
   xmlElement            TEXT          NOT NULL,
+  namespace             VARCHAR(255),
+  modelVersion          VARCHAR(255),
+  objectTimestamp       BIGINT,
+  publisher             VARCHAR(255),
+  objectRef             VARCHAR(255),
+  xmlCompressed         MEDIUMBLOB,
+  metadataExtracted     SMALLINT,
   PRIMARY KEY (objectId)
 );
 
+CREATE INDEX ofSpacePersistenceData_sp_idx ON ofSpacePersistenceData (spaceId, objectTimestamp);
+CREATE INDEX ofSpacePersistenceData_ns_idx ON ofSpacePersistenceData (namespace);
+CREATE INDEX ofSpacePersistenceData_pub_idx ON ofSpacePersistenceData (publisher);
+CREATE INDEX ofSpacePersistenceData_ref_idx ON ofSpacePersistenceData (objectRef);
+CREATE INDEX ofSpacePersistenceData_exp_idx ON ofSpacePersistenceData (expirationDate, objectId);
+
 CREATE TABLE ofSpacePersistenceDependencies (
   referrer              VARCHAR(255)  NOT NULL,
   reference             VARCHAR(255)  NOT NULL,
@@ -16,4 +29,14 @@ CREATE TABLE ofSpacePersistenceDependencies (
   PRIMARY KEY (referrer, reference)
 );
 
-INSERT INTO ofVersion (name, version) VALUES ('spacePersistenceService', 0);
\ No newline at end of file
+CREATE INDEX ofSpacePersistenceDep_ref_idx ON ofSpacePersistenceDependencies (reference);
+
+CREATE TABLE ofSpacePersistenceDict (
+  dictId                INTEGER       NOT NULL,
+  namespace             VARCHAR(255)  NOT NULL,
+  dictData              BLOB          NOT NULL,
+  creationDate          BIGINT        NOT NULL,
+  CONSTRAINT ofSpacePersistenceDict_pk PRIMARY KEY (dictId)
+);
+
+INSERT INTO ofVersion (name, version) VALUES ('spacePersistenceService', 4);
\ No newline at end of file
@@ -6,9 +6,22 @@ CREATE TABLE ofSpacePersistenceData (
   spaceId               VARCHAR2(255) NOT NULL,
   expirationDate        TIMESTAMP,
   xmlElement            XMLTYPE       NOT NULL,
+  namespace             VARCHAR2(255),
+  modelVersion          VARCHAR2(255),
+  objectTimestamp       NUMBER(19),
+  publisher             VARCHAR2(255),
+  objectRef             VARCHAR2(255),
+  xmlCompressed         BLOB,
+  metadataExtracted     NUMBER(1),
   CONSTRAINT ofSpacePersistenceData_pk PRIMARY KEY (objectId)
 );
 
+CREATE INDEX ofSpacePersistenceData_sp_idx ON ofSpacePersistenceData (spaceId, objectTimestamp);
+CREATE INDEX ofSpacePersistenceData_ns_idx ON ofSpacePersistenceData (namespace);
+CREATE INDEX ofSpacePersistenceData_pub_idx ON ofSpacePersistenceData (publisher);
+CREATE INDEX ofSpacePersistenceData_ref_idx ON ofSpacePersistenceData (objectRef);
+CREATE INDEX ofSpacePersistenceData_exp_idx ON ofSpacePersistenceData (expirationDate, objectId);
+
 CREATE TABLE ofSpacePersistenceDependencies (
   referrer              VARCHAR2(255) NOT NULL,
   reference             VARCHAR2(255) NOT NULL,
@@ -16,4 +29,14 @@ CREATE TABLE ofSpacePersistenceDependencies (
   CONSTRAINT ofSpacePersistenceDependencies_pk PRIMARY KEY (referrer, reference)
 );
 
-INSERT INTO ofVersion (name, version) VALUES ('spacePersistenceService', 0);
\ No newline at end of file
+CREATE INDEX ofSpacePersistenceDep_ref_idx ON ofSpacePersistenceDependencies (reference);
+
+CREATE TABLE ofSpacePersistenceDict (
+  dictId                INTEGER       NOT NULL,
+  namespace             VARCHAR2(255) NOT NULL,
+  dictData              BLOB          NOT NULL,
+  creationDate          NUMBER(19)    NOT NULL,
+  CONSTRAINT ofSpacePersistenceDict_pk PRIMARY KEY (dictId)
+);
+
+INSERT INTO ofVersion (name, version) VALUES ('spacePersistenceService', 4);
\ No newline at end of file
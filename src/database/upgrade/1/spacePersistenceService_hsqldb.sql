@@ -0,0 +1,15 @@
+-- $Revision$
+-- $Date$
+
+ALTER TABLE ofSpacePersistenceData ADD COLUMN namespace VARCHAR(255);
+ALTER TABLE ofSpacePersistenceData ADD COLUMN modelVersion VARCHAR(255);
+ALTER TABLE ofSpacePersistenceData ADD COLUMN objectTimestamp BIGINT;
+ALTER TABLE ofSpacePersistenceData ADD COLUMN publisher VARCHAR(255);
+ALTER TABLE ofSpacePersistenceData ADD COLUMN objectRef VARCHAR(255);
+
+CREATE INDEX ofSpacePersistenceData_sp_idx ON ofSpacePersistenceData (spaceId, objectTimestamp);
+CREATE INDEX ofSpacePersistenceData_ns_idx ON ofSpacePersistenceData (namespace);
+CREATE INDEX ofSpacePersistenceData_pub_idx ON ofSpacePersistenceData (publisher);
+CREATE INDEX ofSpacePersistenceData_ref_idx ON ofSpacePersistenceData (objectRef);
+
+UPDATE ofVersion SET version = 1 WHERE name = 'spacePersistenceService';
\ No newline at end of file
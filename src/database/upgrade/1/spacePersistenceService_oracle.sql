@@ -0,0 +1,17 @@
+-- $Revision$
+-- $Date$
+
+ALTER TABLE ofSpacePersistenceData ADD (
+  namespace             VARCHAR2(255),
+  modelVersion          VARCHAR2(255),
+  objectTimestamp       NUMBER(19),
+  publisher             VARCHAR2(255),
+  objectRef             VARCHAR2(255)
+);
+
+CREATE INDEX ofSpacePersistenceData_sp_idx ON ofSpacePersistenceData (spaceId, objectTimestamp);
+CREATE INDEX ofSpacePersistenceData_ns_idx ON ofSpacePersistenceData (namespace);
+CREATE INDEX ofSpacePersistenceData_pub_idx ON ofSpacePersistenceData (publisher);
+CREATE INDEX ofSpacePersistenceData_ref_idx ON ofSpacePersistenceData (objectRef);
+
+UPDATE ofVersion SET version = 1 WHERE name = 'spacePersistenceService';
\ No newline at end of file
@@ -0,0 +1,16 @@
+-- $Revision$
+-- $Date$
+
+ALTER TABLE ofSpacePersistenceData ADD
+  namespace             NVARCHAR(255),
+  modelVersion          NVARCHAR(255),
+  objectTimestamp       BIGINT,
+  publisher             NVARCHAR(255),
+  objectRef             NVARCHAR(255);
+
+CREATE INDEX ofSpacePersistenceData_sp_idx ON ofSpacePersistenceData (spaceId, objectTimestamp);
+CREATE INDEX ofSpacePersistenceData_ns_idx ON ofSpacePersistenceData (namespace);
+CREATE INDEX ofSpacePersistenceData_pub_idx ON ofSpacePersistenceData (publisher);
+CREATE INDEX ofSpacePersistenceData_ref_idx ON ofSpacePersistenceData (objectRef);
+
+UPDATE ofVersion SET version = 1 WHERE name = 'spacePersistenceService';
\ No newline at end of file
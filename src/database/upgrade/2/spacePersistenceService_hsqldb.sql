@@ -0,0 +1,7 @@
+-- $Revision$
+-- $Date$
+
+CREATE INDEX ofSpacePersistenceData_exp_idx ON ofSpacePersistenceData (expirationDate, objectId);
+CREATE INDEX ofSpacePersistenceDep_ref_idx ON ofSpacePersistenceDependencies (reference);
+
+UPDATE ofVersion SET version = 2 WHERE name = 'spacePersistenceService';
\ No newline at end of file
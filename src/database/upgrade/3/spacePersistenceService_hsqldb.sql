@@ -0,0 +1,14 @@
+-- $Revision$
+-- $Date$
+
+ALTER TABLE ofSpacePersistenceData ADD COLUMN xmlCompressed LONGVARBINARY;
+
+CREATE TABLE ofSpacePersistenceDict (
+  dictId                INTEGER       NOT NULL,
+  namespace             VARCHAR(255)  NOT NULL,
+  dictData              LONGVARBINARY NOT NULL,
+  creationDate          BIGINT        NOT NULL,
+  CONSTRAINT ofSpacePersistenceDict_pk PRIMARY KEY (dictId)
+);
+
+UPDATE ofVersion SET version = 3 WHERE name = 'spacePersistenceService';
\ No newline at end of file
@@ -0,0 +1,14 @@
+-- $Revision$
+-- $Date$
+
+ALTER TABLE ofSpacePersistenceData ADD (xmlCompressed BLOB);
+
+CREATE TABLE ofSpacePersistenceDict (
+  dictId                INTEGER       NOT NULL,
+  namespace             VARCHAR2(255) NOT NULL,
+  dictData              BLOB          NOT NULL,
+  creationDate          NUMBER(19)    NOT NULL,
+  CONSTRAINT ofSpacePersistenceDict_pk PRIMARY KEY (dictId)
+);
+
+UPDATE ofVersion SET version = 3 WHERE name = 'spacePersistenceService';
\ No newline at end of file
@@ -0,0 +1,14 @@
+-- $Revision$
+-- $Date$
+
+ALTER TABLE ofSpacePersistenceData ADD xmlCompressed VARBINARY(MAX);
+
+CREATE TABLE ofSpacePersistenceDict (
+  dictId                INTEGER         NOT NULL,
+  namespace             NVARCHAR(255)   NOT NULL,
+  dictData              VARBINARY(MAX)  NOT NULL,
+  creationDate          BIGINT          NOT NULL,
+  CONSTRAINT ofSpacePersistenceDict_pk PRIMARY KEY (dictId)
+);
+
+UPDATE ofVersion SET version = 3 WHERE name = 'spacePersistenceService';
\ No newline at end of file
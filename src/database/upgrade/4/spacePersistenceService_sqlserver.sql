@@ -0,0 +1,8 @@
+-- $Revision$
+-- $Date$
+
+ALTER TABLE ofSpacePersistenceData ADD metadataExtracted SMALLINT;
+
+UPDATE ofSpacePersistenceData SET metadataExtracted = 1 WHERE namespace IS NOT NULL;
+
+UPDATE ofVersion SET version = 4 WHERE name = 'spacePersistenceService';
\ No newline at end of file
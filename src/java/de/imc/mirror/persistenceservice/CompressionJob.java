@@ -0,0 +1,113 @@
+package de.imc.mirror.persistenceservice;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jivesoftware.util.JiveGlobals;
+import org.jivesoftware.util.TaskEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.imc.mirror.persistenceservice.config.StorageConfig;
+import de.imc.mirror.persistenceservice.exceptions.DBAccessException;
+
+/**
+ * Job rewriting stored data objects in the compressed storage format.
+ * The dictionaries are trained first, then the data objects are rewritten in chunks, each committed in a separate transaction.
+ * The job is only started by an administrator. Data objects stored while compression is enabled are compressed anyway.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public class CompressionJob implements CompressionJobMBean {
+	private static final Logger log = LoggerFactory.getLogger(CompressionJob.class);
+
+	private final DatabaseConnector dbConnector;
+	private final ReentrantLock runLock;
+	private final AtomicLong objectsCompressed;
+	private volatile int dictionariesCreated;
+	private volatile long lastRunTime;
+
+	/**
+	 * Creates the job.
+	 * @param dbConnector Connector to rewrite the data objects with.
+	 */
+	public CompressionJob(DatabaseConnector dbConnector) {
+		this.dbConnector = dbConnector;
+		this.runLock = new ReentrantLock();
+		this.objectsCompressed = new AtomicLong();
+	}
+
+	/**
+	 * Trains the dictionaries and rewrites all uncompressed data objects unless the job is already running.
+	 */
+	private void run() {
+		if (!runLock.tryLock()) {
+			return;
+		}
+		try {
+			long start = System.currentTimeMillis();
+			lastRunTime = start;
+			objectsCompressed.set(0);
+			dictionariesCreated = dbConnector.trainCompressionDictionaries();
+			int chunkSize = JiveGlobals.getIntProperty(StorageConfig.PROPERTY_COMPRESSION_CHUNK_SIZE, StorageConfig.DEFAULT_COMPRESSION_CHUNK_SIZE);
+			int chunkObjects;
+			do {
+				chunkObjects = dbConnector.compressDataObjects(chunkSize);
+				objectsCompressed.addAndGet(chunkObjects);
+			} while (chunkObjects >= chunkSize);
+			log.info("Compressed " + objectsCompressed.get() + " data object(s) using " + dictionariesCreated + " new dictionaries in " + (System.currentTimeMillis() - start) + " ms.");
+		} catch (DBAccessException e) {
+			log.warn("Failed to compress stored data objects.", e);
+		} finally {
+			runLock.unlock();
+		}
+	}
+
+	/**
+	 * Trains the dictionaries and rewrites all uncompressed data objects in the background.
+	 */
+	@Override
+	public void runNow() {
+		TaskEngine.getInstance().submit(new Runnable() {
+			@Override
+			public void run() {
+				CompressionJob.this.run();
+			}
+		});
+	}
+
+	/**
+	 * Checks if the job is currently running.
+	 * @return <code>true</code> if data objects are being rewritten, otherwise <code>false</code>.
+	 */
+	@Override
+	public boolean isRunning() {
+		return runLock.isLocked();
+	}
+
+	/**
+	 * Returns the start time of the last run.
+	 * @return Time in milliseconds since January 1, 1970 UTC, or <code>0</code> if the job was not run yet.
+	 */
+	@Override
+	public long getLastRunTime() {
+		return lastRunTime;
+	}
+
+	/**
+	 * Returns the number of data objects rewritten by the current or last run.
+	 * @return Number of data objects.
+	 */
+	@Override
+	public long getObjectsCompressed() {
+		return objectsCompressed.get();
+	}
+
+	/**
+	 * Returns the number of dictionaries created by the current or last run.
+	 * @return Number of dictionaries.
+	 */
+	@Override
+	public int getDictionariesCreated() {
+		return dictionariesCreated;
+	}
+}
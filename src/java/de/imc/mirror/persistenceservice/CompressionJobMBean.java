@@ -0,0 +1,36 @@
+package de.imc.mirror.persistenceservice;
+
+/**
+ * Management interface of the job rewriting stored data objects in the compressed storage format.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public interface CompressionJobMBean {
+	/**
+	 * Trains the compression dictionaries and rewrites all uncompressed data objects in the background.
+	 */
+	public void runNow();
+	
+	/**
+	 * Checks if the job is currently running.
+	 * @return <code>true</code> if data objects are being rewritten, otherwise <code>false</code>.
+	 */
+	public boolean isRunning();
+	
+	/**
+	 * Returns the start time of the last run.
+	 * @return Time in milliseconds since January 1, 1970 UTC, or <code>0</code> if the job was not run yet.
+	 */
+	public long getLastRunTime();
+	
+	/**
+	 * Returns the number of data objects rewritten by the current or last run.
+	 * @return Number of data objects.
+	 */
+	public long getObjectsCompressed();
+	
+	/**
+	 * Returns the number of dictionaries created by the current or last run.
+	 * @return Number of dictionaries.
+	 */
+	public int getDictionariesCreated();
+}
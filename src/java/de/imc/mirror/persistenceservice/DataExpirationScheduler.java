@@ -0,0 +1,252 @@
+package de.imc.mirror.persistenceservice;
+
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jivesoftware.util.JiveGlobals;
+import org.jivesoftware.util.TaskEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.imc.mirror.persistenceservice.config.ExpirationConfig;
+import de.imc.mirror.persistenceservice.exceptions.DBAccessException;
+
+/**
+ * Scheduler for the deletion of expired data objects.
+ * Expired data objects are deleted in small slices, each limited by a number of data objects and a time budget.
+ * Slices are postponed while the average query latency is above a threshold.
+ * The settings are read from the Openfire system properties before each slice.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public class DataExpirationScheduler implements DataExpirationSchedulerMBean {
+	private static final Logger log = LoggerFactory.getLogger(DataExpirationScheduler.class);
+
+	private final DatabaseConnector dbConnector;
+	private final ReentrantLock runLock;
+	private TimerTask scheduledSlice;
+	private boolean started;
+	private volatile int backoffFactor;
+
+	// query latency since the last slice
+	private final AtomicLong queryTime;
+	private final AtomicLong queryCount;
+
+	private final AtomicLong runCount;
+	private final AtomicLong totalObjectsDeleted;
+	private final AtomicLong postponedSlices;
+	private volatile long lastRunTime;
+	private volatile long lastRunDuration;
+	private volatile int lastRunObjects;
+
+	/**
+	 * Creates a scheduler. The scheduler has to be started to perform cleanups.
+	 * @param dbConnector Connector to delete expired data objects with.
+	 */
+	public DataExpirationScheduler(DatabaseConnector dbConnector) {
+		this.dbConnector = dbConnector;
+		this.runLock = new ReentrantLock();
+		this.backoffFactor = 1;
+		this.queryTime = new AtomicLong();
+		this.queryCount = new AtomicLong();
+		this.runCount = new AtomicLong();
+		this.totalObjectsDeleted = new AtomicLong();
+		this.postponedSlices = new AtomicLong();
+	}
+
+	/**
+	 * Starts the periodic cleanup.
+	 * @param initialDelay Time in milliseconds until the first slice is performed.
+	 */
+	public synchronized void start(long initialDelay) {
+		started = true;
+		schedule(initialDelay);
+	}
+
+	/**
+	 * Stops the periodic cleanup. A running slice is completed.
+	 */
+	public synchronized void stop() {
+		started = false;
+		if (scheduledSlice != null) {
+			TaskEngine.getInstance().cancelScheduledTask(scheduledSlice);
+			scheduledSlice = null;
+		}
+	}
+
+	/**
+	 * Schedules the next slice.
+	 * @param delay Time in milliseconds until the slice is performed.
+	 */
+	private synchronized void schedule(long delay) {
+		if (!started) {
+			return;
+		}
+		scheduledSlice = new TimerTask() {
+			@Override
+			public void run() {
+				performSlice();
+			}
+		};
+		TaskEngine.getInstance().schedule(scheduledSlice, delay);
+	}
+
+	/**
+	 * Performs a cleanup slice unless the query latency is too high, and schedules the next one.
+	 */
+	private void performSlice() {
+		long period = Math.max(JiveGlobals.getLongProperty(ExpirationConfig.PROPERTY_SLICE_PERIOD, ExpirationConfig.DEFAULT_SLICE_PERIOD), ExpirationConfig.MIN_SLICE_PERIOD);
+		long latencyThreshold = JiveGlobals.getLongProperty(ExpirationConfig.PROPERTY_LATENCY_THRESHOLD, ExpirationConfig.DEFAULT_LATENCY_THRESHOLD);
+		long queries = queryCount.getAndSet(0);
+		long totalQueryTime = queryTime.getAndSet(0);
+		double averageLatency = queries > 0 ? totalQueryTime / (queries * 1000000d) : 0d;
+		try {
+			if (averageLatency > latencyThreshold) {
+				backoffFactor = Math.min(backoffFactor * 2, ExpirationConfig.MAX_BACKOFF_FACTOR);
+				postponedSlices.incrementAndGet();
+				log.debug("Cleanup postponed due to an average query latency of " + Math.round(averageLatency) + " ms.");
+			} else {
+				backoffFactor = 1;
+				int sliceSize = JiveGlobals.getIntProperty(ExpirationConfig.PROPERTY_SLICE_SIZE, ExpirationConfig.DEFAULT_SLICE_SIZE);
+				long timeBudget = JiveGlobals.getLongProperty(ExpirationConfig.PROPERTY_SLICE_TIME_BUDGET, ExpirationConfig.DEFAULT_SLICE_TIME_BUDGET);
+				run(sliceSize, timeBudget);
+			}
+		} finally {
+			// a failed slice must not end the periodic cleanup
+			schedule(period * backoffFactor);
+		}
+	}
+
+	/**
+	 * Deletes expired data objects unless a cleanup is already running.
+	 * @param maxObjects Maximum number of data objects to delete.
+	 * @param timeBudget Time in milliseconds after which the cleanup is stopped, or <code>0</code> for no limit.
+	 */
+	private void run(int maxObjects, long timeBudget) {
+		if (!runLock.tryLock()) {
+			return;
+		}
+		try {
+			long start = System.currentTimeMillis();
+			int objectsDeleted = dbConnector.deleteExpiredDataObjects(maxObjects, timeBudget);
+			lastRunTime = start;
+			lastRunDuration = System.currentTimeMillis() - start;
+			lastRunObjects = objectsDeleted;
+			runCount.incrementAndGet();
+			totalObjectsDeleted.addAndGet(objectsDeleted);
+			if (objectsDeleted > 0) {
+				log.info("Deleted " + objectsDeleted + " expired data object(s) in " + lastRunDuration + " ms.");
+			}
+		} catch (DBAccessException e) {
+			log.warn("Failed to delete expired data objects.", e);
+		} catch (RuntimeException e) {
+			log.error("Unexpected failure when deleting expired data objects.", e);
+		} finally {
+			runLock.unlock();
+		}
+	}
+
+	/**
+	 * Deletes all expired data objects in the background, regardless of the slice limits.
+	 */
+	@Override
+	public void runNow() {
+		TaskEngine.getInstance().submit(new Runnable() {
+			@Override
+			public void run() {
+				DataExpirationScheduler.this.run(Integer.MAX_VALUE, 0);
+			}
+		});
+	}
+
+	/**
+	 * Records the time required to process a query.
+	 * @param nanos Processing time in nanoseconds.
+	 */
+	public void recordQueryLatency(long nanos) {
+		queryTime.addAndGet(nanos);
+		queryCount.incrementAndGet();
+	}
+
+	/**
+	 * Checks if a cleanup is currently performed.
+	 * @return <code>true</code> if expired data objects are being deleted, otherwise <code>false</code>.
+	 */
+	@Override
+	public boolean isRunning() {
+		return runLock.isLocked();
+	}
+
+	/**
+	 * Returns the start time of the last cleanup.
+	 * @return Time in milliseconds since January 1, 1970 UTC, or <code>0</code> if no cleanup was performed yet.
+	 */
+	@Override
+	public long getLastRunTime() {
+		return lastRunTime;
+	}
+
+	/**
+	 * Returns the duration of the last cleanup.
+	 * @return Duration in milliseconds.
+	 */
+	@Override
+	public long getLastRunDuration() {
+		return lastRunDuration;
+	}
+
+	/**
+	 * Returns the number of data objects deleted by the last cleanup.
+	 * @return Number of data objects.
+	 */
+	@Override
+	public int getLastRunObjects() {
+		return lastRunObjects;
+	}
+
+	/**
+	 * Returns the throughput of the last cleanup.
+	 * @return Deleted data objects per second.
+	 */
+	@Override
+	public double getLastRunThroughput() {
+		long duration = lastRunDuration;
+		return duration > 0 ? lastRunObjects * 1000d / duration : lastRunObjects;
+	}
+
+	/**
+	 * Returns the number of cleanups performed since the scheduler was created.
+	 * @return Number of cleanups.
+	 */
+	@Override
+	public long getRunCount() {
+		return runCount.get();
+	}
+	
+	/**
+	 * Returns the number of data objects deleted since the scheduler was created.
+	 * @return Number of data objects.
+	 */
+	@Override
+	public long getTotalObjectsDeleted() {
+		return totalObjectsDeleted.get();
+	}
+
+	/**
+	 * Returns the number of slices postponed due to a high query latency.
+	 * @return Number of postponed slices.
+	 */
+	@Override
+	public long getPostponedSlices() {
+		return postponedSlices.get();
+	}
+
+	/**
+	 * Returns the factor the slice period is currently multiplied with.
+	 * @return <code>1</code> if the query latency is below the threshold, up to {@link ExpirationConfig#MAX_BACKOFF_FACTOR}.
+	 */
+	@Override
+	public int getBackoffFactor() {
+		return backoffFactor;
+	}
+}
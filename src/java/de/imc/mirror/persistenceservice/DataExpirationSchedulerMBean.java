@@ -0,0 +1,66 @@
+package de.imc.mirror.persistenceservice;
+
+/**
+ * Management interface of the scheduler for the deletion of expired data objects.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public interface DataExpirationSchedulerMBean {
+	/**
+	 * Deletes all expired data objects in the background, regardless of the slice limits.
+	 */
+	public void runNow();
+	
+	/**
+	 * Checks if a cleanup is currently performed.
+	 * @return <code>true</code> if expired data objects are being deleted, otherwise <code>false</code>.
+	 */
+	public boolean isRunning();
+	
+	/**
+	 * Returns the start time of the last cleanup.
+	 * @return Time in milliseconds since January 1, 1970 UTC, or <code>0</code> if no cleanup was performed yet.
+	 */
+	public long getLastRunTime();
+	
+	/**
+	 * Returns the duration of the last cleanup.
+	 * @return Duration in milliseconds.
+	 */
+	public long getLastRunDuration();
+	
+	/**
+	 * Returns the number of data objects deleted by the last cleanup.
+	 * @return Number of data objects.
+	 */
+	public int getLastRunObjects();
+	
+	/**
+	 * Returns the throughput of the last cleanup.
+	 * @return Deleted data objects per second.
+	 */
+	public double getLastRunThroughput();
+	
+	/**
+	 * Returns the number of cleanups performed since the scheduler was created.
+	 * @return Number of cleanups.
+	 */
+	public long getRunCount();
+	
+	/**
+	 * Returns the number of data objects deleted since the scheduler was created.
+	 * @return Number of data objects.
+	 */
+	public long getTotalObjectsDeleted();
+	
+	/**
+	 * Returns the number of slices postponed due to a high query latency.
+	 * @return Number of postponed slices.
+	 */
+	public long getPostponedSlices();
+	
+	/**
+	 * Returns the factor the slice period is currently multiplied with.
+	 * @return <code>1</code> if the query latency is below the threshold, up to the maximum backoff factor.
+	 */
+	public int getBackoffFactor();
+}
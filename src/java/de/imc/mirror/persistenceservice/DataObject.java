@@ -1,24 +1,42 @@
 package de.imc.mirror.persistenceservice;
 
+import java.io.StringReader;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import javax.xml.bind.DatatypeConverter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
+import org.dom4j.Attribute;
 import org.dom4j.DocumentException;
 import org.dom4j.DocumentHelper;
 import org.dom4j.Element;
+import org.dom4j.Node;
 
 /**
  * Wrapper for data objects.
+ * Data objects created from a string are parsed lazily: The CDM attributes and the namespace are read from the start tag of the root element,
+ * the complete element is only parsed if it is requested.
  * @author simon.schwantzer(at)im-c.de
  *
  */
 public class DataObject {
+	private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+	
 	private Element element;
 	private String elementString;
+	private String namespace;
+	private Map<String, String> rootAttributes;
+	private Long timestamp;
+	private boolean timestampDecoded;
 	private String spaceId;
 	private Date expirationDate;
 	
@@ -35,6 +53,32 @@ public class DataObject {
 		this.expirationDate = null;
 	}
 	
+	/**
+	 * Creates a data object based on the given string with a known namespace, e.g., retrieved from the database.
+	 * The string is NOT parsed during initialization.
+	 * @param elementString XML element string.
+	 * @param spaceId Identifier of the space the object was published on.
+	 * @param namespace Namespace URI of the root element, or <code>null</code> if unknown.
+	 */
+	public DataObject(String elementString, String spaceId, String namespace) {
+		this(elementString, spaceId);
+		this.namespace = namespace != null && !namespace.isEmpty() ? namespace : null;
+	}
+	
+	/**
+	 * Creates a data object based on the given string with known root attributes, e.g., decoded from a binary storage format.
+	 * The string is NOT parsed during initialization, neither for the namespace nor for the CDM attributes.
+	 * @param elementString XML element string.
+	 * @param spaceId Identifier of the space the object was published on.
+	 * @param namespace Namespace URI of the root element, or an empty string if the element has no namespace.
+	 * @param rootAttributes Attributes of the root element, with their local names as keys.
+	 */
+	public DataObject(String elementString, String spaceId, String namespace, Map<String, String> rootAttributes) {
+		this(elementString, spaceId);
+		this.namespace = namespace;
+		this.rootAttributes = rootAttributes;
+	}
+	
 	/**
 	 * Creates an data object based on the given XML element.
 	 * @param element XML element representing the data object.
@@ -46,6 +90,13 @@ public class DataObject {
 		this.expirationDate = null;
 	}
 	
+	private static XMLInputFactory createInputFactory() {
+		XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		return inputFactory;
+	}
+	
 	/**
 	 * Parses the element string given during initialization.
 	 * If the string is already parsed, nothing happens.
@@ -57,6 +108,80 @@ public class DataObject {
 			return;
 		}
 		element = DocumentHelper.parseText(elementString).getRootElement();
+		rootAttributes = null;
+	}
+	
+	/**
+	 * Reads the namespace and the attributes of the root element from the element string, without parsing the element content.
+	 * If the element or its root attributes are already available, nothing happens.
+	 * @throws DocumentException The start tag of the root element could not be parsed.
+	 */
+	private void parseRootElement() throws DocumentException {
+		if (element != null || rootAttributes != null) {
+			return;
+		}
+		XMLStreamReader reader = null;
+		try {
+			reader = INPUT_FACTORY.createXMLStreamReader(new StringReader(elementString));
+			while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT);
+			if (!reader.isStartElement()) {
+				throw new DocumentException("Data object has no root element.");
+			}
+			Map<String, String> attributes = new HashMap<String, String>();
+			for (int i = 0; i < reader.getAttributeCount(); i++) {
+				String name = reader.getAttributeLocalName(i);
+				if (!attributes.containsKey(name)) {
+					attributes.put(name, reader.getAttributeValue(i));
+				}
+			}
+			String namespaceURI = reader.getNamespaceURI();
+			namespace = namespaceURI != null ? namespaceURI : "";
+			rootAttributes = attributes;
+		} catch (XMLStreamException e) {
+			throw new DocumentException("Failed to parse root element.", e);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (XMLStreamException e) {
+					// ignore
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns the value of an attribute of the root element.
+	 * @param name Local name of the attribute.
+	 * @return Attribute value or <code>null</code> if not set.
+	 * @throws DocumentException The element string was parsed and a parsing error occurred.
+	 */
+	private String getRootAttribute(String name) throws DocumentException {
+		if (element != null) {
+			return element.attributeValue(name);
+		}
+		parseRootElement();
+		return rootAttributes.get(name);
+	}
+	
+	/**
+	 * Returns the attributes of the root element, e.g., to create a copy of the data object without parsing its element string again.
+	 * @return Unmodifiable map with the local names of the attributes as keys.
+	 * @throws DocumentException The element string was parsed and a parsing error occurred.
+	 */
+	public Map<String, String> getRootAttributes() throws DocumentException {
+		if (element != null) {
+			Map<String, String> attributes = new HashMap<String, String>();
+			for (int i = 0; i < element.attributeCount(); i++) {
+				Attribute attribute = element.attribute(i);
+				if (!attributes.containsKey(attribute.getName())) {
+					attributes.put(attribute.getName(), attribute.getValue());
+				}
+			}
+			return Collections.unmodifiableMap(attributes);
+		}
+		parseRootElement();
+		return Collections.unmodifiableMap(rootAttributes);
 	}
 	
 	/**
@@ -89,8 +214,7 @@ public class DataObject {
 	 * @throws DocumentException The element string was parsed and a parsing error occurred.
 	 */
 	public String getId() throws DocumentException {
-		parseElementString();
-		return element.attributeValue("id");
+		return getRootAttribute("id");
 	}
 	
 	/**
@@ -99,8 +223,13 @@ public class DataObject {
 	 * @throws DocumentException The element string was parsed and a parsing error occurred.
 	 */
 	public String getNamespace() throws DocumentException {
-		parseElementString();
-		return element.getNamespaceURI();
+		if (element != null) {
+			return element.getNamespaceURI();
+		}
+		if (namespace == null) {
+			parseRootElement();
+		}
+		return namespace;
 	}
 	
 	/**
@@ -109,28 +238,29 @@ public class DataObject {
 	 * @throws DocumentException The element string was parsed and a parsing error occurred.
 	 */
 	public String getModelVersion() throws DocumentException {
-		parseElementString();
-		return element.attributeValue("modelVersion");
+		return getRootAttribute("modelVersion");
 	}
 	
 	/**
-	 * Returns the value of the CDM attribute <code>timestamp</code>. 
+	 * Returns the value of the CDM attribute <code>timestamp</code>.
+	 * The attribute is decoded once and cached. 
 	 * @return Date object for the timestamp or <code>null</code> if not set or invalid.  
 	 * @throws DocumentException The element string was parsed and a parsing error occurred.
 	 */
 	public Date getTimestamp() throws DocumentException {
-		parseElementString();
-		String dateTimeString = element.attributeValue("timestamp");
-		if (dateTimeString != null) {
-			try {
-				Calendar calendar = DatatypeConverter.parseDateTime(dateTimeString);
-				return calendar.getTime();
-			} catch (IllegalArgumentException e) {
-				throw new DocumentException("Failed to convert timestamp.", e);
+		if (!timestampDecoded) {
+			String dateTimeString = getRootAttribute("timestamp");
+			if (dateTimeString != null) {
+				try {
+					Calendar calendar = DatatypeConverter.parseDateTime(dateTimeString);
+					timestamp = calendar.getTimeInMillis();
+				} catch (IllegalArgumentException e) {
+					throw new DocumentException("Failed to convert timestamp.", e);
+				}
 			}
-		} else {
-			return null;
+			timestampDecoded = true;
 		}
+		return timestamp != null ? new Date(timestamp) : null;
 	}
 	
 	/**
@@ -139,9 +269,7 @@ public class DataObject {
 	 * @throws DocumentException The element string was parsed and a parsing error occurred.
 	 */
 	public String getPublisher() throws DocumentException {
-		parseElementString();
-		String publisher = element.attributeValue("publisher");
-		return publisher;
+		return getRootAttribute("publisher");
 	}
 	
 	/**
@@ -150,9 +278,7 @@ public class DataObject {
 	 * @throws DocumentException The element string was parsed and a parsing error occurred.
 	 */
 	public String getRef() throws DocumentException {
-		parseElementString();
-		String ref = element.attributeValue("ref");
-		return ref;
+		return getRootAttribute("ref");
 	}
 	
 	/**
@@ -178,6 +304,23 @@ public class DataObject {
 		return element;
 	}
 	
+	/**
+	 * Returns a node representing the data object, which can be added to an outgoing stanza.
+	 * If the element string was not parsed yet and the namespace of the data object is known, the string is wrapped without parsing it.
+	 * The wrapped string is only written correctly when the stanza is serialized, so the node must only be used to assemble responses, see {@link SerializedElement}.
+	 * To inspect the data object, parse it with {@link #parseElementString()} and use {@link #getXMLElement()}.
+	 * Data objects without namespace are always parsed, as their serialization would inherit the namespace of the enclosing element.
+	 * @return Parsed XML element or a {@link SerializedElement}.
+	 * @throws DocumentException The element string was parsed and a parsing error occurred.
+	 */
+	public Node getXMLNode() throws DocumentException {
+		if (element == null && namespace != null && !namespace.isEmpty() && elementString.startsWith("<") && !elementString.startsWith("<?")) {
+			return new SerializedElement(elementString);
+		}
+		parseElementString();
+		return element;
+	}
+	
 	/**
 	 * Returns the XML element as string.
 	 * @return String representation of the XML element.
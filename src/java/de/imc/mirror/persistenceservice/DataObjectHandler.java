@@ -0,0 +1,15 @@
+package de.imc.mirror.persistenceservice;
+
+/**
+ * Handler for data objects retrieved one by one from the database.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public interface DataObjectHandler {
+	/**
+	 * Handles a retrieved data object.
+	 * The data object is not referenced by the connector afterwards.
+	 * @param dataObject Data object which satisfies the filter set of the query.
+	 * @return <code>true</code> to continue the retrieval, <code>false</code> to stop it.
+	 */
+	public boolean handleDataObject(DataObject dataObject);
+}
@@ -0,0 +1,47 @@
+package de.imc.mirror.persistenceservice;
+
+/**
+ * Metadata of a stored data object, which can be retrieved without loading the data object itself.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public class DataObjectMetadata {
+	private final String objectId;
+	private final String spaceId;
+	private final String publisher;
+	
+	/**
+	 * Creates the metadata object.
+	 * @param objectId Identifier of the data object.
+	 * @param spaceId Identifier of the space the data object was published on.
+	 * @param publisher Value of the CDM attribute <code>publisher</code> or <code>null</code> if not set.
+	 */
+	public DataObjectMetadata(String objectId, String spaceId, String publisher) {
+		this.objectId = objectId;
+		this.spaceId = spaceId;
+		this.publisher = publisher;
+	}
+	
+	/**
+	 * Returns the identifier of the data object.
+	 * @return Data object identifier.
+	 */
+	public String getObjectId() {
+		return objectId;
+	}
+	
+	/**
+	 * Returns the identifier for the space the data object was published on.
+	 * @return Space identifier.
+	 */
+	public String getSpaceId() {
+		return spaceId;
+	}
+	
+	/**
+	 * Returns the publisher of the data object.
+	 * @return Full JID of the publisher or <code>null</code> if not set.
+	 */
+	public String getPublisher() {
+		return publisher;
+	}
+}
@@ -1,5 +1,6 @@
 package de.imc.mirror.persistenceservice;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -26,6 +27,15 @@ public interface DatabaseConnector {
 	 */
 	public void storeDataObject(DataObject dataObject) throws DBAccessException, DocumentException;
 	
+	/**
+	 * Stores multiple data objects in the database within a single transaction.
+	 * Either all or none of the data objects are stored.
+	 * @param dataObjects Data objects to store.
+	 * @throws DBAccessException The database access failed.
+	 * @throws DocumentException Failed to parse a data object when trying to retrieve id.
+	 */
+	public void storeDataObjects(Collection<DataObject> dataObjects) throws DBAccessException, DocumentException;
+	
 	/**
 	 * Returns all objects from a space which fit the given filter set.
 	 * @param space Space where the data objects were published.
@@ -44,6 +54,50 @@ public interface DatabaseConnector {
 	 */
 	public List<DataObject> retrieveObjects(Set<String> objectIds, FilterSet filterSet) throws DBAccessException;
 	
+	/**
+	 * Returns a page of the objects from the given spaces which fit the given filter set.
+	 * The objects are ordered by their timestamp and identifier.
+	 * @param spaceIds Identifiers of the spaces where the data objects were published.
+	 * @param filterSet Filter set to apply.
+	 * @param pageRequest Page to retrieve.
+	 * @return Page of data objects which fit the filter set.
+	 * @throws DBAccessException The database access failed.
+	 */
+	public ResultPage retrieveObjectsForSpaces(Set<String> spaceIds, FilterSet filterSet, PageRequest pageRequest) throws DBAccessException;
+	
+	/**
+	 * Returns a page of the objects with the given ids which fit the given filter set.
+	 * The objects are ordered by their timestamp and identifier.
+	 * @param objectIds Set of object identifiers.
+	 * @param filterSet Filter set to apply.
+	 * @param pageRequest Page to retrieve.
+	 * @return Page of data objects which fit the filter set.
+	 * @throws DBAccessException The database access failed.
+	 */
+	public ResultPage retrieveObjects(Set<String> objectIds, FilterSet filterSet, PageRequest pageRequest) throws DBAccessException;
+	
+	/**
+	 * Passes all objects from the given spaces which fit the given filter set to a handler, one at a time.
+	 * The objects are read from the database while they are handled and are not collected.
+	 * @param spaceIds Identifiers of the spaces where the data objects were published.
+	 * @param filterSet Filter set to apply.
+	 * @param handler Handler to pass data objects to.
+	 * @return Number of data objects passed to the handler.
+	 * @throws DBAccessException The database access failed.
+	 */
+	public int streamObjectsForSpaces(Set<String> spaceIds, FilterSet filterSet, DataObjectHandler handler) throws DBAccessException;
+	
+	/**
+	 * Passes all objects with the given ids which fit the given filter set to a handler, one at a time.
+	 * The objects are read from the database while they are handled and are not collected.
+	 * @param objectIds Set of object identifiers.
+	 * @param filterSet Filter set to apply.
+	 * @param handler Handler to pass data objects to.
+	 * @return Number of data objects passed to the handler.
+	 * @throws DBAccessException The database access failed.
+	 */
+	public int streamObjects(Set<String> objectIds, FilterSet filterSet, DataObjectHandler handler) throws DBAccessException;
+	
 	/**
 	 * Returns the data object with the given identifier.
 	 * @param objectId Data object identifier.
@@ -77,10 +131,46 @@ public interface DatabaseConnector {
 	 */
 	public Map<String, String> retrieveSpacesForObjects(Set<String> objectIds) throws DBAccessException;
 	
+	/**
+	 * Returns the metadata required to authorize operations on the given objects.
+	 * @param objectIds Identifiers for the objects to return metadata for.
+	 * @return Map with object identifiers as keys and the related metadata as values. Data objects which are not found are not contained.
+	 * @throws DBAccessException The database access failed.
+	 */
+	public Map<String, DataObjectMetadata> retrieveMetadataForObjects(Set<String> objectIds) throws DBAccessException;
+	
 	/**
 	 * Deletes all data objects which expiration date lies in the past.
+	 * Data objects referenced by other data objects are kept until all referring data objects are deleted.
 	 * @return Number of data objects deleted. 
 	 * @throws DBAccessException The database access failed.
 	 */
 	public int deleteExpiredDataObjects() throws DBAccessException;
+	
+	/**
+	 * Deletes expired data objects within the given limits.
+	 * A call stopped by the limits is continued by the next call.
+	 * Data objects referenced by other data objects are kept until all referring data objects are deleted.
+	 * @param maxObjects Maximum number of data objects to delete.
+	 * @param timeBudget Time in milliseconds after which no further data objects are deleted, or <code>0</code> for no limit.
+	 * @return Number of data objects deleted.
+	 * @throws DBAccessException The database access failed.
+	 */
+	public int deleteExpiredDataObjects(int maxObjects, long timeBudget) throws DBAccessException;
+	
+	/**
+	 * Trains compression dictionaries for all namespaces without one.
+	 * Namespaces with too few stored data objects are skipped.
+	 * @return Number of dictionaries created.
+	 * @throws DBAccessException The database access failed.
+	 */
+	public int trainCompressionDictionaries() throws DBAccessException;
+	
+	/**
+	 * Rewrites stored data objects in the compressed storage format, or in the binary XML format for the configured namespaces.
+	 * @param maxObjects Maximum number of data objects to rewrite.
+	 * @return Number of data objects rewritten. If less than <code>maxObjects</code>, all data objects are compressed.
+	 * @throws DBAccessException The database access failed.
+	 */
+	public int compressDataObjects(int maxObjects) throws DBAccessException;
 }
@@ -7,6 +7,26 @@ import org.dom4j.DocumentException;
  * @author simon.schwantzer(at)im-c.de
  */
 public interface Filter {
+	/**
+	 * Cost of comparing a single attribute of the data object with a value.
+	 */
+	public int COST_COMPARE = 1;
+	
+	/**
+	 * Cost of searching a value within an attribute, e.g., prefix or substring matching.
+	 */
+	public int COST_MATCH = 2;
+	
+	/**
+	 * Cost of decoding an attribute value before comparing it, e.g., a timestamp.
+	 */
+	public int COST_DECODE = 3;
+	
+	/**
+	 * Cost of matching an attribute with a regular expression.
+	 */
+	public int COST_REGEX = 4;
+	
 	/**
 	 * Checks if the given data objects passes the filter.
 	 * @param object Data object to validate.
@@ -14,4 +34,25 @@ public interface Filter {
 	 * @throws DocumentException An error occurred when parsing the data object XML element.
 	 */
 	public boolean isDataObjectValid(DataObject object) throws DocumentException;
+	
+	/**
+	 * Returns a SQL condition equivalent to this filter.
+	 * The condition refers to the metadata columns of the data table, which are extracted when a data object is stored.
+	 * @return SQL condition or <code>null</code> if the filter cannot be evaluated by the database.
+	 */
+	public SQLCondition getSQLCondition();
+	
+	/**
+	 * Returns the relative cost of evaluating the filter for a single data object.
+	 * Filters with lower costs are evaluated first.
+	 * @return Cost of the filter, e.g., {@link #COST_COMPARE}.
+	 */
+	public int getEvaluationCost();
+	
+	/**
+	 * Returns a canonical representation of the filter, e.g., to identify equal queries.
+	 * Filters with equal representations accept the same data objects.
+	 * @return Canonical string starting with the filter type.
+	 */
+	public String getCanonicalForm();
 }
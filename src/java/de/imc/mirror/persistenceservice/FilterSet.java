@@ -1,27 +1,44 @@
 package de.imc.mirror.persistenceservice;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.dom4j.DocumentException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Controller for a set of filters. 
+ * Controller for a set of filters.
+ * The filters are compiled into evaluation plans ordered by their costs, so cheap filters can reject a data object before expensive ones are evaluated.
  * @author simon.schwantzer(at)im-c.de
  */
 public class FilterSet {
 	private static final Logger log = LoggerFactory.getLogger(FilterSet.class);
 	
+	private static final Comparator<Filter> COST_COMPARATOR = new Comparator<Filter>() {
+		@Override
+		public int compare(Filter filter1, Filter filter2) {
+			return filter1.getEvaluationCost() - filter2.getEvaluationCost();
+		}
+	};
+	
 	Set<Filter> filters;
+	private Filter[] plan;
+	private Filter[] javaPlan;
+	private long rejectedObjects;
 	
 	/**
 	 * Creates a new filter set.
 	 */
 	public FilterSet() {
-		filters = new HashSet<Filter>();
+		filters = new LinkedHashSet<Filter>();
+		plan = new Filter[0];
+		javaPlan = new Filter[0];
 	}
 	
 	/**
@@ -30,6 +47,24 @@ public class FilterSet {
 	 */
 	public void addFilter(Filter filter) {
 		this.filters.add(filter);
+		compile();
+	}
+	
+	/**
+	 * Orders the filters by their evaluation costs.
+	 * Filters with equal costs are evaluated in the order they were added.
+	 */
+	private void compile() {
+		List<Filter> allFilters = new ArrayList<Filter>(filters);
+		Collections.sort(allFilters, COST_COMPARATOR);
+		List<Filter> javaFilters = new ArrayList<Filter>(allFilters.size());
+		for (Filter filter : allFilters) {
+			if (filter.getSQLCondition() == null) {
+				javaFilters.add(filter);
+			}
+		}
+		plan = allFilters.toArray(new Filter[allFilters.size()]);
+		javaPlan = javaFilters.toArray(new Filter[javaFilters.size()]);
 	}
 	
 	/**
@@ -40,20 +75,93 @@ public class FilterSet {
 		return Collections.unmodifiableSet(filters);
 	}
 	
+	/**
+	 * Returns a canonical representation of the filter set, e.g., to cache query results.
+	 * The representation does not depend on the order the filters were added in, duplicate filters are ignored.
+	 * @return Canonical string, empty if the set contains no filters.
+	 */
+	public String getCanonicalForm() {
+		Set<String> canonicalFilters = new TreeSet<String>();
+		for (Filter filter : filters) {
+			canonicalFilters.add(filter.getCanonicalForm());
+		}
+		StringBuilder builder = new StringBuilder();
+		for (String canonicalFilter : canonicalFilters) {
+			// length prefix, as filter values may contain any character
+			builder.append(canonicalFilter.length()).append(':').append(canonicalFilter);
+		}
+		return builder.toString();
+	}
+	
 	/**
 	 * Applies all filters to the given data object.
 	 * @param dataObject Data object to apply filters to.
 	 * @return <code>true</code> if the data object validates against all filters, otherwise <code>false</code>.
 	 */
 	public boolean isValid(DataObject dataObject) {
+		return evaluate(plan, dataObject);
+	}
+	
+	/**
+	 * Applies all filters to the given data object which cannot be evaluated by the database.
+	 * Should only be used for data objects which where already checked against the condition returned by {@link #getSQLCondition()}.
+	 * @param dataObject Data object to apply filters to.
+	 * @return <code>true</code> if the data object validates against all filters without SQL condition, otherwise <code>false</code>.
+	 */
+	public boolean isValidForJavaFilters(DataObject dataObject) {
+		return evaluate(javaPlan, dataObject);
+	}
+	
+	/**
+	 * Applies the filters of a plan to a data object, until the first filter rejects it.
+	 * @param filterPlan Filters ordered by costs.
+	 * @param dataObject Data object to apply filters to.
+	 * @return <code>true</code> if the data object validates against all filters of the plan, otherwise <code>false</code>.
+	 */
+	private boolean evaluate(Filter[] filterPlan, DataObject dataObject) {
 		try {
-			for (Filter filter : filters) {
-				if (!filter.isDataObjectValid(dataObject)) return false;
+			for (Filter filter : filterPlan) {
+				if (!filter.isDataObjectValid(dataObject)) {
+					rejectedObjects++;
+					return false;
+				}
 			}
 		} catch (DocumentException e) {
 			log.warn("Failed to parse XML element of object.", e);
+			rejectedObjects++;
 			return false;
 		}
 		return true;
 	}
+	
+	/**
+	 * Returns the number of data objects rejected by this filter set.
+	 * @return Number of data objects which did not validate.
+	 */
+	public long getRejectedObjects() {
+		return rejectedObjects;
+	}
+	
+	/**
+	 * Checks if the set contains filters which cannot be evaluated by the database.
+	 * @return <code>true</code> if at least one filter has no SQL condition, otherwise <code>false</code>.
+	 */
+	public boolean hasJavaFilters() {
+		return javaPlan.length > 0;
+	}
+	
+	/**
+	 * Returns a SQL condition combining all filters which can be evaluated by the database.
+	 * @return SQL condition or <code>null</code> if no filter can be evaluated by the database.
+	 */
+	public SQLCondition getSQLCondition() {
+		List<SQLCondition> conditions = new ArrayList<SQLCondition>();
+		for (Filter filter : plan) {
+			SQLCondition condition = filter.getSQLCondition();
+			if (condition != null) {
+				conditions.add(condition);
+			}
+		}
+		return SQLCondition.and(conditions);
+	}
 }
@@ -0,0 +1,430 @@
+package de.imc.mirror.persistenceservice;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.dom4j.DocumentException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xmpp.packet.IQ;
+import org.xmpp.packet.PacketError;
+
+import de.imc.mirror.persistenceservice.exceptions.DBAccessException;
+
+/**
+ * Bounded queue for data objects to be stored asynchronously.
+ * Writer threads drain the queue and commit the data objects of multiple insert requests within a single transaction.
+ * Each writer has its own queue. Requests are assigned to a writer by their space, so that the requests for a space are committed and acknowledged in the order they were offered.
+ * Tasks which have to follow the queued inserts of a space, e.g., the deletion of the space, are executed by the writer of the space as well.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public class IngestQueue implements IngestQueueMBean {
+	private static final Logger log = LoggerFactory.getLogger(IngestQueue.class);
+
+	/**
+	 * Listener for the results of queued insert requests.
+	 */
+	public interface Listener {
+		/**
+		 * Called when all data objects of an insert request are committed.
+		 * @param insertIq Request IQ.
+		 */
+		public void insertCommitted(IQ insertIq);
+
+		/**
+		 * Called when the data objects of an insert request could not be stored.
+		 * @param insertIq Request IQ.
+		 * @param error Error describing the failure.
+		 */
+		public void insertFailed(IQ insertIq, PacketError error);
+	}
+
+	/**
+	 * Data objects of a single insert request, or a task to execute in order with the requests.
+	 */
+	private static class IngestRequest {
+		private final IQ insertIq;
+		private final List<DataObject> dataObjects;
+		private final Runnable task;
+		private boolean completed; // accessed by the writer thread only
+
+		private IngestRequest(IQ insertIq, List<DataObject> dataObjects) {
+			this.insertIq = insertIq;
+			this.dataObjects = dataObjects;
+			this.task = null;
+		}
+
+		private IngestRequest(Runnable task) {
+			this.insertIq = null;
+			this.dataObjects = Collections.emptyList();
+			this.task = task;
+		}
+	}
+
+	private final DatabaseConnector dbConnector;
+	private final Listener listener;
+	private final int capacity;
+	private final int maxBatchSize;
+	private final long lingerTime;
+	private final LinkedBlockingDeque<IngestRequest>[] queues;
+	private final AtomicInteger queuedObjects;
+	private final ExecutorService writers;
+	private volatile boolean running;
+
+	private final AtomicLong committedBatches;
+	private final AtomicLong committedObjects;
+	private final AtomicLong rejectedRequests;
+	private final AtomicLong failedRequests;
+	private final AtomicLong totalCommitTime;
+	private volatile long lastCommitTime;
+	private volatile long maxCommitTime;
+
+	/**
+	 * Creates and starts an ingest queue.
+	 * @param dbConnector Connector to store data objects with.
+	 * @param listener Listener to notify when a request is processed.
+	 * @param capacity Maximum number of queued data objects.
+	 * @param writerThreads Number of writer threads, each with its own queue.
+	 * @param maxBatchSize Maximum number of data objects committed within one transaction.
+	 * @param lingerTime Time in milliseconds a writer waits for further requests before committing a batch.
+	 */
+	@SuppressWarnings("unchecked")
+	public IngestQueue(DatabaseConnector dbConnector, Listener listener, int capacity, int writerThreads, int maxBatchSize, long lingerTime) {
+		this.dbConnector = dbConnector;
+		this.listener = listener;
+		this.capacity = capacity;
+		this.maxBatchSize = maxBatchSize;
+		this.lingerTime = lingerTime;
+		this.queues = new LinkedBlockingDeque[Math.max(writerThreads, 1)];
+		for (int i = 0; i < queues.length; i++) {
+			queues[i] = new LinkedBlockingDeque<IngestRequest>();
+		}
+		this.queuedObjects = new AtomicInteger();
+		this.committedBatches = new AtomicLong();
+		this.committedObjects = new AtomicLong();
+		this.rejectedRequests = new AtomicLong();
+		this.failedRequests = new AtomicLong();
+		this.totalCommitTime = new AtomicLong();
+		this.running = true;
+		this.writers = Executors.newFixedThreadPool(queues.length, new ThreadFactory() {
+			private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "persistence-ingest-" + threadNumber.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		for (final LinkedBlockingDeque<IngestRequest> queue : queues) {
+			writers.execute(new Runnable() {
+				@Override
+				public void run() {
+					drain(queue);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Adds the data objects of an insert request to the queue of the writer assigned to its space.
+	 * @param insertIq Request IQ.
+	 * @param dataObjects Data objects to store.
+	 * @return <code>true</code> if the data objects were queued, <code>false</code> if the capacity of the queue is exhausted.
+	 */
+	public boolean offer(IQ insertIq, List<DataObject> dataObjects) {
+		int size = dataObjects.size();
+		while (true) {
+			int queued = queuedObjects.get();
+			if (!running || (queued > 0 && queued + size > capacity)) {
+				rejectedRequests.incrementAndGet();
+				return false;
+			}
+			if (queuedObjects.compareAndSet(queued, queued + size)) {
+				break;
+			}
+		}
+		String spaceId = insertIq.getChildElement().attributeValue("spaceId");
+		queues[StripedWorkerPool.getLane(spaceId, queues.length)].offerLast(new IngestRequest(insertIq, dataObjects));
+		return true;
+	}
+
+	/**
+	 * Executes a task by the writer of a space, after all requests for the space offered before are processed.
+	 * @param spaceId Identifier of the space.
+	 * @param task Task to execute.
+	 * @return <code>true</code> if the task was queued, <code>false</code> if the queue is shut down.
+	 */
+	public boolean execute(String spaceId, Runnable task) {
+		if (!running) {
+			return false;
+		}
+		queues[StripedWorkerPool.getLane(spaceId, queues.length)].offerLast(new IngestRequest(task));
+		return true;
+	}
+
+	/**
+	 * Waits until all requests offered before are processed.
+	 * @param timeout Maximum time to wait in milliseconds.
+	 * @return <code>true</code> if all requests are processed, <code>false</code> if the timeout elapsed or the queue is shut down.
+	 * @throws InterruptedException The thread was interrupted while waiting.
+	 */
+	public boolean flush(long timeout) throws InterruptedException {
+		if (queuedObjects.get() == 0) {
+			return true;
+		}
+		if (!running) {
+			return false;
+		}
+		final CountDownLatch latch = new CountDownLatch(queues.length);
+		Runnable countDown = new Runnable() {
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		};
+		for (LinkedBlockingDeque<IngestRequest> queue : queues) {
+			queue.offerLast(new IngestRequest(countDown));
+		}
+		return latch.await(timeout, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops accepting requests and waits until all queued data objects are stored.
+	 * @param timeout Maximum time to wait in milliseconds.
+	 */
+	public void shutdown(long timeout) {
+		running = false;
+		writers.shutdown();
+		try {
+			if (!writers.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+				log.warn("Ingest queue stopped with " + queuedObjects.get() + " data object(s) not stored.");
+				writers.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			writers.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Loop of a writer thread.
+	 * @param queue Queue of the writer.
+	 */
+	private void drain(LinkedBlockingDeque<IngestRequest> queue) {
+		try {
+			while (running || !queue.isEmpty()) {
+				IngestRequest first = queue.pollFirst(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				if (first.task != null) {
+					execute(first.task);
+					continue;
+				}
+				List<IngestRequest> batch = new ArrayList<IngestRequest>();
+				batch.add(first);
+				int batchSize = first.dataObjects.size();
+				long deadline = System.currentTimeMillis() + lingerTime;
+				while (batchSize < maxBatchSize) {
+					long remaining = deadline - System.currentTimeMillis();
+					IngestRequest next = remaining > 0 ? queue.pollFirst(remaining, TimeUnit.MILLISECONDS) : queue.pollFirst();
+					if (next == null) {
+						break;
+					}
+					if (next.task != null || batchSize + next.dataObjects.size() > maxBatchSize) {
+						// tasks are executed after the batch is committed
+						queue.offerFirst(next);
+						break;
+					}
+					batch.add(next);
+					batchSize += next.dataObjects.size();
+				}
+				try {
+					commit(batch);
+				} catch (RuntimeException e) {
+					log.error("Unexpected failure when storing data objects.", e);
+					for (IngestRequest request : batch) {
+						if (!request.completed) {
+							complete(request, new PacketError(PacketError.Condition.internal_server_error, PacketError.Type.wait));
+						}
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Executes a queued task.
+	 * @param task Task to execute.
+	 */
+	private void execute(Runnable task) {
+		try {
+			task.run();
+		} catch (RuntimeException e) {
+			log.error("Unexpected failure when executing queued task.", e);
+		}
+	}
+
+	/**
+	 * Stores the data objects of a batch of requests within a single transaction.
+	 * If the transaction fails, the requests are committed one by one to isolate the failing ones.
+	 * @param batch Requests to commit.
+	 */
+	private void commit(List<IngestRequest> batch) {
+		List<DataObject> dataObjects = new ArrayList<DataObject>();
+		for (IngestRequest request : batch) {
+			dataObjects.addAll(request.dataObjects);
+		}
+		long start = System.nanoTime();
+		try {
+			dbConnector.storeDataObjects(dataObjects);
+		} catch (DocumentException e) {
+			commitSeparately(batch, new PacketError(PacketError.Condition.bad_request, PacketError.Type.modify));
+			return;
+		} catch (DBAccessException e) {
+			commitSeparately(batch, new PacketError(PacketError.Condition.internal_server_error, PacketError.Type.wait));
+			return;
+		}
+		recordCommit(System.nanoTime() - start, dataObjects.size());
+		for (IngestRequest request : batch) {
+			complete(request, null);
+		}
+	}
+
+	/**
+	 * Handles a failed commit. The requests of a batch are committed one by one, a single request is completed with the given error.
+	 * @param batch Requests which could not be committed.
+	 * @param error Error to respond with if the batch consists of a single request.
+	 */
+	private void commitSeparately(List<IngestRequest> batch, PacketError error) {
+		if (batch.size() > 1) {
+			for (IngestRequest request : batch) {
+				List<IngestRequest> singleRequest = new ArrayList<IngestRequest>(1);
+				singleRequest.add(request);
+				commit(singleRequest);
+			}
+		} else {
+			complete(batch.get(0), error);
+		}
+	}
+
+	/**
+	 * Releases the data objects of a request and notifies the listener.
+	 * @param request Processed request.
+	 * @param error Error if the data objects could not be stored, or <code>null</code> if they were committed.
+	 */
+	private void complete(IngestRequest request, PacketError error) {
+		request.completed = true;
+		queuedObjects.addAndGet(-request.dataObjects.size());
+		if (error == null) {
+			listener.insertCommitted(request.insertIq);
+		} else {
+			failedRequests.incrementAndGet();
+			listener.insertFailed(request.insertIq, error);
+		}
+	}
+
+	private void recordCommit(long duration, int batchSize) {
+		committedBatches.incrementAndGet();
+		committedObjects.addAndGet(batchSize);
+		totalCommitTime.addAndGet(duration);
+		lastCommitTime = duration;
+		if (duration > maxCommitTime) {
+			maxCommitTime = duration;
+		}
+	}
+
+	/**
+	 * Returns the number of data objects waiting to be stored.
+	 * @return Number of queued data objects.
+	 */
+	@Override
+	public int getQueueDepth() {
+		return queuedObjects.get();
+	}
+
+	/**
+	 * Returns the maximum number of queued data objects.
+	 * @return Capacity of the queue.
+	 */
+	@Override
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns the number of transactions committed.
+	 * @return Number of batches.
+	 */
+	@Override
+	public long getCommittedBatches() {
+		return committedBatches.get();
+	}
+
+	/**
+	 * Returns the number of data objects committed.
+	 * @return Number of data objects.
+	 */
+	@Override
+	public long getCommittedObjects() {
+		return committedObjects.get();
+	}
+
+	/**
+	 * Returns the number of insert requests rejected because the queue was full.
+	 * @return Number of rejected requests.
+	 */
+	@Override
+	public long getRejectedRequests() {
+		return rejectedRequests.get();
+	}
+
+	/**
+	 * Returns the number of insert requests which could not be stored.
+	 * @return Number of failed requests.
+	 */
+	@Override
+	public long getFailedRequests() {
+		return failedRequests.get();
+	}
+
+	/**
+	 * Returns the average time required to commit a batch.
+	 * @return Average commit latency in milliseconds.
+	 */
+	@Override
+	public double getAverageCommitLatency() {
+		long batches = committedBatches.get();
+		return batches > 0 ? totalCommitTime.get() / (batches * 1000000d) : 0d;
+	}
+
+	/**
+	 * Returns the time required to commit the last batch.
+	 * @return Commit latency in milliseconds.
+	 */
+	@Override
+	public double getLastCommitLatency() {
+		return lastCommitTime / 1000000d;
+	}
+
+	/**
+	 * Returns the maximum time required to commit a batch.
+	 * @return Commit latency in milliseconds.
+	 */
+	@Override
+	public double getMaxCommitLatency() {
+		return maxCommitTime / 1000000d;
+	}
+}
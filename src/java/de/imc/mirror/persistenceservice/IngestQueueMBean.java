@@ -0,0 +1,61 @@
+package de.imc.mirror.persistenceservice;
+
+/**
+ * Management interface of the queue for asynchronous inserts.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public interface IngestQueueMBean {
+	/**
+	 * Returns the number of data objects waiting to be stored.
+	 * @return Number of queued data objects.
+	 */
+	public int getQueueDepth();
+	
+	/**
+	 * Returns the maximum number of queued data objects.
+	 * @return Capacity of the queue.
+	 */
+	public int getCapacity();
+	
+	/**
+	 * Returns the number of transactions committed.
+	 * @return Number of batches.
+	 */
+	public long getCommittedBatches();
+	
+	/**
+	 * Returns the number of data objects committed.
+	 * @return Number of data objects.
+	 */
+	public long getCommittedObjects();
+	
+	/**
+	 * Returns the number of insert requests rejected because the queue was full.
+	 * @return Number of rejected requests.
+	 */
+	public long getRejectedRequests();
+	
+	/**
+	 * Returns the number of insert requests which could not be stored.
+	 * @return Number of failed requests.
+	 */
+	public long getFailedRequests();
+	
+	/**
+	 * Returns the average time required to commit a batch.
+	 * @return Average commit latency in milliseconds.
+	 */
+	public double getAverageCommitLatency();
+	
+	/**
+	 * Returns the time required to commit the last batch.
+	 * @return Commit latency in milliseconds.
+	 */
+	public double getLastCommitLatency();
+	
+	/**
+	 * Returns the maximum time required to commit a batch.
+	 * @return Commit latency in milliseconds.
+	 */
+	public double getMaxCommitLatency();
+}
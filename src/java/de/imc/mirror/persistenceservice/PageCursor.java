@@ -0,0 +1,82 @@
+package de.imc.mirror.persistenceservice;
+
+/**
+ * Position of a data object within a paged query result.
+ * Data objects are ordered by their timestamp and identifier. Data objects without timestamp precede all others.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public class PageCursor implements Comparable<PageCursor> {
+	private final Long timestamp;
+	private final String objectId;
+	
+	/**
+	 * Creates a cursor.
+	 * @param timestamp Timestamp of the data object in milliseconds, or <code>null</code> if the data object has no timestamp.
+	 * @param objectId Identifier of the data object.
+	 */
+	public PageCursor(Long timestamp, String objectId) {
+		this.timestamp = timestamp;
+		this.objectId = objectId;
+	}
+	
+	/**
+	 * Returns the timestamp of the data object.
+	 * @return Timestamp in milliseconds or <code>null</code> if the data object has no timestamp.
+	 */
+	public Long getTimestamp() {
+		return timestamp;
+	}
+	
+	/**
+	 * Returns the identifier of the data object.
+	 * @return Data object identifier.
+	 */
+	public String getObjectId() {
+		return objectId;
+	}
+	
+	/**
+	 * Parses a cursor string as created by {@link #toString()}.
+	 * @param cursorString String to parse.
+	 * @return Cursor.
+	 * @throws IllegalArgumentException The string is no valid cursor.
+	 */
+	public static PageCursor parse(String cursorString) throws IllegalArgumentException {
+		int separatorIndex = cursorString.indexOf(':');
+		if (separatorIndex < 0 || separatorIndex == cursorString.length() - 1) {
+			throw new IllegalArgumentException("Invalid cursor: " + cursorString);
+		}
+		Long timestamp;
+		try {
+			timestamp = separatorIndex > 0 ? Long.valueOf(cursorString.substring(0, separatorIndex)) : null;
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid cursor: " + cursorString);
+		}
+		return new PageCursor(timestamp, cursorString.substring(separatorIndex + 1));
+	}
+	
+	/**
+	 * Compares the positions of two data objects within a paged query result.
+	 * @param other Cursor to compare with.
+	 * @return Negative value if this cursor precedes the other one, positive value if it follows it, or <code>0</code> for the same position.
+	 */
+	@Override
+	public int compareTo(PageCursor other) {
+		if (timestamp == null && other.timestamp != null) {
+			return -1;
+		} else if (timestamp != null && other.timestamp == null) {
+			return 1;
+		} else if (timestamp != null && !timestamp.equals(other.timestamp)) {
+			return timestamp < other.timestamp ? -1 : 1;
+		}
+		return objectId.compareTo(other.objectId);
+	}
+	
+	/**
+	 * Returns the string representation of the cursor, i.e., the timestamp and the object identifier separated by a colon.
+	 */
+	@Override
+	public String toString() {
+		return (timestamp != null ? timestamp.toString() : "") + ":" + objectId;
+	}
+}
@@ -0,0 +1,79 @@
+package de.imc.mirror.persistenceservice;
+
+/**
+ * Request for a page of a query result, following XEP-0059: Result Set Management.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public class PageRequest {
+	private final int max;
+	private final PageCursor after;
+	private final PageCursor before;
+	private final boolean backward;
+	
+	/**
+	 * Creates a request for the page following the given cursor.
+	 * @param max Maximum number of data objects in the page.
+	 * @param after Cursor of the data object preceding the page, or <code>null</code> to request the first page.
+	 * @return Page request.
+	 */
+	public static PageRequest after(int max, PageCursor after) {
+		return new PageRequest(max, after, null, false);
+	}
+	
+	/**
+	 * Creates a request for the page preceding the given cursor.
+	 * @param max Maximum number of data objects in the page.
+	 * @param before Cursor of the data object following the page, or <code>null</code> to request the last page.
+	 * @return Page request.
+	 */
+	public static PageRequest before(int max, PageCursor before) {
+		return new PageRequest(max, null, before, true);
+	}
+	
+	private PageRequest(int max, PageCursor after, PageCursor before, boolean backward) {
+		this.max = max;
+		this.after = after;
+		this.before = before;
+		this.backward = backward;
+	}
+	
+	/**
+	 * Returns the maximum number of data objects in the page.
+	 * @return Maximum page size.
+	 */
+	public int getMax() {
+		return max;
+	}
+	
+	/**
+	 * Returns the cursor of the data object preceding the page.
+	 * @return Cursor or <code>null</code> if not set.
+	 */
+	public PageCursor getAfter() {
+		return after;
+	}
+	
+	/**
+	 * Returns the cursor of the data object following the page.
+	 * @return Cursor or <code>null</code> if not set.
+	 */
+	public PageCursor getBefore() {
+		return before;
+	}
+	
+	/**
+	 * Checks if the page is requested backwards, i.e., the page precedes a cursor or is the last page.
+	 * @return <code>true</code> if the page is requested backwards, otherwise <code>false</code>.
+	 */
+	public boolean isBackward() {
+		return backward;
+	}
+	
+	/**
+	 * Checks if the first or last page of the result is requested.
+	 * @return <code>true</code> if no cursor is set, otherwise <code>false</code>.
+	 */
+	public boolean isInitial() {
+		return after == null && before == null;
+	}
+}
@@ -5,14 +5,18 @@ import java.io.File;
 import org.jivesoftware.database.DbConnectionManager;
 import org.jivesoftware.openfire.container.Plugin;
 import org.jivesoftware.openfire.container.PluginManager;
+import org.jivesoftware.util.JiveGlobals;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xmpp.component.ComponentManager;
 import org.xmpp.component.ComponentManagerFactory;
 
 import de.imc.mirror.persistenceservice.config.ComponentConfig;
+import de.imc.mirror.persistenceservice.config.LogStoreConfig;
+import de.imc.mirror.persistenceservice.config.StorageConfig;
 import de.imc.mirror.persistenceservice.connectors.DB2Connector;
 import de.imc.mirror.persistenceservice.connectors.HSQLDBConnector;
+import de.imc.mirror.persistenceservice.connectors.LogStructuredConnector;
 import de.imc.mirror.persistenceservice.connectors.MySQLConnector;
 import de.imc.mirror.persistenceservice.connectors.OracleConnector;
 import de.imc.mirror.persistenceservice.connectors.PostgreSQLConnector;
@@ -24,37 +28,66 @@ import de.imc.mirror.persistenceservice.connectors.SQLServerConnector;
  */
 public class PersistencePlugin implements Plugin {
 	private static final Logger log = LoggerFactory.getLogger(PersistencePlugin.class);
+	private static PersistencePlugin instance;
 	
 	private ComponentManager componentManager;
 	private PersistenceService persistenceServiceComponent;
+	private LogStructuredConnector logStore;
+	
+	/**
+	 * Returns the instance of the plugin.
+	 * @return Plugin instance or <code>null</code> if the plugin is not initialized.
+	 */
+	public static PersistencePlugin getInstance() {
+		return instance;
+	}
+	
+	/**
+	 * Returns the component of the persistence service.
+	 * @return Persistence service component or <code>null</code> if the initialization failed.
+	 */
+	public PersistenceService getPersistenceService() {
+		return persistenceServiceComponent;
+	}
 	
 	@Override
 	public void initializePlugin(PluginManager manager, File pluginDirectory) {
 		DatabaseConnector dbConnector;
-		switch (DbConnectionManager.getDatabaseType()) {
-		case postgresql:
-			dbConnector = new PostgreSQLConnector();
-			break;
-		case hsqldb:
-			dbConnector = new HSQLDBConnector();
-			break;
-		case db2:
-			dbConnector = new DB2Connector();
-			break;
-		case mysql:
-			dbConnector = new MySQLConnector();
-			break;
-		case oracle:
-			dbConnector = new OracleConnector();
-			break;
-		case sqlserver:
-			dbConnector = new SQLServerConnector();
-			break;
-		default:
-			log.error("The database engine used by Openfire (" + DbConnectionManager.getDatabaseType() + ") is not supported by the MIRROR Persistence Service. Initialization cancelled!");
+		if (StorageConfig.ENGINE_LOG.equals(JiveGlobals.getProperty(StorageConfig.PROPERTY_ENGINE, StorageConfig.ENGINE_DATABASE))) {
+			String directory = JiveGlobals.getProperty(LogStoreConfig.PROPERTY_DIRECTORY, JiveGlobals.getHomeDirectory() + File.separator + LogStoreConfig.DEFAULT_DIRECTORY_NAME);
+			logStore = new LogStructuredConnector(new File(directory));
+			dbConnector = logStore;
+		} else {
+			switch (DbConnectionManager.getDatabaseType()) {
+			case postgresql:
+				dbConnector = new PostgreSQLConnector();
+				break;
+			case hsqldb:
+				dbConnector = new HSQLDBConnector();
+				break;
+			case db2:
+				dbConnector = new DB2Connector();
+				break;
+			case mysql:
+				dbConnector = new MySQLConnector();
+				break;
+			case oracle:
+				dbConnector = new OracleConnector();
+				break;
+			case sqlserver:
+				dbConnector = new SQLServerConnector();
+				break;
+			default:
+				log.error("The database engine used by Openfire (" + DbConnectionManager.getDatabaseType() + ") is not supported by the MIRROR Persistence Service. Initialization cancelled!");
+				return;
+			}
+		}
+		try {
+			dbConnector.initialize();
+		} catch (IllegalStateException e) {
+			log.error("Failed to initialize the storage engine. Initialization cancelled!", e);
 			return;
 		}
-		dbConnector.initialize();
 		
 		persistenceServiceComponent = new PersistenceService(dbConnector);
 		
@@ -65,10 +98,12 @@ public class PersistencePlugin implements Plugin {
 		} catch (Exception e) {
 			log.error(e.getMessage(), e);
 		}
+		instance = this;
 	}
 
 	@Override
 	public void destroyPlugin() {
+		instance = null;
 		if (componentManager != null) {
 			try {
 				componentManager.removeComponent("persistence");
@@ -77,5 +112,9 @@ public class PersistencePlugin implements Plugin {
 				log.error(e.getMessage(), e);
 			}
 		}
+		if (logStore != null) {
+			logStore.close();
+			logStore = null;
+		}
 	}
 }
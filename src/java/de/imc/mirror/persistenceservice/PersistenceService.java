@@ -1,7 +1,10 @@
 package de.imc.mirror.persistenceservice;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -10,8 +13,8 @@ import java.util.Set;
 
 import org.dom4j.DocumentException;
 import org.dom4j.Element;
+import org.dom4j.Node;
 import org.jivesoftware.util.JiveGlobals;
-import org.jivesoftware.util.TaskEngine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xmpp.component.AbstractComponent;
@@ -24,8 +27,15 @@ import org.xmpp.packet.Message;
 import org.xmpp.packet.PacketError;
 
 import de.imc.mirror.persistenceservice.Space.PersistenceType;
+import de.imc.mirror.persistenceservice.config.CacheConfig;
+import de.imc.mirror.persistenceservice.config.ComponentConfig;
+import de.imc.mirror.persistenceservice.config.IngestConfig;
 import de.imc.mirror.persistenceservice.config.NamespaceConfig;
-import de.imc.mirror.persistenceservice.config.TaskConfig;
+import de.imc.mirror.persistenceservice.config.QueryConfig;
+import de.imc.mirror.persistenceservice.config.WorkerConfig;
+import de.imc.mirror.persistenceservice.connectors.HotTierConnector;
+import de.imc.mirror.persistenceservice.connectors.ObjectCacheConnector;
+import de.imc.mirror.persistenceservice.connectors.ResultCacheConnector;
 import de.imc.mirror.persistenceservice.exceptions.DBAccessException;
 import de.imc.mirror.persistenceservice.exceptions.RequestFailureExeption;
 import de.imc.mirror.persistenceservice.filters.DataModelFilter;
@@ -33,6 +43,9 @@ import de.imc.mirror.persistenceservice.filters.NamespaceFilter;
 import de.imc.mirror.persistenceservice.filters.PeriodFilter;
 import de.imc.mirror.persistenceservice.filters.PublisherFilter;
 import de.imc.mirror.persistenceservice.filters.ReferencesFilter;
+import de.imc.mirror.persistenceservice.statistics.MeteredDatabaseConnector;
+import de.imc.mirror.persistenceservice.statistics.QueryTrace;
+import de.imc.mirror.persistenceservice.statistics.ServiceStatistics;
 
 /**
  * XMPP component for the MIRROR Persistence Service.
@@ -40,14 +53,82 @@ import de.imc.mirror.persistenceservice.filters.ReferencesFilter;
  */
 public class PersistenceService extends AbstractComponent {
 	private static final Logger log = LoggerFactory.getLogger(PersistenceService.class);
+	private static final Logger slowQueryLog = LoggerFactory.getLogger(QueryConfig.SLOW_QUERY_LOGGER);
 	
 	private DatabaseConnector dbConnector;
 	private SpaceManager spaceManager;
+	private IngestQueue ingestQueue;
+	private DataExpirationScheduler expirationScheduler;
+	private CompressionJob compressionJob;
+	private HotTierConnector hotTier;
+	private ObjectCacheConnector objectCache;
+	private ResultCacheConnector resultCache;
+	private StripedWorkerPool insertWorkers;
+	private WorkerPool queryWorkers;
+	private WorkerPool deleteWorkers;
+	private boolean respondOnCommit;
+	private final ServiceStatistics statistics;
 	
 	public PersistenceService(DatabaseConnector dbConnector) {
-		this.dbConnector = dbConnector;
-		// A cleanup is performed 5 seconds after initialization and repeated with a fix frequency.
-		TaskEngine.getInstance().scheduleAtFixedRate(new DataExpirationTask(dbConnector), 5000, TaskConfig.DATA_CLEANUP_PERIOD);
+		// IQ results are not enforced, as inserts may be answered asynchronously.
+		// Packets are dispatched by a single thread, so inserts reach their lanes in the order they were received.
+		super(ComponentConfig.DISPATCH_THREADS, ComponentConfig.MAX_QUEUE_SIZE, false);
+		this.statistics = new ServiceStatistics();
+		for (IQSetType setType : IQSetType.values()) {
+			statistics.getRequestStatistics(getStatisticsName(setType));
+		}
+		for (IQGetType getType : IQGetType.values()) {
+			statistics.getRequestStatistics(getStatisticsName(getType));
+		}
+		if (JiveGlobals.getBooleanProperty(CacheConfig.PROPERTY_HOT_TIER_ENABLED, false)) {
+			hotTier = new HotTierConnector(dbConnector,
+					JiveGlobals.getLongProperty(CacheConfig.PROPERTY_HOT_TIER_MAX_BYTES, CacheConfig.DEFAULT_HOT_TIER_MAX_BYTES),
+					JiveGlobals.getLongProperty(CacheConfig.PROPERTY_HOT_TIER_WINDOW, CacheConfig.DEFAULT_HOT_TIER_WINDOW));
+			dbConnector = hotTier;
+		}
+		if (JiveGlobals.getBooleanProperty(CacheConfig.PROPERTY_OBJECT_CACHE_ENABLED, false)) {
+			objectCache = new ObjectCacheConnector(dbConnector,
+					JiveGlobals.getLongProperty(CacheConfig.PROPERTY_OBJECT_CACHE_MAX_BYTES, CacheConfig.DEFAULT_OBJECT_CACHE_MAX_BYTES));
+			dbConnector = objectCache;
+		}
+		if (JiveGlobals.getBooleanProperty(CacheConfig.PROPERTY_RESULT_CACHE_ENABLED, false)) {
+			resultCache = new ResultCacheConnector(dbConnector,
+					JiveGlobals.getLongProperty(CacheConfig.PROPERTY_RESULT_CACHE_MAX_BYTES, CacheConfig.DEFAULT_RESULT_CACHE_MAX_BYTES));
+			dbConnector = resultCache;
+		}
+		this.dbConnector = new MeteredDatabaseConnector(dbConnector, statistics);
+		this.expirationScheduler = new DataExpirationScheduler(this.dbConnector);
+		this.compressionJob = new CompressionJob(this.dbConnector);
+	}
+	
+	/**
+	 * Returns the name of the statistics for an IQ set request type.
+	 * @param setType Request type.
+	 * @return Statistics name.
+	 */
+	private static String getStatisticsName(IQSetType setType) {
+		return setType == IQSetType.OTHER ? "unsupportedSet" : setType.toString().toLowerCase();
+	}
+	
+	/**
+	 * Returns the name of the statistics for an IQ get request type.
+	 * @param getType Request type.
+	 * @return Statistics name.
+	 */
+	private static String getStatisticsName(IQGetType getType) {
+		return getType == IQGetType.OTHER ? "unsupportedGet" : getType.toString().toLowerCase();
+	}
+	
+	/**
+	 * Records the processing of a request.
+	 * @param statisticsName Name of the request statistics.
+	 * @param start Value of {@link System#nanoTime()} when the processing started.
+	 * @param responseIq Response to the request, or <code>null</code> if the response is sent later.
+	 * @return The given response.
+	 */
+	private IQ recordRequest(String statisticsName, long start, IQ responseIq) {
+		statistics.getRequestStatistics(statisticsName).record(System.nanoTime() - start, responseIq != null && responseIq.getType() == Type.error);
+		return responseIq;
 	}
 	
 	/**
@@ -89,6 +170,156 @@ public class PersistenceService extends AbstractComponent {
 	public void preComponentStart() {
 		log.info("Starting MIRROR Persistence Service.");
 		spaceManager = new SpaceManager(this);
+		insertWorkers = new StripedWorkerPool("insert",
+				JiveGlobals.getIntProperty(WorkerConfig.PROPERTY_INSERT_LANES, WorkerConfig.DEFAULT_INSERT_LANES),
+				JiveGlobals.getIntProperty(WorkerConfig.PROPERTY_INSERT_QUEUE_SIZE, WorkerConfig.DEFAULT_INSERT_QUEUE_SIZE));
+		queryWorkers = new WorkerPool("query",
+				JiveGlobals.getIntProperty(WorkerConfig.PROPERTY_QUERY_THREADS, WorkerConfig.DEFAULT_QUERY_THREADS),
+				JiveGlobals.getIntProperty(WorkerConfig.PROPERTY_QUERY_QUEUE_SIZE, WorkerConfig.DEFAULT_QUERY_QUEUE_SIZE));
+		deleteWorkers = new WorkerPool("delete",
+				JiveGlobals.getIntProperty(WorkerConfig.PROPERTY_DELETE_THREADS, WorkerConfig.DEFAULT_DELETE_THREADS),
+				JiveGlobals.getIntProperty(WorkerConfig.PROPERTY_DELETE_QUEUE_SIZE, WorkerConfig.DEFAULT_DELETE_QUEUE_SIZE));
+		if (JiveGlobals.getBooleanProperty(IngestConfig.PROPERTY_WRITE_BEHIND, false)) {
+			respondOnCommit = !IngestConfig.DURABILITY_IMMEDIATE.equals(JiveGlobals.getProperty(IngestConfig.PROPERTY_DURABILITY, IngestConfig.DURABILITY_COMMIT));
+			ingestQueue = new IngestQueue(dbConnector, new IngestQueueListener(),
+					JiveGlobals.getIntProperty(IngestConfig.PROPERTY_QUEUE_CAPACITY, IngestConfig.DEFAULT_QUEUE_CAPACITY),
+					JiveGlobals.getIntProperty(IngestConfig.PROPERTY_WRITER_THREADS, IngestConfig.DEFAULT_WRITER_THREADS),
+					JiveGlobals.getIntProperty(IngestConfig.PROPERTY_MAX_BATCH_SIZE, IngestConfig.DEFAULT_MAX_BATCH_SIZE),
+					JiveGlobals.getLongProperty(IngestConfig.PROPERTY_LINGER_TIME, IngestConfig.DEFAULT_LINGER_TIME));
+			log.info("Write-behind mode enabled for inserts.");
+		}
+		statistics.registerStatisticsMBeans();
+		statistics.registerMBean(spaceManager, "SpaceManager", null);
+		statistics.registerMBean(spaceManager.getSpaceRequestStatistics(), "SpacesService", null);
+		statistics.registerMBean(expirationScheduler, "DataExpiration", null);
+		statistics.registerMBean(compressionJob, "Compression", null);
+		if (hotTier != null) {
+			statistics.registerMBean(hotTier, "HotTier", null);
+		}
+		if (objectCache != null) {
+			statistics.registerMBean(objectCache, "ObjectCache", null);
+		}
+		if (resultCache != null) {
+			statistics.registerMBean(resultCache, "ResultCache", null);
+		}
+		if (ingestQueue != null) {
+			statistics.registerMBean(ingestQueue, "IngestQueue", null);
+		}
+		for (WorkerPoolMBean workerPool : getWorkerPools()) {
+			statistics.registerMBean(workerPool, "WorkerPool", workerPool.getName());
+		}
+		// The first cleanup slice is performed 5 seconds after the start.
+		expirationScheduler.start(5000);
+	}
+	
+	@Override
+	public void preComponentShutdown() {
+		statistics.unregisterMBeans();
+		expirationScheduler.stop();
+		// complete pending requests before the ingest queue is stopped
+		insertWorkers.shutdown(10000);
+		queryWorkers.shutdown(10000);
+		deleteWorkers.shutdown(10000);
+		if (ingestQueue != null) {
+			// store all pending data objects
+			ingestQueue.shutdown(30000);
+		}
+	}
+	
+	/**
+	 * Returns the queue for asynchronous inserts.
+	 * @return Ingest queue or <code>null</code> if the write-behind mode is disabled.
+	 */
+	public IngestQueue getIngestQueue() {
+		return ingestQueue;
+	}
+	
+	/**
+	 * Returns the worker pools processing requests.
+	 * @return List of the pools for inserts, queries and deletes, or an empty list if the component is not started.
+	 */
+	public List<WorkerPoolMBean> getWorkerPools() {
+		if (insertWorkers == null) {
+			return Collections.emptyList();
+		}
+		return Arrays.<WorkerPoolMBean>asList(insertWorkers, queryWorkers, deleteWorkers);
+	}
+	
+	/**
+	 * Returns the runtime statistics of the service.
+	 * @return Statistics registry.
+	 */
+	public ServiceStatistics getStatistics() {
+		return statistics;
+	}
+	
+	/**
+	 * Returns the manager for the spaces the service handles data objects for.
+	 * @return Space manager or <code>null</code> if the component is not started.
+	 */
+	public SpaceManager getSpaceManager() {
+		return spaceManager;
+	}
+	
+	/**
+	 * Returns the scheduler for the deletion of expired data objects.
+	 * @return Data expiration scheduler.
+	 */
+	public DataExpirationScheduler getExpirationScheduler() {
+		return expirationScheduler;
+	}
+	
+	/**
+	 * Returns the job rewriting stored data objects in the compressed storage format.
+	 * @return Compression job.
+	 */
+	public CompressionJob getCompressionJob() {
+		return compressionJob;
+	}
+	
+	/**
+	 * Returns the hot tier keeping the recent data objects of spaces in memory.
+	 * @return Hot tier or <code>null</code> if it is disabled.
+	 */
+	public HotTierConnector getHotTier() {
+		return hotTier;
+	}
+	
+	/**
+	 * Returns the cache for data objects retrieved by identifier.
+	 * @return Object cache or <code>null</code> if it is disabled.
+	 */
+	public ObjectCacheConnector getObjectCache() {
+		return objectCache;
+	}
+	
+	/**
+	 * Returns the cache for the results of space queries.
+	 * @return Result cache or <code>null</code> if it is disabled.
+	 */
+	public ResultCacheConnector getResultCache() {
+		return resultCache;
+	}
+	
+	/**
+	 * Listener sending the responses for inserts processed by the ingest queue.
+	 */
+	private class IngestQueueListener implements IngestQueue.Listener {
+		@Override
+		public void insertCommitted(IQ insertIq) {
+			if (respondOnCommit) {
+				send(IQ.createResultIQ(insertIq));
+			}
+		}
+
+		@Override
+		public void insertFailed(IQ insertIq, PacketError error) {
+			if (respondOnCommit) {
+				send(createErrorIQ(insertIq, error));
+			} else {
+				log.warn("Failed to store data objects of insert request " + insertIq.getID() + ": " + error.getCondition());
+			}
+		}
 	}
 	
 	@Override
@@ -105,36 +336,53 @@ public class PersistenceService extends AbstractComponent {
 	/**
 	 * Handles IQs of type set if received from the MIRROR Spaces Service component.
 	 * The service sends data objects to store.
+	 * Inserts and deletes are processed by separate worker pools.
 	 * @param requestIq IQ package received.
+	 * @return Error response or <code>null</code> if the request is processed by a worker.
 	 */
 	@Override
-	protected IQ handleIQSet(IQ requestIq) {
+	protected IQ handleIQSet(final IQ requestIq) {
+		final long start = System.nanoTime();
 		Element childElement = requestIq.getChildElement();
 		if (childElement == null) {
-			return createBadRequestIQ(requestIq);
+			return recordRequest(getStatisticsName(IQSetType.OTHER), start, createBadRequestIQ(requestIq));
 		}
 		IQSetType setType = IQSetType.getTypeForElementName(childElement.getName());
+		String statisticsName = getStatisticsName(setType);
 		switch (setType) {
 		case INSERT:
 			if (!requestIq.getFrom().equals(spaceManager.getSpacesServiceJID())) {
 				// we only accept inserts from the space service
 				log.warn("Forbidden access blocked: " + requestIq.getFrom());
 				PacketError error = new PacketError(PacketError.Condition.not_allowed, PacketError.Type.cancel);
-				return createErrorIQ(requestIq, error);
+				return recordRequest(statisticsName, start, createErrorIQ(requestIq, error));
 			} else {
-				return handleInsert(requestIq);
+				// inserts for the same space are processed in the order they were received, see ComponentConfig.DISPATCH_THREADS
+				String spaceId = childElement.attributeValue("spaceId");
+				RequestTask task = new RequestTask(requestIq, statisticsName, start) {
+					@Override
+					protected IQ process() {
+						return handleInsert(requestIq);
+					}
+				};
+				return insertWorkers.submit(spaceId, task) ? null : task.reject(insertWorkers.getName());
 			}
 		case DELETE:
-			return handleDelete(requestIq);
+			return dispatch(deleteWorkers, new RequestTask(requestIq, statisticsName, start) {
+				@Override
+				protected IQ process() {
+					return handleDelete(requestIq);
+				}
+			});
 		default:
-			return createBadRequestIQ(requestIq);
+			return recordRequest(statisticsName, start, createBadRequestIQ(requestIq));
 		}	
 	}
 	
 	/**
 	 * Handles a IQ package requesting a data object insert. 
 	 * @param insertIq IQ packet containing the request.
-	 * @return IQ response.
+	 * @return IQ response or <code>null</code> if the response is sent when the queued data objects are committed.
 	 */
 	private IQ handleInsert(IQ insertIq) {
 		Element childElement = insertIq.getChildElement();
@@ -143,30 +391,46 @@ public class PersistenceService extends AbstractComponent {
 			return createBadRequestIQ(insertIq);
 		}
 		
-		Iterator<?> dataObjectIterator = childElement.elementIterator();
-		while (dataObjectIterator.hasNext()) {
-			DataObject dataObject = new DataObject((Element) dataObjectIterator.next(), spaceId);
-			Space space;
-			try {
-				space = spaceManager.getSpace(spaceId);
-				if (space.getPersistenceType() == PersistenceType.DURATION) {
-					Date expirationDate = new Date();
-					space.getPersistenceDuration().addTo(expirationDate);
-					dataObject.setExpirationDate(expirationDate);
+		List<DataObject> dataObjects = new ArrayList<DataObject>();
+		try {
+			Space space = spaceManager.getSpace(spaceId);
+			Date expirationDate = null;
+			if (space.getPersistenceType() == PersistenceType.DURATION) {
+				expirationDate = new Date();
+				space.getPersistenceDuration().addTo(expirationDate);
+			}
+			Iterator<?> dataObjectIterator = childElement.elementIterator();
+			while (dataObjectIterator.hasNext()) {
+				DataObject dataObject = new DataObject((Element) dataObjectIterator.next(), spaceId);
+				dataObject.setExpirationDate(expirationDate);
+				dataObjects.add(dataObject);
+			}
+			if (ingestQueue != null) {
+				// validate objects before queuing
+				for (DataObject dataObject : dataObjects) {
+					String objectId = dataObject.getId();
+					if (objectId == null || objectId.trim().isEmpty()) {
+						return createBadRequestIQ(insertIq);
+					}
 				}
-				dbConnector.storeDataObject(dataObject);
-			} catch (DBAccessException e) {
-				PacketError error = new PacketError(PacketError.Condition.internal_server_error, PacketError.Type.wait);
-				return createErrorIQ(insertIq, error);
-			} catch (DocumentException e) {
-				return createBadRequestIQ(insertIq);
-			} catch (RequestFailureExeption e) {
-				// space not found
-				return createErrorIQ(insertIq, e.getPacketError());
-			} catch (ComponentException e) {
-				PacketError error = new PacketError(PacketError.Condition.internal_server_error, PacketError.Type.wait);
-				return createErrorIQ(insertIq, error);
+				if (!ingestQueue.offer(insertIq, dataObjects)) {
+					PacketError error = new PacketError(PacketError.Condition.resource_constraint, PacketError.Type.wait, "Too many pending inserts.");
+					return createErrorIQ(insertIq, error);
+				}
+				return respondOnCommit ? null : IQ.createResultIQ(insertIq);
 			}
+			dbConnector.storeDataObjects(dataObjects);
+		} catch (DBAccessException e) {
+			PacketError error = new PacketError(PacketError.Condition.internal_server_error, PacketError.Type.wait);
+			return createErrorIQ(insertIq, error);
+		} catch (DocumentException e) {
+			return createBadRequestIQ(insertIq);
+		} catch (RequestFailureExeption e) {
+			// space not found
+			return createErrorIQ(insertIq, e.getPacketError());
+		} catch (ComponentException e) {
+			PacketError error = new PacketError(PacketError.Condition.internal_server_error, PacketError.Type.wait);
+			return createErrorIQ(insertIq, error);
 		}
 		
 		return IQ.createResultIQ(insertIq);
@@ -212,33 +476,44 @@ public class PersistenceService extends AbstractComponent {
 			return createBadRequestIQ(deleteIq);
 		}
 		
-		// request space identifiers
+		if (ingestQueue != null) {
+			// data objects to delete may still be queued for insertion
+			try {
+				if (!ingestQueue.flush(IngestConfig.FLUSH_TIMEOUT)) {
+					log.warn("Queued inserts were not committed before deleting data objects.");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		// request metadata of the objects
 		int numberOfDeletedObjects;
 		try {
-			Map<String, String> spaceIds = dbConnector.retrieveSpacesForObjects(objectIds);
+			Map<String, DataObjectMetadata> objectMetadata = dbConnector.retrieveMetadataForObjects(objectIds);
 			
 			// check requester authorization to delete all objects
 			String requesterBareJID = deleteIq.getFrom().toBareJID();
 			boolean allowPublishersToDelete = JiveGlobals.getBooleanProperty("msf.persistence.allowPublishersToDelete", false);
-			for (String observedObjectId : objectIds) {
-				String spaceId = spaceIds.get(observedObjectId);
-				if (spaceId == null) {
-					continue;
-				} else {
-					Space space = spaceManager.getSpace(spaceId);
-					if (!space.isModerator(requesterBareJID)) {
-						if (!allowPublishersToDelete) {
-							String errorDescription = "Only moderators are authorized to delete data objects from a space.";
-							PacketError packetError = new PacketError(PacketError.Condition.not_allowed, PacketError.Type.cancel, errorDescription);
-							return createErrorIQ(deleteIq, packetError);
-						}
-						DataObject dataObject = dbConnector.retrieveObject(observedObjectId);
-						String publisher = dataObject.getPublisher();
-						if (publisher == null || !publisher.startsWith(requesterBareJID)) {
-							String errorDescription = "The requester is neither moderator of the related space nor stored as publisher for the data object.";
-							PacketError packetError = new PacketError(PacketError.Condition.not_allowed, PacketError.Type.cancel, errorDescription);
-							return createErrorIQ(deleteIq, packetError);
-						}
+			Map<String, Space> spaces = new HashMap<String, Space>();
+			for (DataObjectMetadata metadata : objectMetadata.values()) {
+				String spaceId = metadata.getSpaceId();
+				Space space = spaces.get(spaceId);
+				if (space == null) {
+					space = spaceManager.getSpace(spaceId);
+					spaces.put(spaceId, space);
+				}
+				if (!space.isModerator(requesterBareJID)) {
+					if (!allowPublishersToDelete) {
+						String errorDescription = "Only moderators are authorized to delete data objects from a space.";
+						PacketError packetError = new PacketError(PacketError.Condition.not_allowed, PacketError.Type.cancel, errorDescription);
+						return createErrorIQ(deleteIq, packetError);
+					}
+					String publisher = metadata.getPublisher();
+					if (publisher == null || !publisher.startsWith(requesterBareJID)) {
+						String errorDescription = "The requester is neither moderator of the related space nor stored as publisher for the data object.";
+						PacketError packetError = new PacketError(PacketError.Condition.not_allowed, PacketError.Type.cancel, errorDescription);
+						return createErrorIQ(deleteIq, packetError);
 					}
 				}
 			}
@@ -263,10 +538,6 @@ public class PersistenceService extends AbstractComponent {
 					PacketError.Type.wait,
 					"Failed to request space from Spaces Service.");
 			return createErrorIQ(deleteIq, packetError);
-		} catch (DocumentException e) {
-			log.warn("Failed to parse data object.", e);
-			PacketError packetError = new PacketError(PacketError.Condition.internal_server_error, PacketError.Type.wait, "Failed to access stored data objects.");
-			return createErrorIQ(deleteIq, packetError);
 		}
 		
 		IQ response = IQ.createResultIQ(deleteIq);
@@ -276,29 +547,126 @@ public class PersistenceService extends AbstractComponent {
 		return response;
 	}
 
+	/**
+	 * Handles IQs of type get. Queries are processed by a separate worker pool.
+	 * @param requestIq IQ package received.
+	 * @return Error response or <code>null</code> if the request is processed by a worker.
+	 */
 	@Override
-	protected IQ handleIQGet(IQ requestIq) {
+	protected IQ handleIQGet(final IQ requestIq) {
+		final long start = System.nanoTime();
 		Element rootElement = requestIq.getChildElement();
 		if (rootElement == null) {
-			return createBadRequestIQ(requestIq);
+			return recordRequest(getStatisticsName(IQGetType.OTHER), start, createBadRequestIQ(requestIq));
 		}
 		IQGetType iqType = IQGetType.getTypeForElementName(rootElement.getName()); 
 		switch (iqType) {
 		case QUERY:
-			return handleQuery(requestIq);
+			final QueryTrace trace = new QueryTrace(requestIq.getID(), String.valueOf(requestIq.getFrom()));
+			return dispatch(queryWorkers, new RequestTask(requestIq, getStatisticsName(iqType), start) {
+				@Override
+				protected IQ process() {
+					IQ response = handleQuery(requestIq, trace);
+					trace.finish();
+					if (response.getType() == Type.error && response.getError() != null) {
+						trace.setError(response.getError().getCondition().toXMPP());
+					}
+					logQueryTrace(trace);
+					expirationScheduler.recordQueryLatency(System.nanoTime() - start);
+					return response;
+				}
+			});
 		default:
-			return createBadRequestIQ(requestIq);
+			return recordRequest(getStatisticsName(iqType), start, createBadRequestIQ(requestIq));
+		}
+		
+	}
+	
+	/**
+	 * Request processed by a worker. The response is sent when the processing is completed.
+	 */
+	private abstract class RequestTask implements Runnable {
+		protected final IQ requestIq;
+		private final String statisticsName;
+		private final long start;
+		
+		/**
+		 * Creates a task.
+		 * @param requestIq Request to process.
+		 * @param statisticsName Name of the request statistics.
+		 * @param start Value of {@link System#nanoTime()} when the request was received.
+		 */
+		private RequestTask(IQ requestIq, String statisticsName, long start) {
+			this.requestIq = requestIq;
+			this.statisticsName = statisticsName;
+			this.start = start;
+		}
+		
+		/**
+		 * Processes the request.
+		 * @return Response or <code>null</code> if the response is sent later.
+		 */
+		protected abstract IQ process();
+		
+		@Override
+		public void run() {
+			IQ responseIq;
+			try {
+				responseIq = process();
+			} catch (RuntimeException e) {
+				log.error("Failed to process request " + requestIq.getID() + ".", e);
+				responseIq = createErrorIQ(requestIq, new PacketError(PacketError.Condition.internal_server_error, PacketError.Type.wait));
+			}
+			recordRequest(statisticsName, start, responseIq);
+			if (responseIq != null) {
+				send(responseIq);
+			}
 		}
 		
+		/**
+		 * Creates the response for a request rejected due to an overload.
+		 * @param poolName Name of the worker pool which rejected the request.
+		 * @return Error IQ with the condition <code>resource-constraint</code>.
+		 */
+		private IQ reject(String poolName) {
+			log.debug("Request " + requestIq.getID() + " rejected, the " + poolName + " workers are overloaded.");
+			PacketError error = new PacketError(PacketError.Condition.resource_constraint, PacketError.Type.wait, "Too many pending requests, please try again later.");
+			return recordRequest(statisticsName, start, createErrorIQ(requestIq, error));
+		}
+	}
+	
+	/**
+	 * Passes a request to a worker pool.
+	 * @param workerPool Pool to process the request.
+	 * @param task Task processing the request.
+	 * @return <code>null</code> if the request is queued, or an error response if the queue of the pool is full.
+	 */
+	private IQ dispatch(WorkerPool workerPool, RequestTask task) {
+		return workerPool.submit(task) ? null : task.reject(workerPool.getName());
+	}
+	
+	/**
+	 * Writes the trace of a query to the slow-query log if the query exceeded the configured threshold.
+	 * With debug logging enabled for the slow-query log, the traces of all queries are written.
+	 * @param trace Finished query trace.
+	 */
+	private void logQueryTrace(QueryTrace trace) {
+		long threshold = JiveGlobals.getLongProperty(QueryConfig.PROPERTY_SLOW_QUERY_THRESHOLD, QueryConfig.DEFAULT_SLOW_QUERY_THRESHOLD);
+		if (threshold > 0 && trace.getTotalTime() >= threshold) {
+			slowQueryLog.warn(trace.toJSON());
+		} else if (slowQueryLog.isDebugEnabled()) {
+			slowQueryLog.debug(trace.toJSON());
+		}
 	}
 	
 	/**
 	 * Handles a IQ querying data objects.
 	 * @param queryIq IQ packet containing the query.
+	 * @param trace Trace to record the execution of the query in.
 	 * @return Response IQ packet.
 	 */
-	private IQ handleQuery(IQ queryIq) {
-		
+	private IQ handleQuery(IQ queryIq, QueryTrace trace) {
+		trace.enter(QueryTrace.Phase.PARSE);
 		Iterator<?> childElementIterator = queryIq.getChildElement().elementIterator();
 		if (!childElementIterator.hasNext()) {
 			return createBadRequestIQ(queryIq);
@@ -351,32 +719,71 @@ public class PersistenceService extends AbstractComponent {
 		default:
 			return createBadRequestIQ(queryIq);
 		}
+		trace.setTarget(queryTargetElement.getName(), queriedItemIds);
 		
-		// generating filters
-		FilterSet filterSet;
-		if (childElementIterator.hasNext()) {
-			Element filterRootElement = (Element) childElementIterator.next();
+		// generating filters and paging information
+		FilterSet filterSet = new FilterSet();
+		PageRequest pageRequest = null;
+		while (childElementIterator.hasNext()) {
+			Element element = (Element) childElementIterator.next();
+			if (NamespaceConfig.RSM.equals(element.getNamespaceURI())) {
+				try {
+					pageRequest = createPageRequest(element);
+				} catch (RequestFailureExeption e) {
+					return createErrorIQ(queryIq, e.getPacketError());
+				}
+				continue;
+			}
+			trace.setFilters(element.asXML());
 			try {
-				filterSet = createFilterSet(filterRootElement);
+				filterSet = createFilterSet(element);
 			} catch (IllegalArgumentException e) {
 				PacketError packetError = new PacketError(PacketError.Condition.bad_request, PacketError.Type.cancel, e.getMessage());
 				return createErrorIQ(queryIq, packetError);
 			}
-		} else {
-			filterSet = new FilterSet();
 		}
 		
+		// streamed results are sent in messages before the result IQ
+		ResultStreamer resultStreamer = null;
+		String streamValue = queryIq.getChildElement().attributeValue("stream");
+		if ("true".equals(streamValue) || "1".equals(streamValue)) {
+			if (pageRequest != null) {
+				PacketError packetError = new PacketError(PacketError.Condition.bad_request, PacketError.Type.modify, "Streamed results cannot be paged.");
+				return createErrorIQ(queryIq, packetError);
+			}
+			resultStreamer = new ResultStreamer(queryIq, JiveGlobals.getIntProperty(QueryConfig.PROPERTY_STREAM_CHUNK_SIZE, QueryConfig.DEFAULT_STREAM_CHUNK_SIZE), trace);
+		}
+		trace.setResultMode(pageRequest != null, resultStreamer != null);
+		
 		// request data
+		trace.enter(QueryTrace.Phase.DATABASE);
 		List<DataObject> dataObjects;
+		ResultPage resultPage = null;
 		try {
 			switch (queryTargetType) {
 			case SPACE:
 			case MULTIPLE_SPACES:
-				dataObjects = handleQueryBySpaces(queryIq.getFrom(), queriedItemIds, filterSet);
+				if (resultStreamer != null) {
+					handleStreamedQueryBySpaces(queryIq.getFrom(), queriedItemIds, filterSet, resultStreamer, trace);
+					dataObjects = Collections.emptyList();
+				} else if (pageRequest != null) {
+					resultPage = handlePagedQueryBySpaces(queryIq.getFrom(), queriedItemIds, filterSet, pageRequest, trace);
+					dataObjects = resultPage.getDataObjects();
+				} else {
+					dataObjects = handleQueryBySpaces(queryIq.getFrom(), queriedItemIds, filterSet, trace);
+				}
 				break;
 			case OBJECT:
 			case MULTIPLE_OBJECTS:
-				dataObjects = handleQueryByObjects(queryIq.getFrom(), queriedItemIds, filterSet);
+				if (resultStreamer != null) {
+					handleStreamedQueryByObjects(queryIq.getFrom(), queriedItemIds, filterSet, resultStreamer, trace);
+					dataObjects = Collections.emptyList();
+				} else if (pageRequest != null) {
+					resultPage = handlePagedQueryByObjects(queryIq.getFrom(), queriedItemIds, filterSet, pageRequest, trace);
+					dataObjects = resultPage.getDataObjects();
+				} else {
+					dataObjects = handleQueryByObjects(queryIq.getFrom(), queriedItemIds, filterSet, trace);
+				}
 				break;
 			default:
 				return createBadRequestIQ(queryIq);
@@ -404,26 +811,179 @@ public class PersistenceService extends AbstractComponent {
 		}
 		
 		// create response
+		trace.enter(QueryTrace.Phase.RESPONSE);
+		long rowsReturned = resultStreamer != null ? resultStreamer.getObjectCount() : dataObjects.size();
+		trace.setRows(rowsReturned + filterSet.getRejectedObjects(), rowsReturned);
 		IQ response = IQ.createResultIQ(queryIq);
 		Element queryElement = response.setChildElement("query", NamespaceConfig.SERVICE);
 		Element resultElement = queryElement.addElement("result");
+		if (resultStreamer != null) {
+			if (resultStreamer.isFailed()) {
+				PacketError packetError = new PacketError(
+						PacketError.Condition.internal_server_error,
+						PacketError.Type.wait,
+						"Failed to parse data object.");
+				return createErrorIQ(queryIq, packetError);
+			}
+			resultStreamer.flush();
+			resultElement.addAttribute("count", String.valueOf(resultStreamer.getObjectCount()));
+			resultElement.addAttribute("chunks", String.valueOf(resultStreamer.getChunkCount()));
+		}
 		for (DataObject dataObject : dataObjects) {
-			if (dataObject.getXMLElement() == null) {
-				try {
-					dataObject.parseElementString();
-				} catch (DocumentException e) {
-					PacketError packetError = new PacketError(
-							PacketError.Condition.internal_server_error,
-							PacketError.Type.wait,
-							"Failed to parse data object.");
-					return createErrorIQ(queryIq, packetError);
-				}
+			try {
+				resultElement.add(dataObject.getXMLNode());
+			} catch (DocumentException e) {
+				PacketError packetError = new PacketError(
+						PacketError.Condition.internal_server_error,
+						PacketError.Type.wait,
+						"Failed to parse data object.");
+				return createErrorIQ(queryIq, packetError);
+			}
+		}
+		if (resultPage != null) {
+			Element setElement = queryElement.addElement("set", NamespaceConfig.RSM);
+			if (resultPage.getFirst() != null) {
+				setElement.addElement("first", NamespaceConfig.RSM).setText(resultPage.getFirst().toString());
+				setElement.addElement("last", NamespaceConfig.RSM).setText(resultPage.getLast().toString());
+			}
+			if (resultPage.getCount() != null) {
+				setElement.addElement("count", NamespaceConfig.RSM).setText(resultPage.getCount().toString());
 			}
-			resultElement.add(dataObject.getXMLElement());
 		}
 		return response;
 	}
 	
+	/**
+	 * Handler sending retrieved data objects in chunks to the requester of a query.
+	 * Each chunk is sent as a message containing a <code>chunk</code> element, which refers to the query IQ.
+	 */
+	private class ResultStreamer implements DataObjectHandler {
+		private final IQ queryIq;
+		private final int chunkSize;
+		private final QueryTrace trace;
+		private Message chunkMessage;
+		private Element chunkElement;
+		private int objectsInChunk;
+		private int objectCount;
+		private int chunkCount;
+		private boolean failed;
+		
+		private ResultStreamer(IQ queryIq, int chunkSize, QueryTrace trace) {
+			this.queryIq = queryIq;
+			this.chunkSize = Math.max(chunkSize, 1);
+			this.trace = trace;
+		}
+		
+		@Override
+		public boolean handleDataObject(DataObject dataObject) {
+			QueryTrace.Phase previousPhase = trace.enter(QueryTrace.Phase.RESPONSE);
+			try {
+				return addDataObject(dataObject);
+			} finally {
+				trace.enter(previousPhase);
+			}
+		}
+		
+		/**
+		 * Adds a data object to the current chunk and sends the chunk if it is full.
+		 * @param dataObject Data object to add.
+		 * @return <code>true</code> if the data object was added, <code>false</code> if it could not be parsed.
+		 */
+		private boolean addDataObject(DataObject dataObject) {
+			Node dataObjectNode;
+			try {
+				dataObjectNode = dataObject.getXMLNode();
+			} catch (DocumentException e) {
+				log.warn("Failed to parse stored data object.", e);
+				failed = true;
+				return false;
+			}
+			if (chunkElement == null) {
+				chunkMessage = new Message();
+				chunkMessage.setType(Message.Type.headline);
+				chunkMessage.setFrom(queryIq.getTo());
+				chunkMessage.setTo(queryIq.getFrom());
+				chunkElement = chunkMessage.addChildElement("chunk", NamespaceConfig.SERVICE);
+				chunkElement.addAttribute("queryId", queryIq.getID());
+				chunkElement.addAttribute("index", String.valueOf(chunkCount));
+			}
+			chunkElement.add(dataObjectNode);
+			objectsInChunk++;
+			objectCount++;
+			if (objectsInChunk >= chunkSize) {
+				flush();
+			}
+			return true;
+		}
+		
+		/**
+		 * Sends the current chunk if it contains data objects.
+		 */
+		private void flush() {
+			if (chunkElement != null) {
+				send(chunkMessage);
+				chunkCount++;
+				chunkMessage = null;
+				chunkElement = null;
+				objectsInChunk = 0;
+			}
+		}
+		
+		private boolean isFailed() {
+			return failed;
+		}
+		
+		private int getObjectCount() {
+			return objectCount;
+		}
+		
+		private int getChunkCount() {
+			return chunkCount;
+		}
+	}
+	
+	/**
+	 * Creates a page request based on a result set management element (XEP-0059).
+	 * The requested page size is limited to the configured maximum.
+	 * @param setElement Element received with the query.
+	 * @return Page request.
+	 * @throws RequestFailureExeption The element is invalid or contains an unknown cursor.
+	 */
+	private PageRequest createPageRequest(Element setElement) throws RequestFailureExeption {
+		int maxPageSize = JiveGlobals.getIntProperty(QueryConfig.PROPERTY_MAX_PAGE_SIZE, QueryConfig.DEFAULT_MAX_PAGE_SIZE);
+		int max = maxPageSize;
+		String maxString = setElement.elementTextTrim("max");
+		if (maxString != null) {
+			try {
+				max = Math.min(Integer.parseInt(maxString), maxPageSize);
+			} catch (NumberFormatException e) {
+				max = -1;
+			}
+			if (max < 0) {
+				String errorDescription = "Invalid page size: " + maxString;
+				throw new RequestFailureExeption(errorDescription, new PacketError(PacketError.Condition.bad_request, PacketError.Type.modify, errorDescription));
+			}
+		}
+		Element afterElement = setElement.element("after");
+		Element beforeElement = setElement.element("before");
+		if (afterElement != null && beforeElement != null) {
+			String errorDescription = "Only one of the elements 'after' and 'before' is allowed.";
+			throw new RequestFailureExeption(errorDescription, new PacketError(PacketError.Condition.bad_request, PacketError.Type.modify, errorDescription));
+		}
+		try {
+			if (beforeElement != null) {
+				String before = beforeElement.getTextTrim();
+				return PageRequest.before(max, before.isEmpty() ? null : PageCursor.parse(before));
+			} else if (afterElement != null) {
+				return PageRequest.after(max, PageCursor.parse(afterElement.getTextTrim()));
+			} else {
+				return PageRequest.after(max, null);
+			}
+		} catch (IllegalArgumentException e) {
+			throw new RequestFailureExeption(e.getMessage(), new PacketError(PacketError.Condition.item_not_found, PacketError.Type.cancel));
+		}
+	}
+	
 	/**
 	 * Creates a filter set based on the query filter element
 	 * @param filterRootElement Filter element received with the query.
@@ -464,39 +1024,97 @@ public class PersistenceService extends AbstractComponent {
 	 * @param requester JID of the requester. Used to check authorization.
 	 * @param spaceIds Set of space identifiers to retrieve data objects of.
 	 * @param filterSet Filter set to apply.
+	 * @param trace Trace to record the execution in.
 	 * @return List of all data objects of the spaces which satisfy the filter criteria.
 	 * @throws ComponentException The communication with the Spaces Service failed.
 	 * @throws RequestFailureExeption The space request returned an error, e.g., the user is not member of all spaces.
 	 * @throws DBAccessException Failed to retrieve data from the database.
 	 */
-	private List<DataObject> handleQueryBySpaces(JID requester, Set<String> spaceIds, FilterSet filterSet) throws ComponentException, RequestFailureExeption, DBAccessException {
+	private List<DataObject> handleQueryBySpaces(JID requester, Set<String> spaceIds, FilterSet filterSet, QueryTrace trace) throws ComponentException, RequestFailureExeption, DBAccessException {
 		List<DataObject> dataObjects = new ArrayList<DataObject>();
-		String requesterBareJID = requester.toBareJID();
-		for (String spaceId : spaceIds) {
-			Space space = spaceManager.getSpace(spaceId);
-			// check if the requester has the permission to access all requested spaces
-			if (!space.isMember(requesterBareJID)) {
-				String errorDescription = "Only members of a space may access published data objects.";
-				PacketError packetError = new PacketError(PacketError.Condition.not_allowed, PacketError.Type.cancel, errorDescription);
-				throw new RequestFailureExeption(errorDescription, packetError);
-			}
+		// check if the requester has the permission to access all requested spaces
+		List<Space> spaces = checkMembership(requester, spaceIds, trace);
+		for (Space space : spaces) {
 			// request data objects matching the filter set
 			dataObjects.addAll(dbConnector.retrieveObjectsForSpace(space, filterSet));
 		}
 		return dataObjects;
 	}
 	
+	/**
+	 * Handles a query for a page of data objects of spaces.
+	 * @param requester JID of the requester. Used to check authorization.
+	 * @param spaceIds Set of space identifiers to retrieve data objects of.
+	 * @param filterSet Filter set to apply.
+	 * @param pageRequest Page to retrieve.
+	 * @param trace Trace to record the execution in.
+	 * @return Page of the data objects of the spaces which satisfy the filter criteria.
+	 * @throws ComponentException The communication with the Spaces Service failed.
+	 * @throws RequestFailureExeption The space request returned an error, e.g., the user is not member of all spaces.
+	 * @throws DBAccessException Failed to retrieve data from the database.
+	 */
+	private ResultPage handlePagedQueryBySpaces(JID requester, Set<String> spaceIds, FilterSet filterSet, PageRequest pageRequest, QueryTrace trace) throws ComponentException, RequestFailureExeption, DBAccessException {
+		checkMembership(requester, spaceIds, trace);
+		return dbConnector.retrieveObjectsForSpaces(spaceIds, filterSet, pageRequest);
+	}
+	
+	/**
+	 * Handles a query for data objects of spaces, which are passed to a handler while they are retrieved.
+	 * @param requester JID of the requester. Used to check authorization.
+	 * @param spaceIds Set of space identifiers to retrieve data objects of.
+	 * @param filterSet Filter set to apply.
+	 * @param handler Handler to pass the data objects to.
+	 * @param trace Trace to record the execution in.
+	 * @throws ComponentException The communication with the Spaces Service failed.
+	 * @throws RequestFailureExeption The space request returned an error, e.g., the user is not member of all spaces.
+	 * @throws DBAccessException Failed to retrieve data from the database.
+	 */
+	private void handleStreamedQueryBySpaces(JID requester, Set<String> spaceIds, FilterSet filterSet, DataObjectHandler handler, QueryTrace trace) throws ComponentException, RequestFailureExeption, DBAccessException {
+		checkMembership(requester, spaceIds, trace);
+		dbConnector.streamObjectsForSpaces(spaceIds, filterSet, handler);
+	}
+	
+	/**
+	 * Checks if the requester is member of all given spaces.
+	 * @param requester JID of the requester.
+	 * @param spaceIds Identifiers of the spaces to check.
+	 * @param trace Trace to record the time required for the space lookups in.
+	 * @return List of the spaces.
+	 * @throws ComponentException The communication with the Spaces Service failed.
+	 * @throws RequestFailureExeption The requester is not member of all spaces or a space request returned an error.
+	 */
+	private List<Space> checkMembership(JID requester, Set<String> spaceIds, QueryTrace trace) throws ComponentException, RequestFailureExeption {
+		QueryTrace.Phase previousPhase = trace.enter(QueryTrace.Phase.SPACES);
+		try {
+			List<Space> spaces = new ArrayList<Space>(spaceIds.size());
+			String requesterBareJID = requester.toBareJID();
+			for (String spaceId : spaceIds) {
+				Space space = spaceManager.getSpace(spaceId);
+				if (!space.isMember(requesterBareJID)) {
+					String errorDescription = "Only members of a space may access published data objects.";
+					PacketError packetError = new PacketError(PacketError.Condition.not_allowed, PacketError.Type.cancel, errorDescription);
+					throw new RequestFailureExeption(errorDescription, packetError);
+				}
+				spaces.add(space);
+			}
+			return spaces;
+		} finally {
+			trace.enter(previousPhase);
+		}
+	}
+	
 	/**
 	 * Handles a query for data objects.
 	 * @param requester JID of the requester. Used to check authorization.
 	 * @param objectIds Set of identifiers for the data objects to retrieve.  
 	 * @param filterSet Filter set to apply.
+	 * @param trace Trace to record the execution in.
 	 * @return List of all data objects which satisfy the filter criteria.
 	 * @throws ComponentException The communication with the Spaces Service failed.
 	 * @throws RequestFailureExeption The space request returned an error, e.g., the user is not member of all spaces.
 	 * @throws DBAccessException Failed to retrieve data from the database.
 	 */
-	private List<DataObject> handleQueryByObjects(JID requester, Set<String> objectIds, FilterSet filterSet) throws ComponentException, RequestFailureExeption, DBAccessException {
+	private List<DataObject> handleQueryByObjects(JID requester, Set<String> objectIds, FilterSet filterSet, QueryTrace trace) throws ComponentException, RequestFailureExeption, DBAccessException {
 		// request data objects
 		List<DataObject> dataObjects = dbConnector.retrieveObjects(objectIds, filterSet);
 		// check requester authorization to access these objects
@@ -504,18 +1122,87 @@ public class PersistenceService extends AbstractComponent {
 		for (DataObject dataObject : dataObjects) {
 			spaceIds.add(dataObject.getSpaceId());
 		}
-		String requesterBareJID = requester.toBareJID();
-		for (String spaceId : spaceIds) {
-			Space space = spaceManager.getSpace(spaceId);
-			if (!space.isMember(requesterBareJID)) {
-				String errorDescription = "Only members of a space may access published data objects.";
-				PacketError packetError = new PacketError(PacketError.Condition.not_allowed, PacketError.Type.cancel, errorDescription);
-				throw new RequestFailureExeption(errorDescription, packetError);
-			}
-		}
+		checkMembership(requester, spaceIds, trace);
 		return dataObjects;
 	}
+	
+	/**
+	 * Handles a query for data objects, which are passed to a handler while they are retrieved.
+	 * As data objects are sent before the query is completed, the authorization is checked for all requested data objects in advance.
+	 * @param requester JID of the requester. Used to check authorization.
+	 * @param objectIds Set of identifiers for the data objects to retrieve.  
+	 * @param filterSet Filter set to apply.
+	 * @param handler Handler to pass the data objects to.
+	 * @param trace Trace to record the execution in.
+	 * @throws ComponentException The communication with the Spaces Service failed.
+	 * @throws RequestFailureExeption The space request returned an error, e.g., the user is not member of all spaces.
+	 * @throws DBAccessException Failed to retrieve data from the database.
+	 */
+	private void handleStreamedQueryByObjects(JID requester, Set<String> objectIds, FilterSet filterSet, DataObjectHandler handler, QueryTrace trace) throws ComponentException, RequestFailureExeption, DBAccessException {
+		Set<String> spaceIds = new HashSet<String>();
+		for (DataObjectMetadata metadata : dbConnector.retrieveMetadataForObjects(objectIds).values()) {
+			spaceIds.add(metadata.getSpaceId());
+		}
+		checkMembership(requester, spaceIds, trace);
+		dbConnector.streamObjects(objectIds, filterSet, handler);
+	}
+	
+	/**
+	 * Handles a query for a page of data objects.
+	 * The authorization is checked for the data objects of the page.
+	 * The page contains no total count, as it would include data objects of spaces the requester is not member of.
+	 * @param requester JID of the requester. Used to check authorization.
+	 * @param objectIds Set of identifiers for the data objects to retrieve.  
+	 * @param filterSet Filter set to apply.
+	 * @param pageRequest Page to retrieve.
+	 * @param trace Trace to record the execution in.
+	 * @return Page of the data objects which satisfy the filter criteria.
+	 * @throws ComponentException The communication with the Spaces Service failed.
+	 * @throws RequestFailureExeption The space request returned an error, e.g., the user is not member of all spaces.
+	 * @throws DBAccessException Failed to retrieve data from the database.
+	 */
+	private ResultPage handlePagedQueryByObjects(JID requester, Set<String> objectIds, FilterSet filterSet, PageRequest pageRequest, QueryTrace trace) throws ComponentException, RequestFailureExeption, DBAccessException {
+		ResultPage resultPage = dbConnector.retrieveObjects(objectIds, filterSet, pageRequest);
+		Set<String> spaceIds = new HashSet<String>();
+		for (DataObject dataObject : resultPage.getDataObjects()) {
+			spaceIds.add(dataObject.getSpaceId());
+		}
+		checkMembership(requester, spaceIds, trace);
+		return new ResultPage(resultPage.getDataObjects(), resultPage.getFirst(), resultPage.getLast(), null);
+	}
 
+	/**
+	 * Deletes all data objects stored for a space and removes it from the space cache.
+	 * The deletion is performed in the insert lane of the space, so it does not block the dispatching and follows the inserts received before.
+	 * In write-behind mode, the lane passes the deletion to the writer of the space, which executes it after the queued inserts of the space are committed.
+	 * @param spaceId Identifier of the space.
+	 */
+	private void deleteSpace(final String spaceId) {
+		final Runnable deletion = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					dbConnector.deleteObjectsForSpace(spaceId);
+				} catch (DBAccessException e) {
+					log.warn("Failed to delete data objects of space.", e);
+				}
+				spaceManager.deleteSpace(spaceId);
+			}
+		};
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				if (ingestQueue == null || !ingestQueue.execute(spaceId, deletion)) {
+					deletion.run();
+				}
+			}
+		};
+		if (!insertWorkers.submit(spaceId, task)) {
+			// the lane is full or shut down, delete the data objects immediately
+			task.run();
+		}
+	}
+	
 	/**
 	 * Listening for message containing space creation and configuration events.
 	 * @param message XMPP message received.
@@ -549,26 +1236,14 @@ public class PersistenceService extends AbstractComponent {
 				Space space = new Space(spaceId, configurationForm);
 				switch (space.getPersistenceType()) {
 				case OFF:
-					try {
-						// delete all data objects stored for this space
-						dbConnector.deleteObjectsForSpace(spaceId);
-					} catch (DBAccessException e) {
-						log.warn("Failed to delete data objects of space.", e);
-					}
-					spaceManager.deleteSpace(spaceId);
+					deleteSpace(spaceId);
 					break;
 				default:
 					spaceManager.setSpace(space);
 				}
 				break;
 			case DELETE:
-				try {
-					// delete all data objects stored for this space
-					dbConnector.deleteObjectsForSpace(spaceId);
-				} catch (DBAccessException e) {
-					log.warn("Failed to delete data objects of space.", e);
-				}
-				spaceManager.deleteSpace(spaceId);
+				deleteSpace(spaceId);
 			default:
 				return;
 			}
@@ -0,0 +1,60 @@
+package de.imc.mirror.persistenceservice;
+
+import java.util.List;
+
+/**
+ * Page of a query result.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public class ResultPage {
+	private final List<DataObject> dataObjects;
+	private final PageCursor first;
+	private final PageCursor last;
+	private final Integer count;
+	
+	/**
+	 * Creates a result page.
+	 * @param dataObjects Data objects of the page in result order.
+	 * @param first Cursor of the first data object, or <code>null</code> if the page is empty.
+	 * @param last Cursor of the last data object, or <code>null</code> if the page is empty.
+	 * @param count Number of data objects in the whole result, or <code>null</code> if not determined.
+	 */
+	public ResultPage(List<DataObject> dataObjects, PageCursor first, PageCursor last, Integer count) {
+		this.dataObjects = dataObjects;
+		this.first = first;
+		this.last = last;
+		this.count = count;
+	}
+	
+	/**
+	 * Returns the data objects of the page.
+	 * @return List of data objects in result order.
+	 */
+	public List<DataObject> getDataObjects() {
+		return dataObjects;
+	}
+	
+	/**
+	 * Returns the cursor of the first data object of the page.
+	 * @return Cursor or <code>null</code> if the page is empty.
+	 */
+	public PageCursor getFirst() {
+		return first;
+	}
+	
+	/**
+	 * Returns the cursor of the last data object of the page.
+	 * @return Cursor or <code>null</code> if the page is empty.
+	 */
+	public PageCursor getLast() {
+		return last;
+	}
+	
+	/**
+	 * Returns the number of data objects in the whole result.
+	 * @return Number of data objects or <code>null</code> if not determined.
+	 */
+	public Integer getCount() {
+		return count;
+	}
+}
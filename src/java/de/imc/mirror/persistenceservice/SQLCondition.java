@@ -0,0 +1,136 @@
+package de.imc.mirror.persistenceservice;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Condition to be used in the WHERE clause of an SQL statement.
+ * The clause contains place holders ("?") for the parameters, which are set in the given order.
+ * String parameters compared to a column have to use {@link #CASE_SENSITIVE_PARAMETER} instead, as the filters compare strings case sensitive,
+ * while the default collation of some database engines does not.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public class SQLCondition {
+	/**
+	 * Escape character used for LIKE patterns.
+	 */
+	public static final char LIKE_ESCAPE_CHARACTER = '!';
+
+	/**
+	 * Place holder for a string parameter which has to be compared case sensitive.
+	 * It is replaced by the expression of the database connector when the clause is retrieved with {@link #getClause(String)}.
+	 */
+	public static final String CASE_SENSITIVE_PARAMETER = "{?}";
+
+	private final String clause;
+	private final List<Object> parameters;
+
+	/**
+	 * Creates a SQL condition.
+	 * @param clause Condition clause with place holders for the parameters.
+	 * @param parameters Parameters to set, either strings or long values.
+	 */
+	public SQLCondition(String clause, Object... parameters) {
+		this.clause = clause;
+		this.parameters = Arrays.asList(parameters);
+	}
+
+	private SQLCondition(String clause, List<Object> parameters) {
+		this.clause = clause;
+		this.parameters = parameters;
+	}
+
+	/**
+	 * Returns the condition clause.
+	 * Case sensitive parameters are replaced by plain place holders, i.e., they are compared using the collation of the column.
+	 * @return SQL string with place holders for the parameters.
+	 */
+	public String getClause() {
+		return getClause("?");
+	}
+
+	/**
+	 * Returns the condition clause with the given expression for case sensitive parameters.
+	 * @param caseSensitiveParameter Expression containing a single place holder, which compares the parameter case sensitive, e.g., "BINARY ?".
+	 * @return SQL string with place holders for the parameters.
+	 */
+	public String getClause(String caseSensitiveParameter) {
+		return clause.replace(CASE_SENSITIVE_PARAMETER, caseSensitiveParameter);
+	}
+
+	/**
+	 * Returns the parameters of the condition.
+	 * @return Unmodifiable list of parameters in the order of their place holders.
+	 */
+	public List<Object> getParameters() {
+		return Collections.unmodifiableList(parameters);
+	}
+
+	/**
+	 * Sets the parameters of this condition for a prepared statement.
+	 * @param stmt Statement to set parameters for.
+	 * @param startIndex Index of the first place holder of this condition within the statement.
+	 * @return Index of the next place holder after the parameters of this condition.
+	 * @throws SQLException Failed to set a parameter.
+	 */
+	public int setParameters(PreparedStatement stmt, int startIndex) throws SQLException {
+		int index = startIndex;
+		for (Object parameter : parameters) {
+			if (parameter instanceof Long) {
+				stmt.setLong(index, (Long) parameter);
+			} else {
+				stmt.setString(index, (String) parameter);
+			}
+			index++;
+		}
+		return index;
+	}
+
+	/**
+	 * Combines the given conditions with AND.
+	 * @param conditions Conditions to combine.
+	 * @return Condition which is fulfilled if all given conditions are fulfilled, or <code>null</code> if no condition is given.
+	 */
+	public static SQLCondition and(Collection<SQLCondition> conditions) {
+		if (conditions.isEmpty()) {
+			return null;
+		}
+		StringBuilder builder = new StringBuilder();
+		List<Object> parameters = new ArrayList<Object>();
+		for (SQLCondition condition : conditions) {
+			if (builder.length() > 0) {
+				builder.append(" AND ");
+			}
+			builder.append("(").append(condition.clause).append(")");
+			parameters.addAll(condition.parameters);
+		}
+		return new SQLCondition(builder.toString(), parameters);
+	}
+
+	/**
+	 * Escapes a string to be used in a LIKE pattern.
+	 * The escape character is {@link #LIKE_ESCAPE_CHARACTER}.
+	 * @param value String to escape.
+	 * @return String with all wildcards escaped.
+	 */
+	public static String escapeLikePattern(String value) {
+		StringBuilder builder = new StringBuilder(value.length() + 8);
+		for (char c : value.toCharArray()) {
+			if (c == '%' || c == '_' || c == LIKE_ESCAPE_CHARACTER) {
+				builder.append(LIKE_ESCAPE_CHARACTER);
+			}
+			builder.append(c);
+		}
+		return builder.toString();
+	}
+
+	@Override
+	public String toString() {
+		return clause + " " + parameters;
+	}
+}
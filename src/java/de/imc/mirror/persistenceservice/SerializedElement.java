@@ -0,0 +1,23 @@
+package de.imc.mirror.persistenceservice;
+
+import org.dom4j.tree.DefaultEntity;
+
+/**
+ * Node wrapping an XML element which is already serialized.
+ * The node is an entity whose text is the serialized element. The dom4j XMLWriter, which serializes outgoing stanzas, resolves entity references by default
+ * (see <code>XMLWriter.setResolveEntityRefs(boolean)</code>) and therefore outputs the text of the node as it is, so the element never has to be parsed.
+ * Any other processing sees an entity instead of an element, so the node may only be used to assemble responses which are serialized without being inspected.
+ * The serialized element has to be well-formed and has to declare all namespaces it uses, as it does not inherit any from the enclosing element.
+ * @author simon.schwantzer(at)im-c.de
+ */
+class SerializedElement extends DefaultEntity {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Creates a node for a serialized element.
+	 * @param elementString Serialized XML element without XML declaration.
+	 */
+	SerializedElement(String elementString) {
+		super("serializedElement", elementString);
+	}
+}
@@ -1,6 +1,12 @@
 package de.imc.mirror.persistenceservice;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 
 import javax.xml.datatype.DatatypeFactory;
@@ -13,6 +19,7 @@ import de.imc.mirror.persistenceservice.SpaceMember.Role;
 
 /**
  * Data model for the service relevant space information.
+ * Members are indexed by their normalized bare-JID, which is the lower case JID without resource.
  * @author simon.schwantzer(at)im-c.de
  *
  */
@@ -22,7 +29,8 @@ public class Space {
 	}
 	
 	private final String id;
-	private final Set<SpaceMember> members;
+	// map of <normalized bare-JID, member>
+	private final Map<String, SpaceMember> members;
 	private PersistenceType persistenceType;
 	private Duration persistenceDuration;
 
@@ -33,20 +41,21 @@ public class Space {
 	 */
 	public Space(String id, DataForm dataForm) {
 		this.id = id;
-		this.members = new HashSet<SpaceMember>();
 		FormField membersFormField = dataForm.getField("spaces#members");
 		FormField moderatorsFormField = dataForm.getField("spaces#moderators");
+		List<String> memberValues = membersFormField != null ? membersFormField.getValues() : Collections.<String>emptyList();
+		List<String> moderatorValues = moderatorsFormField != null ? moderatorsFormField.getValues() : Collections.<String>emptyList();
 		
-		for (String membersFormFieldValue : membersFormField.getValues()) {
-			SpaceMember newMember;
-			if (moderatorsFormField.getValues().contains(membersFormFieldValue)) {
-				newMember = new SpaceMember(membersFormFieldValue, SpaceMember.Role.MODERATOR);
-			} else {
-				newMember = new SpaceMember(membersFormFieldValue, SpaceMember.Role.MEMBER);
-			}
-			this.members.add(newMember);
+		Set<String> moderators = new HashSet<String>(moderatorValues.size() * 2);
+		for (String moderatorValue : moderatorValues) {
+			moderators.add(normalizeJID(moderatorValue));
+		}
+		this.members = new HashMap<String, SpaceMember>(memberValues.size() * 2);
+		for (String membersFormFieldValue : memberValues) {
+			String jid = normalizeJID(membersFormFieldValue).intern();
+			Role role = moderators.contains(jid) ? Role.MODERATOR : Role.MEMBER;
+			this.members.put(jid, new SpaceMember(jid, role));
 		}
-		moderatorsFormField.getValues();
 		
 		persistenceDuration = null; // default
 		persistenceType = PersistenceType.OFF; // default
@@ -80,12 +89,7 @@ public class Space {
 	 * @return <code>true</code> is the user is member of the space, otherwise <code>false</code>.
 	 */
 	public boolean isMember(String bareJIDString) {
-		for (SpaceMember member : members) {
-			if (member.getJIDString().equals(bareJIDString)) {
-				return true;
-			}
-		}
-		return false;
+		return bareJIDString != null && members.containsKey(normalizeJID(bareJIDString));
 	}
 	
 	/**
@@ -94,12 +98,30 @@ public class Space {
 	 * @return <code>true</code> if the user is member and moderator of the space, otherwise <code>false</code>.
 	 */
 	public boolean isModerator(String bareJIDString) {
-		for (SpaceMember member : members) {
-			if (member.getJIDString().equals(bareJIDString) && member.getRole() == Role.MODERATOR) {
-				return true;
-			}
+		if (bareJIDString == null) {
+			return false;
 		}
-		return false;
+		SpaceMember member = members.get(normalizeJID(bareJIDString));
+		return member != null && member.getRole() == Role.MODERATOR;
+	}
+	
+	/**
+	 * Returns the members of the space.
+	 * @return Unmodifiable collection of space members.
+	 */
+	public Collection<SpaceMember> getMembers() {
+		return Collections.unmodifiableCollection(members.values());
+	}
+	
+	/**
+	 * Normalizes a JID for member lookups by removing the resource and converting it to lower case.
+	 * @param jid JID as string.
+	 * @return Normalized bare-JID.
+	 */
+	public static String normalizeJID(String jid) {
+		int resourceIndex = jid.indexOf('/');
+		String bareJID = resourceIndex >= 0 ? jid.substring(0, resourceIndex) : jid;
+		return bareJID.trim().toLowerCase(Locale.ENGLISH);
 	}
 	
 	/**
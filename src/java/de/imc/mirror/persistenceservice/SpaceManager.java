@@ -1,14 +1,20 @@
 package de.imc.mirror.persistenceservice;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.dom4j.DocumentHelper;
 import org.dom4j.Element;
 import org.dom4j.Namespace;
 import org.dom4j.QName;
-import org.jivesoftware.openfire.XMPPServer;
+import org.jivesoftware.util.JiveGlobals;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xmpp.component.AbstractComponent;
@@ -20,20 +26,62 @@ import org.xmpp.packet.JID;
 import org.xmpp.packet.PacketError;
 import org.xmpp.packet.PacketError.Condition;
 
+import de.imc.mirror.persistenceservice.config.CacheConfig;
 import de.imc.mirror.persistenceservice.config.ComponentConfig;
+import de.imc.mirror.persistenceservice.statistics.OperationStatistics;
 import de.imc.mirror.persistenceservice.exceptions.RequestFailureExeption;
 
 /**
  * The space manager is responsible fetching, buffering, and retrieving of spaces.
+ * Spaces are kept in a bounded cache for a limited time. The information that a space does not exist is cached as well.
+ * Concurrent requests for the same uncached space share a single request to the Spaces Service.
  * @author simon.schwantzer(at)im-c.de
  */
-public class SpaceManager {
+public class SpaceManager implements SpaceManagerMBean {
 	private static final Logger log = LoggerFactory.getLogger(SpaceManager.class);
 	
+	/**
+	 * Cache entry for a space or the information that a space does not exist.
+	 */
+	private static class CacheEntry {
+		private final Space space;
+		private final PacketError.Condition errorCondition;
+		private final PacketError.Type errorType;
+		private final long created;
+		private final long expires;
+		
+		private CacheEntry(Space space, long created, long ttl) {
+			this.space = space;
+			this.errorCondition = null;
+			this.errorType = null;
+			this.created = created;
+			this.expires = created + ttl;
+		}
+		
+		private CacheEntry(PacketError error, long created, long ttl) {
+			this.space = null;
+			this.errorCondition = error.getCondition();
+			this.errorType = error.getType();
+			this.created = created;
+			this.expires = created + ttl;
+		}
+	}
+	
 	private AbstractComponent serviceComponent;
-	// map of <spaceId, space>
-	private Map<String, Space> spaces;
+	// map of <spaceId, cache entry>, access ordered
+	private Map<String, CacheEntry> spaces;
+	// incremented whenever a space is removed, responses of requests started before are not cached, guarded by spaces
+	private long removalGeneration;
+	// map of <spaceId, request> for spaces currently requested from the Spaces Service
+	private ConcurrentMap<String, FutureTask<Space>> pendingRequests;
 	private JID spacesServiceJID;
+	private final long ttl;
+	private final long negativeTtl;
+	
+	private final AtomicLong cacheHits;
+	private final AtomicLong cacheMisses;
+	private final AtomicLong coalescedRequests;
+	private final OperationStatistics spaceRequestStatistics;
 	
 	/**
 	 * Creates a new space manager.
@@ -41,8 +89,24 @@ public class SpaceManager {
 	 */
 	public SpaceManager(AbstractComponent serviceComponent) {
 		this.serviceComponent = serviceComponent;
-		this.spaces = new HashMap<String, Space>();
-		this.spacesServiceJID = new JID(ComponentConfig.SPACES_SERVICE_SUBDOMAIN + "." + XMPPServer.getInstance().getServerInfo().getXMPPDomain());
+		final int maxSize = JiveGlobals.getIntProperty(CacheConfig.PROPERTY_SPACE_CACHE_SIZE, CacheConfig.DEFAULT_SPACE_CACHE_SIZE);
+		this.ttl = JiveGlobals.getLongProperty(CacheConfig.PROPERTY_SPACE_CACHE_TTL, CacheConfig.DEFAULT_SPACE_CACHE_TTL);
+		this.negativeTtl = JiveGlobals.getLongProperty(CacheConfig.PROPERTY_SPACE_CACHE_NEGATIVE_TTL, CacheConfig.DEFAULT_SPACE_CACHE_NEGATIVE_TTL);
+		this.spaces = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+				return size() > maxSize;
+			}
+		};
+		this.pendingRequests = new ConcurrentHashMap<String, FutureTask<Space>>();
+		this.cacheHits = new AtomicLong();
+		this.cacheMisses = new AtomicLong();
+		this.coalescedRequests = new AtomicLong();
+		this.spaceRequestStatistics = new OperationStatistics("spaceRequest");
+		// the Spaces Service is registered as component of the same XMPP domain
+		this.spacesServiceJID = new JID(ComponentConfig.SPACES_SERVICE_SUBDOMAIN + "." + ComponentManagerFactory.getComponentManager().getServerName());
 	}
 	
 	/*
@@ -103,7 +167,16 @@ public class SpaceManager {
 		queryIq.setTo(spacesServiceJID);
 		queryIq.setID(UUID.randomUUID().toString());
 		queryIq.setChildElement(queryElement);
-		IQ responseIq = ComponentManagerFactory.getComponentManager().query(serviceComponent, queryIq, 500);
+		long start = System.nanoTime();
+		IQ responseIq = null;
+		try {
+			responseIq = ComponentManagerFactory.getComponentManager().query(serviceComponent, queryIq, 500);
+		} finally {
+			spaceRequestStatistics.record(System.nanoTime() - start, responseIq == null);
+		}
+		if (responseIq == null) {
+			throw new ComponentException("The Spaces Service did not respond to the request for space '" + spaceId + "'.");
+		}
 		switch (responseIq.getType()) {
 		case result:
 			Element queryResponseElement = responseIq.getChildElement();
@@ -129,16 +202,116 @@ public class SpaceManager {
 	 * @throws RequestFailureExeption Failed to retrieve space.
 	 * @throws ComponentException Failed to communicate with the Spaces Service.
 	 */
-	public Space getSpace(String spaceId) throws RequestFailureExeption, ComponentException {
-		Space space = spaces.get(spaceId);
-		if (space != null) {
-			return space;
+	public Space getSpace(final String spaceId) throws RequestFailureExeption, ComponentException {
+		CacheEntry entry;
+		synchronized (spaces) {
+			entry = spaces.get(spaceId);
+		}
+		if (entry != null && entry.expires > System.currentTimeMillis()) {
+			cacheHits.incrementAndGet();
+			return getSpace(spaceId, entry);
+		}
+		cacheMisses.incrementAndGet();
+		
+		// request space from spaces service, concurrent requests for the same space share the response
+		FutureTask<Space> request = pendingRequests.get(spaceId);
+		boolean requestOwner = false;
+		if (request == null) {
+			FutureTask<Space> newRequest = new FutureTask<Space>(new Callable<Space>() {
+				@Override
+				public Space call() throws Exception {
+					return requestSpace(spaceId);
+				}
+			});
+			request = pendingRequests.putIfAbsent(spaceId, newRequest);
+			if (request == null) {
+				request = newRequest;
+				requestOwner = true;
+			} else {
+				coalescedRequests.incrementAndGet();
+			}
 		} else {
-			// request space from spaces service
-			space = requestSpace(spaceId);
-			return space;
+			coalescedRequests.incrementAndGet();
 		}
 		
+		if (requestOwner) {
+			long requestStart = System.currentTimeMillis();
+			long requestGeneration;
+			synchronized (spaces) {
+				requestGeneration = removalGeneration;
+			}
+			request.run();
+			try {
+				Space space = request.get();
+				cache(spaceId, new CacheEntry(space, requestStart, ttl), requestGeneration);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RequestFailureExeption) {
+					PacketError error = ((RequestFailureExeption) e.getCause()).getPacketError();
+					if (error != null && error.getCondition() == Condition.item_not_found) {
+						cache(spaceId, new CacheEntry(error, requestStart, negativeTtl), requestGeneration);
+					}
+				}
+			} catch (InterruptedException e) {
+				// the request was already performed
+			} finally {
+				pendingRequests.remove(spaceId, request);
+			}
+		}
+		
+		try {
+			return request.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RequestFailureExeption) {
+				// Packet errors cannot be shared between responses.
+				PacketError error = ((RequestFailureExeption) cause).getPacketError();
+				if (error != null) {
+					throw new RequestFailureExeption(cause.getMessage(), new PacketError(error.getCondition(), error.getType(), error.getText()));
+				}
+				throw new RequestFailureExeption(cause.getMessage());
+			} else if (cause instanceof ComponentException) {
+				throw new ComponentException(cause.getMessage(), cause);
+			} else {
+				throw new ComponentException("Failed to request space '" + spaceId + "'.", cause);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ComponentException("Interrupted while waiting for space '" + spaceId + "'.", e);
+		}
+	}
+	
+	/**
+	 * Returns the space of a cache entry.
+	 * @param spaceId Space identifier.
+	 * @param entry Valid cache entry.
+	 * @return Space stored in the entry.
+	 * @throws RequestFailureExeption The entry stores the information that the space does not exist.
+	 */
+	private Space getSpace(String spaceId, CacheEntry entry) throws RequestFailureExeption {
+		if (entry.space == null) {
+			PacketError error = new PacketError(entry.errorCondition, entry.errorType, "Space '" + spaceId + "' does not exist.");
+			throw new RequestFailureExeption("Space not found.", error);
+		}
+		return entry.space;
+	}
+	
+	/**
+	 * Adds an entry to the cache unless a more recent entry for the space exists or a space was removed since the request started.
+	 * @param spaceId Space identifier.
+	 * @param entry Entry to add.
+	 * @param requestGeneration Removal generation when the request for the entry was started.
+	 */
+	private void cache(String spaceId, CacheEntry entry, long requestGeneration) {
+		synchronized (spaces) {
+			if (requestGeneration != removalGeneration) {
+				// the response may describe a space deleted in the meantime
+				return;
+			}
+			CacheEntry existingEntry = spaces.get(spaceId);
+			if (existingEntry == null || existingEntry.created <= entry.created) {
+				spaces.put(spaceId, entry);
+			}
+		}
 	}
 	
 	/**
@@ -146,14 +319,93 @@ public class SpaceManager {
 	 * @param space Space to set.
 	 */
 	public void setSpace(Space space) {
-		spaces.put(space.getId(), space);
+		synchronized (spaces) {
+			spaces.put(space.getId(), new CacheEntry(space, System.currentTimeMillis(), ttl));
+		}
 	}
 	
 	/**
-	 * Removes the space from the buffer. 
+	 * Removes the space from the buffer.
+	 * Responses of requests for spaces which are still pending are not added to the buffer, and later lookups do not share them.
 	 * @param spaceId ID of the space to delete.
 	 */
 	public void deleteSpace(String spaceId) {
-		spaces.remove(spaceId);
+		synchronized (spaces) {
+			removalGeneration++;
+			spaces.remove(spaceId);
+		}
+		pendingRequests.remove(spaceId);
+	}
+	
+	/**
+	 * Returns the number of spaces currently cached, including spaces known not to exist.
+	 * @return Number of cache entries.
+	 */
+	@Override
+	public int getCacheSize() {
+		synchronized (spaces) {
+			return spaces.size();
+		}
+	}
+	
+	/**
+	 * Returns the number of space lookups answered from the cache.
+	 * @return Number of cache hits.
+	 */
+	@Override
+	public long getCacheHits() {
+		return cacheHits.get();
+	}
+	
+	/**
+	 * Returns the number of space lookups which were not answered from the cache.
+	 * @return Number of cache misses.
+	 */
+	@Override
+	public long getCacheMisses() {
+		return cacheMisses.get();
+	}
+	
+	/**
+	 * Returns the number of cache misses which waited for a request issued by a concurrent lookup.
+	 * @return Number of coalesced requests.
+	 */
+	@Override
+	public long getCoalescedRequests() {
+		return coalescedRequests.get();
+	}
+	
+	/**
+	 * Returns the number of requests sent to the Spaces Service.
+	 * @return Number of space requests.
+	 */
+	@Override
+	public long getSpaceRequests() {
+		return spaceRequestStatistics.getCount();
+	}
+	
+	/**
+	 * Returns the average round-trip time for requests sent to the Spaces Service.
+	 * @return Average request time in milliseconds.
+	 */
+	@Override
+	public double getAverageSpaceRequestTime() {
+		return spaceRequestStatistics.getAverageLatency();
+	}
+	
+	@Override
+	public double getCacheHitRate() {
+		long hits = cacheHits.get();
+		long lookups = hits + cacheMisses.get();
+		return lookups > 0 ? hits / (double) lookups : 0d;
+	}
+	
+	/**
+	 * Returns the statistics of the requests sent to the Spaces Service.
+	 * Requests without response are recorded as errors.
+	 * @return Request statistics.
+	 */
+	public OperationStatistics getSpaceRequestStatistics() {
+		return spaceRequestStatistics;
 	}
 }
@@ -0,0 +1,49 @@
+package de.imc.mirror.persistenceservice;
+
+/**
+ * Management interface of the space manager.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public interface SpaceManagerMBean {
+	/**
+	 * Returns the number of spaces currently cached, including spaces known not to exist.
+	 * @return Number of cache entries.
+	 */
+	public int getCacheSize();
+	
+	/**
+	 * Returns the number of space lookups answered from the cache.
+	 * @return Number of cache hits.
+	 */
+	public long getCacheHits();
+	
+	/**
+	 * Returns the number of space lookups which were not answered from the cache.
+	 * @return Number of cache misses.
+	 */
+	public long getCacheMisses();
+	
+	/**
+	 * Returns the share of space lookups answered from the cache.
+	 * @return Hit rate between <code>0</code> and <code>1</code>.
+	 */
+	public double getCacheHitRate();
+	
+	/**
+	 * Returns the number of cache misses which waited for a request issued by a concurrent lookup.
+	 * @return Number of coalesced requests.
+	 */
+	public long getCoalescedRequests();
+	
+	/**
+	 * Returns the number of requests sent to the Spaces Service.
+	 * @return Number of space requests.
+	 */
+	public long getSpaceRequests();
+	
+	/**
+	 * Returns the average round-trip time for requests sent to the Spaces Service.
+	 * @return Average request time in milliseconds.
+	 */
+	public double getAverageSpaceRequestTime();
+}
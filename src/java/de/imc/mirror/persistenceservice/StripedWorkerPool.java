@@ -0,0 +1,158 @@
+package de.imc.mirror.persistenceservice;
+
+/**
+ * Worker pool consisting of lanes with a single thread each.
+ * Tasks are assigned to a lane by a key, so that tasks with the same key are processed in the order they were submitted,
+ * while tasks with different keys may be processed in parallel.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public class StripedWorkerPool implements StripedWorkerPoolMBean {
+	private final String name;
+	private final WorkerPool[] lanes;
+
+	/**
+	 * Creates and starts a striped worker pool.
+	 * @param name Name of the pool, used for the thread names.
+	 * @param laneCount Number of lanes.
+	 * @param capacity Maximum number of tasks waiting to be processed, split evenly among the lanes.
+	 */
+	public StripedWorkerPool(String name, int laneCount, int capacity) {
+		this.name = name;
+		this.lanes = new WorkerPool[Math.max(laneCount, 1)];
+		int laneCapacity = Math.max(capacity / lanes.length, 1);
+		for (int i = 0; i < lanes.length; i++) {
+			lanes[i] = new WorkerPool(name + "-" + (i + 1), 1, laneCapacity);
+		}
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the lane for a key.
+	 * @param key Key to return lane for, may be <code>null</code>.
+	 * @return Lane index.
+	 */
+	public int getLane(String key) {
+		return getLane(key, lanes.length);
+	}
+
+	/**
+	 * Assigns a key to one of a number of lanes. Equal keys are always assigned to the same lane.
+	 * @param key Key to return lane for, may be <code>null</code>.
+	 * @param laneCount Number of lanes.
+	 * @return Lane index.
+	 */
+	public static int getLane(String key, int laneCount) {
+		if (key == null) {
+			return 0;
+		}
+		// spread the bits of the hash code, as similar identifiers tend to differ in the last characters only
+		int hash = key.hashCode();
+		hash ^= (hash >>> 20) ^ (hash >>> 12);
+		hash ^= (hash >>> 7) ^ (hash >>> 4);
+		return (hash & 0x7fffffff) % laneCount;
+	}
+
+	/**
+	 * Queues a task in the lane of the given key.
+	 * @param key Key determining the lane, e.g., a space identifier.
+	 * @param task Task to perform.
+	 * @return <code>true</code> if the task was queued, <code>false</code> if the lane is full or the pool is shut down.
+	 */
+	public boolean submit(String key, Runnable task) {
+		return lanes[getLane(key)].submit(task);
+	}
+
+	/**
+	 * Stops accepting tasks and waits until the queued tasks of all lanes are processed.
+	 * @param timeout Maximum time to wait in milliseconds.
+	 */
+	public void shutdown(long timeout) {
+		long deadline = System.currentTimeMillis() + timeout;
+		for (WorkerPool lane : lanes) {
+			lane.shutdown(Math.max(deadline - System.currentTimeMillis(), 1));
+		}
+	}
+
+	@Override
+	public int getThreads() {
+		return lanes.length;
+	}
+
+	@Override
+	public int getActiveThreads() {
+		int activeThreads = 0;
+		for (WorkerPool lane : lanes) {
+			activeThreads += lane.getActiveThreads();
+		}
+		return activeThreads;
+	}
+
+	@Override
+	public int getQueueDepth() {
+		int queueDepth = 0;
+		for (WorkerPool lane : lanes) {
+			queueDepth += lane.getQueueDepth();
+		}
+		return queueDepth;
+	}
+
+	@Override
+	public int getCapacity() {
+		int capacity = 0;
+		for (WorkerPool lane : lanes) {
+			capacity += lane.getCapacity();
+		}
+		return capacity;
+	}
+
+	@Override
+	public long getCompletedRequests() {
+		long completedRequests = 0;
+		for (WorkerPool lane : lanes) {
+			completedRequests += lane.getCompletedRequests();
+		}
+		return completedRequests;
+	}
+
+	@Override
+	public long getRejectedRequests() {
+		long rejectedRequests = 0;
+		for (WorkerPool lane : lanes) {
+			rejectedRequests += lane.getRejectedRequests();
+		}
+		return rejectedRequests;
+	}
+
+	@Override
+	public int[] getLaneQueueDepths() {
+		int[] queueDepths = new int[lanes.length];
+		for (int i = 0; i < lanes.length; i++) {
+			queueDepths[i] = lanes[i].getQueueDepth();
+		}
+		return queueDepths;
+	}
+
+	@Override
+	public long[] getLaneCompletedRequests() {
+		long[] completedRequests = new long[lanes.length];
+		for (int i = 0; i < lanes.length; i++) {
+			completedRequests[i] = lanes[i].getCompletedRequests();
+		}
+		return completedRequests;
+	}
+
+	@Override
+	public double getLaneImbalance() {
+		long total = 0;
+		long max = 0;
+		for (long completedRequests : getLaneCompletedRequests()) {
+			total += completedRequests;
+			max = Math.max(max, completedRequests);
+		}
+		return total > 0 ? max * (double) lanes.length / total : 1d;
+	}
+}
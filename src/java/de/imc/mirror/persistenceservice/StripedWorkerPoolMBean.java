@@ -0,0 +1,25 @@
+package de.imc.mirror.persistenceservice;
+
+/**
+ * Management interface of a worker pool processing requests in ordered lanes.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public interface StripedWorkerPoolMBean extends WorkerPoolMBean {
+	/**
+	 * Returns the number of requests waiting in each lane.
+	 * @return Array with the number of queued requests, indexed by lane.
+	 */
+	public int[] getLaneQueueDepths();
+	
+	/**
+	 * Returns the number of requests processed by each lane.
+	 * @return Array with the number of processed requests, indexed by lane.
+	 */
+	public long[] getLaneCompletedRequests();
+	
+	/**
+	 * Returns the imbalance of the lanes, i.e., the number of requests processed by the busiest lane divided by the average number per lane.
+	 * @return <code>1</code> for a perfectly balanced load, up to the number of lanes if all requests are processed by a single lane.
+	 */
+	public double getLaneImbalance();
+}
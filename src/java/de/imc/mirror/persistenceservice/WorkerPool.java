@@ -0,0 +1,116 @@
+package de.imc.mirror.persistenceservice;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded pool of threads processing requests of one type.
+ * Requests which do not fit into the queue are rejected instead of blocking the caller.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public class WorkerPool implements WorkerPoolMBean {
+	private static final Logger log = LoggerFactory.getLogger(WorkerPool.class);
+
+	private final String name;
+	private final int capacity;
+	private final ThreadPoolExecutor executor;
+	private final AtomicLong rejectedRequests;
+
+	/**
+	 * Creates and starts a worker pool.
+	 * @param name Name of the pool, used for the thread names.
+	 * @param threads Number of threads.
+	 * @param capacity Maximum number of requests waiting to be processed.
+	 */
+	public WorkerPool(final String name, int threads, int capacity) {
+		this.name = name;
+		this.capacity = Math.max(capacity, 1);
+		this.rejectedRequests = new AtomicLong();
+		int poolSize = Math.max(threads, 1);
+		this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(this.capacity), new ThreadFactory() {
+			private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "persistence-" + name + "-" + threadNumber.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Queues a task for processing.
+	 * @param task Task to perform.
+	 * @return <code>true</code> if the task was queued, <code>false</code> if the queue is full or the pool is shut down.
+	 */
+	public boolean submit(Runnable task) {
+		try {
+			executor.execute(task);
+			return true;
+		} catch (RejectedExecutionException e) {
+			rejectedRequests.incrementAndGet();
+			return false;
+		}
+	}
+
+	/**
+	 * Stops accepting tasks and waits until the queued tasks are processed.
+	 * @param timeout Maximum time to wait in milliseconds.
+	 */
+	public void shutdown(long timeout) {
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+				log.warn("Worker pool " + name + " stopped with " + executor.getQueue().size() + " request(s) not processed.");
+				executor.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public int getThreads() {
+		return executor.getCorePoolSize();
+	}
+
+	@Override
+	public int getActiveThreads() {
+		return executor.getActiveCount();
+	}
+
+	@Override
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	@Override
+	public int getCapacity() {
+		return capacity;
+	}
+
+	@Override
+	public long getCompletedRequests() {
+		return executor.getCompletedTaskCount();
+	}
+
+	@Override
+	public long getRejectedRequests() {
+		return rejectedRequests.get();
+	}
+}
@@ -0,0 +1,49 @@
+package de.imc.mirror.persistenceservice;
+
+/**
+ * Management interface of a worker pool processing requests.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public interface WorkerPoolMBean {
+	/**
+	 * Returns the name of the pool.
+	 * @return Pool name.
+	 */
+	public String getName();
+	
+	/**
+	 * Returns the number of threads of the pool.
+	 * @return Number of threads.
+	 */
+	public int getThreads();
+	
+	/**
+	 * Returns the number of threads currently processing a request.
+	 * @return Number of active threads.
+	 */
+	public int getActiveThreads();
+	
+	/**
+	 * Returns the number of requests waiting to be processed.
+	 * @return Number of queued requests.
+	 */
+	public int getQueueDepth();
+	
+	/**
+	 * Returns the maximum number of queued requests.
+	 * @return Capacity of the queue.
+	 */
+	public int getCapacity();
+	
+	/**
+	 * Returns the number of requests processed since the pool was created.
+	 * @return Number of requests.
+	 */
+	public long getCompletedRequests();
+	
+	/**
+	 * Returns the number of requests rejected because the queue was full.
+	 * @return Number of requests.
+	 */
+	public long getRejectedRequests();
+}
@@ -0,0 +1,65 @@
+package de.imc.mirror.persistenceservice.config;
+
+/**
+ * Configuration of the caches used by the persistence service.
+ * All values can be overwritten with the Openfire system property of the same name.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public interface CacheConfig {
+	/**
+	 * Property for the maximum number of spaces kept in the space cache.
+	 */
+	public String PROPERTY_SPACE_CACHE_SIZE = "msf.persistence.spaceCache.maxSize";
+	public int DEFAULT_SPACE_CACHE_SIZE = 5000;
+	
+	/**
+	 * Property for the time in milliseconds a space is cached.
+	 */
+	public String PROPERTY_SPACE_CACHE_TTL = "msf.persistence.spaceCache.ttl";
+	public long DEFAULT_SPACE_CACHE_TTL = 300000;
+	
+	/**
+	 * Property for the time in milliseconds the information that a space does not exist is cached.
+	 */
+	public String PROPERTY_SPACE_CACHE_NEGATIVE_TTL = "msf.persistence.spaceCache.negativeTtl";
+	public long DEFAULT_SPACE_CACHE_NEGATIVE_TTL = 30000;
+	
+	/**
+	 * Property to keep the recent data objects of queried spaces in memory. Disabled by default. Changes take effect when the plugin is restarted.
+	 */
+	public String PROPERTY_HOT_TIER_ENABLED = "msf.persistence.hotTier.enabled";
+	
+	/**
+	 * Property for the estimated memory in bytes the data objects in the hot tier may occupy.
+	 */
+	public String PROPERTY_HOT_TIER_MAX_BYTES = "msf.persistence.hotTier.maxBytes";
+	public long DEFAULT_HOT_TIER_MAX_BYTES = 64 * 1024 * 1024;
+	
+	/**
+	 * Property for the time window in milliseconds of the hot tier. Data objects with a timestamp within the window are kept in memory.
+	 */
+	public String PROPERTY_HOT_TIER_WINDOW = "msf.persistence.hotTier.window";
+	public long DEFAULT_HOT_TIER_WINDOW = 3600000;
+	
+	/**
+	 * Property to cache data objects for lookups by identifier. Disabled by default. Changes take effect when the plugin is restarted.
+	 */
+	public String PROPERTY_OBJECT_CACHE_ENABLED = "msf.persistence.objectCache.enabled";
+	
+	/**
+	 * Property for the estimated memory in bytes the data objects in the object cache may occupy.
+	 */
+	public String PROPERTY_OBJECT_CACHE_MAX_BYTES = "msf.persistence.objectCache.maxBytes";
+	public long DEFAULT_OBJECT_CACHE_MAX_BYTES = 16 * 1024 * 1024;
+	
+	/**
+	 * Property to cache the results of space queries. Disabled by default. Changes take effect when the plugin is restarted.
+	 */
+	public String PROPERTY_RESULT_CACHE_ENABLED = "msf.persistence.resultCache.enabled";
+	
+	/**
+	 * Property for the estimated memory in bytes the query results in the result cache may occupy.
+	 */
+	public String PROPERTY_RESULT_CACHE_MAX_BYTES = "msf.persistence.resultCache.maxBytes";
+	public long DEFAULT_RESULT_CACHE_MAX_BYTES = 32 * 1024 * 1024;
+}
@@ -4,4 +4,10 @@ public interface ComponentConfig {
 	public String SUBDOMAIN = "persistence";
 	public String KEY = "ext#persistence@mirror";
 	public String SPACES_SERVICE_SUBDOMAIN = "spaces";
+	/**
+	 * Number of threads dispatching received packets to the worker pools.
+	 * A single thread hands inserts to the insert lanes in the order they were received, dispatching must therefore never block.
+	 */
+	public int DISPATCH_THREADS = 1;
+	public int MAX_QUEUE_SIZE = 1000;
 }
@@ -0,0 +1,54 @@
+package de.imc.mirror.persistenceservice.config;
+
+/**
+ * Configuration of the deletion of expired data objects.
+ * All values can be overwritten with the Openfire system property of the same name.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public interface ExpirationConfig {
+	/**
+	 * Property for the maximum number of expired data objects deleted within a single transaction.
+	 */
+	public String PROPERTY_CHUNK_SIZE = "msf.persistence.expiration.chunkSize";
+	public int DEFAULT_CHUNK_SIZE = 500;
+	
+	/**
+	 * Property for the time in milliseconds between two cleanup slices.
+	 */
+	public String PROPERTY_SLICE_PERIOD = "msf.persistence.expiration.slicePeriod";
+	public long DEFAULT_SLICE_PERIOD = 60000;
+	
+	/**
+	 * Minimum time in milliseconds between two cleanup slices. Smaller slice periods are raised to this value.
+	 */
+	public long MIN_SLICE_PERIOD = 1000;
+	
+	/**
+	 * Property for the maximum number of data objects deleted within a cleanup slice.
+	 */
+	public String PROPERTY_SLICE_SIZE = "msf.persistence.expiration.sliceSize";
+	public int DEFAULT_SLICE_SIZE = 2000;
+	
+	/**
+	 * Property for the time in milliseconds after which a cleanup slice is stopped.
+	 */
+	public String PROPERTY_SLICE_TIME_BUDGET = "msf.persistence.expiration.sliceTimeBudget";
+	public long DEFAULT_SLICE_TIME_BUDGET = 5000;
+	
+	/**
+	 * Property for the average query latency in milliseconds above which cleanup slices are postponed.
+	 */
+	public String PROPERTY_LATENCY_THRESHOLD = "msf.persistence.expiration.latencyThreshold";
+	public long DEFAULT_LATENCY_THRESHOLD = 250;
+	
+	/**
+	 * Maximum factor the slice period is multiplied with while the query latency is high.
+	 */
+	public int MAX_BACKOFF_FACTOR = 16;
+	
+	/**
+	 * Property storing the position of an unfinished expiration run.
+	 * The value is maintained by the service and consists of the expiration date in milliseconds and the object identifier, separated by a colon.
+	 */
+	public String PROPERTY_CURSOR = "msf.persistence.expiration.cursor";
+}
@@ -0,0 +1,59 @@
+package de.imc.mirror.persistenceservice.config;
+
+/**
+ * Configuration of the write-behind mode for data object inserts.
+ * All values can be overwritten with the Openfire system property of the same name.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public interface IngestConfig {
+	/**
+	 * Property to enable the write-behind mode. Disabled by default.
+	 */
+	public String PROPERTY_WRITE_BEHIND = "msf.persistence.ingest.writeBehind";
+	
+	/**
+	 * Property for the maximum number of data objects waiting to be stored.
+	 */
+	public String PROPERTY_QUEUE_CAPACITY = "msf.persistence.ingest.queueCapacity";
+	public int DEFAULT_QUEUE_CAPACITY = 10000;
+	
+	/**
+	 * Property for the number of threads storing queued data objects.
+	 * Each thread has its own queue. Inserts are assigned to a thread by their space, so that inserts for a space are committed in the order they were received.
+	 */
+	public String PROPERTY_WRITER_THREADS = "msf.persistence.ingest.writerThreads";
+	public int DEFAULT_WRITER_THREADS = 1;
+	
+	/**
+	 * Property for the maximum number of data objects stored within a single transaction.
+	 */
+	public String PROPERTY_MAX_BATCH_SIZE = "msf.persistence.ingest.maxBatchSize";
+	public int DEFAULT_MAX_BATCH_SIZE = 200;
+	
+	/**
+	 * Property for the time in milliseconds a writer waits for further inserts before committing a batch.
+	 */
+	public String PROPERTY_LINGER_TIME = "msf.persistence.ingest.lingerTime";
+	public long DEFAULT_LINGER_TIME = 20;
+	
+	/**
+	 * Maximum time in milliseconds a delete request waits for the queued inserts to be committed.
+	 */
+	public long FLUSH_TIMEOUT = 10000;
+	
+	/**
+	 * Property for the durability of inserts, either {@link #DURABILITY_COMMIT} (default) or {@link #DURABILITY_IMMEDIATE}.
+	 */
+	public String PROPERTY_DURABILITY = "msf.persistence.ingest.durability";
+	
+	/**
+	 * The insert request is answered when the data objects are committed to the database.
+	 */
+	public String DURABILITY_COMMIT = "commit";
+	
+	/**
+	 * The insert request is answered as soon as the data objects are queued.
+	 * Failures when storing the data objects are only logged.
+	 */
+	public String DURABILITY_IMMEDIATE = "immediate";
+}
@@ -0,0 +1,39 @@
+package de.imc.mirror.persistenceservice.config;
+
+/**
+ * Configuration of the embedded log-structured storage engine.
+ * All values can be overwritten with the Openfire system property of the same name.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public interface LogStoreConfig {
+	/**
+	 * Property for the directory the segment files are stored in. By default, the directory <code>persistence-log</code> in the Openfire home directory is used.
+	 */
+	public String PROPERTY_DIRECTORY = "msf.persistence.log.directory";
+	public String DEFAULT_DIRECTORY_NAME = "persistence-log";
+	
+	/**
+	 * Property for the size in bytes after which a new segment file is started.
+	 */
+	public String PROPERTY_SEGMENT_SIZE = "msf.persistence.log.segmentSize";
+	public int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+	
+	/**
+	 * Property for the time in milliseconds between two syncs of the active segment to disk.
+	 * If set to <code>0</code>, the segment is synced before a write is acknowledged.
+	 */
+	public String PROPERTY_SYNC_INTERVAL = "msf.persistence.log.syncInterval";
+	public long DEFAULT_SYNC_INTERVAL = 1000;
+	
+	/**
+	 * Property for the time in milliseconds between two compaction runs. Compaction is disabled for values less or equal 0.
+	 */
+	public String PROPERTY_COMPACTION_INTERVAL = "msf.persistence.log.compactionInterval";
+	public long DEFAULT_COMPACTION_INTERVAL = 300000;
+	
+	/**
+	 * Property for the percentage of deleted, expired or overwritten data in a segment from which on the segment is compacted.
+	 */
+	public String PROPERTY_COMPACTION_THRESHOLD = "msf.persistence.log.compactionThreshold";
+	public int DEFAULT_COMPACTION_THRESHOLD = 50;
+}
@@ -7,4 +7,5 @@ package de.imc.mirror.persistenceservice.config;
 public interface NamespaceConfig {
 	public String SERVICE = "urn:xmpp:spaces:persistence";
 	public String SPACES_EVENT = "urn:xmpp:spaces:event";
+	public String RSM = "http://jabber.org/protocol/rsm";
 }
@@ -0,0 +1,37 @@
+package de.imc.mirror.persistenceservice.config;
+
+/**
+ * Configuration of query processing.
+ * All values can be overwritten with the Openfire system property of the same name.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public interface QueryConfig {
+	/**
+	 * Property for the maximum number of data objects returned in a result page. Larger page sizes requested by clients are reduced.
+	 */
+	public String PROPERTY_MAX_PAGE_SIZE = "msf.persistence.query.maxPageSize";
+	public int DEFAULT_MAX_PAGE_SIZE = 1000;
+	
+	/**
+	 * Property for the number of data objects sent within a single message when a query result is streamed.
+	 */
+	public String PROPERTY_STREAM_CHUNK_SIZE = "msf.persistence.query.streamChunkSize";
+	public int DEFAULT_STREAM_CHUNK_SIZE = 100;
+	
+	/**
+	 * Property for the number of rows fetched from the database at once when a query result is streamed.
+	 */
+	public String PROPERTY_STREAM_FETCH_SIZE = "msf.persistence.query.streamFetchSize";
+	public int DEFAULT_STREAM_FETCH_SIZE = 200;
+	
+	/**
+	 * Property for the processing time in milliseconds above which a query is written to the slow-query log, or <code>0</code> to disable the log.
+	 */
+	public String PROPERTY_SLOW_QUERY_THRESHOLD = "msf.persistence.query.slowQueryThreshold";
+	public long DEFAULT_SLOW_QUERY_THRESHOLD = 1000;
+	
+	/**
+	 * Name of the logger for slow queries. Enabling debug output for this logger writes the traces of all queries.
+	 */
+	public String SLOW_QUERY_LOGGER = "de.imc.mirror.persistenceservice.SlowQueryLog";
+}
@@ -0,0 +1,51 @@
+package de.imc.mirror.persistenceservice.config;
+
+/**
+ * Configuration of the storage format of data objects.
+ * All values can be overwritten with the Openfire system property of the same name.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public interface StorageConfig {
+	/**
+	 * Property for the storage engine, either {@link #ENGINE_DATABASE} (default) or {@link #ENGINE_LOG}. Changes take effect when the plugin is restarted.
+	 */
+	public String PROPERTY_ENGINE = "msf.persistence.storage.engine";
+	
+	/**
+	 * Data objects are stored in the database used by Openfire.
+	 */
+	public String ENGINE_DATABASE = "database";
+	
+	/**
+	 * Data objects are stored in the embedded log-structured storage engine, see {@link LogStoreConfig}.
+	 */
+	public String ENGINE_LOG = "log";
+	
+	/**
+	 * Property to store new data objects compressed. Disabled by default.
+	 */
+	public String PROPERTY_COMPRESSION = "msf.persistence.storage.compression";
+	
+	/**
+	 * Property for a comma separated list of namespaces whose data objects are stored in the binary XML format, regardless of the compression setting.
+	 */
+	public String PROPERTY_BINARY_NAMESPACES = "msf.persistence.storage.binaryNamespaces";
+	
+	/**
+	 * Property for the number of data objects of a namespace used to train a compression dictionary.
+	 */
+	public String PROPERTY_DICTIONARY_SAMPLES = "msf.persistence.storage.dictionarySamples";
+	public int DEFAULT_DICTIONARY_SAMPLES = 200;
+	
+	/**
+	 * Property for the minimum number of stored data objects of a namespace required to train a compression dictionary.
+	 */
+	public String PROPERTY_DICTIONARY_MIN_SAMPLES = "msf.persistence.storage.dictionaryMinSamples";
+	public int DEFAULT_DICTIONARY_MIN_SAMPLES = 20;
+	
+	/**
+	 * Property for the number of data objects rewritten within a single transaction when stored data objects are compressed.
+	 */
+	public String PROPERTY_COMPRESSION_CHUNK_SIZE = "msf.persistence.storage.compressionChunkSize";
+	public int DEFAULT_COMPRESSION_CHUNK_SIZE = 200;
+}
@@ -0,0 +1,46 @@
+package de.imc.mirror.persistenceservice.config;
+
+/**
+ * Configuration of the worker pools processing requests.
+ * Inserts, queries and deletes are processed by separate pools, so that slow queries cannot delay inserts.
+ * All values can be overwritten with the Openfire system property of the same name. Changes take effect when the plugin is restarted.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public interface WorkerConfig {
+	/**
+	 * Property for the number of lanes processing insert requests.
+	 * Each lane has a single thread. Inserts are assigned to a lane by their space, so that inserts for a space are stored in the order they were received.
+	 */
+	public String PROPERTY_INSERT_LANES = "msf.persistence.workers.insert.lanes";
+	public int DEFAULT_INSERT_LANES = 4;
+	
+	/**
+	 * Property for the maximum number of insert requests waiting to be processed, split evenly among the lanes.
+	 */
+	public String PROPERTY_INSERT_QUEUE_SIZE = "msf.persistence.workers.insert.queueSize";
+	public int DEFAULT_INSERT_QUEUE_SIZE = 1000;
+	
+	/**
+	 * Property for the number of threads processing queries.
+	 */
+	public String PROPERTY_QUERY_THREADS = "msf.persistence.workers.query.threads";
+	public int DEFAULT_QUERY_THREADS = 8;
+	
+	/**
+	 * Property for the maximum number of queries waiting to be processed.
+	 */
+	public String PROPERTY_QUERY_QUEUE_SIZE = "msf.persistence.workers.query.queueSize";
+	public int DEFAULT_QUERY_QUEUE_SIZE = 200;
+	
+	/**
+	 * Property for the number of threads processing delete requests.
+	 */
+	public String PROPERTY_DELETE_THREADS = "msf.persistence.workers.delete.threads";
+	public int DEFAULT_DELETE_THREADS = 2;
+	
+	/**
+	 * Property for the maximum number of delete requests waiting to be processed.
+	 */
+	public String PROPERTY_DELETE_QUEUE_SIZE = "msf.persistence.workers.delete.queueSize";
+	public int DEFAULT_DELETE_QUEUE_SIZE = 200;
+}
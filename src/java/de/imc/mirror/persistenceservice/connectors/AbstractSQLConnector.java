@@ -1,55 +1,550 @@
 package de.imc.mirror.persistenceservice.connectors;
 
+import java.nio.charset.Charset;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
+import java.util.NavigableMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
 
 import org.dom4j.DocumentException;
 import org.jivesoftware.database.DbConnectionManager;
+import org.jivesoftware.util.JiveGlobals;
+import org.jivesoftware.util.TaskEngine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.imc.mirror.persistenceservice.DataObject;
+import de.imc.mirror.persistenceservice.DataObjectHandler;
+import de.imc.mirror.persistenceservice.DataObjectMetadata;
 import de.imc.mirror.persistenceservice.DatabaseConnector;
 import de.imc.mirror.persistenceservice.FilterSet;
+import de.imc.mirror.persistenceservice.PageCursor;
+import de.imc.mirror.persistenceservice.PageRequest;
+import de.imc.mirror.persistenceservice.ResultPage;
+import de.imc.mirror.persistenceservice.SQLCondition;
 import de.imc.mirror.persistenceservice.Space;
+import de.imc.mirror.persistenceservice.config.ExpirationConfig;
+import de.imc.mirror.persistenceservice.config.QueryConfig;
+import de.imc.mirror.persistenceservice.config.StorageConfig;
 import de.imc.mirror.persistenceservice.exceptions.DBAccessException;
 
+/**
+ * Base implementation for connectors using the database connections provided by Openfire.
+ * Database engines which require a special handling of the XML column may override the related methods.
+ * @author simon.schwantzer(at)im-c.de
+ */
 public abstract class AbstractSQLConnector implements DatabaseConnector {
 	private static final Logger log = LoggerFactory.getLogger(AbstractSQLConnector.class);
 
 	public static final String TABLE_DATA = "ofSpacePersistenceData";
 	public static final String TABLE_DEPENDENCIES = "ofSpacePersistenceDependencies";
+	public static final String TABLE_DICTIONARIES = "ofSpacePersistenceDict";
 	
 	public static final String COLUMN_OBJECTID = "objectId";
 	public static final String COLUMN_SPACEID = "spaceId";
 	public static final String COLUMN_EXPIRATIONDATE = "expirationDate";
 	public static final String COLUMN_XMLELEMENT = "xmlElement";
+	public static final String COLUMN_XMLCOMPRESSED = "xmlCompressed";
+	public static final String COLUMN_NAMESPACE = "namespace";
+	public static final String COLUMN_MODELVERSION = "modelVersion";
+	public static final String COLUMN_TIMESTAMP = "objectTimestamp";
+	public static final String COLUMN_PUBLISHER = "publisher";
+	public static final String COLUMN_REF = "objectRef";
+	public static final String COLUMN_METADATA_EXTRACTED = "metadataExtracted";
 	
 	public static final String COLUMN_REFERRER = "referrer";
 	public static final String COLUMN_REFERENCE = "reference";
 	
-	private static final String SQL_SELECT_BY_SPACE = "SELECT * from " + TABLE_DATA + " WHERE " + COLUMN_SPACEID + " = ?";
-	private static final String SQL_SELECT_BY_OBJECT_IDS = "SELECT * from " + TABLE_DATA + " WHERE " + COLUMN_OBJECTID + " IN ";
-	private static final String SQL_SELECT_BY_OBJECT_ID = "SELECT * from " + TABLE_DATA + " WHERE " + COLUMN_OBJECTID + " = ?";
-	private static final String SQL_SELECT_REFERRING_OBJECTS = "SELECT " + COLUMN_REFERRER + "," + COLUMN_REFERENCE + " FROM " + TABLE_DEPENDENCIES;
-	private static final String SQL_INSERT_DATA_OBJECT = "INSERT INTO " + TABLE_DATA + " (" + COLUMN_OBJECTID + "," + COLUMN_SPACEID + "," + COLUMN_EXPIRATIONDATE + "," + COLUMN_XMLELEMENT + ") VALUES (?,?,?,?)";
+	public static final String COLUMN_DICTID = "dictId";
+	public static final String COLUMN_DICTDATA = "dictData";
+	public static final String COLUMN_CREATIONDATE = "creationDate";
+	
+	/**
+	 * Value of the XML element column for data objects stored in the binary payload column. The column is not nullable and typed as XML for some database engines.
+	 */
+	public static final String COMPRESSED_PLACEHOLDER = "<compressed/>";
+	
 	private static final String SQL_INSERT_DEPENDENCIES = "INSERT INTO " + TABLE_DEPENDENCIES + " (" + COLUMN_REFERRER + "," + COLUMN_REFERENCE + "," + COLUMN_SPACEID + ") VALUES (?,?,?)";
 	private static final String SQL_DELETE_OBJECTS_OF_SPACE = "DELETE FROM " + TABLE_DATA + " WHERE " + COLUMN_SPACEID + " = ?";
 	private static final String SQL_DELETE_DEPENDENCIES_BY_SPACE = "DELETE FROM " + TABLE_DEPENDENCIES + " WHERE " + COLUMN_SPACEID + " = ?";
 	private static final String SQL_DELETE_OBJECTS = "DELETE FROM " + TABLE_DATA + " WHERE " + COLUMN_OBJECTID + " IN ";
 	private static final String SQL_DELETE_DEPENDENCIES_OF_OBJECTS = "DELETE FROM " + TABLE_DEPENDENCIES + " WHERE " + COLUMN_REFERRER + " IN ";
-	private static final String SQL_SPACE_BY_OBJECT = "SELECT " + COLUMN_SPACEID + " FROM " + TABLE_DATA + " WHERE " + COLUMN_OBJECTID + " = ?";
-	private static final String SQL_SELECT_EXPIRED_OBJECTS = "SELECT " + COLUMN_OBJECTID + " FROM " + TABLE_DATA + " WHERE " + COLUMN_EXPIRATIONDATE + " < ?";
+	private static final String SQL_SELECT_METADATA_BY_OBJECT_IDS = "SELECT " + COLUMN_OBJECTID + "," + COLUMN_SPACEID + "," + COLUMN_METADATA_EXTRACTED + "," + COLUMN_PUBLISHER + " FROM " + TABLE_DATA + " WHERE " + COLUMN_OBJECTID + " IN ";
+	private static final String SQL_SELECT_UNREFERENCED_EXPIRED_OBJECTS = "SELECT " + COLUMN_OBJECTID + "," + COLUMN_EXPIRATIONDATE + " FROM " + TABLE_DATA + " WHERE " + COLUMN_EXPIRATIONDATE + " < ? AND NOT EXISTS (SELECT 1 FROM " + TABLE_DEPENDENCIES + " WHERE " + TABLE_DEPENDENCIES + "." + COLUMN_REFERENCE + " = " + TABLE_DATA + "." + COLUMN_OBJECTID + ")";
+	private static final String SQL_EXPIRATION_CURSOR_CONDITION = " AND (" + COLUMN_EXPIRATIONDATE + " > ? OR (" + COLUMN_EXPIRATIONDATE + " = ? AND " + COLUMN_OBJECTID + " > ?))";
+	private static final String SQL_EXPIRATION_ORDER = " ORDER BY " + COLUMN_EXPIRATIONDATE + "," + COLUMN_OBJECTID;
+	private static final String SQL_DELETE_UNREFERENCED_OBJECTS = "DELETE FROM " + TABLE_DATA + " WHERE NOT EXISTS (SELECT 1 FROM " + TABLE_DEPENDENCIES + " WHERE " + TABLE_DEPENDENCIES + "." + COLUMN_REFERENCE + " = " + TABLE_DATA + "." + COLUMN_OBJECTID + ") AND " + COLUMN_OBJECTID + " IN ";
+	private static final String SQL_DELETE_DEPENDENCIES_OF_DELETED_OBJECTS = "DELETE FROM " + TABLE_DEPENDENCIES + " WHERE NOT EXISTS (SELECT 1 FROM " + TABLE_DATA + " WHERE " + TABLE_DATA + "." + COLUMN_OBJECTID + " = " + TABLE_DEPENDENCIES + "." + COLUMN_REFERRER + ") AND " + COLUMN_REFERRER + " IN ";
+	private static final String SQL_SELECT_DICTIONARIES = "SELECT " + COLUMN_DICTID + "," + COLUMN_NAMESPACE + "," + COLUMN_DICTDATA + " FROM " + TABLE_DICTIONARIES + " ORDER BY " + COLUMN_DICTID;
+	private static final String SQL_SELECT_MAX_DICTIONARY_ID = "SELECT MAX(" + COLUMN_DICTID + ") FROM " + TABLE_DICTIONARIES;
+	private static final String SQL_INSERT_DICTIONARY = "INSERT INTO " + TABLE_DICTIONARIES + " (" + COLUMN_DICTID + "," + COLUMN_NAMESPACE + "," + COLUMN_DICTDATA + "," + COLUMN_CREATIONDATE + ") VALUES (?,?,?,?)";
+	private static final String SQL_SELECT_NAMESPACES = "SELECT DISTINCT " + COLUMN_NAMESPACE + " FROM " + TABLE_DATA + " WHERE " + COLUMN_NAMESPACE + " IS NOT NULL";
+	private static final String SQL_MARK_METADATA_EXTRACTED = "UPDATE " + TABLE_DATA + " SET " + COLUMN_METADATA_EXTRACTED + " = ? WHERE " + COLUMN_OBJECTID + " = ?";
+	private static final String SQL_UPDATE_METADATA = "UPDATE " + TABLE_DATA + " SET " + COLUMN_NAMESPACE + " = ?," + COLUMN_MODELVERSION + " = ?," + COLUMN_TIMESTAMP + " = ?," + COLUMN_PUBLISHER + " = ?," + COLUMN_REF + " = ?," + COLUMN_METADATA_EXTRACTED + " = ? WHERE " + COLUMN_OBJECTID + " = ?";
+	
+	/**
+	 * Number of data objects processed with a single request when extracting the metadata of data objects stored with a previous version.
+	 */
+	private static final int METADATA_EXTRACTION_CHUNK_SIZE = 500;
+	
+	/**
+	 * Delay in milliseconds before the metadata extraction is retried after a failure.
+	 */
+	private static final long METADATA_EXTRACTION_RETRY_DELAY = 60000;
+	
+	/**
+	 * Maximum number of place holders in an IN clause. Larger sets are split into multiple statements.
+	 */
+	private static final int IN_CLAUSE_CHUNK_SIZE = 500;
+	
+	/**
+	 * Maximum length in bytes of the metadata string columns.
+	 */
+	private static final int METADATA_COLUMN_LENGTH = 255;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/**
+	 * Value of the metadata flag for data objects whose metadata is extracted.
+	 */
+	private static final int METADATA_EXTRACTED = 1;
+	
+	/**
+	 * Value of the metadata flag for data objects whose metadata exceeds the columns. Only the timestamp is stored, the filters are evaluated in Java.
+	 */
+	private static final int METADATA_OVERSIZED = 0;
+	
+	private final String sqlSelectColumns;
+	private final String sqlSelectBySpace;
+	private final String sqlSelectByObjectIds;
+	private final String sqlSelectByObjectId;
+	private final String sqlSelectWithoutMetadata;
+	private final String sqlInsertDataObject;
+	private final String sqlSelectSamples;
+	private final String sqlSelectUncompressed;
+	private final String sqlUpdateCompressed;
+	private final PayloadCodec payloadCodec;
+	private volatile boolean dictionariesLoaded;
+	private volatile boolean metadataComplete;
+	// identifier of the last data object scanned by the compression, reset when the scan is complete
+	private volatile String compressionPosition = "";
+	
+	/**
+	 * Creates the connector and prepares the SQL statements depending on the XML handling of the database engine.
+	 */
+	public AbstractSQLConnector() {
+		String selectColumns = "SELECT " + COLUMN_OBJECTID + "," + COLUMN_SPACEID + "," + COLUMN_EXPIRATIONDATE + "," + COLUMN_NAMESPACE + "," + COLUMN_TIMESTAMP + "," + COLUMN_METADATA_EXTRACTED + "," + getXMLElementSelectExpression() + "," + COLUMN_XMLCOMPRESSED + " FROM " + TABLE_DATA;
+		sqlSelectColumns = selectColumns;
+		sqlSelectBySpace = selectColumns + " WHERE " + COLUMN_SPACEID + " = ?";
+		sqlSelectByObjectIds = selectColumns + " WHERE " + COLUMN_OBJECTID + " IN ";
+		sqlSelectByObjectId = selectColumns + " WHERE " + COLUMN_OBJECTID + " = ?";
+		sqlSelectWithoutMetadata = selectColumns + " WHERE " + COLUMN_METADATA_EXTRACTED + " IS NULL AND " + COLUMN_OBJECTID + " > ? ORDER BY " + COLUMN_OBJECTID;
+		sqlInsertDataObject = "INSERT INTO " + TABLE_DATA + " (" + COLUMN_OBJECTID + "," + COLUMN_SPACEID + "," + COLUMN_EXPIRATIONDATE + "," + COLUMN_XMLELEMENT + "," + COLUMN_NAMESPACE + "," + COLUMN_MODELVERSION + "," + COLUMN_TIMESTAMP + "," + COLUMN_PUBLISHER + "," + COLUMN_REF + "," + COLUMN_METADATA_EXTRACTED + "," + COLUMN_XMLCOMPRESSED + ") VALUES (?,?,?," + getXMLElementInsertExpression() + ",?,?,?,?,?,?,?)";
+		sqlSelectSamples = selectColumns + " WHERE " + COLUMN_NAMESPACE + " = ? ORDER BY " + COLUMN_TIMESTAMP + " DESC";
+		sqlSelectUncompressed = selectColumns + " WHERE " + COLUMN_XMLCOMPRESSED + " IS NULL AND " + COLUMN_OBJECTID + " > ? ORDER BY " + COLUMN_OBJECTID;
+		sqlUpdateCompressed = "UPDATE " + TABLE_DATA + " SET " + COLUMN_XMLCOMPRESSED + " = ?," + COLUMN_XMLELEMENT + " = " + getXMLElementInsertExpression() + " WHERE " + COLUMN_OBJECTID + " = ?";
+		payloadCodec = new PayloadCodec();
+	}
+	
+	/**
+	 * Starts the extraction of metadata for data objects stored with a previous version of the service.
+	 * Connectors overriding this method have to call it.
+	 */
+	@Override
+	public void initialize() {
+		TaskEngine.getInstance().submit(createMetadataExtractionTask());
+	}
+	
+	/**
+	 * Creates a task extracting the missing metadata. The task schedules a new one if the extraction fails.
+	 * @return Task to submit or schedule.
+	 */
+	private TimerTask createMetadataExtractionTask() {
+		return new TimerTask() {
+			@Override
+			public void run() {
+				try {
+					int objectsUpdated = extractMissingMetadata();
+					if (objectsUpdated > 0) {
+						log.info("Extracted metadata for " + objectsUpdated + " stored data object(s).");
+					}
+				} catch (DBAccessException e) {
+					log.warn("Failed to extract metadata of stored data objects. Paged queries are ordered in memory until the extraction is completed, retrying in " + METADATA_EXTRACTION_RETRY_DELAY / 1000 + " seconds.", e);
+					TaskEngine.getInstance().schedule(createMetadataExtractionTask(), METADATA_EXTRACTION_RETRY_DELAY);
+				}
+			}
+		};
+	}
+	
+	/**
+	 * Returns the expression to select the XML element column.
+	 * The column has to be retrievable as {@link #COLUMN_XMLELEMENT}.
+	 * @return SQL expression. The default implementation returns the column name.
+	 */
+	protected String getXMLElementSelectExpression() {
+		return COLUMN_XMLELEMENT;
+	}
+	
+	/**
+	 * Returns the expression to insert a value into the XML element column.
+	 * @return SQL expression containing a single place holder. The default implementation returns "?".
+	 */
+	protected String getXMLElementInsertExpression() {
+		return "?";
+	}
+	
+	/**
+	 * Reads the XML element string from the current row of a result set.
+	 * @param result Result set to read from.
+	 * @return XML element string.
+	 * @throws SQLException Failed to read the column.
+	 */
+	protected String getXMLElement(ResultSet result) throws SQLException {
+		return result.getString(COLUMN_XMLELEMENT);
+	}
+	
+	/**
+	 * Sets the XML element string as parameter of a statement.
+	 * @param connection Connection the statement was created with.
+	 * @param stmt Statement to set parameter for.
+	 * @param index Index of the parameter.
+	 * @param xmlElementString XML element string.
+	 * @throws SQLException Failed to set the parameter.
+	 */
+	protected void setXMLElement(Connection connection, PreparedStatement stmt, int index, String xmlElementString) throws SQLException {
+		stmt.setString(index, xmlElementString);
+	}
+	
+	/**
+	 * Reads the compressed data object from the current row of a result set.
+	 * @param result Result set to read from.
+	 * @return Compressed data object or <code>null</code> if the data object is stored uncompressed.
+	 * @throws SQLException Failed to read the column.
+	 */
+	protected byte[] getXMLCompressed(ResultSet result) throws SQLException {
+		return result.getBytes(COLUMN_XMLCOMPRESSED);
+	}
+	
+	/**
+	 * Sets a compressed data object as parameter of a statement.
+	 * @param stmt Statement to set parameter for.
+	 * @param index Index of the parameter.
+	 * @param compressed Compressed data object or <code>null</code> if the data object is stored uncompressed.
+	 * @throws SQLException Failed to set the parameter.
+	 */
+	protected void setXMLCompressed(PreparedStatement stmt, int index, byte[] compressed) throws SQLException {
+		if (compressed != null) {
+			stmt.setBytes(index, compressed);
+		} else {
+			stmt.setNull(index, Types.VARBINARY);
+		}
+	}
+	
+	/**
+	 * Reads the XML string of the data object of the current row, decoding it if required.
+	 * @param result Result set to read from.
+	 * @return XML element string.
+	 * @throws SQLException Failed to read the columns or to decode the data object.
+	 */
+	protected String readXMLElementString(ResultSet result) throws SQLException {
+		byte[] compressed = getXMLCompressed(result);
+		if (compressed == null) {
+			return getXMLElement(result);
+		}
+		try {
+			if (PayloadCodec.getFormat(compressed) == PayloadCodec.FORMAT_BINARY_XML) {
+				return BinaryXMLCodec.decodeString(compressed);
+			}
+			int dictionaryId = PayloadCodec.getDictionaryId(compressed);
+			if (dictionaryId != 0 && !payloadCodec.hasDictionary(dictionaryId)) {
+				loadDictionaries();
+			}
+			return payloadCodec.decompress(compressed);
+		} catch (DataFormatException e) {
+			throw new SQLException("Failed to decompress data object " + result.getString(COLUMN_OBJECTID) + ".", e);
+		}
+	}
+	
+	/**
+	 * Loads all compression dictionaries from the database.
+	 * @throws SQLException Failed to read the dictionaries.
+	 */
+	private synchronized void loadDictionaries() throws SQLException {
+		Connection connection = null;
+		PreparedStatement stmt = null;
+		ResultSet result = null;
+		try {
+			connection = DbConnectionManager.getConnection();
+			stmt = connection.prepareStatement(SQL_SELECT_DICTIONARIES);
+			result = stmt.executeQuery();
+			while (result.next()) {
+				payloadCodec.addDictionary(result.getInt(COLUMN_DICTID), result.getString(COLUMN_NAMESPACE), result.getBytes(COLUMN_DICTDATA));
+			}
+			dictionariesLoaded = true;
+		} finally {
+			DbConnectionManager.closeConnection(result, stmt, connection);
+		}
+	}
+	
+	/**
+	 * Returns the namespaces whose data objects are stored in the binary XML format.
+	 * @return Set of namespace URIs, empty if the binary format is not used.
+	 */
+	private Set<String> getBinaryNamespaces() {
+		Set<String> binaryNamespaces = new HashSet<String>();
+		String property = JiveGlobals.getProperty(StorageConfig.PROPERTY_BINARY_NAMESPACES);
+		if (property != null) {
+			for (String namespace : property.split(",")) {
+				if (!namespace.trim().isEmpty()) {
+					binaryNamespaces.add(namespace.trim());
+				}
+			}
+		}
+		return binaryNamespaces;
+	}
+	
+	/**
+	 * Encodes a data object for storage in the binary payload column.
+	 * @param dataObject Data object to encode.
+	 * @param compression <code>true</code> if data objects are compressed.
+	 * @param binaryNamespaces Namespaces whose data objects are stored in the binary XML format.
+	 * @return Binary payload, or <code>null</code> if the data object is stored as text.
+	 * @throws SQLException Failed to load the compression dictionaries.
+	 * @throws DocumentException Failed to read the data object.
+	 */
+	private byte[] encodePayload(DataObject dataObject, boolean compression, Set<String> binaryNamespaces) throws SQLException, DocumentException {
+		String namespace = dataObject.getNamespace();
+		if (binaryNamespaces.contains(namespace)) {
+			return BinaryXMLCodec.encode(dataObject.toString());
+		} else if (compression) {
+			if (!dictionariesLoaded) {
+				loadDictionaries();
+			}
+			return payloadCodec.compress(dataObject.toString(), namespace);
+		} else {
+			return null;
+		}
+	}
+	
+	/**
+	 * Returns the fetch size for result sets which are streamed.
+	 * @return Number of rows to fetch at once. The default implementation returns the configured stream fetch size.
+	 */
+	protected int getStreamingFetchSize() {
+		return JiveGlobals.getIntProperty(QueryConfig.PROPERTY_STREAM_FETCH_SIZE, QueryConfig.DEFAULT_STREAM_FETCH_SIZE);
+	}
+	
+	/**
+	 * Creates a data object for the current row of a result set.
+	 * @param result Result set to read from.
+	 * @return Data object.
+	 * @throws SQLException Failed to read the row.
+	 */
+	protected DataObject createDataObject(ResultSet result) throws SQLException {
+		String spaceId = result.getString(COLUMN_SPACEID);
+		Timestamp expirationDate = result.getTimestamp(COLUMN_EXPIRATIONDATE);
+		byte[] payload = getXMLCompressed(result);
+		DataObject dataObject;
+		if (payload != null && payload.length > 0 && payload[0] == PayloadCodec.FORMAT_BINARY_XML) {
+			try {
+				dataObject = BinaryXMLCodec.decodeDataObject(payload, spaceId);
+			} catch (DataFormatException e) {
+				throw new SQLException("Failed to decode data object " + result.getString(COLUMN_OBJECTID) + ".", e);
+			}
+		} else {
+			dataObject = new DataObject(readXMLElementString(result), spaceId, result.getString(COLUMN_NAMESPACE));
+		}
+		if (expirationDate != null) {
+			dataObject.setExpirationDate(new java.util.Date(expirationDate.getTime()));
+		}
+		return dataObject;
+	}
+	
+	/**
+	 * Checks if the data object of the current row of a result set satisfies a filter set.
+	 * If the metadata of the row was extracted, the conditions of the filter set were already applied by the database.
+	 * The metadata is marked as extracted by a separate column, as some database engines store empty strings as <code>NULL</code>.
+	 * Rows with metadata exceeding the columns are filtered in Java as well.
+	 * @param result Result set to read from.
+	 * @param dataObject Data object created for the current row.
+	 * @param filterSet Filter set to apply.
+	 * @return <code>true</code> if the data object satisfies the filter set, otherwise <code>false</code>.
+	 * @throws SQLException Failed to read the row.
+	 */
+	protected boolean isValid(ResultSet result, DataObject dataObject, FilterSet filterSet) throws SQLException {
+		if (result.getInt(COLUMN_METADATA_EXTRACTED) == METADATA_EXTRACTED) {
+			return filterSet.isValidForJavaFilters(dataObject);
+		} else {
+			return filterSet.isValid(dataObject);
+		}
+	}
+	
+	/**
+	 * Appends the SQL condition of a filter set to a statement.
+	 * Rows without extracted metadata or with metadata exceeding the columns always pass the condition, as they have to be filtered after retrieval.
+	 * @param sql SQL statement with a WHERE clause.
+	 * @param condition Condition to append, may be <code>null</code>.
+	 * @return SQL statement.
+	 */
+	protected String appendCondition(String sql, SQLCondition condition) {
+		if (condition == null) {
+			return sql;
+		}
+		return sql + " AND (" + COLUMN_METADATA_EXTRACTED + " IS NULL OR " + COLUMN_METADATA_EXTRACTED + " = " + METADATA_OVERSIZED + " OR (" + condition.getClause(getCaseSensitiveParameterExpression()) + "))";
+	}
+	
+	/**
+	 * Returns the expression to compare a string parameter case sensitive, as the filters do.
+	 * Database engines with case insensitive default collations have to override this method.
+	 * @return SQL expression containing a single place holder.
+	 * @see SQLCondition#CASE_SENSITIVE_PARAMETER
+	 */
+	protected String getCaseSensitiveParameterExpression() {
+		return "?";
+	}
+	
+	/**
+	 * Sets the parameters for the metadata columns of a data object, including the flag marking the metadata as extracted.
+	 * If a string value exceeds its column, no string values are stored and the data object is marked to be filtered in Java.
+	 * @param stmt Statement to set parameters for.
+	 * @param startIndex Index for the namespace parameter. The following five parameters are set as well.
+	 * @param dataObject Data object to extract metadata from.
+	 * @throws SQLException Failed to set parameters.
+	 * @throws DocumentException Failed to parse the data object.
+	 */
+	protected void setMetadata(PreparedStatement stmt, int startIndex, DataObject dataObject) throws SQLException, DocumentException {
+		String[] values = {dataObject.getNamespace(), dataObject.getModelVersion(), dataObject.getPublisher(), dataObject.getRef()};
+		boolean oversized = false;
+		for (String value : values) {
+			oversized |= !fitsMetadataColumn(value);
+		}
+		if (oversized) {
+			values = new String[values.length];
+		}
+		stmt.setString(startIndex, values[0]);
+		stmt.setString(startIndex + 1, values[1]);
+		java.util.Date timestamp;
+		try {
+			timestamp = dataObject.getTimestamp();
+		} catch (DocumentException e) {
+			// Invalid timestamps are handled as missing ones, i.e., they never pass a period filter.
+			timestamp = null;
+		}
+		if (timestamp != null) {
+			stmt.setLong(startIndex + 2, timestamp.getTime());
+		} else {
+			stmt.setNull(startIndex + 2, Types.BIGINT);
+		}
+		stmt.setString(startIndex + 3, values[2]);
+		stmt.setString(startIndex + 4, values[3]);
+		stmt.setInt(startIndex + 5, oversized ? METADATA_OVERSIZED : METADATA_EXTRACTED);
+	}
+	
+	/**
+	 * Checks if a string value fits into a metadata column.
+	 * The length is checked in bytes of the UTF-8 encoding, as some database engines limit the columns by bytes.
+	 * @param value Value to check, may be <code>null</code>.
+	 * @return <code>true</code> if the value fits into the column, otherwise <code>false</code>.
+	 */
+	private static boolean fitsMetadataColumn(String value) {
+		if (value == null || value.length() <= METADATA_COLUMN_LENGTH / 4) {
+			return true;
+		}
+		return value.length() <= METADATA_COLUMN_LENGTH && value.getBytes(UTF8).length <= METADATA_COLUMN_LENGTH;
+	}
+	
+	/**
+	 * Extracts the metadata for all data objects stored without.
+	 * Data objects which cannot be parsed are marked as extracted without metadata, so they never pass a filter condition.
+	 * Data objects whose metadata cannot be stored are marked to be filtered in Java.
+	 * Paged queries are ordered by the extracted timestamps once all data objects are processed.
+	 * @return Number of data objects updated.
+	 * @throws DBAccessException Failed to access the database, or failed to mark at least one data object.
+	 */
+	public int extractMissingMetadata() throws DBAccessException {
+		int objectsUpdated = 0;
+		int objectsFailed = 0;
+		SQLException markFailure = null;
+		String lastObjectId = "";
+		boolean pending = false;
+		boolean done = false;
+		while (!done) {
+			Map<String, DataObject> dataObjects = new HashMap<String, DataObject>();
+			Connection connection = null;
+			PreparedStatement stmt = null;
+			ResultSet result = null;
+			try {
+				connection = DbConnectionManager.getConnection();
+				stmt = connection.prepareStatement(sqlSelectWithoutMetadata);
+				stmt.setMaxRows(METADATA_EXTRACTION_CHUNK_SIZE);
+				stmt.setString(1, lastObjectId);
+				result = stmt.executeQuery();
+				while (result.next()) {
+					lastObjectId = result.getString(COLUMN_OBJECTID);
+					dataObjects.put(lastObjectId, createDataObject(result));
+				}
+				result.close();
+				stmt.close();
+				done = dataObjects.size() < METADATA_EXTRACTION_CHUNK_SIZE;
+				if (!pending && !dataObjects.isEmpty()) {
+					pending = true;
+					log.info("Extracting metadata of data objects stored with a previous version. Paged queries are ordered in memory until the extraction is completed.");
+				}
+				
+				stmt = connection.prepareStatement(SQL_UPDATE_METADATA);
+				Map<String, Integer> objectsToMark = new HashMap<String, Integer>();
+				for (Map.Entry<String, DataObject> entry : dataObjects.entrySet()) {
+					try {
+						setMetadata(stmt, 1, entry.getValue());
+						stmt.setString(7, entry.getKey());
+						objectsUpdated += stmt.executeUpdate();
+					} catch (DocumentException e) {
+						log.warn("Failed to parse stored data object " + entry.getKey() + ".");
+						objectsToMark.put(entry.getKey(), METADATA_EXTRACTED);
+					} catch (SQLException e) {
+						log.warn("Failed to store metadata of data object " + entry.getKey() + ", it is filtered in Java.", e);
+						objectsToMark.put(entry.getKey(), METADATA_OVERSIZED);
+					}
+				}
+				stmt.close();
+				
+				stmt = connection.prepareStatement(SQL_MARK_METADATA_EXTRACTED);
+				for (Map.Entry<String, Integer> entry : objectsToMark.entrySet()) {
+					try {
+						stmt.setInt(1, entry.getValue());
+						stmt.setString(2, entry.getKey());
+						stmt.executeUpdate();
+					} catch (SQLException e) {
+						log.warn("Failed to mark metadata of data object " + entry.getKey() + " as extracted.", e);
+						objectsFailed++;
+						markFailure = e;
+					}
+				}
+			} catch (SQLException e) {
+				throw new DBAccessException("Failed to update data object metadata.", e);
+			} finally {
+				DbConnectionManager.closeConnection(result, stmt, connection);
+			}
+		}
+		if (objectsFailed > 0) {
+			throw new DBAccessException("Failed to mark " + objectsFailed + " data object(s) as extracted.", markFailure);
+		}
+		metadataComplete = true;
+		return objectsUpdated;
+	}
 	
 	/**
 	 * Creates an tuple of place holders to be used in SQL clauses.
@@ -70,57 +565,98 @@ public abstract class AbstractSQLConnector implements DatabaseConnector {
 	}
 	
 	/**
-	 * Retrieve a map containing all referenced nodes with a list of their referrers.
-	 * @return Map with the referenced objects id as string and a list of all objects referring to this object. 
-	 * @throws DBAccessException Failed to retrieve data object information from the database.
+	 * Splits a set of identifiers into chunks to be used in IN clauses.
+	 * @param ids Identifiers to split.
+	 * @return List of chunks with at most {@link #IN_CLAUSE_CHUNK_SIZE} identifiers.
 	 */
-	public Map<String, Set<String>> retrieveReferencedNodes() throws DBAccessException {
-		Map<String, Set<String>> referencedObjects = new HashMap<String, Set<String>>();
+	protected List<List<String>> createChunks(Collection<String> ids) {
+		List<List<String>> chunks = new ArrayList<List<String>>();
+		List<String> chunk = null;
+		for (String id : ids) {
+			if (chunk == null || chunk.size() == IN_CLAUSE_CHUNK_SIZE) {
+				chunk = new ArrayList<String>(Math.min(IN_CLAUSE_CHUNK_SIZE, ids.size()));
+				chunks.add(chunk);
+			}
+			chunk.add(id);
+		}
+		return chunks;
+	}
+	
+	/**
+	 * Creates a clause selecting rows by a set of values of a column.
+	 * Larger sets are split into multiple IN lists combined with OR, for queries which cannot be split into multiple statements.
+	 * @param column Column to compare.
+	 * @param size Number of values.
+	 * @return Clause with a place holder for each value, e.g. "(objectId IN (?,?) OR objectId IN (?))".
+	 */
+	protected String createInClause(String column, int size) {
+		StringBuilder builder = new StringBuilder("(");
+		for (int offset = 0; offset < size; offset += IN_CLAUSE_CHUNK_SIZE) {
+			if (offset > 0) {
+				builder.append(" OR ");
+			}
+			builder.append(column).append(" IN ").append(createPlaceHolderTuple(Math.min(IN_CLAUSE_CHUNK_SIZE, size - offset)));
+		}
+		builder.append(")");
+		return builder.toString();
+	}
+	
+	@Override
+	public List<DataObject> retrieveObjectsForSpace(Space space, FilterSet filterSet) throws DBAccessException {
+		List<DataObject> dataObjects = new ArrayList<DataObject>();
 		Connection connection = null;
 		PreparedStatement stmt = null;
 		ResultSet result = null;
 		try {
+			SQLCondition condition = filterSet.getSQLCondition();
 			connection = DbConnectionManager.getConnection();
-			stmt = connection.prepareStatement(SQL_SELECT_REFERRING_OBJECTS);
+			stmt = connection.prepareStatement(appendCondition(sqlSelectBySpace, condition));
+			stmt.setString(1, space.getId());
+			if (condition != null) {
+				condition.setParameters(stmt, 2);
+			}
 			result = stmt.executeQuery();
 			while (result.next()) {
-				String referrer = result.getString(COLUMN_REFERRER);
-				String reference = result.getString(COLUMN_REFERENCE);
-				if (!referencedObjects.containsKey(reference)) {
-					referencedObjects.put(reference, new HashSet<String>());
+				DataObject dataObject = createDataObject(result);
+				if (isValid(result, dataObject, filterSet)) {
+					dataObjects.add(dataObject);
 				}
-				referencedObjects.get(reference).add(referrer);
 			}
 		} catch (SQLException e) {
-			log.warn("Crashed while executing SQL: " + SQL_SELECT_REFERRING_OBJECTS);
-			throw new DBAccessException("Failed to retrieve data object information from the database.", e);
+			throw new DBAccessException("Failed to retrieve data objects from database.", e);
 		} finally {
 			DbConnectionManager.closeConnection(result, stmt, connection);
 		}
-		return referencedObjects;
+		return dataObjects;
 	}
 
 	@Override
-	public List<DataObject> retrieveObjectsForSpace(Space space, FilterSet filterSet) throws DBAccessException {
+	public List<DataObject> retrieveObjects(Set<String> objectIds, FilterSet filterSet) throws DBAccessException {
 		List<DataObject> dataObjects = new ArrayList<DataObject>();
 		Connection connection = null;
 		PreparedStatement stmt = null;
 		ResultSet result = null;
 		try {
+			SQLCondition condition = filterSet.getSQLCondition();
 			connection = DbConnectionManager.getConnection();
-			stmt = connection.prepareStatement(SQL_SELECT_BY_SPACE);
-			stmt.setString(1, space.getId());
-			result = stmt.executeQuery();
-			while (result.next()) {
-				Timestamp expirationDate = result.getTimestamp(COLUMN_EXPIRATIONDATE);
-				String xmlElementString = result.getString(COLUMN_XMLELEMENT);
-				DataObject dataObject = new DataObject(xmlElementString, space.getId());
-				if (expirationDate != null) {
-					dataObject.setExpirationDate(new java.util.Date(expirationDate.getTime()));
+			for (List<String> chunk : createChunks(objectIds)) {
+				stmt = connection.prepareStatement(appendCondition(sqlSelectByObjectIds + createPlaceHolderTuple(chunk.size()), condition));
+				int i = 1;
+				for (String objectId : chunk) {
+					stmt.setString(i++, objectId);
 				}
-				if (filterSet.isValid(dataObject)) {
-					dataObjects.add(dataObject);
+				if (condition != null) {
+					condition.setParameters(stmt, i);
 				}
+				result = stmt.executeQuery();
+				while (result.next()) {
+					DataObject dataObject = createDataObject(result);
+					if (isValid(result, dataObject, filterSet)) {
+						dataObjects.add(dataObject);
+					}
+				}
+				result.close();
+				stmt.close();
 			}
 		} catch (SQLException e) {
 			throw new DBAccessException("Failed to retrieve data objects from database.", e);
@@ -129,33 +665,176 @@ public abstract class AbstractSQLConnector implements DatabaseConnector {
 		}
 		return dataObjects;
 	}
-
+	
 	@Override
-	public List<DataObject> retrieveObjects(Set<String> objectIds, FilterSet filterSet) throws DBAccessException {
+	public ResultPage retrieveObjectsForSpaces(Set<String> spaceIds, FilterSet filterSet, PageRequest pageRequest) throws DBAccessException {
+		return retrievePage(COLUMN_SPACEID, spaceIds, filterSet, pageRequest);
+	}
+	
+	@Override
+	public ResultPage retrieveObjects(Set<String> objectIds, FilterSet filterSet, PageRequest pageRequest) throws DBAccessException {
+		return retrievePage(COLUMN_OBJECTID, objectIds, filterSet, pageRequest);
+	}
+	
+	@Override
+	public int streamObjectsForSpaces(Set<String> spaceIds, FilterSet filterSet, DataObjectHandler handler) throws DBAccessException {
+		return streamObjects(COLUMN_SPACEID, spaceIds, filterSet, handler);
+	}
+	
+	@Override
+	public int streamObjects(Set<String> objectIds, FilterSet filterSet, DataObjectHandler handler) throws DBAccessException {
+		return streamObjects(COLUMN_OBJECTID, objectIds, filterSet, handler);
+	}
+	
+	/**
+	 * Passes data objects to a handler while reading them from a forward-only result set.
+	 * A transaction connection is used, as some drivers only fetch rows incrementally if auto commit is disabled.
+	 * @param keyColumn Column to select data objects by, either {@link #COLUMN_SPACEID} or {@link #COLUMN_OBJECTID}.
+	 * @param keys Values of the key column to select.
+	 * @param filterSet Filter set to apply.
+	 * @param handler Handler to pass data objects to.
+	 * @return Number of data objects passed to the handler.
+	 * @throws DBAccessException Failed to retrieve the data objects.
+	 */
+	private int streamObjects(String keyColumn, Set<String> keys, FilterSet filterSet, DataObjectHandler handler) throws DBAccessException {
+		int objectsHandled = 0;
+		SQLCondition condition = filterSet.getSQLCondition();
+		Connection connection = null;
+		PreparedStatement stmt = null;
+		ResultSet result = null;
+		try {
+			connection = DbConnectionManager.getTransactionConnection();
+			for (List<String> chunk : createChunks(keys)) {
+				String sql = appendCondition(sqlSelectColumns + " WHERE " + keyColumn + " IN " + createPlaceHolderTuple(chunk.size()), condition);
+				stmt = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+				stmt.setFetchSize(getStreamingFetchSize());
+				int i = 1;
+				for (String key : chunk) {
+					stmt.setString(i++, key);
+				}
+				if (condition != null) {
+					condition.setParameters(stmt, i);
+				}
+				result = stmt.executeQuery();
+				while (result.next()) {
+					DataObject dataObject = createDataObject(result);
+					if (isValid(result, dataObject, filterSet)) {
+						objectsHandled++;
+						if (!handler.handleDataObject(dataObject)) {
+							return objectsHandled;
+						}
+					}
+				}
+				result.close();
+				stmt.close();
+			}
+		} catch (SQLException e) {
+			throw new DBAccessException("Failed to retrieve data objects from database.", e);
+		} finally {
+			DbConnectionManager.closeResultSet(result);
+			DbConnectionManager.closeTransactionConnection(stmt, connection, false);
+		}
+		return objectsHandled;
+	}
+	
+	/**
+	 * Retrieves a page of data objects using a keyset on the timestamp and identifier of the data objects.
+	 * Data objects without timestamp precede all others. Both groups are queried separately, so that the database engine's ordering of NULL values does not matter.
+	 * While the metadata of stored data objects is extracted, the page is retrieved with {@link #retrievePageByParsedTimestamps(String, Set, FilterSet, PageRequest)}.
+	 * @param keyColumn Column to select data objects by, either {@link #COLUMN_SPACEID} or {@link #COLUMN_OBJECTID}.
+	 * @param keys Values of the key column to select.
+	 * @param filterSet Filter set to apply.
+	 * @param pageRequest Page to retrieve.
+	 * @return Page of data objects.
+	 * @throws DBAccessException Failed to retrieve the data objects.
+	 */
+	private ResultPage retrievePage(String keyColumn, Set<String> keys, FilterSet filterSet, PageRequest pageRequest) throws DBAccessException {
 		List<DataObject> dataObjects = new ArrayList<DataObject>();
+		List<PageCursor> positions = new ArrayList<PageCursor>();
+		Integer count = null;
+		if (keys.isEmpty()) {
+			return new ResultPage(dataObjects, null, null, 0);
+		}
+		if (!metadataComplete) {
+			return retrievePageByParsedTimestamps(keyColumn, keys, filterSet, pageRequest);
+		}
+		int max = pageRequest.getMax();
+		boolean backward = pageRequest.isBackward();
+		PageCursor cursor = backward ? pageRequest.getBefore() : pageRequest.getAfter();
+		String keyClause = createInClause(keyColumn, keys.size());
+		SQLCondition condition = filterSet.getSQLCondition();
+		// groups of data objects in paging direction: without timestamp first when paging forward
+		boolean[] timestampGroups = backward ? new boolean[] {true, false} : new boolean[] {false, true};
 		Connection connection = null;
 		PreparedStatement stmt = null;
 		ResultSet result = null;
 		try {
 			connection = DbConnectionManager.getConnection();
-			stmt = connection.prepareStatement(SQL_SELECT_BY_OBJECT_IDS + createPlaceHolderTuple(objectIds.size()));
-			Iterator<String> objectIdIterator = objectIds.iterator();
-			int i = 1;
-			while (objectIdIterator.hasNext()) {
-				stmt.setString(i, objectIdIterator.next());
-				i++;
+			for (boolean withTimestamp : timestampGroups) {
+				PageCursor groupCursor = null;
+				if (cursor != null) {
+					boolean cursorWithTimestamp = cursor.getTimestamp() != null;
+					if (cursorWithTimestamp == withTimestamp) {
+						groupCursor = cursor;
+					} else if (cursorWithTimestamp != backward) {
+						// the group lies completely before the cursor
+						continue;
+					}
+				}
+				while (dataObjects.size() < max) {
+					int limit = max - dataObjects.size();
+					stmt = connection.prepareStatement(createPageQuery(keyClause, withTimestamp, groupCursor != null, backward, condition));
+					int i = 1;
+					for (String key : keys) {
+						stmt.setString(i++, key);
+					}
+					if (groupCursor != null) {
+						if (withTimestamp) {
+							stmt.setLong(i++, groupCursor.getTimestamp());
+							stmt.setLong(i++, groupCursor.getTimestamp());
+						}
+						stmt.setString(i++, groupCursor.getObjectId());
+					}
+					if (condition != null) {
+						condition.setParameters(stmt, i);
+					}
+					DbConnectionManager.setMaxRows(stmt, limit);
+					result = stmt.executeQuery();
+					int rows = 0;
+					while (rows < limit && result.next()) {
+						rows++;
+						long timestamp = result.getLong(COLUMN_TIMESTAMP);
+						groupCursor = new PageCursor(result.wasNull() ? null : timestamp, result.getString(COLUMN_OBJECTID));
+						DataObject dataObject = createDataObject(result);
+						if (isValid(result, dataObject, filterSet)) {
+							dataObjects.add(dataObject);
+							positions.add(groupCursor);
+						}
+					}
+					result.close();
+					stmt.close();
+					if (rows < limit) {
+						// group exhausted
+						break;
+					}
+				}
+				if (dataObjects.size() >= max) {
+					break;
+				}
 			}
-			result = stmt.executeQuery();
-			while (result.next()) {
-				String spaceId = result.getString(COLUMN_SPACEID);
-				Timestamp expirationDate = result.getTimestamp(COLUMN_EXPIRATIONDATE);
-				String xmlElementString = result.getString(COLUMN_XMLELEMENT);
-				DataObject dataObject = new DataObject(xmlElementString, spaceId);
-				if (expirationDate != null) {
-					dataObject.setExpirationDate(new java.util.Date(expirationDate.getTime()));
+			if (pageRequest.isInitial() && !filterSet.hasJavaFilters()) {
+				// rows with oversized metadata pass the condition unchecked, the count is only exact without them
+				stmt = connection.prepareStatement(appendCondition("SELECT COUNT(*), SUM(CASE WHEN " + COLUMN_METADATA_EXTRACTED + " = " + METADATA_OVERSIZED + " THEN 1 ELSE 0 END) FROM " + TABLE_DATA + " WHERE " + keyClause, condition));
+				int i = 1;
+				for (String key : keys) {
+					stmt.setString(i++, key);
 				}
-				if (filterSet.isValid(dataObject)) {
-					dataObjects.add(dataObject);
+				if (condition != null) {
+					condition.setParameters(stmt, i);
+				}
+				result = stmt.executeQuery();
+				if (result.next() && (condition == null || result.getInt(2) == 0)) {
+					count = result.getInt(1);
 				}
 			}
 		} catch (SQLException e) {
@@ -163,7 +842,127 @@ public abstract class AbstractSQLConnector implements DatabaseConnector {
 		} finally {
 			DbConnectionManager.closeConnection(result, stmt, connection);
 		}
-		return dataObjects;
+		if (backward) {
+			Collections.reverse(dataObjects);
+			Collections.reverse(positions);
+		}
+		if (positions.isEmpty()) {
+			return new ResultPage(dataObjects, null, null, count);
+		}
+		return new ResultPage(dataObjects, positions.get(0), positions.get(positions.size() - 1), count);
+	}
+	
+	/**
+	 * Retrieves a page of data objects ordered by the timestamps parsed from the data objects.
+	 * Rows without extracted metadata have no timestamp column and would move between the groups of the keyset once their metadata is extracted.
+	 * Therefore all data objects selected by the keys are read and ordered in memory, using the same order as the keyset.
+	 * @param keyColumn Column to select data objects by, either {@link #COLUMN_SPACEID} or {@link #COLUMN_OBJECTID}.
+	 * @param keys Values of the key column to select.
+	 * @param filterSet Filter set to apply.
+	 * @param pageRequest Page to retrieve.
+	 * @return Page of data objects.
+	 * @throws DBAccessException Failed to retrieve the data objects.
+	 */
+	private ResultPage retrievePageByParsedTimestamps(String keyColumn, Set<String> keys, FilterSet filterSet, PageRequest pageRequest) throws DBAccessException {
+		TreeMap<PageCursor, DataObject> sortedObjects = new TreeMap<PageCursor, DataObject>();
+		SQLCondition condition = filterSet.getSQLCondition();
+		Connection connection = null;
+		PreparedStatement stmt = null;
+		ResultSet result = null;
+		try {
+			connection = DbConnectionManager.getConnection();
+			for (List<String> chunk : createChunks(keys)) {
+				stmt = connection.prepareStatement(appendCondition(sqlSelectColumns + " WHERE " + keyColumn + " IN " + createPlaceHolderTuple(chunk.size()), condition));
+				int i = 1;
+				for (String key : chunk) {
+					stmt.setString(i++, key);
+				}
+				if (condition != null) {
+					condition.setParameters(stmt, i);
+				}
+				result = stmt.executeQuery();
+				while (result.next()) {
+					DataObject dataObject = createDataObject(result);
+					if (!isValid(result, dataObject, filterSet)) {
+						continue;
+					}
+					Long timestamp = null;
+					if (result.getInt(COLUMN_METADATA_EXTRACTED) == METADATA_EXTRACTED) {
+						long extractedTimestamp = result.getLong(COLUMN_TIMESTAMP);
+						timestamp = result.wasNull() ? null : extractedTimestamp;
+					} else {
+						try {
+							java.util.Date parsedTimestamp = dataObject.getTimestamp();
+							timestamp = parsedTimestamp != null ? parsedTimestamp.getTime() : null;
+						} catch (DocumentException e) {
+							// handled as missing timestamp, as done by the metadata extraction
+						}
+					}
+					sortedObjects.put(new PageCursor(timestamp, result.getString(COLUMN_OBJECTID)), dataObject);
+				}
+				result.close();
+				stmt.close();
+			}
+		} catch (SQLException e) {
+			throw new DBAccessException("Failed to retrieve data objects from database.", e);
+		} finally {
+			DbConnectionManager.closeConnection(result, stmt, connection);
+		}
+		NavigableMap<PageCursor, DataObject> candidates;
+		if (pageRequest.isBackward()) {
+			PageCursor before = pageRequest.getBefore();
+			candidates = (before != null ? sortedObjects.headMap(before, false) : sortedObjects).descendingMap();
+		} else {
+			PageCursor after = pageRequest.getAfter();
+			candidates = after != null ? sortedObjects.tailMap(after, false) : sortedObjects;
+		}
+		List<DataObject> dataObjects = new ArrayList<DataObject>();
+		List<PageCursor> positions = new ArrayList<PageCursor>();
+		for (Map.Entry<PageCursor, DataObject> entry : candidates.entrySet()) {
+			if (dataObjects.size() >= pageRequest.getMax()) {
+				break;
+			}
+			positions.add(entry.getKey());
+			dataObjects.add(entry.getValue());
+		}
+		if (pageRequest.isBackward()) {
+			Collections.reverse(dataObjects);
+			Collections.reverse(positions);
+		}
+		Integer count = pageRequest.isInitial() ? sortedObjects.size() : null;
+		if (positions.isEmpty()) {
+			return new ResultPage(dataObjects, null, null, count);
+		}
+		return new ResultPage(dataObjects, positions.get(0), positions.get(positions.size() - 1), count);
+	}
+	
+	/**
+	 * Creates the query for a group of data objects of a page.
+	 * @param keyClause Clause selecting the data objects by key.
+	 * @param withTimestamp <code>true</code> to select data objects with timestamp, <code>false</code> to select those without.
+	 * @param withCursor If <code>true</code>, only data objects following the cursor in paging direction are selected.
+	 * @param backward <code>true</code> to order the data objects descending.
+	 * @param condition SQL condition of the filter set, may be <code>null</code>.
+	 * @return SQL query.
+	 */
+	private String createPageQuery(String keyClause, boolean withTimestamp, boolean withCursor, boolean backward, SQLCondition condition) {
+		String comparator = backward ? " < " : " > ";
+		String order = backward ? " DESC" : " ASC";
+		StringBuilder sql = new StringBuilder(sqlSelectColumns);
+		sql.append(" WHERE ").append(keyClause).append(" AND ").append(COLUMN_TIMESTAMP).append(withTimestamp ? " IS NOT NULL" : " IS NULL");
+		if (withCursor) {
+			if (withTimestamp) {
+				sql.append(" AND (").append(COLUMN_TIMESTAMP).append(comparator).append("? OR (").append(COLUMN_TIMESTAMP).append(" = ? AND ").append(COLUMN_OBJECTID).append(comparator).append("?))");
+			} else {
+				sql.append(" AND ").append(COLUMN_OBJECTID).append(comparator).append("?");
+			}
+		}
+		StringBuilder orderBy = new StringBuilder(" ORDER BY ");
+		if (withTimestamp) {
+			orderBy.append(COLUMN_TIMESTAMP).append(order).append(",");
+		}
+		orderBy.append(COLUMN_OBJECTID).append(order);
+		return appendCondition(sql.toString(), condition) + orderBy;
 	}
 	
 	@Override
@@ -174,17 +973,11 @@ public abstract class AbstractSQLConnector implements DatabaseConnector {
 		DataObject dataObject;
 		try {
 			connection = DbConnectionManager.getConnection();
-			stmt = connection.prepareStatement(SQL_SELECT_BY_OBJECT_ID);
+			stmt = connection.prepareStatement(sqlSelectByObjectId);
 			stmt.setString(1, objectId);
 			result = stmt.executeQuery();
 			if (result.next()) {
-				String spaceId = result.getString(COLUMN_SPACEID);
-				Timestamp expirationDate = result.getTimestamp(COLUMN_EXPIRATIONDATE);
-				String xmlElementString = result.getString(COLUMN_XMLELEMENT);
-				dataObject = new DataObject(xmlElementString, spaceId);
-				if (expirationDate != null) {
-					dataObject.setExpirationDate(new java.util.Date(expirationDate.getTime()));
-				}
+				dataObject = createDataObject(result);
 			} else {
 				dataObject = null;
 			}
@@ -198,39 +991,76 @@ public abstract class AbstractSQLConnector implements DatabaseConnector {
 	
 	@Override
 	public void storeDataObject(DataObject dataObject) throws DBAccessException, DocumentException {
-		java.util.Date expirationDate = dataObject.getExpirationDate();
-		String objectId = dataObject.getId();
+		storeDataObjects(Collections.singletonList(dataObject));
+	}
+	
+	@Override
+	public void storeDataObjects(Collection<DataObject> dataObjects) throws DBAccessException, DocumentException {
+		if (dataObjects.isEmpty()) {
+			return;
+		}
+		boolean batchUpdates = DbConnectionManager.isBatchUpdatesSupported();
+		boolean compression = JiveGlobals.getBooleanProperty(StorageConfig.PROPERTY_COMPRESSION, false);
+		Set<String> binaryNamespaces = getBinaryNamespaces();
+		boolean abortTransaction = true;
 		Connection connection = null;
-		PreparedStatement stmt = null;
+		PreparedStatement dataStmt = null;
+		PreparedStatement dependenciesStmt = null;
 		try {
-			connection = DbConnectionManager.getConnection();
-			stmt = connection.prepareStatement(SQL_INSERT_DATA_OBJECT);
-			stmt.setString(1, objectId);
-			stmt.setString(2, dataObject.getSpaceId());
-			
-			if (expirationDate != null) {
-				stmt.setTimestamp(3, new java.sql.Timestamp(expirationDate.getTime()));
-			} else {
-				stmt.setTimestamp(3, null);
+			connection = DbConnectionManager.getTransactionConnection();
+			dataStmt = connection.prepareStatement(sqlInsertDataObject);
+			dependenciesStmt = connection.prepareStatement(SQL_INSERT_DEPENDENCIES);
+			int dependencyCount = 0;
+			for (DataObject dataObject : dataObjects) {
+				String objectId = dataObject.getId();
+				java.util.Date expirationDate = dataObject.getExpirationDate();
+				dataStmt.setString(1, objectId);
+				dataStmt.setString(2, dataObject.getSpaceId());
+				if (expirationDate != null) {
+					dataStmt.setTimestamp(3, new java.sql.Timestamp(expirationDate.getTime()));
+				} else {
+					dataStmt.setTimestamp(3, null);
+				}
+				byte[] payload = encodePayload(dataObject, compression, binaryNamespaces);
+				if (payload != null) {
+					setXMLElement(connection, dataStmt, 4, COMPRESSED_PLACEHOLDER);
+					setXMLCompressed(dataStmt, 11, payload);
+				} else {
+					setXMLElement(connection, dataStmt, 4, dataObject.toString());
+					setXMLCompressed(dataStmt, 11, null);
+				}
+				setMetadata(dataStmt, 5, dataObject);
+				if (batchUpdates) {
+					dataStmt.addBatch();
+				} else {
+					dataStmt.executeUpdate();
+				}
+				
+				// Store dependencies in separate table.
+				for (String reference : dataObject.getAllReferences()) {
+					dependenciesStmt.setString(1, objectId);
+					dependenciesStmt.setString(2, reference);
+					dependenciesStmt.setString(3, dataObject.getSpaceId());
+					if (batchUpdates) {
+						dependenciesStmt.addBatch();
+					} else {
+						dependenciesStmt.executeUpdate();
+					}
+					dependencyCount++;
+				}
 			}
-			stmt.setString(4, dataObject.toString());
-			stmt.executeUpdate();
-			
-			Set<String> references = dataObject.getAllReferences();
-			if (!references.isEmpty()) {
-				stmt.close();
-				stmt = connection.prepareStatement(SQL_INSERT_DEPENDENCIES);
-				for (String reference : references) {
-					stmt.setString(1, objectId);
-					stmt.setString(2, reference);
-					stmt.setString(3, dataObject.getSpaceId());
-					stmt.executeUpdate();
+			if (batchUpdates) {
+				dataStmt.executeBatch();
+				if (dependencyCount > 0) {
+					dependenciesStmt.executeBatch();
 				}
 			}
+			abortTransaction = false;
 		} catch (SQLException e) {
-			throw new DBAccessException("Failed to insert data object.", e);
+			throw new DBAccessException("Failed to insert data objects.", e);
 		} finally {
-			DbConnectionManager.closeConnection(stmt, connection);
+			DbConnectionManager.closeStatement(dependenciesStmt);
+			DbConnectionManager.closeTransactionConnection(dataStmt, connection, abortTransaction);
 		}
 	}
 	
@@ -259,29 +1089,32 @@ public abstract class AbstractSQLConnector implements DatabaseConnector {
 	@Override
 	public int deleteObjects(Set<String> objectIds) throws DBAccessException {
 		int deletedObjects = 0;
+		boolean abortTransaction = true;
 		Connection connection = null;
-		PreparedStatement deleteObjectStmt, deleteDependenciesStmt;
-		String inClause = createPlaceHolderTuple(objectIds.size());
+		PreparedStatement deleteObjectStmt = null, deleteDependenciesStmt = null;
 		try {
-			connection = DbConnectionManager.getConnection();
-			deleteObjectStmt = connection.prepareStatement(SQL_DELETE_OBJECTS + inClause);
-			deleteDependenciesStmt = connection.prepareStatement(SQL_DELETE_DEPENDENCIES_OF_OBJECTS + inClause);
-			Iterator<String> objectIdIterator = objectIds.iterator();
-			int i = 1;
-			while (objectIdIterator.hasNext()) {
-				String objectId = objectIdIterator.next();
-				deleteObjectStmt.setString(i, objectId);
-				deleteDependenciesStmt.setString(i, objectId);
-				i++;
+			connection = DbConnectionManager.getTransactionConnection();
+			for (List<String> chunk : createChunks(objectIds)) {
+				String inClause = createPlaceHolderTuple(chunk.size());
+				deleteObjectStmt = connection.prepareStatement(SQL_DELETE_OBJECTS + inClause);
+				deleteDependenciesStmt = connection.prepareStatement(SQL_DELETE_DEPENDENCIES_OF_OBJECTS + inClause);
+				int i = 1;
+				for (String objectId : chunk) {
+					deleteObjectStmt.setString(i, objectId);
+					deleteDependenciesStmt.setString(i, objectId);
+					i++;
+				}
+				deletedObjects += deleteObjectStmt.executeUpdate();
+				deleteDependenciesStmt.executeUpdate();
+				deleteObjectStmt.close();
+				deleteDependenciesStmt.close();
 			}
-			deletedObjects = deleteObjectStmt.executeUpdate();
-			deleteDependenciesStmt.executeUpdate();
-			deleteObjectStmt.close();
-			deleteDependenciesStmt.close();
+			abortTransaction = false;
 		} catch (SQLException e) {
 			throw new DBAccessException("Failed to delete data objects.", e);
 		} finally {
-			DbConnectionManager.closeConnection(connection);
+			DbConnectionManager.closeStatement(deleteDependenciesStmt);
+			DbConnectionManager.closeTransactionConnection(deleteObjectStmt, connection, abortTransaction);
 		}
 		return deletedObjects;
 	}
@@ -289,95 +1122,354 @@ public abstract class AbstractSQLConnector implements DatabaseConnector {
 	@Override
 	public Map<String, String> retrieveSpacesForObjects(Set<String> objectIds) throws DBAccessException {
 		Map<String, String> spaceIds = new HashMap<String, String>();
-		
+		Map<String, DataObjectMetadata> metadata = retrieveMetadataForObjects(objectIds);
+		for (String objectId : objectIds) {
+			DataObjectMetadata objectMetadata = metadata.get(objectId);
+			spaceIds.put(objectId, objectMetadata != null ? objectMetadata.getSpaceId() : null);
+		}
+		return spaceIds;
+	}
+	
+	@Override
+	public Map<String, DataObjectMetadata> retrieveMetadataForObjects(Set<String> objectIds) throws DBAccessException {
+		Map<String, DataObjectMetadata> metadata = new HashMap<String, DataObjectMetadata>();
+		Set<String> objectsWithoutMetadata = new HashSet<String>();
 		Connection connection = null;
 		PreparedStatement stmt = null;
 		ResultSet result = null;
 		try {
 			connection = DbConnectionManager.getConnection();
-			stmt = connection.prepareStatement(SQL_SPACE_BY_OBJECT);
-			for (String objectId : objectIds) {
-				stmt.setString(1, objectId);
+			for (List<String> chunk : createChunks(objectIds)) {
+				stmt = connection.prepareStatement(SQL_SELECT_METADATA_BY_OBJECT_IDS + createPlaceHolderTuple(chunk.size()));
+				int i = 1;
+				for (String objectId : chunk) {
+					stmt.setString(i++, objectId);
+				}
 				result = stmt.executeQuery();
-				spaceIds.put(objectId, result.next() ? result.getString(COLUMN_SPACEID) : null);
+				while (result.next()) {
+					String objectId = result.getString(COLUMN_OBJECTID);
+					if (result.getInt(COLUMN_METADATA_EXTRACTED) != METADATA_EXTRACTED) {
+						// stored with a previous version, publisher is not extracted yet
+						objectsWithoutMetadata.add(objectId);
+						continue;
+					}
+					metadata.put(objectId, new DataObjectMetadata(objectId, result.getString(COLUMN_SPACEID), result.getString(COLUMN_PUBLISHER)));
+				}
 				result.close();
+				stmt.close();
 			}
 		} catch (SQLException e) {
-			throw new DBAccessException("Failed to retrieve space identifiers from database.", e);
+			throw new DBAccessException("Failed to retrieve data object metadata from database.", e);
 		} finally {
 			DbConnectionManager.closeConnection(result, stmt, connection);
 		}
-		return spaceIds;
+		for (String objectId : objectsWithoutMetadata) {
+			DataObject dataObject = retrieveObject(objectId);
+			if (dataObject == null) {
+				continue;
+			}
+			String publisher;
+			try {
+				publisher = dataObject.getPublisher();
+			} catch (DocumentException e) {
+				log.warn("Failed to parse stored data object " + objectId + ".");
+				publisher = null;
+			}
+			metadata.put(objectId, new DataObjectMetadata(objectId, dataObject.getSpaceId(), publisher));
+		}
+		return metadata;
 	}
 
 	@Override
-	public int deleteExpiredDataObjects() throws DBAccessException {
-		int rowsDeleted = 0;
-		Set<String> expiredObjects = retrieveExpiredDataObjects();
-		int expiredCount = expiredObjects.size();
-		Map<String, Set<String>> referencedObjects = retrieveReferencedNodes();
-		Set<String> objectsToDelete = new HashSet<String>();
-		boolean done = false;
-		while (!done) {
-			List<String> candidates = new ArrayList<String>();
-			for (String expiredObject : expiredObjects) {
-				if (!referencedObjects.containsKey(expiredObject)) {
-					candidates.add(expiredObject);
+	public int trainCompressionDictionaries() throws DBAccessException {
+		int samples = JiveGlobals.getIntProperty(StorageConfig.PROPERTY_DICTIONARY_SAMPLES, StorageConfig.DEFAULT_DICTIONARY_SAMPLES);
+		int minSamples = JiveGlobals.getIntProperty(StorageConfig.PROPERTY_DICTIONARY_MIN_SAMPLES, StorageConfig.DEFAULT_DICTIONARY_MIN_SAMPLES);
+		int dictionariesCreated = 0;
+		Connection connection = null;
+		PreparedStatement stmt = null;
+		ResultSet result = null;
+		try {
+			loadDictionaries();
+			connection = DbConnectionManager.getConnection();
+			List<String> namespaces = new ArrayList<String>();
+			stmt = connection.prepareStatement(SQL_SELECT_NAMESPACES);
+			result = stmt.executeQuery();
+			while (result.next()) {
+				String namespace = result.getString(COLUMN_NAMESPACE);
+				if (!namespace.isEmpty() && !payloadCodec.hasDictionaryForNamespace(namespace)) {
+					namespaces.add(namespace);
 				}
 			}
-			if (candidates.isEmpty()) {
-				done = true;
-				continue;
+			result.close();
+			stmt.close();
+			
+			for (String namespace : namespaces) {
+				List<String> sampleStrings = new ArrayList<String>(samples);
+				stmt = connection.prepareStatement(sqlSelectSamples);
+				stmt.setMaxRows(samples);
+				stmt.setString(1, namespace);
+				result = stmt.executeQuery();
+				while (result.next()) {
+					sampleStrings.add(readXMLElementString(result));
+				}
+				result.close();
+				stmt.close();
+				if (sampleStrings.size() < minSamples) {
+					continue;
+				}
+				byte[] dictionary = PayloadCodec.trainDictionary(sampleStrings);
+				
+				stmt = connection.prepareStatement(SQL_SELECT_MAX_DICTIONARY_ID);
+				result = stmt.executeQuery();
+				int dictionaryId = result.next() ? result.getInt(1) + 1 : 1;
+				result.close();
+				stmt.close();
+				
+				stmt = connection.prepareStatement(SQL_INSERT_DICTIONARY);
+				stmt.setInt(1, dictionaryId);
+				stmt.setString(2, namespace);
+				stmt.setBytes(3, dictionary);
+				stmt.setLong(4, System.currentTimeMillis());
+				stmt.executeUpdate();
+				stmt.close();
+				payloadCodec.addDictionary(dictionaryId, namespace, dictionary);
+				dictionariesCreated++;
 			}
-			objectsToDelete.addAll(candidates);
-			expiredObjects.removeAll(candidates);
-			Set<String> referencedObjectsToDelete = new HashSet<String>();
-			for (String deletedObject : candidates) {
-				for (String referencedObjectId : referencedObjects.keySet()) {
-					Set<String> referrers = referencedObjects.get(referencedObjectId);
-					if (referrers.contains(deletedObject)) {
-						referrers.remove(deletedObject);
-						if (referrers.isEmpty()) {
-							referencedObjectsToDelete.add(referencedObjectId);
-						}
+		} catch (SQLException e) {
+			throw new DBAccessException("Failed to train compression dictionaries.", e);
+		} finally {
+			DbConnectionManager.closeConnection(result, stmt, connection);
+		}
+		return dictionariesCreated;
+	}
+	
+	/**
+	 * Rewrites uncompressed data objects in the order of their identifiers.
+	 * The scan continues after the last data object scanned by the previous call, so data objects which cannot be parsed are only read once per run.
+	 * The position is reset when all data objects are scanned, an interrupted run is continued by the next one.
+	 * @param maxObjects Maximum number of data objects to rewrite.
+	 * @return Number of data objects rewritten. If less than <code>maxObjects</code>, the scan is complete.
+	 * @throws DBAccessException The database access failed.
+	 */
+	@Override
+	public int compressDataObjects(int maxObjects) throws DBAccessException {
+		int objectsCompressed = 0;
+		String lastObjectId = compressionPosition;
+		int chunkSize = JiveGlobals.getIntProperty(StorageConfig.PROPERTY_COMPRESSION_CHUNK_SIZE, StorageConfig.DEFAULT_COMPRESSION_CHUNK_SIZE);
+		Set<String> binaryNamespaces = getBinaryNamespaces();
+		boolean done = false;
+		while (!done && objectsCompressed < maxObjects) {
+			Map<String, DataObject> dataObjects = new HashMap<String, DataObject>();
+			Connection connection = null;
+			PreparedStatement stmt = null;
+			ResultSet result = null;
+			boolean abortTransaction = true;
+			try {
+				connection = DbConnectionManager.getTransactionConnection();
+				stmt = connection.prepareStatement(sqlSelectUncompressed);
+				stmt.setMaxRows(Math.min(chunkSize, maxObjects - objectsCompressed));
+				stmt.setString(1, lastObjectId);
+				result = stmt.executeQuery();
+				while (result.next()) {
+					lastObjectId = result.getString(COLUMN_OBJECTID);
+					dataObjects.put(lastObjectId, createDataObject(result));
+				}
+				result.close();
+				stmt.close();
+				done = dataObjects.isEmpty();
+				
+				stmt = connection.prepareStatement(sqlUpdateCompressed);
+				for (Map.Entry<String, DataObject> entry : dataObjects.entrySet()) {
+					byte[] compressed;
+					try {
+						compressed = encodePayload(entry.getValue(), true, binaryNamespaces);
+					} catch (DocumentException e) {
+						log.warn("Failed to parse stored data object " + entry.getKey() + ".");
+						continue;
 					}
+					setXMLCompressed(stmt, 1, compressed);
+					setXMLElement(connection, stmt, 2, COMPRESSED_PLACEHOLDER);
+					stmt.setString(3, entry.getKey());
+					objectsCompressed += stmt.executeUpdate();
 				}
-			}
-			for (String objectId : referencedObjectsToDelete) {
-				referencedObjects.remove(objectId);
+				abortTransaction = false;
+				compressionPosition = done ? "" : lastObjectId;
+			} catch (SQLException e) {
+				throw new DBAccessException("Failed to compress stored data objects.", e);
+			} finally {
+				DbConnectionManager.closeResultSet(result);
+				DbConnectionManager.closeTransactionConnection(stmt, connection, abortTransaction);
 			}
 		}
-		log.info("Kept " + (expiredCount - objectsToDelete.size()) + " data objects due to depenedencies.");
-		if (!objectsToDelete.isEmpty()) {
-			rowsDeleted = this.deleteObjects(objectsToDelete);
+		return objectsCompressed;
+	}
+
+	@Override
+	public int deleteExpiredDataObjects() throws DBAccessException {
+		return deleteExpiredDataObjects(Integer.MAX_VALUE, 0);
+	}
+	
+	@Override
+	public int deleteExpiredDataObjects(int maxObjects, long timeBudget) throws DBAccessException {
+		long start = System.currentTimeMillis();
+		int chunkSize = JiveGlobals.getIntProperty(ExpirationConfig.PROPERTY_CHUNK_SIZE, ExpirationConfig.DEFAULT_CHUNK_SIZE);
+		Timestamp now = new Timestamp(start);
+		ExpirationCursor cursor = ExpirationCursor.load();
+		// A resumed run may have freed objects before the stored position.
+		boolean referencesReleased = cursor != null;
+		int rounds = 1;
+		int objectsDeleted = 0;
+		while (true) {
+			List<String> chunk = new ArrayList<String>(chunkSize);
+			ExpirationCursor nextCursor = retrieveUnreferencedExpiredObjects(now, cursor, Math.min(chunkSize, maxObjects - objectsDeleted), chunk);
+			if (chunk.isEmpty()) {
+				if (!referencesReleased) {
+					break;
+				}
+				// Objects referenced by deleted objects may be deletable now, start another round.
+				cursor = null;
+				referencesReleased = false;
+				rounds++;
+				continue;
+			}
+			int[] deleted = deleteUnreferencedObjects(chunk);
+			objectsDeleted += deleted[0];
+			referencesReleased |= deleted[1] > 0;
+			cursor = nextCursor;
+			if (objectsDeleted >= maxObjects || (timeBudget > 0 && System.currentTimeMillis() - start >= timeBudget)) {
+				// The next call continues at the stored position.
+				cursor.store();
+				log.debug("Deleted " + objectsDeleted + " expired data object(s), cleanup paused.");
+				return objectsDeleted;
+			}
 		}
-		return rowsDeleted;
+		ExpirationCursor.clear();
+		log.debug("Deleted " + objectsDeleted + " expired data object(s) in " + rounds + " round(s).");
+		return objectsDeleted;
 	}
 
 	/**
-	 * Retrieves all data objects which are expired.
-	 * @return List of object identifiers.
+	 * Retrieves expired data objects which are not referenced by any other data object.
+	 * The data objects are ordered by their expiration date and identifier.
+	 * @param now Point in time when data objects are considered as expired.
+	 * @param cursor Position to continue after, or <code>null</code> to start with the first expired data object.
+	 * @param maxObjects Maximum number of data objects to retrieve.
+	 * @param objectIds List to add the identifiers of the data objects to.
+	 * @return Position of the last data object retrieved, or <code>null</code> if no data object was retrieved.
 	 * @throws DBAccessException Failed to retrieve data object identifiers.
 	 */
-	private Set<String> retrieveExpiredDataObjects() throws DBAccessException {
-		Set<String> objectIds = new HashSet<String>();
+	private ExpirationCursor retrieveUnreferencedExpiredObjects(Timestamp now, ExpirationCursor cursor, int maxObjects, List<String> objectIds) throws DBAccessException {
+		ExpirationCursor lastPosition = null;
 		Connection connection = null;
 		PreparedStatement stmt = null;
 		ResultSet result = null;
 		try {
 			connection = DbConnectionManager.getConnection();
-			stmt = connection.prepareStatement(SQL_SELECT_EXPIRED_OBJECTS);
-			stmt.setTimestamp(1, new Timestamp(new java.util.Date().getTime()));
+			if (cursor != null) {
+				stmt = connection.prepareStatement(SQL_SELECT_UNREFERENCED_EXPIRED_OBJECTS + SQL_EXPIRATION_CURSOR_CONDITION + SQL_EXPIRATION_ORDER);
+				stmt.setTimestamp(1, now);
+				stmt.setTimestamp(2, cursor.expirationDate);
+				stmt.setTimestamp(3, cursor.expirationDate);
+				stmt.setString(4, cursor.objectId);
+			} else {
+				stmt = connection.prepareStatement(SQL_SELECT_UNREFERENCED_EXPIRED_OBJECTS + SQL_EXPIRATION_ORDER);
+				stmt.setTimestamp(1, now);
+			}
+			DbConnectionManager.setMaxRows(stmt, maxObjects);
 			result = stmt.executeQuery();
-			while (result.next()) {
-				objectIds.add(result.getString(COLUMN_OBJECTID));
+			while (result.next() && objectIds.size() < maxObjects) {
+				String objectId = result.getString(COLUMN_OBJECTID);
+				objectIds.add(objectId);
+				lastPosition = new ExpirationCursor(result.getTimestamp(COLUMN_EXPIRATIONDATE), objectId);
 			}
 		} catch (SQLException e) {
 			throw new DBAccessException("Failed to retrieve data object information from the database.", e);
 		} finally {
 			DbConnectionManager.closeConnection(result, stmt, connection);
 		}
-		return objectIds;
+		return lastPosition;
+	}
+	
+	/**
+	 * Deletes data objects unless they became referenced in the meantime.
+	 * The dependencies of the deleted data objects are removed within the same transaction.
+	 * @param objectIds Identifiers of the data objects to delete.
+	 * @return Array containing the number of data objects deleted and the number of dependencies removed.
+	 * @throws DBAccessException Failed to delete the data objects.
+	 */
+	private int[] deleteUnreferencedObjects(List<String> objectIds) throws DBAccessException {
+		int[] deleted = new int[2];
+		boolean abortTransaction = true;
+		Connection connection = null;
+		PreparedStatement deleteObjectStmt = null, deleteDependenciesStmt = null;
+		try {
+			connection = DbConnectionManager.getTransactionConnection();
+			String inClause = createPlaceHolderTuple(objectIds.size());
+			deleteObjectStmt = connection.prepareStatement(SQL_DELETE_UNREFERENCED_OBJECTS + inClause);
+			deleteDependenciesStmt = connection.prepareStatement(SQL_DELETE_DEPENDENCIES_OF_DELETED_OBJECTS + inClause);
+			int i = 1;
+			for (String objectId : objectIds) {
+				deleteObjectStmt.setString(i, objectId);
+				deleteDependenciesStmt.setString(i, objectId);
+				i++;
+			}
+			deleted[0] = deleteObjectStmt.executeUpdate();
+			deleted[1] = deleteDependenciesStmt.executeUpdate();
+			abortTransaction = false;
+		} catch (SQLException e) {
+			throw new DBAccessException("Failed to delete data objects.", e);
+		} finally {
+			DbConnectionManager.closeStatement(deleteDependenciesStmt);
+			DbConnectionManager.closeTransactionConnection(deleteObjectStmt, connection, abortTransaction);
+		}
+		return deleted;
+	}
+	
+	/**
+	 * Position within the expired data objects, ordered by expiration date and identifier.
+	 */
+	private static class ExpirationCursor {
+		private final Timestamp expirationDate;
+		private final String objectId;
+		
+		private ExpirationCursor(Timestamp expirationDate, String objectId) {
+			this.expirationDate = expirationDate;
+			this.objectId = objectId;
+		}
+		
+		/**
+		 * Stores the position to resume an interrupted run.
+		 */
+		private void store() {
+			JiveGlobals.setProperty(ExpirationConfig.PROPERTY_CURSOR, expirationDate.getTime() + ":" + objectId);
+		}
+		
+		/**
+		 * Loads the position of an interrupted run.
+		 * @return Stored position or <code>null</code> if the last run was completed.
+		 */
+		private static ExpirationCursor load() {
+			String value = JiveGlobals.getProperty(ExpirationConfig.PROPERTY_CURSOR);
+			if (value == null || value.isEmpty()) {
+				return null;
+			}
+			int separatorIndex = value.indexOf(':');
+			try {
+				return new ExpirationCursor(new Timestamp(Long.parseLong(value.substring(0, separatorIndex))), value.substring(separatorIndex + 1));
+			} catch (RuntimeException e) {
+				log.warn("Ignoring invalid expiration cursor: " + value);
+				return null;
+			}
+		}
+		
+		/**
+		 * Removes the stored position.
+		 */
+		private static void clear() {
+			if (JiveGlobals.getProperty(ExpirationConfig.PROPERTY_CURSOR) != null) {
+				JiveGlobals.deleteProperty(ExpirationConfig.PROPERTY_CURSOR);
+			}
+		}
 	}
 
 }
@@ -0,0 +1,414 @@
+package de.imc.mirror.persistenceservice.connectors;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.dom4j.DocumentException;
+
+import de.imc.mirror.persistenceservice.DataObject;
+
+/**
+ * Codec for the binary XML storage format of data objects.
+ * The XML infoset is stored as a sequence of tokens. Element names, attribute names and namespace declarations are written once and
+ * referred to by their index afterwards, text and attribute values are written as length-prefixed UTF-8 strings.
+ * Decoding writes the serialized element directly and collects the attributes of the root element, so the data object never has to be parsed.
+ * A payload starts with the header of the {@link PayloadCodec} using the format marker {@link PayloadCodec#FORMAT_BINARY_XML}.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public class BinaryXMLCodec {
+	private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int TOKEN_END_ELEMENT = 0;
+	private static final int TOKEN_START_ELEMENT = 1;
+	private static final int TOKEN_CHARACTERS = 2;
+	private static final int TOKEN_CDATA = 3;
+	private static final int TOKEN_COMMENT = 4;
+	private static final int TOKEN_PROCESSING_INSTRUCTION = 5;
+
+	private static XMLInputFactory createInputFactory() {
+		XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+		return inputFactory;
+	}
+
+	/**
+	 * Output buffer maintaining the table of names written so far.
+	 */
+	private static class Encoder extends ByteArrayOutputStream {
+		private final Map<String, Integer> names = new HashMap<String, Integer>();
+
+		Encoder(int size) {
+			super(size);
+		}
+
+		void writeInt(int value) {
+			while ((value & ~0x7F) != 0) {
+				write((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			write(value);
+		}
+
+		void writeString(String value) {
+			byte[] bytes = (value != null ? value : "").getBytes(UTF8);
+			writeInt(bytes.length);
+			write(bytes, 0, bytes.length);
+		}
+
+		void writeName(String name) {
+			if (name == null) {
+				name = "";
+			}
+			Integer index = names.get(name);
+			if (index != null) {
+				writeInt(index);
+			} else {
+				writeInt(0);
+				writeString(name);
+				names.put(name, names.size() + 1);
+			}
+		}
+	}
+
+	/**
+	 * Input buffer maintaining the table of names read so far.
+	 */
+	private static class Decoder {
+		private final byte[] data;
+		private final List<String> names = new ArrayList<String>();
+		private int position;
+
+		Decoder(byte[] data, int offset) {
+			this.data = data;
+			this.position = offset;
+		}
+
+		boolean hasMore() {
+			return position < data.length;
+		}
+
+		int readInt() {
+			int value = 0;
+			int shift = 0;
+			int b;
+			do {
+				b = data[position++];
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			return value;
+		}
+
+		String readString() {
+			int length = readInt();
+			int end = position + length;
+			if (end > data.length) {
+				throw new IndexOutOfBoundsException();
+			}
+			// most values are ASCII, which does not require a charset decoder
+			char[] chars = new char[length];
+			for (int i = 0; i < length; i++) {
+				byte b = data[position + i];
+				if (b < 0) {
+					String value = new String(data, position, length, UTF8);
+					position = end;
+					return value;
+				}
+				chars[i] = (char) b;
+			}
+			position = end;
+			return new String(chars);
+		}
+
+		String readName() {
+			int index = readInt();
+			if (index > 0) {
+				return names.get(index - 1);
+			}
+			String name = readString();
+			names.add(name);
+			return name;
+		}
+	}
+
+	/**
+	 * Encodes a data object.
+	 * @param xmlElementString XML string of the data object.
+	 * @return Payload including the format header.
+	 * @throws DocumentException The XML string could not be parsed.
+	 */
+	public static byte[] encode(String xmlElementString) throws DocumentException {
+		Encoder encoder = new Encoder(xmlElementString.length() / 2 + PayloadCodec.HEADER_SIZE);
+		encoder.write(PayloadCodec.FORMAT_BINARY_XML);
+		for (int i = 1; i < PayloadCodec.HEADER_SIZE; i++) {
+			encoder.write(0);
+		}
+		XMLStreamReader reader = null;
+		try {
+			reader = INPUT_FACTORY.createXMLStreamReader(new StringReader(xmlElementString));
+			int depth = 0;
+			while (reader.hasNext()) {
+				switch (reader.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					depth++;
+					encoder.writeInt(TOKEN_START_ELEMENT);
+					encoder.writeName(reader.getPrefix());
+					encoder.writeName(reader.getLocalName());
+					encoder.writeInt(reader.getNamespaceCount());
+					for (int i = 0; i < reader.getNamespaceCount(); i++) {
+						encoder.writeName(reader.getNamespacePrefix(i));
+						encoder.writeName(reader.getNamespaceURI(i));
+					}
+					encoder.writeInt(reader.getAttributeCount());
+					for (int i = 0; i < reader.getAttributeCount(); i++) {
+						encoder.writeName(reader.getAttributePrefix(i));
+						encoder.writeName(reader.getAttributeLocalName(i));
+						encoder.writeString(reader.getAttributeValue(i));
+					}
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					depth--;
+					encoder.writeInt(TOKEN_END_ELEMENT);
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.SPACE:
+				case XMLStreamConstants.ENTITY_REFERENCE:
+					// content outside of the root element is not part of the data object
+					if (depth > 0) {
+						encoder.writeInt(TOKEN_CHARACTERS);
+						encoder.writeString(reader.getText());
+					}
+					break;
+				case XMLStreamConstants.CDATA:
+					encoder.writeInt(TOKEN_CDATA);
+					encoder.writeString(reader.getText());
+					break;
+				case XMLStreamConstants.COMMENT:
+					if (depth > 0) {
+						encoder.writeInt(TOKEN_COMMENT);
+						encoder.writeString(reader.getText());
+					}
+					break;
+				case XMLStreamConstants.PROCESSING_INSTRUCTION:
+					if (depth > 0) {
+						encoder.writeInt(TOKEN_PROCESSING_INSTRUCTION);
+						encoder.writeString(reader.getPITarget());
+						encoder.writeString(reader.getPIData());
+					}
+					break;
+				}
+			}
+		} catch (XMLStreamException e) {
+			throw new DocumentException("Failed to encode data object.", e);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (XMLStreamException e) {
+					// ignore
+				}
+			}
+		}
+		return encoder.toByteArray();
+	}
+
+	/**
+	 * Decodes a payload into a data object.
+	 * The data object wraps the serialized element and its root attributes, it is not parsed unless the element itself is requested.
+	 * @param payload Payload including the format header.
+	 * @param spaceId Identifier of the space the data object was published on.
+	 * @return Data object.
+	 * @throws DataFormatException The payload is corrupted.
+	 */
+	public static DataObject decodeDataObject(byte[] payload, String spaceId) throws DataFormatException {
+		Map<String, String> rootAttributes = new HashMap<String, String>();
+		String[] decoded = decode(payload, rootAttributes);
+		return new DataObject(decoded[0], spaceId, decoded[1], rootAttributes);
+	}
+
+	/**
+	 * Decodes a payload into the XML string of the data object.
+	 * @param payload Payload including the format header.
+	 * @return XML string of the data object.
+	 * @throws DataFormatException The payload is corrupted.
+	 */
+	public static String decodeString(byte[] payload) throws DataFormatException {
+		return decode(payload, null)[0];
+	}
+
+	/**
+	 * Decodes a payload into the XML string of the data object.
+	 * @param payload Payload including the format header.
+	 * @param rootAttributes Map to put the attributes of the root element in, with their local names as keys, or <code>null</code> to skip them.
+	 * @return Array with the XML string and the namespace URI of the root element, which is an empty string if the element has no namespace.
+	 * @throws DataFormatException The payload is corrupted.
+	 */
+	private static String[] decode(byte[] payload, Map<String, String> rootAttributes) throws DataFormatException {
+		if (PayloadCodec.getFormat(payload) != PayloadCodec.FORMAT_BINARY_XML) {
+			throw new DataFormatException("Unsupported storage format.");
+		}
+		Decoder decoder = new Decoder(payload, PayloadCodec.HEADER_SIZE);
+		StringBuilder builder = new StringBuilder(payload.length * 2);
+		List<String> openElements = new ArrayList<String>();
+		boolean startTagOpen = false;
+		String rootNamespace = "";
+		try {
+			while (decoder.hasMore()) {
+				int token = decoder.readInt();
+				if (startTagOpen && token != TOKEN_END_ELEMENT) {
+					builder.append('>');
+					startTagOpen = false;
+				}
+				switch (token) {
+				case TOKEN_START_ELEMENT:
+					String prefix = decoder.readName();
+					String localName = decoder.readName();
+					String qualifiedName = prefix.isEmpty() ? localName : prefix + ":" + localName;
+					openElements.add(qualifiedName);
+					builder.append('<').append(qualifiedName);
+					int namespaceCount = decoder.readInt();
+					for (int i = 0; i < namespaceCount; i++) {
+						String namespacePrefix = decoder.readName();
+						String namespaceURI = decoder.readName();
+						builder.append(namespacePrefix.isEmpty() ? " xmlns" : " xmlns:" + namespacePrefix).append("=\"");
+						appendEscaped(builder, namespaceURI, true);
+						builder.append('"');
+						if (openElements.size() == 1 && namespacePrefix.equals(prefix)) {
+							rootNamespace = namespaceURI;
+						}
+					}
+					int attributeCount = decoder.readInt();
+					for (int i = 0; i < attributeCount; i++) {
+						String attributePrefix = decoder.readName();
+						String attributeName = decoder.readName();
+						String value = decoder.readString();
+						builder.append(' ');
+						if (!attributePrefix.isEmpty()) {
+							builder.append(attributePrefix).append(':');
+						}
+						builder.append(attributeName).append("=\"");
+						appendEscaped(builder, value, true);
+						builder.append('"');
+						if (rootAttributes != null && openElements.size() == 1 && !rootAttributes.containsKey(attributeName)) {
+							rootAttributes.put(attributeName, value);
+						}
+					}
+					startTagOpen = true;
+					break;
+				case TOKEN_END_ELEMENT:
+					String name = openElements.remove(openElements.size() - 1);
+					if (startTagOpen) {
+						builder.append("/>");
+						startTagOpen = false;
+					} else {
+						builder.append("</").append(name).append('>');
+					}
+					break;
+				case TOKEN_CHARACTERS:
+					appendEscaped(builder, decoder.readString(), false);
+					break;
+				case TOKEN_CDATA:
+					builder.append("<![CDATA[").append(decoder.readString()).append("]]>");
+					break;
+				case TOKEN_COMMENT:
+					builder.append("<!--").append(decoder.readString()).append("-->");
+					break;
+				case TOKEN_PROCESSING_INSTRUCTION:
+					builder.append("<?").append(decoder.readString());
+					String data = decoder.readString();
+					if (!data.isEmpty()) {
+						builder.append(' ').append(data);
+					}
+					builder.append("?>");
+					break;
+				default:
+					throw new DataFormatException("Unknown token: " + token);
+				}
+			}
+		} catch (IndexOutOfBoundsException e) {
+			throw new DataFormatException("Truncated data object.");
+		}
+		if (!openElements.isEmpty() || builder.length() == 0) {
+			throw new DataFormatException("Truncated data object.");
+		}
+		return new String[] {builder.toString(), rootNamespace};
+	}
+
+	/**
+	 * Appends a string with the characters escaped which are not allowed in text or attribute values.
+	 * @param builder Builder to append the string to.
+	 * @param value String to append.
+	 * @param attribute <code>true</code> if the string is an attribute value enclosed in double quotes.
+	 */
+	private static void appendEscaped(StringBuilder builder, String value, boolean attribute) {
+		int start = 0;
+		while (start < value.length() && !needsEscaping(value.charAt(start), attribute)) {
+			start++;
+		}
+		builder.append(value, 0, start);
+		for (int i = start; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '&':
+				builder.append("&amp;");
+				break;
+			case '<':
+				builder.append("&lt;");
+				break;
+			case '>':
+				builder.append("&gt;");
+				break;
+			case '"':
+				builder.append(attribute ? "&quot;" : "\"");
+				break;
+			case '\t':
+				builder.append(attribute ? "&#9;" : "\t");
+				break;
+			case '\n':
+				builder.append(attribute ? "&#10;" : "\n");
+				break;
+			case '\r':
+				builder.append("&#13;");
+				break;
+			default:
+				builder.append(c);
+			}
+		}
+	}
+
+	/**
+	 * Checks if a character has to be escaped.
+	 * @param c Character to check.
+	 * @param attribute <code>true</code> if the character is part of an attribute value.
+	 * @return <code>true</code> if the character is replaced by {@link #appendEscaped(StringBuilder, String, boolean)}.
+	 */
+	private static boolean needsEscaping(char c, boolean attribute) {
+		switch (c) {
+		case '&':
+		case '<':
+		case '>':
+		case '\r':
+			return true;
+		case '"':
+		case '\t':
+		case '\n':
+			return attribute;
+		default:
+			return false;
+		}
+	}
+}
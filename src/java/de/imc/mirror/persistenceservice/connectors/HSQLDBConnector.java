@@ -12,6 +12,7 @@ public class HSQLDBConnector extends AbstractSQLConnector {
 	
 	@Override
 	public void initialize() {
+		super.initialize();
 		log.warn("HSQLDB connector initialized. Use a regular database for better performance!");
 	}
 }
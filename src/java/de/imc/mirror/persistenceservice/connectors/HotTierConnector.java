@@ -0,0 +1,716 @@
+package de.imc.mirror.persistenceservice.connectors;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.dom4j.DocumentException;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.imc.mirror.persistenceservice.DataObject;
+import de.imc.mirror.persistenceservice.DataObjectHandler;
+import de.imc.mirror.persistenceservice.DataObjectMetadata;
+import de.imc.mirror.persistenceservice.DatabaseConnector;
+import de.imc.mirror.persistenceservice.Filter;
+import de.imc.mirror.persistenceservice.FilterSet;
+import de.imc.mirror.persistenceservice.PageRequest;
+import de.imc.mirror.persistenceservice.ResultPage;
+import de.imc.mirror.persistenceservice.Space;
+import de.imc.mirror.persistenceservice.exceptions.DBAccessException;
+import de.imc.mirror.persistenceservice.filters.PeriodFilter;
+
+/**
+ * Database connector decorator keeping the recent data objects of spaces in memory.
+ * When a space is queried with a period starting within the time window of the hot tier, the data objects of the window are loaded from the
+ * wrapped connector once. Afterwards, stored and deleted data objects are written through to the wrapped connector and applied to the space in memory,
+ * so the space stays complete for the window. Queries with a period starting within the window are answered from memory, all other operations and
+ * paged queries are passed to the wrapped connector.
+ * If the estimated memory of all data objects exceeds the limit, the spaces queried least recently are removed from memory.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public class HotTierConnector implements DatabaseConnector, HotTierConnectorMBean {
+	private static final Logger log = LoggerFactory.getLogger(HotTierConnector.class);
+
+	/**
+	 * Estimated memory of an entry without its strings, including the references held by the indexes.
+	 */
+	private static final int ENTRY_OVERHEAD = 160;
+
+	/**
+	 * Estimated memory of a root attribute without its strings.
+	 */
+	private static final int ATTRIBUTE_OVERHEAD = 64;
+
+	/**
+	 * Order of the data objects of a space: by timestamp and identifier.
+	 */
+	private static final Comparator<Entry> TIMESTAMP_ORDER = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry entry1, Entry entry2) {
+			if (entry1.timestamp != entry2.timestamp) {
+				return entry1.timestamp < entry2.timestamp ? -1 : 1;
+			}
+			return entry1.objectId.compareTo(entry2.objectId);
+		}
+	};
+
+	/**
+	 * Order of expiring data objects: by expiration date and identifier.
+	 */
+	private static final Comparator<Entry> EXPIRATION_ORDER = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry entry1, Entry entry2) {
+			if (entry1.expirationDate != entry2.expirationDate) {
+				return entry1.expirationDate < entry2.expirationDate ? -1 : 1;
+			}
+			return entry1.objectId.compareTo(entry2.objectId);
+		}
+	};
+
+	/**
+	 * Data object kept in memory.
+	 * The XML string and the root attributes are stored instead of the data object, as a data object must not be shared between queries.
+	 * Data objects created from an entry do not parse the XML string to evaluate filters on CDM attributes.
+	 */
+	private static class Entry {
+		private final String objectId;
+		private final String spaceId;
+		private final String namespace;
+		private final Map<String, String> rootAttributes;
+		private final String elementString;
+		private final long timestamp;
+		private final long expirationDate;
+		private final int size;
+
+		Entry(String objectId, String spaceId, String namespace, Map<String, String> rootAttributes, String elementString, long timestamp, long expirationDate) {
+			this.objectId = objectId;
+			this.spaceId = spaceId;
+			this.namespace = namespace;
+			this.rootAttributes = rootAttributes;
+			this.elementString = elementString;
+			this.timestamp = timestamp;
+			this.expirationDate = expirationDate;
+			int estimatedSize = ENTRY_OVERHEAD + 2 * elementString.length() + 4 * objectId.length();
+			for (Map.Entry<String, String> attribute : rootAttributes.entrySet()) {
+				estimatedSize += ATTRIBUTE_OVERHEAD + 2 * (attribute.getKey().length() + attribute.getValue().length());
+			}
+			this.size = estimatedSize;
+		}
+
+		/**
+		 * Creates an entry to search a position in the time line of a space.
+		 * @param timestamp Timestamp to search.
+		 */
+		Entry(long timestamp) {
+			this("", null, null, Collections.<String, String>emptyMap(), "", timestamp, 0);
+		}
+
+		DataObject toDataObject() {
+			DataObject dataObject = new DataObject(elementString, spaceId, namespace, rootAttributes);
+			if (expirationDate != 0) {
+				dataObject.setExpirationDate(new Date(expirationDate));
+			}
+			return dataObject;
+		}
+	}
+
+	/**
+	 * Recent data objects of a space. All fields are guarded by the monitor of the instance.
+	 */
+	private static class HotSpace {
+		private final String spaceId;
+		private final Map<String, Entry> entries;
+		private final TreeSet<Entry> timeline;
+		private long coverageStart;
+		private boolean loaded;
+		private boolean discarded;
+		private Set<String> deletedWhileLoading;
+		private volatile long lastAccess;
+
+		/**
+		 * Creates an empty space which is not loaded yet.
+		 * @param spaceId Space identifier.
+		 * @param coverageStart Earliest timestamp of the data objects kept in memory.
+		 */
+		HotSpace(String spaceId, long coverageStart) {
+			this.spaceId = spaceId;
+			this.entries = new HashMap<String, Entry>();
+			this.timeline = new TreeSet<Entry>(TIMESTAMP_ORDER);
+			this.coverageStart = coverageStart;
+			this.deletedWhileLoading = new HashSet<String>();
+			this.lastAccess = System.currentTimeMillis();
+		}
+	}
+
+	private final DatabaseConnector connector;
+	private final long maxBytes;
+	private final long window;
+	private final ConcurrentMap<String, HotSpace> spaces;
+	private final ConcurrentMap<String, String> objectSpaces;
+	private final Set<Entry> expiringEntries;
+	private final Set<HotSpace> loadingSpaces;
+	private final Object evictionLock;
+	private final AtomicLong usedBytes;
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+	private final AtomicLong loads;
+	private final AtomicLong evictions;
+
+	/**
+	 * Creates a hot tier for a connector.
+	 * @param connector Connector to pass all operations to which cannot be answered from memory.
+	 * @param maxBytes Estimated memory the data objects kept in memory may occupy.
+	 * @param window Time window in milliseconds. Data objects with a timestamp within the window are kept in memory.
+	 */
+	public HotTierConnector(DatabaseConnector connector, long maxBytes, long window) {
+		this.connector = connector;
+		this.maxBytes = maxBytes;
+		this.window = window;
+		this.spaces = new ConcurrentHashMap<String, HotSpace>();
+		this.objectSpaces = new ConcurrentHashMap<String, String>();
+		this.expiringEntries = new ConcurrentSkipListSet<Entry>(EXPIRATION_ORDER);
+		this.loadingSpaces = new CopyOnWriteArraySet<HotSpace>();
+		this.evictionLock = new Object();
+		this.usedBytes = new AtomicLong();
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+		this.loads = new AtomicLong();
+		this.evictions = new AtomicLong();
+	}
+
+	/**
+	 * Creates an entry for a data object.
+	 * @param dataObject Data object to create entry for.
+	 * @return Entry, or <code>null</code> if the data object has no timestamp and therefore never matches a period.
+	 * @throws DocumentException Failed to read the CDM attributes of the data object.
+	 */
+	private static Entry createEntry(DataObject dataObject) throws DocumentException {
+		Date timestamp = dataObject.getTimestamp();
+		if (timestamp == null) {
+			return null;
+		}
+		Date expirationDate = dataObject.getExpirationDate();
+		String namespace = dataObject.getNamespace();
+		return new Entry(dataObject.getId(), dataObject.getSpaceId(), namespace != null ? namespace : "", dataObject.getRootAttributes(), dataObject.toString(), timestamp.getTime(), expirationDate != null ? expirationDate.getTime() : 0);
+	}
+
+	/**
+	 * Adds an entry to a space, replacing an entry for the same data object. Has to be called with the monitor of the space held.
+	 * @param space Space to add entry to.
+	 * @param entry Entry to add. Entries before the start of the space coverage are ignored.
+	 */
+	private void addEntry(HotSpace space, Entry entry) {
+		if (space.discarded || entry.timestamp < space.coverageStart) {
+			return;
+		}
+		removeEntry(space, entry.objectId);
+		space.entries.put(entry.objectId, entry);
+		space.timeline.add(entry);
+		objectSpaces.put(entry.objectId, space.spaceId);
+		if (entry.expirationDate != 0) {
+			expiringEntries.add(entry);
+		}
+		usedBytes.addAndGet(entry.size);
+	}
+
+	/**
+	 * Removes the entry of a data object from a space. Has to be called with the monitor of the space held.
+	 * @param space Space to remove entry from.
+	 * @param objectId Identifier of the data object.
+	 */
+	private void removeEntry(HotSpace space, String objectId) {
+		Entry entry = space.entries.remove(objectId);
+		if (entry != null) {
+			space.timeline.remove(entry);
+			objectSpaces.remove(objectId, space.spaceId);
+			if (entry.expirationDate != 0) {
+				expiringEntries.remove(entry);
+			}
+			usedBytes.addAndGet(-entry.size);
+		}
+	}
+
+	/**
+	 * Removes the entries before the start of the time window from a space. Has to be called with the monitor of the space held.
+	 * @param space Space to trim.
+	 * @param windowStart Start of the time window.
+	 */
+	private void trim(HotSpace space, long windowStart) {
+		while (!space.timeline.isEmpty() && space.timeline.first().timestamp < windowStart) {
+			removeEntry(space, space.timeline.first().objectId);
+		}
+		space.coverageStart = Math.max(space.coverageStart, windowStart);
+	}
+
+	/**
+	 * Removes a space from memory.
+	 * @param space Space to remove.
+	 */
+	private void removeSpace(HotSpace space) {
+		spaces.remove(space.spaceId, space);
+		synchronized (space) {
+			for (String objectId : new ArrayList<String>(space.entries.keySet())) {
+				removeEntry(space, objectId);
+			}
+			space.discarded = true;
+		}
+	}
+
+	/**
+	 * Removes the spaces queried least recently until the memory limit is met.
+	 * @param keep Space to be removed only if it exceeds the memory limit on its own, or <code>null</code>.
+	 */
+	private void evictIfNeeded(HotSpace keep) {
+		if (usedBytes.get() <= maxBytes) {
+			return;
+		}
+		synchronized (evictionLock) {
+			while (usedBytes.get() > maxBytes) {
+				HotSpace victim = null;
+				for (HotSpace space : spaces.values()) {
+					if (space != keep && (victim == null || space.lastAccess < victim.lastAccess)) {
+						victim = space;
+					}
+				}
+				if (victim == null) {
+					victim = keep;
+				}
+				if (victim == null || victim.discarded) {
+					break;
+				}
+				removeSpace(victim);
+				evictions.incrementAndGet();
+				log.debug("Removed space " + victim.spaceId + " from the hot tier.");
+			}
+		}
+	}
+
+	/**
+	 * Creates a filter for the data objects published within the time window.
+	 * @param windowStart Start of the time window.
+	 * @return Period filter.
+	 */
+	private static Filter createWindowFilter(long windowStart) {
+		Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+		calendar.setTimeInMillis(windowStart);
+		Element periodElement = DocumentHelper.createElement("period");
+		periodElement.addAttribute("from", DatatypeConverter.printDateTime(calendar));
+		return new PeriodFilter(periodElement);
+	}
+
+	/**
+	 * Loads the data objects of the time window of a space from the wrapped connector.
+	 * Data objects stored or deleted while the space is loaded are applied as well.
+	 * @param spaceId Identifier of the space to load.
+	 * @param windowStart Start of the time window.
+	 * @return Loaded space, or <code>null</code> if the space is loaded by another query or the loading failed.
+	 */
+	private HotSpace loadSpace(String spaceId, long windowStart) {
+		HotSpace space = new HotSpace(spaceId, windowStart);
+		if (spaces.putIfAbsent(spaceId, space) != null) {
+			return null;
+		}
+		loadingSpaces.add(space);
+		try {
+			final List<DataObject> dataObjects = new ArrayList<DataObject>();
+			FilterSet windowFilterSet = new FilterSet();
+			windowFilterSet.addFilter(createWindowFilter(windowStart));
+			connector.streamObjectsForSpaces(Collections.singleton(spaceId), windowFilterSet, new DataObjectHandler() {
+				@Override
+				public boolean handleDataObject(DataObject dataObject) {
+					dataObjects.add(dataObject);
+					return true;
+				}
+			});
+			List<Entry> entries = new ArrayList<Entry>(dataObjects.size());
+			for (DataObject dataObject : dataObjects) {
+				Entry entry = createEntry(dataObject);
+				if (entry != null) {
+					entries.add(entry);
+				}
+			}
+			synchronized (space) {
+				for (Entry entry : entries) {
+					if (!space.deletedWhileLoading.contains(entry.objectId) && !space.entries.containsKey(entry.objectId)) {
+						addEntry(space, entry);
+					}
+				}
+				space.deletedWhileLoading = null;
+				space.loaded = true;
+			}
+		} catch (DBAccessException e) {
+			log.warn("Failed to load space " + spaceId + " into the hot tier.", e);
+			removeSpace(space);
+			return null;
+		} catch (DocumentException e) {
+			log.warn("Failed to load space " + spaceId + " into the hot tier.", e);
+			removeSpace(space);
+			return null;
+		} finally {
+			loadingSpaces.remove(space);
+		}
+		loads.incrementAndGet();
+		evictIfNeeded(space);
+		return space;
+	}
+
+	/**
+	 * Returns the start of the period requested by a filter set.
+	 * @param filterSet Filter set of a query.
+	 * @return Latest start of all period filters, or <code>null</code> if the filter set does not restrict the start of the period.
+	 */
+	private static Long getPeriodStart(FilterSet filterSet) {
+		Long periodStart = null;
+		for (Filter filter : filterSet.getFilters()) {
+			if (filter instanceof PeriodFilter && ((PeriodFilter) filter).getFrom() != null) {
+				long from = ((PeriodFilter) filter).getFrom().getTime();
+				if (periodStart == null || from > periodStart) {
+					periodStart = from;
+				}
+			}
+		}
+		return periodStart;
+	}
+
+	/**
+	 * Reads the data objects requested by a query from memory.
+	 * Spaces which are not in memory yet are loaded if the period of the query starts within the time window.
+	 * @param spaceIds Identifiers of the queried spaces.
+	 * @param filterSet Filter set of the query.
+	 * @return List containing one list of entries per space, ordered by timestamp, or <code>null</code> if the query cannot be answered from memory.
+	 */
+	private List<List<Entry>> readFromMemory(Collection<String> spaceIds, FilterSet filterSet) {
+		Long periodStart = getPeriodStart(filterSet);
+		long now = System.currentTimeMillis();
+		long windowStart = now - window;
+		if (periodStart == null || periodStart < windowStart) {
+			misses.incrementAndGet();
+			return null;
+		}
+		List<List<Entry>> spaceEntries = new ArrayList<List<Entry>>(spaceIds.size());
+		Entry periodStartEntry = new Entry(periodStart);
+		for (String spaceId : spaceIds) {
+			HotSpace space = spaces.get(spaceId);
+			if (space == null) {
+				space = loadSpace(spaceId, windowStart);
+			}
+			if (space == null) {
+				misses.incrementAndGet();
+				return null;
+			}
+			synchronized (space) {
+				if (!space.loaded || space.discarded) {
+					misses.incrementAndGet();
+					return null;
+				}
+				trim(space, windowStart);
+				space.lastAccess = now;
+				spaceEntries.add(new ArrayList<Entry>(space.timeline.tailSet(periodStartEntry, true)));
+			}
+		}
+		hits.incrementAndGet();
+		return spaceEntries;
+	}
+
+	/**
+	 * Applies stored data objects to the spaces in memory.
+	 * @param dataObjects Data objects stored by the wrapped connector.
+	 */
+	private void applyStoredObjects(Collection<DataObject> dataObjects) {
+		for (DataObject dataObject : dataObjects) {
+			HotSpace space = spaces.get(dataObject.getSpaceId());
+			if (space == null) {
+				continue;
+			}
+			Entry entry;
+			try {
+				entry = createEntry(dataObject);
+			} catch (DocumentException e) {
+				// the space would be incomplete otherwise
+				removeSpace(space);
+				continue;
+			}
+			if (entry != null) {
+				synchronized (space) {
+					addEntry(space, entry);
+				}
+			}
+		}
+		evictIfNeeded(null);
+	}
+
+	/**
+	 * Applies deleted data objects to the spaces in memory.
+	 * @param objectIds Identifiers of the data objects deleted by the wrapped connector.
+	 */
+	private void applyDeletedObjects(Collection<String> objectIds) {
+		// Loading spaces are checked first: A space is removed from the loading spaces after its entries are published,
+		// so entries published after this check are found in the object index below.
+		for (HotSpace space : loadingSpaces) {
+			synchronized (space) {
+				if (space.loaded) {
+					for (String objectId : objectIds) {
+						removeEntry(space, objectId);
+					}
+				} else if (!space.discarded) {
+					space.deletedWhileLoading.addAll(objectIds);
+				}
+			}
+		}
+		for (String objectId : objectIds) {
+			String spaceId = objectSpaces.get(objectId);
+			HotSpace space = spaceId != null ? spaces.get(spaceId) : null;
+			if (space != null) {
+				synchronized (space) {
+					removeEntry(space, objectId);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes the data objects deleted by the expiration of the wrapped connector from memory.
+	 * Referenced data objects are kept by the wrapped connector, therefore the expired data objects in memory are checked for existence.
+	 * Spaces loaded concurrently are removed, as it is unknown which of their data objects were deleted.
+	 * @param time Time the expiration was started at.
+	 * @throws DBAccessException Failed to check the existence of the expired data objects.
+	 */
+	private void applyExpiration(long time) throws DBAccessException {
+		for (HotSpace space : loadingSpaces) {
+			removeSpace(space);
+		}
+		Set<String> expiredObjectIds = new HashSet<String>();
+		for (Entry entry : expiringEntries) {
+			if (entry.expirationDate > time) {
+				break;
+			}
+			expiredObjectIds.add(entry.objectId);
+		}
+		if (expiredObjectIds.isEmpty()) {
+			return;
+		}
+		List<String> deletedObjectIds = new ArrayList<String>();
+		for (Map.Entry<String, String> objectSpace : connector.retrieveSpacesForObjects(expiredObjectIds).entrySet()) {
+			if (objectSpace.getValue() == null) {
+				deletedObjectIds.add(objectSpace.getKey());
+			}
+		}
+		applyDeletedObjects(deletedObjectIds);
+	}
+
+	@Override
+	public void initialize() {
+		connector.initialize();
+	}
+
+	@Override
+	public void storeDataObject(DataObject dataObject) throws DBAccessException, DocumentException {
+		connector.storeDataObject(dataObject);
+		applyStoredObjects(Collections.singletonList(dataObject));
+	}
+
+	@Override
+	public void storeDataObjects(Collection<DataObject> dataObjects) throws DBAccessException, DocumentException {
+		connector.storeDataObjects(dataObjects);
+		applyStoredObjects(dataObjects);
+	}
+
+	@Override
+	public List<DataObject> retrieveObjectsForSpace(Space space, FilterSet filterSet) throws DBAccessException {
+		List<List<Entry>> spaceEntries = readFromMemory(Collections.singleton(space.getId()), filterSet);
+		if (spaceEntries == null) {
+			return connector.retrieveObjectsForSpace(space, filterSet);
+		}
+		List<DataObject> dataObjects = new ArrayList<DataObject>();
+		for (Entry entry : spaceEntries.get(0)) {
+			DataObject dataObject = entry.toDataObject();
+			if (filterSet.isValid(dataObject)) {
+				dataObjects.add(dataObject);
+			}
+		}
+		return dataObjects;
+	}
+
+	@Override
+	public List<DataObject> retrieveObjects(Set<String> objectIds, FilterSet filterSet) throws DBAccessException {
+		return connector.retrieveObjects(objectIds, filterSet);
+	}
+
+	@Override
+	public ResultPage retrieveObjectsForSpaces(Set<String> spaceIds, FilterSet filterSet, PageRequest pageRequest) throws DBAccessException {
+		misses.incrementAndGet();
+		return connector.retrieveObjectsForSpaces(spaceIds, filterSet, pageRequest);
+	}
+
+	@Override
+	public ResultPage retrieveObjects(Set<String> objectIds, FilterSet filterSet, PageRequest pageRequest) throws DBAccessException {
+		return connector.retrieveObjects(objectIds, filterSet, pageRequest);
+	}
+
+	@Override
+	public int streamObjectsForSpaces(Set<String> spaceIds, FilterSet filterSet, DataObjectHandler handler) throws DBAccessException {
+		List<List<Entry>> spaceEntries = readFromMemory(spaceIds, filterSet);
+		if (spaceEntries == null) {
+			return connector.streamObjectsForSpaces(spaceIds, filterSet, handler);
+		}
+		int objectsHandled = 0;
+		for (List<Entry> entries : spaceEntries) {
+			for (Entry entry : entries) {
+				DataObject dataObject = entry.toDataObject();
+				if (filterSet.isValid(dataObject)) {
+					objectsHandled++;
+					if (!handler.handleDataObject(dataObject)) {
+						return objectsHandled;
+					}
+				}
+			}
+		}
+		return objectsHandled;
+	}
+
+	@Override
+	public int streamObjects(Set<String> objectIds, FilterSet filterSet, DataObjectHandler handler) throws DBAccessException {
+		return connector.streamObjects(objectIds, filterSet, handler);
+	}
+
+	@Override
+	public DataObject retrieveObject(String objectId) throws DBAccessException {
+		return connector.retrieveObject(objectId);
+	}
+
+	@Override
+	public int deleteObjectsForSpace(String spaceId) throws DBAccessException {
+		int objectsDeleted = connector.deleteObjectsForSpace(spaceId);
+		HotSpace space = spaces.get(spaceId);
+		if (space != null) {
+			removeSpace(space);
+		}
+		return objectsDeleted;
+	}
+
+	@Override
+	public int deleteObjects(Set<String> objectIds) throws DBAccessException {
+		int objectsDeleted = connector.deleteObjects(objectIds);
+		applyDeletedObjects(objectIds);
+		return objectsDeleted;
+	}
+
+	@Override
+	public Map<String, String> retrieveSpacesForObjects(Set<String> objectIds) throws DBAccessException {
+		return connector.retrieveSpacesForObjects(objectIds);
+	}
+
+	@Override
+	public Map<String, DataObjectMetadata> retrieveMetadataForObjects(Set<String> objectIds) throws DBAccessException {
+		return connector.retrieveMetadataForObjects(objectIds);
+	}
+
+	@Override
+	public int deleteExpiredDataObjects() throws DBAccessException {
+		long time = System.currentTimeMillis();
+		int objectsDeleted = connector.deleteExpiredDataObjects();
+		if (objectsDeleted > 0) {
+			applyExpiration(time);
+		}
+		return objectsDeleted;
+	}
+
+	@Override
+	public int deleteExpiredDataObjects(int maxObjects, long timeBudget) throws DBAccessException {
+		long time = System.currentTimeMillis();
+		int objectsDeleted = connector.deleteExpiredDataObjects(maxObjects, timeBudget);
+		if (objectsDeleted > 0) {
+			applyExpiration(time);
+		}
+		return objectsDeleted;
+	}
+
+	@Override
+	public int trainCompressionDictionaries() throws DBAccessException {
+		return connector.trainCompressionDictionaries();
+	}
+
+	@Override
+	public int compressDataObjects(int maxObjects) throws DBAccessException {
+		return connector.compressDataObjects(maxObjects);
+	}
+
+	@Override
+	public int getSpaceCount() {
+		return spaces.size();
+	}
+
+	@Override
+	public int getObjectCount() {
+		return objectSpaces.size();
+	}
+
+	@Override
+	public long getUsedBytes() {
+		return usedBytes.get();
+	}
+
+	@Override
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	@Override
+	public long getWindow() {
+		return window;
+	}
+
+	@Override
+	public long getHits() {
+		return hits.get();
+	}
+
+	@Override
+	public long getMisses() {
+		return misses.get();
+	}
+
+	@Override
+	public double getHitRate() {
+		long hitCount = hits.get();
+		long total = hitCount + misses.get();
+		return total > 0 ? (double) hitCount / total : 0;
+	}
+
+	@Override
+	public long getLoads() {
+		return loads.get();
+	}
+
+	@Override
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	@Override
+	public void clear() {
+		for (HotSpace space : spaces.values()) {
+			removeSpace(space);
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package de.imc.mirror.persistenceservice.connectors;
+
+/**
+ * Management interface of the hot tier.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public interface HotTierConnectorMBean {
+	/**
+	 * Returns the number of spaces whose recent data objects are kept in memory.
+	 * @return Number of spaces.
+	 */
+	public int getSpaceCount();
+
+	/**
+	 * Returns the number of data objects kept in memory.
+	 * @return Number of data objects.
+	 */
+	public int getObjectCount();
+
+	/**
+	 * Returns the estimated memory occupied by the data objects kept in memory.
+	 * @return Size in bytes.
+	 */
+	public long getUsedBytes();
+
+	/**
+	 * Returns the estimated memory the data objects may occupy.
+	 * @return Size in bytes.
+	 */
+	public long getMaxBytes();
+
+	/**
+	 * Returns the time window of the hot tier.
+	 * @return Window length in milliseconds.
+	 */
+	public long getWindow();
+
+	/**
+	 * Returns the number of space queries answered from memory.
+	 * @return Number of hits.
+	 */
+	public long getHits();
+
+	/**
+	 * Returns the number of space queries passed to the storage engine, including paged queries and queries without period filter.
+	 * @return Number of misses.
+	 */
+	public long getMisses();
+
+	/**
+	 * Returns the share of space queries answered from memory.
+	 * @return Hit rate between <code>0</code> and <code>1</code>.
+	 */
+	public double getHitRate();
+
+	/**
+	 * Returns the number of spaces whose recent data objects were loaded from the storage engine.
+	 * @return Number of loads.
+	 */
+	public long getLoads();
+
+	/**
+	 * Returns the number of spaces removed from memory to stay within the memory limit.
+	 * @return Number of evictions.
+	 */
+	public long getEvictions();
+
+	/**
+	 * Removes all data objects from memory. Spaces are loaded again when they are queried.
+	 */
+	public void clear();
+}
@@ -0,0 +1,1276 @@
+package de.imc.mirror.persistenceservice.connectors;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TimerTask;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.zip.CRC32;
+
+import org.dom4j.DocumentException;
+import org.jivesoftware.util.JiveGlobals;
+import org.jivesoftware.util.TaskEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.imc.mirror.persistenceservice.DataObject;
+import de.imc.mirror.persistenceservice.DataObjectHandler;
+import de.imc.mirror.persistenceservice.DataObjectMetadata;
+import de.imc.mirror.persistenceservice.DatabaseConnector;
+import de.imc.mirror.persistenceservice.FilterSet;
+import de.imc.mirror.persistenceservice.PageCursor;
+import de.imc.mirror.persistenceservice.PageRequest;
+import de.imc.mirror.persistenceservice.ResultPage;
+import de.imc.mirror.persistenceservice.Space;
+import de.imc.mirror.persistenceservice.config.ExpirationConfig;
+import de.imc.mirror.persistenceservice.config.LogStoreConfig;
+import de.imc.mirror.persistenceservice.exceptions.DBAccessException;
+
+/**
+ * Connector for an embedded, append-only log-structured storage engine, which does not use the database of Openfire.
+ * Data objects are appended to segment files in records protected by a checksum. Each insert and delete is written as a single record,
+ * so it is stored completely or not at all. Segments are synced to disk periodically and read through memory mappings.
+ * The metadata of all data objects is kept in memory: an index maps object identifiers to their position in the segments,
+ * a posting list per space holds the data objects ordered by timestamp and identifier. The index is rebuilt from the segments on startup.
+ * Deletes are written as tombstones. Segments with a high share of deleted, expired or overwritten data are compacted in the background
+ * by copying their live data objects to the active segment.
+ * All filters are evaluated in Java, as there is no query engine.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public class LogStructuredConnector implements DatabaseConnector {
+	private static final Logger log = LoggerFactory.getLogger(LogStructuredConnector.class);
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final byte RECORD_PUT = 1;
+	private static final byte RECORD_DELETE = 2;
+	private static final int RECORD_HEADER_SIZE = 8; // body length and CRC32 checksum of the body
+	private static final int COMPACTION_BATCH_SIZE = 1000;
+
+	/**
+	 * Order of the data objects of a space: Data objects without timestamp first, then by timestamp and identifier.
+	 */
+	private static final Comparator<IndexEntry> TIMESTAMP_ORDER = new Comparator<IndexEntry>() {
+		@Override
+		public int compare(IndexEntry entry1, IndexEntry entry2) {
+			if (entry1.timestamp == null) {
+				if (entry2.timestamp != null) {
+					return -1;
+				}
+			} else if (entry2.timestamp == null) {
+				return 1;
+			} else if (!entry1.timestamp.equals(entry2.timestamp)) {
+				return entry1.timestamp < entry2.timestamp ? -1 : 1;
+			}
+			return entry1.objectId.compareTo(entry2.objectId);
+		}
+	};
+
+	/**
+	 * Order of expiring data objects: by expiration date and identifier.
+	 */
+	private static final Comparator<IndexEntry> EXPIRATION_ORDER = new Comparator<IndexEntry>() {
+		@Override
+		public int compare(IndexEntry entry1, IndexEntry entry2) {
+			if (entry1.expirationDate != entry2.expirationDate) {
+				return entry1.expirationDate < entry2.expirationDate ? -1 : 1;
+			}
+			return entry1.objectId.compareTo(entry2.objectId);
+		}
+	};
+
+	/**
+	 * Segment file of the log.
+	 */
+	private static class Segment {
+		private final int id;
+		private final File file;
+		private final FileChannel channel;
+		private volatile MappedByteBuffer mappedBuffer;
+		private volatile boolean sealed;
+		private volatile long size;
+		private volatile long deadBytes;
+
+		Segment(int id, File file) throws IOException {
+			this.id = id;
+			this.file = file;
+			this.channel = new RandomAccessFile(file, "rw").getChannel();
+			this.size = channel.size();
+		}
+
+		/**
+		 * Returns a buffer for a region of the segment.
+		 * Sealed segments are mapped completely once. Regions of the active segment are read from the channel, as the mapping would have to be renewed after every append.
+		 * @param offset Start of the region.
+		 * @param length Length of the region.
+		 * @return Buffer positioned at the start of the region.
+		 * @throws IOException Failed to read or map the segment.
+		 */
+		ByteBuffer read(int offset, int length) throws IOException {
+			if (!sealed) {
+				ByteBuffer buffer = ByteBuffer.allocate(length);
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer, offset + buffer.position()) < 0) {
+						throw new EOFException("Region exceeds segment " + file + ".");
+					}
+				}
+				buffer.flip();
+				return buffer;
+			}
+			MappedByteBuffer mapped = mappedBuffer;
+			if (mapped == null) {
+				synchronized (this) {
+					mapped = mappedBuffer;
+					if (mapped == null) {
+						mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+						mappedBuffer = mapped;
+					}
+				}
+			}
+			ByteBuffer buffer = mapped.duplicate();
+			buffer.limit(offset + length);
+			buffer.position(offset);
+			return buffer;
+		}
+
+		/**
+		 * Appends data to the segment.
+		 * @param data Data to append.
+		 * @return Offset the data was written at.
+		 * @throws IOException Failed to write the data.
+		 */
+		int append(ByteBuffer data) throws IOException {
+			long position = size;
+			while (data.hasRemaining()) {
+				position += channel.write(data, position);
+			}
+			int offset = (int) size;
+			size = position;
+			return offset;
+		}
+
+		/**
+		 * Marks the segment as complete. No data is appended to sealed segments.
+		 */
+		void seal() {
+			sealed = true;
+		}
+
+		void sync() throws IOException {
+			channel.force(false);
+		}
+
+		void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Metadata and position of a stored data object.
+	 */
+	private static class IndexEntry {
+		private final String objectId;
+		private final String spaceId;
+		private final String namespace;
+		private final String publisher;
+		private final Long timestamp;
+		private final long expirationDate;
+		private final String[] references;
+		private final Segment segment;
+		private final int payloadOffset;
+		private final int payloadLength;
+		private final int size;
+
+		IndexEntry(String objectId, String spaceId, String namespace, String publisher, Long timestamp, long expirationDate, String[] references, Segment segment, int payloadOffset, int payloadLength, int size) {
+			this.objectId = objectId;
+			this.spaceId = spaceId;
+			this.namespace = namespace;
+			this.publisher = publisher;
+			this.timestamp = timestamp;
+			this.expirationDate = expirationDate;
+			this.references = references;
+			this.segment = segment;
+			this.payloadOffset = payloadOffset;
+			this.payloadLength = payloadLength;
+			this.size = size;
+		}
+
+		/**
+		 * Creates an entry to search the position of a page cursor.
+		 * @param cursor Page cursor.
+		 */
+		IndexEntry(PageCursor cursor) {
+			this(cursor.getObjectId(), null, null, null, cursor.getTimestamp(), 0, null, null, 0, 0, 0);
+		}
+
+		/**
+		 * Creates an entry for the same data object at another position.
+		 * @param segment Segment the data object was copied to.
+		 * @param payloadOffset Offset of the payload in the segment.
+		 * @return Index entry.
+		 */
+		IndexEntry moveTo(Segment segment, int payloadOffset) {
+			return new IndexEntry(objectId, spaceId, namespace, publisher, timestamp, expirationDate, references, segment, payloadOffset, payloadLength, size);
+		}
+	}
+
+	/**
+	 * Buffer for the body of a record.
+	 */
+	private static class RecordWriter extends ByteArrayOutputStream {
+		RecordWriter(int size) {
+			super(size);
+		}
+
+		void writeInt(int value) {
+			write(value >>> 24);
+			write(value >>> 16);
+			write(value >>> 8);
+			write(value);
+		}
+
+		void writeLong(long value) {
+			writeInt((int) (value >>> 32));
+			writeInt((int) value);
+		}
+
+		void writeString(String value) {
+			writeByteArray(value != null ? value.getBytes(UTF8) : new byte[0]);
+		}
+
+		void writeByteArray(byte[] value) {
+			writeInt(value.length);
+			write(value, 0, value.length);
+		}
+
+		/**
+		 * Writes a data object.
+		 * @param entry Metadata of the data object.
+		 * @param payload XML string of the data object, UTF-8 encoded.
+		 * @return Position of the payload within the body.
+		 */
+		int writeEntry(IndexEntry entry, byte[] payload) {
+			writeString(entry.objectId);
+			writeString(entry.spaceId);
+			writeString(entry.namespace);
+			writeString(entry.publisher);
+			writeLong(entry.timestamp != null ? entry.timestamp : Long.MIN_VALUE);
+			writeLong(entry.expirationDate);
+			writeInt(entry.references.length);
+			for (String reference : entry.references) {
+				writeString(reference);
+			}
+			writeInt(payload.length);
+			int payloadPosition = count;
+			write(payload, 0, payload.length);
+			return payloadPosition;
+		}
+
+		/**
+		 * Creates the record of the body, including the header.
+		 * @return Buffer ready to be written.
+		 */
+		ByteBuffer toRecord() {
+			CRC32 crc = new CRC32();
+			crc.update(buf, 0, count);
+			ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + count);
+			record.putInt(count);
+			record.putInt((int) crc.getValue());
+			record.put(buf, 0, count);
+			record.flip();
+			return record;
+		}
+	}
+
+	/**
+	 * Reader for the body of a record.
+	 */
+	private static class RecordReader {
+		private final byte[] body;
+		private int position;
+
+		RecordReader(byte[] body) {
+			this.body = body;
+		}
+
+		byte readByte() {
+			return body[position++];
+		}
+
+		int readInt() {
+			int value = ((body[position] & 0xFF) << 24) | ((body[position + 1] & 0xFF) << 16) | ((body[position + 2] & 0xFF) << 8) | (body[position + 3] & 0xFF);
+			position += 4;
+			return value;
+		}
+
+		long readLong() {
+			long high = readInt();
+			return (high << 32) | (readInt() & 0xFFFFFFFFL);
+		}
+
+		String readString() {
+			int length = readInt();
+			String value = new String(body, position, length, UTF8);
+			position += length;
+			return value;
+		}
+
+		/**
+		 * Reads a data object.
+		 * @param segment Segment the record is stored in.
+		 * @param bodyOffset Offset of the body in the segment.
+		 * @return Index entry of the data object.
+		 */
+		IndexEntry readEntry(Segment segment, int bodyOffset) {
+			int start = position;
+			String objectId = readString();
+			String spaceId = readString();
+			String namespace = readString();
+			String publisher = readString();
+			long timestamp = readLong();
+			long expirationDate = readLong();
+			String[] references = new String[readInt()];
+			for (int i = 0; i < references.length; i++) {
+				references[i] = readString();
+			}
+			int payloadLength = readInt();
+			int payloadOffset = bodyOffset + position;
+			position += payloadLength;
+			return new IndexEntry(objectId, spaceId, namespace, publisher.isEmpty() ? null : publisher, timestamp != Long.MIN_VALUE ? timestamp : null, expirationDate, references, segment, payloadOffset, payloadLength, position - start);
+		}
+	}
+
+	/**
+	 * Handler for the records of a segment.
+	 */
+	private interface RecordHandler {
+		/**
+		 * Handles a record.
+		 * @param bodyOffset Offset of the body in the segment.
+		 * @param body Body of the record.
+		 * @throws IOException Failed to handle the record.
+		 */
+		public void handleRecord(int bodyOffset, byte[] body) throws IOException;
+	}
+
+	/**
+	 * Source of index entries for a page, positioned at its next entry.
+	 */
+	private static class PageSource {
+		private final Iterator<IndexEntry> iterator;
+		private IndexEntry next;
+
+		PageSource(Iterator<IndexEntry> iterator) {
+			this.iterator = iterator;
+			this.next = iterator.next();
+		}
+
+		boolean advance() {
+			next = iterator.hasNext() ? iterator.next() : null;
+			return next != null;
+		}
+	}
+
+	private final File directory;
+	private final Object writeLock;
+	private final ConcurrentMap<String, IndexEntry> objects;
+	private final ConcurrentMap<String, NavigableSet<IndexEntry>> spaces;
+	private final NavigableSet<IndexEntry> expiringObjects;
+	private final Map<String, Integer> referenceCounts; // guarded by write lock
+	private final ConcurrentSkipListMap<Integer, Segment> segments;
+	private volatile Segment activeSegment;
+	private volatile boolean unsynced;
+	private TimerTask syncTask;
+	private TimerTask compactionTask;
+
+	/**
+	 * Creates a connector storing the segments in the given directory. The connector has to be initialized before it is used.
+	 * @param directory Directory for the segment files. It is created if it does not exist.
+	 */
+	public LogStructuredConnector(File directory) {
+		this.directory = directory;
+		this.writeLock = new Object();
+		this.objects = new ConcurrentHashMap<String, IndexEntry>();
+		this.spaces = new ConcurrentHashMap<String, NavigableSet<IndexEntry>>();
+		this.expiringObjects = new ConcurrentSkipListSet<IndexEntry>(EXPIRATION_ORDER);
+		this.referenceCounts = new HashMap<String, Integer>();
+		this.segments = new ConcurrentSkipListMap<Integer, Segment>();
+	}
+
+	/**
+	 * Opens the segments, rebuilds the index and starts the periodic sync and compaction.
+	 * @throws IllegalStateException The segments could not be opened.
+	 */
+	@Override
+	public void initialize() {
+		long start = System.currentTimeMillis();
+		try {
+			recover();
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to open the log store in " + directory + ".", e);
+		}
+		log.info("Opened log store with " + objects.size() + " data object(s) in " + segments.size() + " segment(s) in " + (System.currentTimeMillis() - start) + " ms.");
+
+		long syncInterval = JiveGlobals.getLongProperty(LogStoreConfig.PROPERTY_SYNC_INTERVAL, LogStoreConfig.DEFAULT_SYNC_INTERVAL);
+		if (syncInterval > 0) {
+			syncTask = new TimerTask() {
+				@Override
+				public void run() {
+					try {
+						sync();
+					} catch (IOException e) {
+						log.warn("Failed to sync the log store.", e);
+					}
+				}
+			};
+			TaskEngine.getInstance().scheduleAtFixedRate(syncTask, syncInterval, syncInterval);
+		}
+		long compactionInterval = JiveGlobals.getLongProperty(LogStoreConfig.PROPERTY_COMPACTION_INTERVAL, LogStoreConfig.DEFAULT_COMPACTION_INTERVAL);
+		if (compactionInterval > 0) {
+			compactionTask = new TimerTask() {
+				@Override
+				public void run() {
+					try {
+						compact();
+					} catch (IOException e) {
+						log.warn("Failed to compact the log store.", e);
+					}
+				}
+			};
+			TaskEngine.getInstance().schedule(compactionTask, compactionInterval, compactionInterval);
+		}
+	}
+
+	/**
+	 * Stops the periodic tasks, syncs the active segment and closes all segments.
+	 */
+	public void close() {
+		if (syncTask != null) {
+			TaskEngine.getInstance().cancelScheduledTask(syncTask);
+		}
+		if (compactionTask != null) {
+			TaskEngine.getInstance().cancelScheduledTask(compactionTask);
+		}
+		synchronized (writeLock) {
+			try {
+				if (activeSegment != null) {
+					activeSegment.sync();
+				}
+			} catch (IOException e) {
+				log.warn("Failed to sync the log store.", e);
+			}
+			for (Segment segment : segments.values()) {
+				try {
+					segment.close();
+				} catch (IOException e) {
+					log.warn("Failed to close segment " + segment.file + ".", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Opens all segment files and replays their records.
+	 * A segment ending with an incomplete or corrupted record is truncated, e.g., after a crash during a write.
+	 * @throws IOException Failed to read the segments.
+	 */
+	private void recover() throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Failed to create directory " + directory + ".");
+		}
+		File[] files = directory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.isFile() && file.getName().startsWith(SEGMENT_PREFIX) && file.getName().endsWith(SEGMENT_SUFFIX);
+			}
+		});
+		synchronized (writeLock) {
+			for (File file : files) {
+				String name = file.getName();
+				int id;
+				try {
+					id = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+				} catch (NumberFormatException e) {
+					log.warn("Ignoring file " + file + " in log store directory.");
+					continue;
+				}
+				segments.put(id, new Segment(id, file));
+			}
+			for (final Segment segment : segments.values()) {
+				long end = scanSegment(segment, new RecordHandler() {
+					@Override
+					public void handleRecord(int bodyOffset, byte[] body) {
+						replayRecord(segment, bodyOffset, body);
+					}
+				});
+				if (end < segment.size) {
+					log.warn("Truncating segment " + segment.file + " from " + segment.size + " to " + end + " bytes, as it ends with an incomplete record.");
+					segment.channel.truncate(end);
+					segment.size = end;
+				}
+			}
+			activeSegment = segments.isEmpty() ? createSegment(1) : segments.lastEntry().getValue();
+			for (Segment segment : segments.values()) {
+				if (segment != activeSegment) {
+					segment.seal();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads all valid records of a segment.
+	 * @param segment Segment to read.
+	 * @param handler Handler to pass the records to.
+	 * @return Position after the last valid record.
+	 * @throws IOException Failed to read the segment.
+	 */
+	private long scanSegment(Segment segment, RecordHandler handler) throws IOException {
+		long position = 0;
+		long size = segment.size;
+		ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+		while (position + RECORD_HEADER_SIZE <= size) {
+			header.clear();
+			readFully(segment.channel, header, position);
+			header.flip();
+			int bodyLength = header.getInt();
+			int checksum = header.getInt();
+			if (bodyLength <= 0 || position + RECORD_HEADER_SIZE + bodyLength > size) {
+				break;
+			}
+			ByteBuffer body = ByteBuffer.allocate(bodyLength);
+			readFully(segment.channel, body, position + RECORD_HEADER_SIZE);
+			CRC32 crc = new CRC32();
+			crc.update(body.array(), 0, bodyLength);
+			if ((int) crc.getValue() != checksum) {
+				break;
+			}
+			handler.handleRecord((int) position + RECORD_HEADER_SIZE, body.array());
+			position += RECORD_HEADER_SIZE + bodyLength;
+		}
+		return position;
+	}
+
+	/**
+	 * Reads from a channel until the buffer is full.
+	 * @param channel Channel to read from.
+	 * @param buffer Buffer to fill.
+	 * @param position Position in the channel to start reading at.
+	 * @throws IOException Failed to read, or the end of the channel was reached.
+	 */
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int bytesRead = channel.read(buffer, position);
+			if (bytesRead < 0) {
+				throw new IOException("Unexpected end of segment.");
+			}
+			position += bytesRead;
+		}
+	}
+
+	/**
+	 * Applies a record to the index while the segments are replayed.
+	 * @param segment Segment containing the record.
+	 * @param bodyOffset Offset of the body in the segment.
+	 * @param body Body of the record.
+	 */
+	private void replayRecord(Segment segment, int bodyOffset, byte[] body) {
+		RecordReader reader = new RecordReader(body);
+		byte type = reader.readByte();
+		int count = reader.readInt();
+		if (type == RECORD_PUT) {
+			for (int i = 0; i < count; i++) {
+				addToIndex(reader.readEntry(segment, bodyOffset));
+			}
+		} else if (type == RECORD_DELETE) {
+			for (int i = 0; i < count; i++) {
+				IndexEntry entry = objects.remove(reader.readString());
+				if (entry != null) {
+					removeFromIndex(entry);
+				}
+			}
+			segment.deadBytes += RECORD_HEADER_SIZE + body.length;
+		}
+	}
+
+	/**
+	 * Creates a new segment. Has to be called with the write lock held.
+	 * @param id Identifier of the segment.
+	 * @return Segment.
+	 * @throws IOException Failed to create the segment file.
+	 */
+	private Segment createSegment(int id) throws IOException {
+		Segment segment = new Segment(id, new File(directory, SEGMENT_PREFIX + String.format("%08d", id) + SEGMENT_SUFFIX));
+		segments.put(id, segment);
+		return segment;
+	}
+
+	/**
+	 * Appends a record to the active segment. A new segment is started if the active one would exceed the segment size.
+	 * Has to be called with the write lock held.
+	 * @param body Body of the record.
+	 * @return Offset of the body in the segment the record was written to, which is the active segment afterwards.
+	 * @throws IOException Failed to write the record.
+	 */
+	private int appendRecord(RecordWriter body) throws IOException {
+		Segment segment = activeSegment;
+		int segmentSize = JiveGlobals.getIntProperty(LogStoreConfig.PROPERTY_SEGMENT_SIZE, LogStoreConfig.DEFAULT_SEGMENT_SIZE);
+		if (segment.size > 0 && segment.size + RECORD_HEADER_SIZE + body.size() > segmentSize) {
+			segment.sync();
+			segment.seal();
+			segment = createSegment(segment.id + 1);
+			activeSegment = segment;
+		}
+		int offset = segment.append(body.toRecord());
+		unsynced = true;
+		if (JiveGlobals.getLongProperty(LogStoreConfig.PROPERTY_SYNC_INTERVAL, LogStoreConfig.DEFAULT_SYNC_INTERVAL) <= 0) {
+			segment.sync();
+			unsynced = false;
+		}
+		return offset + RECORD_HEADER_SIZE;
+	}
+
+	/**
+	 * Syncs the active segment to disk if it was written since the last sync.
+	 * @throws IOException Failed to sync the segment.
+	 */
+	private void sync() throws IOException {
+		if (unsynced) {
+			unsynced = false;
+			activeSegment.sync();
+		}
+	}
+
+	/**
+	 * Adds a data object to the index, replacing a previous entry for the same object. Has to be called with the write lock held.
+	 * @param entry Index entry of the data object.
+	 */
+	private void addToIndex(IndexEntry entry) {
+		IndexEntry previous = objects.put(entry.objectId, entry);
+		if (previous != null) {
+			removeFromIndex(previous);
+		}
+		NavigableSet<IndexEntry> spaceEntries = spaces.get(entry.spaceId);
+		if (spaceEntries == null) {
+			spaceEntries = new ConcurrentSkipListSet<IndexEntry>(TIMESTAMP_ORDER);
+			spaces.put(entry.spaceId, spaceEntries);
+		}
+		spaceEntries.add(entry);
+		if (entry.expirationDate != 0) {
+			expiringObjects.add(entry);
+		}
+		for (String reference : entry.references) {
+			Integer count = referenceCounts.get(reference);
+			referenceCounts.put(reference, count != null ? count + 1 : 1);
+		}
+	}
+
+	/**
+	 * Removes a data object from the space index, the expiration index and the reference counts, and marks its data as dead.
+	 * The entry in the object index is not touched. Has to be called with the write lock held.
+	 * @param entry Index entry of the data object.
+	 */
+	private void removeFromIndex(IndexEntry entry) {
+		NavigableSet<IndexEntry> spaceEntries = spaces.get(entry.spaceId);
+		if (spaceEntries != null) {
+			spaceEntries.remove(entry);
+			if (spaceEntries.isEmpty()) {
+				spaces.remove(entry.spaceId);
+			}
+		}
+		if (entry.expirationDate != 0) {
+			expiringObjects.remove(entry);
+		}
+		for (String reference : entry.references) {
+			Integer count = referenceCounts.get(reference);
+			if (count == null || count <= 1) {
+				referenceCounts.remove(reference);
+			} else {
+				referenceCounts.put(reference, count - 1);
+			}
+		}
+		entry.segment.deadBytes += entry.size;
+	}
+
+	/**
+	 * Replaces the entry of a data object after it was copied to another segment. Has to be called with the write lock held.
+	 * @param previous Current entry of the data object.
+	 * @param entry New entry of the data object.
+	 */
+	private void replaceInIndex(IndexEntry previous, IndexEntry entry) {
+		objects.put(entry.objectId, entry);
+		NavigableSet<IndexEntry> spaceEntries = spaces.get(entry.spaceId);
+		spaceEntries.remove(previous);
+		spaceEntries.add(entry);
+		if (entry.expirationDate != 0) {
+			expiringObjects.remove(previous);
+			expiringObjects.add(entry);
+		}
+	}
+
+	/**
+	 * Reads a data object from its segment.
+	 * @param entry Index entry of the data object.
+	 * @return Data object, or <code>null</code> if it was deleted while its segment was compacted.
+	 * @throws DBAccessException Failed to read the data object.
+	 */
+	private DataObject readDataObject(IndexEntry entry) throws DBAccessException {
+		ByteBuffer buffer;
+		try {
+			buffer = entry.segment.read(entry.payloadOffset, entry.payloadLength);
+		} catch (IOException e) {
+			// The segment may have been compacted since the entry was looked up.
+			IndexEntry currentEntry = objects.get(entry.objectId);
+			if (currentEntry == null) {
+				return null;
+			} else if (currentEntry.segment == entry.segment) {
+				throw new DBAccessException("Failed to read data object " + entry.objectId + ".", e);
+			}
+			return readDataObject(currentEntry);
+		}
+		byte[] payload = new byte[entry.payloadLength];
+		buffer.get(payload);
+		DataObject dataObject = new DataObject(new String(payload, UTF8), entry.spaceId, entry.namespace);
+		if (entry.expirationDate != 0) {
+			dataObject.setExpirationDate(new Date(entry.expirationDate));
+		}
+		return dataObject;
+	}
+
+	/**
+	 * Returns the index entries of the given data objects, ordered by timestamp and identifier.
+	 * @param objectIds Identifiers of the data objects.
+	 * @return Set of index entries. Unknown data objects are not contained.
+	 */
+	private NavigableSet<IndexEntry> getEntries(Collection<String> objectIds) {
+		NavigableSet<IndexEntry> entries = new TreeSet<IndexEntry>(TIMESTAMP_ORDER);
+		for (String objectId : objectIds) {
+			IndexEntry entry = objects.get(objectId);
+			if (entry != null) {
+				entries.add(entry);
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Returns the posting lists of the given spaces.
+	 * @param spaceIds Identifiers of the spaces.
+	 * @return List of index entry sets ordered by timestamp and identifier. Spaces without data objects are not contained.
+	 */
+	private List<NavigableSet<IndexEntry>> getSpaceEntries(Collection<String> spaceIds) {
+		List<NavigableSet<IndexEntry>> spaceEntries = new ArrayList<NavigableSet<IndexEntry>>(spaceIds.size());
+		for (String spaceId : spaceIds) {
+			NavigableSet<IndexEntry> entries = spaces.get(spaceId);
+			if (entries != null) {
+				spaceEntries.add(entries);
+			}
+		}
+		return spaceEntries;
+	}
+
+	/**
+	 * Reads the data objects of index entries and passes those satisfying a filter set to a handler.
+	 * @param entries Index entries to read.
+	 * @param filterSet Filter set to apply.
+	 * @param handler Handler to pass data objects to.
+	 * @return Number of data objects passed to the handler.
+	 * @throws DBAccessException Failed to read a data object.
+	 */
+	private int streamEntries(Iterable<IndexEntry> entries, FilterSet filterSet, DataObjectHandler handler) throws DBAccessException {
+		int objectsHandled = 0;
+		for (IndexEntry entry : entries) {
+			DataObject dataObject = readDataObject(entry);
+			if (dataObject != null && filterSet.isValid(dataObject)) {
+				objectsHandled++;
+				if (!handler.handleDataObject(dataObject)) {
+					break;
+				}
+			}
+		}
+		return objectsHandled;
+	}
+
+	/**
+	 * Reads the data objects of index entries which satisfy a filter set.
+	 * @param entries Index entries to read.
+	 * @param filterSet Filter set to apply.
+	 * @return List of data objects.
+	 * @throws DBAccessException Failed to read a data object.
+	 */
+	private List<DataObject> readEntries(Iterable<IndexEntry> entries, FilterSet filterSet) throws DBAccessException {
+		final List<DataObject> dataObjects = new ArrayList<DataObject>();
+		streamEntries(entries, filterSet, new DataObjectHandler() {
+			@Override
+			public boolean handleDataObject(DataObject dataObject) {
+				dataObjects.add(dataObject);
+				return true;
+			}
+		});
+		return dataObjects;
+	}
+
+	@Override
+	public void storeDataObject(DataObject dataObject) throws DBAccessException, DocumentException {
+		storeDataObjects(Collections.singletonList(dataObject));
+	}
+
+	@Override
+	public void storeDataObjects(Collection<DataObject> dataObjects) throws DBAccessException, DocumentException {
+		if (dataObjects.isEmpty()) {
+			return;
+		}
+		// The record is encoded before the write lock is acquired.
+		RecordWriter body = new RecordWriter(dataObjects.size() * 1024);
+		body.write(RECORD_PUT);
+		body.writeInt(dataObjects.size());
+		List<IndexEntry> entries = new ArrayList<IndexEntry>(dataObjects.size());
+		int[] payloadPositions = new int[dataObjects.size()];
+		Set<String> objectIds = new HashSet<String>();
+		for (DataObject dataObject : dataObjects) {
+			String objectId = dataObject.getId();
+			if (objectId == null || !objectIds.add(objectId)) {
+				throw new DBAccessException("Failed to insert data objects.", new IllegalArgumentException("Missing or duplicate object identifier: " + objectId));
+			}
+			Date timestamp = dataObject.getTimestamp();
+			Date expirationDate = dataObject.getExpirationDate();
+			Set<String> references = dataObject.getAllReferences();
+			byte[] payload = dataObject.toString().getBytes(UTF8);
+			IndexEntry entry = new IndexEntry(objectId, dataObject.getSpaceId(), dataObject.getNamespace(), dataObject.getPublisher(),
+					timestamp != null ? timestamp.getTime() : null, expirationDate != null ? expirationDate.getTime() : 0,
+					references.toArray(new String[references.size()]), null, 0, payload.length, 0);
+			int start = body.size();
+			payloadPositions[entries.size()] = body.writeEntry(entry, payload);
+			entries.add(new IndexEntry(entry.objectId, entry.spaceId, entry.namespace, entry.publisher, entry.timestamp, entry.expirationDate, entry.references, null, 0, payload.length, body.size() - start));
+		}
+		synchronized (writeLock) {
+			for (String objectId : objectIds) {
+				if (objects.containsKey(objectId)) {
+					throw new DBAccessException("Failed to insert data objects.", new IllegalArgumentException("Data object already exists: " + objectId));
+				}
+			}
+			int bodyOffset;
+			try {
+				bodyOffset = appendRecord(body);
+			} catch (IOException e) {
+				throw new DBAccessException("Failed to insert data objects.", e);
+			}
+			Segment segment = activeSegment;
+			for (int i = 0; i < entries.size(); i++) {
+				IndexEntry entry = entries.get(i);
+				addToIndex(new IndexEntry(entry.objectId, entry.spaceId, entry.namespace, entry.publisher, entry.timestamp, entry.expirationDate, entry.references, segment, bodyOffset + payloadPositions[i], entry.payloadLength, entry.size));
+			}
+		}
+	}
+
+	@Override
+	public List<DataObject> retrieveObjectsForSpace(Space space, FilterSet filterSet) throws DBAccessException {
+		NavigableSet<IndexEntry> entries = spaces.get(space.getId());
+		if (entries == null) {
+			return new ArrayList<DataObject>();
+		}
+		return readEntries(entries, filterSet);
+	}
+
+	@Override
+	public List<DataObject> retrieveObjects(Set<String> objectIds, FilterSet filterSet) throws DBAccessException {
+		return readEntries(getEntries(objectIds), filterSet);
+	}
+
+	@Override
+	public ResultPage retrieveObjectsForSpaces(Set<String> spaceIds, FilterSet filterSet, PageRequest pageRequest) throws DBAccessException {
+		return retrievePage(getSpaceEntries(spaceIds), filterSet, pageRequest);
+	}
+
+	@Override
+	public ResultPage retrieveObjects(Set<String> objectIds, FilterSet filterSet, PageRequest pageRequest) throws DBAccessException {
+		List<NavigableSet<IndexEntry>> entries = new ArrayList<NavigableSet<IndexEntry>>(1);
+		entries.add(getEntries(objectIds));
+		return retrievePage(entries, filterSet, pageRequest);
+	}
+
+	/**
+	 * Retrieves a page of data objects by merging the given ordered sets of index entries.
+	 * @param entrySets Sets of index entries ordered by timestamp and identifier.
+	 * @param filterSet Filter set to apply.
+	 * @param pageRequest Page to retrieve.
+	 * @return Page of data objects.
+	 * @throws DBAccessException Failed to read a data object.
+	 */
+	private ResultPage retrievePage(List<NavigableSet<IndexEntry>> entrySets, FilterSet filterSet, PageRequest pageRequest) throws DBAccessException {
+		final boolean backward = pageRequest.isBackward();
+		PageCursor cursor = backward ? pageRequest.getBefore() : pageRequest.getAfter();
+		IndexEntry cursorEntry = cursor != null ? new IndexEntry(cursor) : null;
+		PriorityQueue<PageSource> sources = new PriorityQueue<PageSource>(Math.max(entrySets.size(), 1), new Comparator<PageSource>() {
+			@Override
+			public int compare(PageSource source1, PageSource source2) {
+				int result = TIMESTAMP_ORDER.compare(source1.next, source2.next);
+				return backward ? -result : result;
+			}
+		});
+		Integer count = null;
+		if (pageRequest.isInitial() && filterSet.getFilters().isEmpty()) {
+			count = 0;
+		}
+		for (NavigableSet<IndexEntry> entries : entrySets) {
+			if (count != null) {
+				count += entries.size();
+			}
+			NavigableSet<IndexEntry> view = entries;
+			if (cursorEntry != null) {
+				view = backward ? entries.headSet(cursorEntry, false) : entries.tailSet(cursorEntry, false);
+			}
+			Iterator<IndexEntry> iterator = backward ? view.descendingIterator() : view.iterator();
+			if (iterator.hasNext()) {
+				sources.add(new PageSource(iterator));
+			}
+		}
+
+		List<DataObject> dataObjects = new ArrayList<DataObject>();
+		List<PageCursor> positions = new ArrayList<PageCursor>();
+		while (dataObjects.size() < pageRequest.getMax() && !sources.isEmpty()) {
+			PageSource source = sources.poll();
+			IndexEntry entry = source.next;
+			if (source.advance()) {
+				sources.add(source);
+			}
+			DataObject dataObject = readDataObject(entry);
+			if (dataObject != null && filterSet.isValid(dataObject)) {
+				dataObjects.add(dataObject);
+				positions.add(new PageCursor(entry.timestamp, entry.objectId));
+			}
+		}
+		if (backward) {
+			Collections.reverse(dataObjects);
+			Collections.reverse(positions);
+		}
+		if (positions.isEmpty()) {
+			return new ResultPage(dataObjects, null, null, count);
+		}
+		return new ResultPage(dataObjects, positions.get(0), positions.get(positions.size() - 1), count);
+	}
+
+	@Override
+	public int streamObjectsForSpaces(Set<String> spaceIds, FilterSet filterSet, DataObjectHandler handler) throws DBAccessException {
+		int objectsHandled = 0;
+		for (NavigableSet<IndexEntry> entries : getSpaceEntries(spaceIds)) {
+			final boolean[] stopped = new boolean[1];
+			final DataObjectHandler spaceHandler = handler;
+			objectsHandled += streamEntries(entries, filterSet, new DataObjectHandler() {
+				@Override
+				public boolean handleDataObject(DataObject dataObject) {
+					stopped[0] = !spaceHandler.handleDataObject(dataObject);
+					return !stopped[0];
+				}
+			});
+			if (stopped[0]) {
+				break;
+			}
+		}
+		return objectsHandled;
+	}
+
+	@Override
+	public int streamObjects(Set<String> objectIds, FilterSet filterSet, DataObjectHandler handler) throws DBAccessException {
+		return streamEntries(getEntries(objectIds), filterSet, handler);
+	}
+
+	@Override
+	public DataObject retrieveObject(String objectId) throws DBAccessException {
+		IndexEntry entry = objects.get(objectId);
+		return entry != null ? readDataObject(entry) : null;
+	}
+
+	/**
+	 * Writes tombstones for data objects and removes them from the index. Has to be called with the write lock held.
+	 * @param entries Index entries of the data objects to delete.
+	 * @throws IOException Failed to write the tombstones.
+	 */
+	private void deleteEntries(Collection<IndexEntry> entries) throws IOException {
+		RecordWriter body = new RecordWriter(entries.size() * 32);
+		body.write(RECORD_DELETE);
+		body.writeInt(entries.size());
+		for (IndexEntry entry : entries) {
+			body.writeString(entry.objectId);
+		}
+		appendRecord(body);
+		activeSegment.deadBytes += RECORD_HEADER_SIZE + body.size();
+		for (IndexEntry entry : entries) {
+			objects.remove(entry.objectId);
+			removeFromIndex(entry);
+		}
+	}
+
+	@Override
+	public int deleteObjectsForSpace(String spaceId) throws DBAccessException {
+		synchronized (writeLock) {
+			NavigableSet<IndexEntry> entries = spaces.get(spaceId);
+			if (entries == null) {
+				return 0;
+			}
+			List<IndexEntry> deletedEntries = new ArrayList<IndexEntry>(entries);
+			try {
+				deleteEntries(deletedEntries);
+			} catch (IOException e) {
+				throw new DBAccessException("Failed to delete data objects.", e);
+			}
+			return deletedEntries.size();
+		}
+	}
+
+	@Override
+	public int deleteObjects(Set<String> objectIds) throws DBAccessException {
+		synchronized (writeLock) {
+			List<IndexEntry> entries = new ArrayList<IndexEntry>(objectIds.size());
+			for (String objectId : objectIds) {
+				IndexEntry entry = objects.get(objectId);
+				if (entry != null) {
+					entries.add(entry);
+				}
+			}
+			if (entries.isEmpty()) {
+				return 0;
+			}
+			try {
+				deleteEntries(entries);
+			} catch (IOException e) {
+				throw new DBAccessException("Failed to delete data objects.", e);
+			}
+			return entries.size();
+		}
+	}
+
+	@Override
+	public Map<String, String> retrieveSpacesForObjects(Set<String> objectIds) throws DBAccessException {
+		Map<String, String> spaceIds = new HashMap<String, String>();
+		for (String objectId : objectIds) {
+			IndexEntry entry = objects.get(objectId);
+			spaceIds.put(objectId, entry != null ? entry.spaceId : null);
+		}
+		return spaceIds;
+	}
+
+	@Override
+	public Map<String, DataObjectMetadata> retrieveMetadataForObjects(Set<String> objectIds) throws DBAccessException {
+		Map<String, DataObjectMetadata> metadata = new HashMap<String, DataObjectMetadata>();
+		for (String objectId : objectIds) {
+			IndexEntry entry = objects.get(objectId);
+			if (entry != null) {
+				metadata.put(objectId, new DataObjectMetadata(objectId, entry.spaceId, entry.publisher));
+			}
+		}
+		return metadata;
+	}
+
+	@Override
+	public int deleteExpiredDataObjects() throws DBAccessException {
+		return deleteExpiredDataObjects(Integer.MAX_VALUE, 0);
+	}
+
+	/**
+	 * Deletes expired data objects in chunks, starting with the earliest expiration date.
+	 * As the expiration index is kept in memory, no position has to be stored between two calls.
+	 */
+	@Override
+	public int deleteExpiredDataObjects(int maxObjects, long timeBudget) throws DBAccessException {
+		long start = System.currentTimeMillis();
+		int chunkSize = JiveGlobals.getIntProperty(ExpirationConfig.PROPERTY_CHUNK_SIZE, ExpirationConfig.DEFAULT_CHUNK_SIZE);
+		int objectsDeleted = 0;
+		while (objectsDeleted < maxObjects) {
+			List<IndexEntry> chunk = new ArrayList<IndexEntry>();
+			synchronized (writeLock) {
+				int limit = Math.min(chunkSize, maxObjects - objectsDeleted);
+				for (IndexEntry entry : expiringObjects) {
+					if (entry.expirationDate > start || chunk.size() >= limit) {
+						break;
+					}
+					// referenced data objects are kept until all referring data objects are deleted
+					if (!referenceCounts.containsKey(entry.objectId)) {
+						chunk.add(entry);
+					}
+				}
+				if (chunk.isEmpty()) {
+					break;
+				}
+				try {
+					deleteEntries(chunk);
+				} catch (IOException e) {
+					throw new DBAccessException("Failed to delete data objects.", e);
+				}
+			}
+			objectsDeleted += chunk.size();
+			if (timeBudget > 0 && System.currentTimeMillis() - start >= timeBudget) {
+				break;
+			}
+		}
+		if (objectsDeleted > 0) {
+			log.debug("Deleted " + objectsDeleted + " expired data object(s).");
+		}
+		return objectsDeleted;
+	}
+
+	/**
+	 * Compaction replaces the compression of the database connectors. No dictionaries are trained.
+	 * @return Always <code>0</code>.
+	 */
+	@Override
+	public int trainCompressionDictionaries() throws DBAccessException {
+		return 0;
+	}
+
+	/**
+	 * Data objects are stored uncompressed in the log. Segments with deleted data are compacted instead.
+	 * @return Always <code>0</code>.
+	 */
+	@Override
+	public int compressDataObjects(int maxObjects) throws DBAccessException {
+		return 0;
+	}
+
+	/**
+	 * Compacts all segments except the active one whose share of dead data exceeds the compaction threshold.
+	 * @return Number of bytes reclaimed.
+	 * @throws IOException Failed to compact a segment.
+	 */
+	public long compact() throws IOException {
+		int threshold = JiveGlobals.getIntProperty(LogStoreConfig.PROPERTY_COMPACTION_THRESHOLD, LogStoreConfig.DEFAULT_COMPACTION_THRESHOLD);
+		long bytesReclaimed = 0;
+		for (Segment segment : segments.values()) {
+			if (segment == activeSegment || segment.deadBytes * 100 < segment.size * threshold) {
+				continue;
+			}
+			long start = System.currentTimeMillis();
+			long segmentSize = segment.size;
+			long bytesCopied;
+			synchronized (writeLock) {
+				bytesCopied = compactSegment(segment);
+			}
+			bytesReclaimed += segmentSize - bytesCopied;
+			log.info("Compacted segment " + segment.file.getName() + " in " + (System.currentTimeMillis() - start) + " ms, " + (segmentSize - bytesCopied) + " of " + segmentSize + " bytes reclaimed.");
+		}
+		return bytesReclaimed;
+	}
+
+	/**
+	 * Copies the live data objects and the still required tombstones of a segment to the active segment, and deletes the segment.
+	 * A tombstone is still required if its data object is not stored again and an older segment exists, which may contain the data object.
+	 * Has to be called with the write lock held.
+	 * @param segment Segment to compact.
+	 * @return Number of bytes copied.
+	 * @throws IOException Failed to read the segment or to write the active segment.
+	 */
+	private long compactSegment(final Segment segment) throws IOException {
+		final List<IndexEntry> liveEntries = new ArrayList<IndexEntry>();
+		final List<String> tombstones = new ArrayList<String>();
+		final boolean olderSegmentExists = segments.firstKey() < segment.id;
+		scanSegment(segment, new RecordHandler() {
+			@Override
+			public void handleRecord(int bodyOffset, byte[] body) {
+				RecordReader reader = new RecordReader(body);
+				byte type = reader.readByte();
+				int count = reader.readInt();
+				for (int i = 0; i < count; i++) {
+					if (type == RECORD_PUT) {
+						IndexEntry entry = reader.readEntry(segment, bodyOffset);
+						IndexEntry currentEntry = objects.get(entry.objectId);
+						if (currentEntry != null && currentEntry.segment == segment && currentEntry.payloadOffset == entry.payloadOffset) {
+							liveEntries.add(currentEntry);
+						}
+					} else if (type == RECORD_DELETE) {
+						String objectId = reader.readString();
+						if (olderSegmentExists && !objects.containsKey(objectId)) {
+							tombstones.add(objectId);
+						}
+					}
+				}
+			}
+		});
+
+		long bytesCopied = 0;
+		for (int start = 0; start < liveEntries.size(); start += COMPACTION_BATCH_SIZE) {
+			List<IndexEntry> batch = liveEntries.subList(start, Math.min(start + COMPACTION_BATCH_SIZE, liveEntries.size()));
+			RecordWriter body = new RecordWriter(64 * 1024);
+			body.write(RECORD_PUT);
+			body.writeInt(batch.size());
+			int[] payloadPositions = new int[batch.size()];
+			for (int i = 0; i < batch.size(); i++) {
+				IndexEntry entry = batch.get(i);
+				byte[] payload = new byte[entry.payloadLength];
+				segment.read(entry.payloadOffset, entry.payloadLength).get(payload);
+				payloadPositions[i] = body.writeEntry(entry, payload);
+			}
+			int bodyOffset = appendRecord(body);
+			bytesCopied += RECORD_HEADER_SIZE + body.size();
+			Segment targetSegment = activeSegment;
+			for (int i = 0; i < batch.size(); i++) {
+				IndexEntry entry = batch.get(i);
+				replaceInIndex(entry, entry.moveTo(targetSegment, bodyOffset + payloadPositions[i]));
+			}
+		}
+		if (!tombstones.isEmpty()) {
+			RecordWriter body = new RecordWriter(tombstones.size() * 32);
+			body.write(RECORD_DELETE);
+			body.writeInt(tombstones.size());
+			for (String objectId : tombstones) {
+				body.writeString(objectId);
+			}
+			appendRecord(body);
+			bytesCopied += RECORD_HEADER_SIZE + body.size();
+			activeSegment.deadBytes += RECORD_HEADER_SIZE + body.size();
+		}
+		// The copies have to be durable before the segment is deleted.
+		activeSegment.sync();
+		segments.remove(segment.id);
+		segment.close();
+		if (!segment.file.delete()) {
+			log.warn("Failed to delete compacted segment " + segment.file + ".");
+		}
+		return bytesCopied;
+	}
+
+	/**
+	 * Returns the number of stored data objects.
+	 * @return Number of data objects.
+	 */
+	public int getObjectCount() {
+		return objects.size();
+	}
+
+	/**
+	 * Returns the identifiers of the segments.
+	 * @return List of segment identifiers in ascending order.
+	 */
+	public List<Integer> getSegmentIds() {
+		return new ArrayList<Integer>(segments.keySet());
+	}
+
+	@Override
+	public String toString() {
+		return "LogStructuredConnector[" + directory + "]";
+	}
+}
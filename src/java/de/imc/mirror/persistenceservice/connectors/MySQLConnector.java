@@ -12,6 +12,25 @@ public class MySQLConnector extends AbstractSQLConnector {
 
 	@Override
 	public void initialize() {
+		super.initialize();
 		log.debug("MySQL connector initialized.");
 	}
+	
+	/**
+	 * Connector/J only streams result sets row by row if the fetch size is set to <code>Integer.MIN_VALUE</code>.
+	 * Otherwise the complete result set is loaded into memory.
+	 */
+	@Override
+	protected int getStreamingFetchSize() {
+		return Integer.MIN_VALUE;
+	}
+	
+	/**
+	 * The default collations of MySQL compare case insensitive, so the parameter is converted to a binary string.
+	 * The conversion of the parameter instead of the column keeps the indexes of the column usable.
+	 */
+	@Override
+	protected String getCaseSensitiveParameterExpression() {
+		return "CAST(? AS BINARY)";
+	}
 }
@@ -0,0 +1,499 @@
+package de.imc.mirror.persistenceservice.connectors;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.dom4j.DocumentException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.imc.mirror.persistenceservice.DataObject;
+import de.imc.mirror.persistenceservice.DataObjectHandler;
+import de.imc.mirror.persistenceservice.DataObjectMetadata;
+import de.imc.mirror.persistenceservice.DatabaseConnector;
+import de.imc.mirror.persistenceservice.FilterSet;
+import de.imc.mirror.persistenceservice.PageRequest;
+import de.imc.mirror.persistenceservice.ResultPage;
+import de.imc.mirror.persistenceservice.Space;
+import de.imc.mirror.persistenceservice.exceptions.DBAccessException;
+
+/**
+ * Database connector decorator caching data objects for lookups by identifier.
+ * Data objects returned by {@link #retrieveObject(String)} and {@link #retrieveObjects(Set, FilterSet)} are cached with their XML string.
+ * The attributes of the root element are read when a cached data object is requested for the first time, so later copies and metadata
+ * lookups do not parse the XML string. The cache is bounded by the estimated memory of the data objects, the least recently used ones are evicted first.
+ * Deleted data objects are removed from the cache, expired ones are never returned from it.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public class ObjectCacheConnector implements DatabaseConnector, ObjectCacheConnectorMBean {
+	private static final Logger log = LoggerFactory.getLogger(ObjectCacheConnector.class);
+
+	/**
+	 * Estimated memory of a cache entry without its strings, including the map entry.
+	 */
+	private static final int ENTRY_OVERHEAD = 200;
+
+	/**
+	 * Cached data object.
+	 */
+	private static class CacheEntry {
+		private final String objectId;
+		private final String spaceId;
+		private final String elementString;
+		private final long expirationDate;
+		private final int size;
+		// read lazily, see getDataObject()
+		private volatile String namespace;
+		private volatile Map<String, String> rootAttributes;
+
+		private CacheEntry(String objectId, String spaceId, String elementString, long expirationDate) {
+			this.objectId = objectId;
+			this.spaceId = spaceId;
+			this.elementString = elementString;
+			this.expirationDate = expirationDate;
+			this.size = ENTRY_OVERHEAD + 2 * (objectId.length() + elementString.length());
+		}
+
+		/**
+		 * Checks if the data object is expired.
+		 * @param time Time to check.
+		 * @return <code>true</code> if the data object has an expiration date before or at the given time, otherwise <code>false</code>.
+		 */
+		private boolean isExpired(long time) {
+			return expirationDate != 0 && expirationDate <= time;
+		}
+
+		/**
+		 * Creates a copy of the cached data object. The root element is parsed on the first call.
+		 * @return Data object.
+		 * @throws DocumentException Failed to parse the root element.
+		 */
+		private DataObject getDataObject() throws DocumentException {
+			DataObject dataObject;
+			Map<String, String> attributes = rootAttributes;
+			if (attributes != null) {
+				dataObject = new DataObject(elementString, spaceId, namespace, attributes);
+			} else {
+				dataObject = new DataObject(elementString, spaceId);
+				namespace = dataObject.getNamespace();
+				rootAttributes = dataObject.getRootAttributes();
+			}
+			if (expirationDate != 0) {
+				dataObject.setExpirationDate(new Date(expirationDate));
+			}
+			return dataObject;
+		}
+	}
+
+	private final DatabaseConnector connector;
+	private final long maxBytes;
+	// map of <objectId, cache entry>, access ordered
+	private final LinkedHashMap<String, CacheEntry> objects;
+	private long usedBytes; // guarded by objects
+	private long generation; // guarded by objects, incremented with each invalidation
+	private final AtomicLong cacheHits;
+	private final AtomicLong cacheMisses;
+	private final AtomicLong evictions;
+	private final AtomicLong invalidations;
+
+	/**
+	 * Creates an object cache for a connector.
+	 * @param connector Connector to pass all operations to which cannot be answered from the cache.
+	 * @param maxBytes Estimated memory the cached data objects may occupy.
+	 */
+	public ObjectCacheConnector(DatabaseConnector connector, long maxBytes) {
+		this.connector = connector;
+		this.maxBytes = maxBytes;
+		this.objects = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+		this.cacheHits = new AtomicLong();
+		this.cacheMisses = new AtomicLong();
+		this.evictions = new AtomicLong();
+		this.invalidations = new AtomicLong();
+	}
+
+	/**
+	 * Returns the current generation of the cache. Data objects retrieved before an invalidation must not be added to the cache afterwards.
+	 * @return Generation counter.
+	 */
+	private long getGeneration() {
+		synchronized (objects) {
+			return generation;
+		}
+	}
+
+	/**
+	 * Returns the cache entry of a data object.
+	 * @param objectId Identifier of the data object.
+	 * @param time Current time.
+	 * @return Cache entry, or <code>null</code> if the data object is not cached or expired.
+	 */
+	private CacheEntry lookup(String objectId, long time) {
+		CacheEntry entry;
+		synchronized (objects) {
+			entry = objects.get(objectId);
+			if (entry != null && entry.isExpired(time)) {
+				// the storage engine decides if an expired data object is still available
+				removeEntry(objectId);
+				entry = null;
+			}
+		}
+		if (entry != null) {
+			cacheHits.incrementAndGet();
+		} else {
+			cacheMisses.incrementAndGet();
+		}
+		return entry;
+	}
+
+	/**
+	 * Adds data objects to the cache, unless the cache was invalidated since they were retrieved.
+	 * Expired data objects are not cached.
+	 * @param dataObjects Data objects retrieved from the wrapped connector.
+	 * @param retrievalGeneration Generation of the cache before the data objects were retrieved.
+	 */
+	private void cache(Collection<DataObject> dataObjects, long retrievalGeneration) {
+		long time = System.currentTimeMillis();
+		List<CacheEntry> entries = new ArrayList<CacheEntry>(dataObjects.size());
+		for (DataObject dataObject : dataObjects) {
+			String objectId;
+			try {
+				objectId = dataObject.getId();
+			} catch (DocumentException e) {
+				continue;
+			}
+			if (objectId == null || dataObject.getSpaceId() == null) {
+				continue;
+			}
+			Date expirationDate = dataObject.getExpirationDate();
+			CacheEntry entry = new CacheEntry(objectId, dataObject.getSpaceId(), dataObject.toString(), expirationDate != null ? expirationDate.getTime() : 0);
+			if (!entry.isExpired(time) && entry.size <= maxBytes) {
+				entries.add(entry);
+			}
+		}
+		synchronized (objects) {
+			if (generation != retrievalGeneration) {
+				return;
+			}
+			for (CacheEntry entry : entries) {
+				removeEntry(entry.objectId);
+				objects.put(entry.objectId, entry);
+				usedBytes += entry.size;
+			}
+			Iterator<CacheEntry> iterator = objects.values().iterator();
+			while (usedBytes > maxBytes && iterator.hasNext()) {
+				usedBytes -= iterator.next().size;
+				iterator.remove();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Removes a data object from the cache. Has to be called with the monitor of the cache held.
+	 * @param objectId Identifier of the data object.
+	 * @return <code>true</code> if the data object was cached, otherwise <code>false</code>.
+	 */
+	private boolean removeEntry(String objectId) {
+		CacheEntry entry = objects.remove(objectId);
+		if (entry != null) {
+			usedBytes -= entry.size;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Removes data objects from the cache and starts a new generation.
+	 * @param objectIds Identifiers of the data objects to remove, or <code>null</code> to remove all data objects of the given space.
+	 * @param spaceId Identifier of the space to remove data objects of, if no identifiers are given.
+	 */
+	private void invalidate(Collection<String> objectIds, String spaceId) {
+		int removedObjects = 0;
+		synchronized (objects) {
+			generation++;
+			if (objectIds != null) {
+				for (String objectId : objectIds) {
+					if (removeEntry(objectId)) {
+						removedObjects++;
+					}
+				}
+			} else {
+				for (Iterator<CacheEntry> iterator = objects.values().iterator(); iterator.hasNext();) {
+					CacheEntry entry = iterator.next();
+					if (entry.spaceId.equals(spaceId)) {
+						usedBytes -= entry.size;
+						iterator.remove();
+						removedObjects++;
+					}
+				}
+			}
+		}
+		invalidations.addAndGet(removedObjects);
+	}
+
+	/**
+	 * Removes all data objects from the cache which expired before the given time, and starts a new generation.
+	 * @param time Time the expiration was started at.
+	 */
+	private void invalidateExpired(long time) {
+		int removedObjects = 0;
+		synchronized (objects) {
+			generation++;
+			for (Iterator<CacheEntry> iterator = objects.values().iterator(); iterator.hasNext();) {
+				CacheEntry entry = iterator.next();
+				if (entry.isExpired(time)) {
+					usedBytes -= entry.size;
+					iterator.remove();
+					removedObjects++;
+				}
+			}
+		}
+		invalidations.addAndGet(removedObjects);
+	}
+
+	@Override
+	public void initialize() {
+		connector.initialize();
+	}
+
+	@Override
+	public void storeDataObject(DataObject dataObject) throws DBAccessException, DocumentException {
+		connector.storeDataObject(dataObject);
+	}
+
+	@Override
+	public void storeDataObjects(Collection<DataObject> dataObjects) throws DBAccessException, DocumentException {
+		connector.storeDataObjects(dataObjects);
+	}
+
+	@Override
+	public List<DataObject> retrieveObjectsForSpace(Space space, FilterSet filterSet) throws DBAccessException {
+		return connector.retrieveObjectsForSpace(space, filterSet);
+	}
+
+	@Override
+	public List<DataObject> retrieveObjects(Set<String> objectIds, FilterSet filterSet) throws DBAccessException {
+		long retrievalGeneration = getGeneration();
+		long time = System.currentTimeMillis();
+		List<DataObject> dataObjects = new ArrayList<DataObject>(objectIds.size());
+		Set<String> missingObjectIds = new HashSet<String>();
+		for (String objectId : objectIds) {
+			CacheEntry entry = lookup(objectId, time);
+			DataObject dataObject = null;
+			if (entry != null) {
+				try {
+					dataObject = entry.getDataObject();
+				} catch (DocumentException e) {
+					log.warn("Failed to parse cached data object " + objectId + ".", e);
+				}
+			}
+			if (dataObject == null) {
+				missingObjectIds.add(objectId);
+			} else if (filterSet.isValid(dataObject)) {
+				dataObjects.add(dataObject);
+			}
+		}
+		if (!missingObjectIds.isEmpty()) {
+			List<DataObject> retrievedObjects = connector.retrieveObjects(missingObjectIds, filterSet);
+			cache(retrievedObjects, retrievalGeneration);
+			dataObjects.addAll(retrievedObjects);
+		}
+		return dataObjects;
+	}
+
+	@Override
+	public ResultPage retrieveObjectsForSpaces(Set<String> spaceIds, FilterSet filterSet, PageRequest pageRequest) throws DBAccessException {
+		return connector.retrieveObjectsForSpaces(spaceIds, filterSet, pageRequest);
+	}
+
+	@Override
+	public ResultPage retrieveObjects(Set<String> objectIds, FilterSet filterSet, PageRequest pageRequest) throws DBAccessException {
+		return connector.retrieveObjects(objectIds, filterSet, pageRequest);
+	}
+
+	@Override
+	public int streamObjectsForSpaces(Set<String> spaceIds, FilterSet filterSet, DataObjectHandler handler) throws DBAccessException {
+		return connector.streamObjectsForSpaces(spaceIds, filterSet, handler);
+	}
+
+	@Override
+	public int streamObjects(Set<String> objectIds, FilterSet filterSet, DataObjectHandler handler) throws DBAccessException {
+		return connector.streamObjects(objectIds, filterSet, handler);
+	}
+
+	@Override
+	public DataObject retrieveObject(String objectId) throws DBAccessException {
+		long retrievalGeneration = getGeneration();
+		CacheEntry entry = lookup(objectId, System.currentTimeMillis());
+		if (entry != null) {
+			try {
+				return entry.getDataObject();
+			} catch (DocumentException e) {
+				log.warn("Failed to parse cached data object " + objectId + ".", e);
+			}
+		}
+		DataObject dataObject = connector.retrieveObject(objectId);
+		if (dataObject != null) {
+			List<DataObject> retrievedObjects = new ArrayList<DataObject>(1);
+			retrievedObjects.add(dataObject);
+			cache(retrievedObjects, retrievalGeneration);
+		}
+		return dataObject;
+	}
+
+	@Override
+	public int deleteObjectsForSpace(String spaceId) throws DBAccessException {
+		try {
+			return connector.deleteObjectsForSpace(spaceId);
+		} finally {
+			invalidate(null, spaceId);
+		}
+	}
+
+	@Override
+	public int deleteObjects(Set<String> objectIds) throws DBAccessException {
+		try {
+			return connector.deleteObjects(objectIds);
+		} finally {
+			invalidate(objectIds, null);
+		}
+	}
+
+	/**
+	 * Returns the spaces of cached data objects from the cache, the others from the wrapped connector.
+	 */
+	@Override
+	public Map<String, String> retrieveSpacesForObjects(Set<String> objectIds) throws DBAccessException {
+		Map<String, String> spaceIds = new HashMap<String, String>();
+		Map<String, DataObjectMetadata> metadata = retrieveMetadataForObjects(objectIds);
+		for (String objectId : objectIds) {
+			DataObjectMetadata objectMetadata = metadata.get(objectId);
+			spaceIds.put(objectId, objectMetadata != null ? objectMetadata.getSpaceId() : null);
+		}
+		return spaceIds;
+	}
+
+	/**
+	 * Returns the metadata of cached data objects from the cache, the others from the wrapped connector.
+	 */
+	@Override
+	public Map<String, DataObjectMetadata> retrieveMetadataForObjects(Set<String> objectIds) throws DBAccessException {
+		long time = System.currentTimeMillis();
+		Map<String, DataObjectMetadata> metadata = new HashMap<String, DataObjectMetadata>();
+		Set<String> missingObjectIds = new HashSet<String>();
+		for (String objectId : objectIds) {
+			CacheEntry entry = lookup(objectId, time);
+			String publisher = null;
+			if (entry != null) {
+				try {
+					publisher = entry.getDataObject().getPublisher();
+				} catch (DocumentException e) {
+					entry = null;
+				}
+			}
+			if (entry != null) {
+				metadata.put(objectId, new DataObjectMetadata(objectId, entry.spaceId, publisher));
+			} else {
+				missingObjectIds.add(objectId);
+			}
+		}
+		if (!missingObjectIds.isEmpty()) {
+			metadata.putAll(connector.retrieveMetadataForObjects(missingObjectIds));
+		}
+		return metadata;
+	}
+
+	@Override
+	public int deleteExpiredDataObjects() throws DBAccessException {
+		long time = System.currentTimeMillis();
+		int objectsDeleted = connector.deleteExpiredDataObjects();
+		if (objectsDeleted > 0) {
+			invalidateExpired(time);
+		}
+		return objectsDeleted;
+	}
+
+	@Override
+	public int deleteExpiredDataObjects(int maxObjects, long timeBudget) throws DBAccessException {
+		long time = System.currentTimeMillis();
+		int objectsDeleted = connector.deleteExpiredDataObjects(maxObjects, timeBudget);
+		if (objectsDeleted > 0) {
+			invalidateExpired(time);
+		}
+		return objectsDeleted;
+	}
+
+	@Override
+	public int trainCompressionDictionaries() throws DBAccessException {
+		return connector.trainCompressionDictionaries();
+	}
+
+	@Override
+	public int compressDataObjects(int maxObjects) throws DBAccessException {
+		return connector.compressDataObjects(maxObjects);
+	}
+
+	@Override
+	public int getCacheSize() {
+		synchronized (objects) {
+			return objects.size();
+		}
+	}
+
+	@Override
+	public long getUsedBytes() {
+		synchronized (objects) {
+			return usedBytes;
+		}
+	}
+
+	@Override
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	@Override
+	public long getCacheHits() {
+		return cacheHits.get();
+	}
+
+	@Override
+	public long getCacheMisses() {
+		return cacheMisses.get();
+	}
+
+	@Override
+	public double getCacheHitRate() {
+		long hits = cacheHits.get();
+		long lookups = hits + cacheMisses.get();
+		return lookups > 0 ? (double) hits / lookups : 0;
+	}
+
+	@Override
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	@Override
+	public long getInvalidations() {
+		return invalidations.get();
+	}
+
+	@Override
+	public void clear() {
+		synchronized (objects) {
+			generation++;
+			objects.clear();
+			usedBytes = 0;
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package de.imc.mirror.persistenceservice.connectors;
+
+/**
+ * Management interface of the object cache.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public interface ObjectCacheConnectorMBean {
+	/**
+	 * Returns the number of cached data objects.
+	 * @return Number of cache entries.
+	 */
+	public int getCacheSize();
+
+	/**
+	 * Returns the estimated memory occupied by the cached data objects.
+	 * @return Size in bytes.
+	 */
+	public long getUsedBytes();
+
+	/**
+	 * Returns the estimated memory the cached data objects may occupy.
+	 * @return Size in bytes.
+	 */
+	public long getMaxBytes();
+
+	/**
+	 * Returns the number of data object lookups answered from the cache.
+	 * @return Number of cache hits.
+	 */
+	public long getCacheHits();
+
+	/**
+	 * Returns the number of data object lookups passed to the storage engine.
+	 * @return Number of cache misses.
+	 */
+	public long getCacheMisses();
+
+	/**
+	 * Returns the share of data object lookups answered from the cache.
+	 * @return Hit rate between <code>0</code> and <code>1</code>.
+	 */
+	public double getCacheHitRate();
+
+	/**
+	 * Returns the number of data objects removed from the cache to stay within the memory limit.
+	 * @return Number of evictions.
+	 */
+	public long getEvictions();
+
+	/**
+	 * Returns the number of cached data objects removed because they were deleted or expired.
+	 * @return Number of invalidations.
+	 */
+	public long getInvalidations();
+
+	/**
+	 * Removes all data objects from the cache.
+	 */
+	public void clear();
+}
@@ -0,0 +1,199 @@
+package de.imc.mirror.persistenceservice.connectors;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Codec for the compressed storage format of data objects.
+ * All binary payloads start with a header of {@link #HEADER_SIZE} bytes, the first one being the format marker.
+ * A compressed data object starts with a format marker, followed by the identifier of the dictionary as four byte integer (<code>0</code> for none)
+ * and the raw deflate stream of the UTF-8 encoded XML string.
+ * Dictionaries are trained per namespace, as the data objects of a namespace share most of their markup.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public class PayloadCodec {
+	/**
+	 * Format marker for deflate compressed data objects.
+	 */
+	public static final byte FORMAT_DEFLATE = 1;
+
+	/**
+	 * Format marker for data objects in the binary XML format, see {@link BinaryXMLCodec}.
+	 */
+	public static final byte FORMAT_BINARY_XML = 2;
+
+	/**
+	 * Size of the header of a payload.
+	 */
+	public static final int HEADER_SIZE = 5;
+
+	/**
+	 * Maximum size of a dictionary. Deflate only refers to the last 32 KB of a preset dictionary.
+	 */
+	public static final int MAX_DICTIONARY_SIZE = 32768;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final Map<Integer, byte[]> dictionaries;
+	private final Map<String, Integer> namespaceDictionaries;
+
+	/**
+	 * Creates a codec without dictionaries.
+	 */
+	public PayloadCodec() {
+		this.dictionaries = new ConcurrentHashMap<Integer, byte[]>();
+		this.namespaceDictionaries = new ConcurrentHashMap<String, Integer>();
+	}
+
+	/**
+	 * Adds a dictionary. If multiple dictionaries are added for a namespace, the one with the highest identifier is used for compression.
+	 * @param dictionaryId Identifier of the dictionary, greater than <code>0</code>.
+	 * @param namespace Namespace the dictionary was trained for.
+	 * @param dictionary Dictionary data.
+	 */
+	public synchronized void addDictionary(int dictionaryId, String namespace, byte[] dictionary) {
+		dictionaries.put(dictionaryId, dictionary);
+		Integer currentId = namespaceDictionaries.get(namespace);
+		if (currentId == null || currentId < dictionaryId) {
+			namespaceDictionaries.put(namespace, dictionaryId);
+		}
+	}
+
+	/**
+	 * Checks if a dictionary is available.
+	 * @param dictionaryId Dictionary identifier.
+	 * @return <code>true</code> if the dictionary was added, otherwise <code>false</code>.
+	 */
+	public boolean hasDictionary(int dictionaryId) {
+		return dictionaries.containsKey(dictionaryId);
+	}
+
+	/**
+	 * Checks if a dictionary is available for a namespace.
+	 * @param namespace Namespace to check.
+	 * @return <code>true</code> if a dictionary was added for the namespace, otherwise <code>false</code>.
+	 */
+	public boolean hasDictionaryForNamespace(String namespace) {
+		return namespaceDictionaries.containsKey(namespace);
+	}
+
+	/**
+	 * Compresses the XML string of a data object.
+	 * @param xmlElementString XML string to compress.
+	 * @param namespace Namespace of the data object, may be <code>null</code>. If a dictionary is available for the namespace, it is used.
+	 * @return Compressed data object including the format header.
+	 */
+	public byte[] compress(String xmlElementString, String namespace) {
+		Integer dictionaryId = namespace != null ? namespaceDictionaries.get(namespace) : null;
+		byte[] input = xmlElementString.getBytes(UTF8);
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		try {
+			if (dictionaryId != null) {
+				deflater.setDictionary(dictionaries.get(dictionaryId));
+			}
+			deflater.setInput(input);
+			deflater.finish();
+			ByteArrayOutputStream output = new ByteArrayOutputStream(input.length / 2 + HEADER_SIZE + 16);
+			int id = dictionaryId != null ? dictionaryId : 0;
+			output.write(FORMAT_DEFLATE);
+			output.write(id >>> 24);
+			output.write(id >>> 16);
+			output.write(id >>> 8);
+			output.write(id);
+			byte[] buffer = new byte[Math.max(input.length, 64)];
+			while (!deflater.finished()) {
+				int length = deflater.deflate(buffer);
+				output.write(buffer, 0, length);
+			}
+			return output.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Returns the format of a payload.
+	 * @param payload Payload including the format header.
+	 * @return Format marker.
+	 * @throws DataFormatException The payload has no header.
+	 */
+	public static byte getFormat(byte[] payload) throws DataFormatException {
+		if (payload.length < HEADER_SIZE) {
+			throw new DataFormatException("Missing format header.");
+		}
+		return payload[0];
+	}
+
+	/**
+	 * Returns the identifier of the dictionary a data object was compressed with.
+	 * @param compressed Compressed data object including the format header.
+	 * @return Dictionary identifier, or <code>0</code> if no dictionary was used.
+	 * @throws DataFormatException The data has an unknown format.
+	 */
+	public static int getDictionaryId(byte[] compressed) throws DataFormatException {
+		if (compressed.length < HEADER_SIZE || compressed[0] != FORMAT_DEFLATE) {
+			throw new DataFormatException("Unsupported storage format.");
+		}
+		return ((compressed[1] & 0xFF) << 24) | ((compressed[2] & 0xFF) << 16) | ((compressed[3] & 0xFF) << 8) | (compressed[4] & 0xFF);
+	}
+
+	/**
+	 * Decompresses a data object.
+	 * @param compressed Compressed data object including the format header.
+	 * @return XML string of the data object.
+	 * @throws DataFormatException The data is corrupted, has an unknown format, or the dictionary is not available.
+	 */
+	public String decompress(byte[] compressed) throws DataFormatException {
+		int dictionaryId = getDictionaryId(compressed);
+		Inflater inflater = new Inflater(true);
+		try {
+			if (dictionaryId != 0) {
+				byte[] dictionary = dictionaries.get(dictionaryId);
+				if (dictionary == null) {
+					throw new DataFormatException("Unknown dictionary: " + dictionaryId);
+				}
+				inflater.setDictionary(dictionary);
+			}
+			inflater.setInput(compressed, HEADER_SIZE, compressed.length - HEADER_SIZE);
+			ByteArrayOutputStream output = new ByteArrayOutputStream(compressed.length * 4);
+			byte[] buffer = new byte[Math.max(compressed.length * 4, 256)];
+			while (!inflater.finished()) {
+				int length = inflater.inflate(buffer);
+				if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new DataFormatException("Truncated data object.");
+				}
+				output.write(buffer, 0, length);
+			}
+			return new String(output.toByteArray(), UTF8);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Trains a dictionary from sample data objects of a namespace.
+	 * Deflate finds matches at a short distance cheaper, so the samples are concatenated with the first sample at the end of the dictionary.
+	 * @param samples XML strings of sample data objects, most representative first.
+	 * @return Dictionary data with a maximum size of {@link #MAX_DICTIONARY_SIZE}.
+	 */
+	public static byte[] trainDictionary(List<String> samples) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream(MAX_DICTIONARY_SIZE);
+		for (int i = samples.size() - 1; i >= 0; i--) {
+			byte[] sample = samples.get(i).getBytes(UTF8);
+			output.write(sample, 0, sample.length);
+		}
+		byte[] data = output.toByteArray();
+		if (data.length <= MAX_DICTIONARY_SIZE) {
+			return data;
+		}
+		byte[] dictionary = new byte[MAX_DICTIONARY_SIZE];
+		System.arraycopy(data, data.length - MAX_DICTIONARY_SIZE, dictionary, 0, MAX_DICTIONARY_SIZE);
+		return dictionary;
+	}
+}
@@ -0,0 +1,508 @@
+package de.imc.mirror.persistenceservice.connectors;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.dom4j.DocumentException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.imc.mirror.persistenceservice.DataObject;
+import de.imc.mirror.persistenceservice.DataObjectHandler;
+import de.imc.mirror.persistenceservice.DataObjectMetadata;
+import de.imc.mirror.persistenceservice.DatabaseConnector;
+import de.imc.mirror.persistenceservice.FilterSet;
+import de.imc.mirror.persistenceservice.PageRequest;
+import de.imc.mirror.persistenceservice.ResultPage;
+import de.imc.mirror.persistenceservice.Space;
+import de.imc.mirror.persistenceservice.exceptions.DBAccessException;
+
+/**
+ * Database connector decorator caching the results of space queries.
+ * Results of {@link #retrieveObjectsForSpace(Space, FilterSet)} are cached per space and canonical filter set, see {@link FilterSet#getCanonicalForm()}.
+ * The access control is not affected, as the membership of the requester is checked before the connector is called.
+ * Storing or deleting data objects of a space removes the cached results of this space, expiring data objects removes the results containing them.
+ * The cache is bounded by the estimated memory of the results. Results are evicted by their costs: Results which took long to retrieve
+ * and occupy little memory are kept longer, results which were not requested for a long time are evicted first (GreedyDual-Size).
+ * @author simon.schwantzer(at)im-c.de
+ */
+public class ResultCacheConnector implements DatabaseConnector, ResultCacheConnectorMBean {
+	private static final Logger log = LoggerFactory.getLogger(ResultCacheConnector.class);
+
+	/**
+	 * Estimated memory of a cache entry without its data objects, including the map entries.
+	 */
+	private static final int ENTRY_OVERHEAD = 300;
+
+	/**
+	 * Estimated memory of a cached data object without its strings.
+	 */
+	private static final int OBJECT_OVERHEAD = 60;
+
+	/**
+	 * Maximum number of spaces whose last invalidation is tracked individually.
+	 */
+	private static final int MAX_TRACKED_SPACES = 10000;
+
+	/**
+	 * Orders cache entries by their priority, entries with the lowest priority are evicted first.
+	 */
+	private static final Comparator<CacheEntry> PRIORITY_COMPARATOR = new Comparator<CacheEntry>() {
+		@Override
+		public int compare(CacheEntry entry1, CacheEntry entry2) {
+			int result = Double.compare(entry1.priority, entry2.priority);
+			if (result == 0) {
+				result = entry1.sequence < entry2.sequence ? -1 : (entry1.sequence == entry2.sequence ? 0 : 1);
+			}
+			return result;
+		}
+	};
+
+	/**
+	 * Data object of a cached result.
+	 */
+	private static class CachedObject {
+		private final String elementString;
+		private final String namespace;
+		private final long expirationDate;
+
+		private CachedObject(String elementString, String namespace, long expirationDate) {
+			this.elementString = elementString;
+			this.namespace = namespace;
+			this.expirationDate = expirationDate;
+		}
+	}
+
+	/**
+	 * Cached query result.
+	 */
+	private static class CacheEntry {
+		private final String key;
+		private final String spaceId;
+		private final CachedObject[] objects;
+		private final long minExpirationDate;
+		private final int size;
+		private final double cost;
+		private final long sequence;
+		private double priority; // guarded by the entries of the cache
+
+		private CacheEntry(String key, String spaceId, CachedObject[] objects, long minExpirationDate, int size, double cost, long sequence) {
+			this.key = key;
+			this.spaceId = spaceId;
+			this.objects = objects;
+			this.minExpirationDate = minExpirationDate;
+			this.size = size;
+			this.cost = cost;
+			this.sequence = sequence;
+		}
+
+		/**
+		 * Creates copies of the cached data objects. The copies are not parsed.
+		 * @return List of data objects.
+		 */
+		private List<DataObject> createDataObjects() {
+			List<DataObject> dataObjects = new ArrayList<DataObject>(objects.length);
+			for (CachedObject object : objects) {
+				DataObject dataObject = new DataObject(object.elementString, spaceId, object.namespace);
+				if (object.expirationDate != 0) {
+					dataObject.setExpirationDate(new Date(object.expirationDate));
+				}
+				dataObjects.add(dataObject);
+			}
+			return dataObjects;
+		}
+	}
+
+	private final DatabaseConnector connector;
+	private final long maxBytes;
+	// map of <key, cache entry>, all fields below are guarded by it
+	private final Map<String, CacheEntry> entries;
+	private final TreeSet<CacheEntry> evictionQueue;
+	private final Map<String, Set<CacheEntry>> entriesBySpace;
+	// sequence number of the last invalidation per space, spaces not contained were invalidated at the floor
+	private final Map<String, Long> spaceInvalidations;
+	private long invalidationFloor;
+	private long sequence;
+	private double inflation;
+	private long usedBytes;
+	private final AtomicLong cacheHits;
+	private final AtomicLong cacheMisses;
+	private final AtomicLong evictions;
+	private final AtomicLong invalidations;
+
+	/**
+	 * Creates a query result cache for a connector.
+	 * @param connector Connector to pass all operations to which cannot be answered from the cache.
+	 * @param maxBytes Estimated memory the cached query results may occupy.
+	 */
+	public ResultCacheConnector(DatabaseConnector connector, long maxBytes) {
+		this.connector = connector;
+		this.maxBytes = maxBytes;
+		this.entries = new HashMap<String, CacheEntry>();
+		this.evictionQueue = new TreeSet<CacheEntry>(PRIORITY_COMPARATOR);
+		this.entriesBySpace = new HashMap<String, Set<CacheEntry>>();
+		this.spaceInvalidations = new HashMap<String, Long>();
+		this.cacheHits = new AtomicLong();
+		this.cacheMisses = new AtomicLong();
+		this.evictions = new AtomicLong();
+		this.invalidations = new AtomicLong();
+	}
+
+	/**
+	 * Creates the cache key for a space query.
+	 * @param spaceId Identifier of the space.
+	 * @param filterSet Filter set of the query.
+	 * @return Cache key.
+	 */
+	private static String createKey(String spaceId, FilterSet filterSet) {
+		// length prefix, as the space identifier may contain any character
+		return spaceId.length() + ":" + spaceId + filterSet.getCanonicalForm();
+	}
+
+	/**
+	 * Adds a query result to the cache, unless the space was invalidated since the retrieval was started.
+	 * Has no effect if the result exceeds the memory limit.
+	 * @param key Cache key of the query.
+	 * @param spaceId Identifier of the queried space.
+	 * @param dataObjects Data objects retrieved from the wrapped connector.
+	 * @param cost Time required to retrieve the data objects.
+	 * @param retrievalSequence Sequence number before the retrieval was started.
+	 */
+	private void cache(String key, String spaceId, List<DataObject> dataObjects, double cost, long retrievalSequence) {
+		CachedObject[] objects = new CachedObject[dataObjects.size()];
+		long size = ENTRY_OVERHEAD + 2 * key.length();
+		long minExpirationDate = Long.MAX_VALUE;
+		for (int i = 0; i < objects.length; i++) {
+			DataObject dataObject = dataObjects.get(i);
+			String namespace;
+			try {
+				namespace = dataObject.getNamespace();
+			} catch (DocumentException e) {
+				log.warn("Failed to parse data object, query result is not cached.", e);
+				return;
+			}
+			Date expirationDate = dataObject.getExpirationDate();
+			objects[i] = new CachedObject(dataObject.toString(), namespace, expirationDate != null ? expirationDate.getTime() : 0);
+			size += OBJECT_OVERHEAD + 2 * (objects[i].elementString.length() + (namespace != null ? namespace.length() : 0));
+			if (expirationDate != null && expirationDate.getTime() < minExpirationDate) {
+				minExpirationDate = expirationDate.getTime();
+			}
+			if (size > maxBytes) {
+				return;
+			}
+		}
+		synchronized (entries) {
+			Long lastInvalidation = spaceInvalidations.get(spaceId);
+			if (invalidationFloor > retrievalSequence || (lastInvalidation != null && lastInvalidation > retrievalSequence)) {
+				return;
+			}
+			CacheEntry previousEntry = entries.get(key);
+			if (previousEntry != null) {
+				removeEntry(previousEntry);
+			}
+			CacheEntry entry = new CacheEntry(key, spaceId, objects, minExpirationDate, (int) size, cost, ++sequence);
+			entry.priority = inflation + entry.cost / entry.size;
+			entries.put(key, entry);
+			evictionQueue.add(entry);
+			Set<CacheEntry> spaceEntries = entriesBySpace.get(spaceId);
+			if (spaceEntries == null) {
+				spaceEntries = new HashSet<CacheEntry>();
+				entriesBySpace.put(spaceId, spaceEntries);
+			}
+			spaceEntries.add(entry);
+			usedBytes += entry.size;
+			while (usedBytes > maxBytes && !evictionQueue.isEmpty()) {
+				CacheEntry evictedEntry = evictionQueue.first();
+				inflation = evictedEntry.priority;
+				removeEntry(evictedEntry);
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Removes an entry from the cache. Has to be called with the monitor of the entries held.
+	 * @param entry Cache entry to remove.
+	 */
+	private void removeEntry(CacheEntry entry) {
+		entries.remove(entry.key);
+		evictionQueue.remove(entry);
+		Set<CacheEntry> spaceEntries = entriesBySpace.get(entry.spaceId);
+		if (spaceEntries != null) {
+			spaceEntries.remove(entry);
+			if (spaceEntries.isEmpty()) {
+				entriesBySpace.remove(entry.spaceId);
+			}
+		}
+		usedBytes -= entry.size;
+	}
+
+	/**
+	 * Removes all cached results of the given spaces. Results of these spaces being retrieved concurrently are not added to the cache.
+	 * @param spaceIds Identifiers of the spaces whose data objects were changed.
+	 */
+	private void invalidateSpaces(Collection<String> spaceIds) {
+		int removedEntries = 0;
+		synchronized (entries) {
+			long invalidationSequence = ++sequence;
+			if (spaceInvalidations.size() + spaceIds.size() > MAX_TRACKED_SPACES) {
+				spaceInvalidations.clear();
+				invalidationFloor = invalidationSequence;
+			}
+			for (String spaceId : spaceIds) {
+				spaceInvalidations.put(spaceId, invalidationSequence);
+				Set<CacheEntry> spaceEntries = entriesBySpace.get(spaceId);
+				if (spaceEntries != null) {
+					for (CacheEntry entry : new ArrayList<CacheEntry>(spaceEntries)) {
+						removeEntry(entry);
+						removedEntries++;
+					}
+				}
+			}
+		}
+		invalidations.addAndGet(removedEntries);
+	}
+
+	/**
+	 * Removes all cached results containing data objects which expired before the given time.
+	 * Results being retrieved concurrently are not added to the cache.
+	 * @param time Time the expiration was started at.
+	 */
+	private void invalidateExpired(long time) {
+		int removedEntries = 0;
+		synchronized (entries) {
+			invalidationFloor = ++sequence;
+			spaceInvalidations.clear();
+			for (CacheEntry entry : new ArrayList<CacheEntry>(entries.values())) {
+				if (entry.minExpirationDate <= time) {
+					removeEntry(entry);
+					removedEntries++;
+				}
+			}
+		}
+		invalidations.addAndGet(removedEntries);
+	}
+
+	/**
+	 * Returns the spaces of the given data objects.
+	 * @param dataObjects Data objects to read space identifiers from.
+	 * @return Set of space identifiers.
+	 */
+	private static Set<String> getSpaceIds(Collection<DataObject> dataObjects) {
+		Set<String> spaceIds = new HashSet<String>();
+		for (DataObject dataObject : dataObjects) {
+			if (dataObject.getSpaceId() != null) {
+				spaceIds.add(dataObject.getSpaceId());
+			}
+		}
+		return spaceIds;
+	}
+
+	@Override
+	public void initialize() {
+		connector.initialize();
+	}
+
+	@Override
+	public void storeDataObject(DataObject dataObject) throws DBAccessException, DocumentException {
+		try {
+			connector.storeDataObject(dataObject);
+		} finally {
+			if (dataObject.getSpaceId() != null) {
+				invalidateSpaces(Collections.singleton(dataObject.getSpaceId()));
+			}
+		}
+	}
+
+	@Override
+	public void storeDataObjects(Collection<DataObject> dataObjects) throws DBAccessException, DocumentException {
+		try {
+			connector.storeDataObjects(dataObjects);
+		} finally {
+			invalidateSpaces(getSpaceIds(dataObjects));
+		}
+	}
+
+	@Override
+	public List<DataObject> retrieveObjectsForSpace(Space space, FilterSet filterSet) throws DBAccessException {
+		String key = createKey(space.getId(), filterSet);
+		CacheEntry entry;
+		long retrievalSequence;
+		synchronized (entries) {
+			entry = entries.get(key);
+			if (entry != null) {
+				evictionQueue.remove(entry);
+				entry.priority = inflation + entry.cost / entry.size;
+				evictionQueue.add(entry);
+			}
+			retrievalSequence = sequence;
+		}
+		if (entry != null) {
+			cacheHits.incrementAndGet();
+			return entry.createDataObjects();
+		}
+		cacheMisses.incrementAndGet();
+		long startTime = System.nanoTime();
+		List<DataObject> dataObjects = connector.retrieveObjectsForSpace(space, filterSet);
+		cache(key, space.getId(), dataObjects, System.nanoTime() - startTime, retrievalSequence);
+		return dataObjects;
+	}
+
+	@Override
+	public List<DataObject> retrieveObjects(Set<String> objectIds, FilterSet filterSet) throws DBAccessException {
+		return connector.retrieveObjects(objectIds, filterSet);
+	}
+
+	@Override
+	public ResultPage retrieveObjectsForSpaces(Set<String> spaceIds, FilterSet filterSet, PageRequest pageRequest) throws DBAccessException {
+		return connector.retrieveObjectsForSpaces(spaceIds, filterSet, pageRequest);
+	}
+
+	@Override
+	public ResultPage retrieveObjects(Set<String> objectIds, FilterSet filterSet, PageRequest pageRequest) throws DBAccessException {
+		return connector.retrieveObjects(objectIds, filterSet, pageRequest);
+	}
+
+	@Override
+	public int streamObjectsForSpaces(Set<String> spaceIds, FilterSet filterSet, DataObjectHandler handler) throws DBAccessException {
+		return connector.streamObjectsForSpaces(spaceIds, filterSet, handler);
+	}
+
+	@Override
+	public int streamObjects(Set<String> objectIds, FilterSet filterSet, DataObjectHandler handler) throws DBAccessException {
+		return connector.streamObjects(objectIds, filterSet, handler);
+	}
+
+	@Override
+	public DataObject retrieveObject(String objectId) throws DBAccessException {
+		return connector.retrieveObject(objectId);
+	}
+
+	@Override
+	public int deleteObjectsForSpace(String spaceId) throws DBAccessException {
+		try {
+			return connector.deleteObjectsForSpace(spaceId);
+		} finally {
+			invalidateSpaces(Collections.singleton(spaceId));
+		}
+	}
+
+	@Override
+	public int deleteObjects(Set<String> objectIds) throws DBAccessException {
+		Set<String> spaceIds = new HashSet<String>(connector.retrieveSpacesForObjects(objectIds).values());
+		spaceIds.remove(null);
+		try {
+			return connector.deleteObjects(objectIds);
+		} finally {
+			invalidateSpaces(spaceIds);
+		}
+	}
+
+	@Override
+	public Map<String, String> retrieveSpacesForObjects(Set<String> objectIds) throws DBAccessException {
+		return connector.retrieveSpacesForObjects(objectIds);
+	}
+
+	@Override
+	public Map<String, DataObjectMetadata> retrieveMetadataForObjects(Set<String> objectIds) throws DBAccessException {
+		return connector.retrieveMetadataForObjects(objectIds);
+	}
+
+	@Override
+	public int deleteExpiredDataObjects() throws DBAccessException {
+		long time = System.currentTimeMillis();
+		int objectsDeleted = connector.deleteExpiredDataObjects();
+		if (objectsDeleted > 0) {
+			invalidateExpired(time);
+		}
+		return objectsDeleted;
+	}
+
+	@Override
+	public int deleteExpiredDataObjects(int maxObjects, long timeBudget) throws DBAccessException {
+		long time = System.currentTimeMillis();
+		int objectsDeleted = connector.deleteExpiredDataObjects(maxObjects, timeBudget);
+		if (objectsDeleted > 0) {
+			invalidateExpired(time);
+		}
+		return objectsDeleted;
+	}
+
+	@Override
+	public int trainCompressionDictionaries() throws DBAccessException {
+		return connector.trainCompressionDictionaries();
+	}
+
+	@Override
+	public int compressDataObjects(int maxObjects) throws DBAccessException {
+		return connector.compressDataObjects(maxObjects);
+	}
+
+	@Override
+	public int getCacheSize() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	@Override
+	public long getUsedBytes() {
+		synchronized (entries) {
+			return usedBytes;
+		}
+	}
+
+	@Override
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	@Override
+	public long getCacheHits() {
+		return cacheHits.get();
+	}
+
+	@Override
+	public long getCacheMisses() {
+		return cacheMisses.get();
+	}
+
+	@Override
+	public double getCacheHitRate() {
+		long hits = cacheHits.get();
+		long lookups = hits + cacheMisses.get();
+		return lookups > 0 ? (double) hits / lookups : 0;
+	}
+
+	@Override
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	@Override
+	public long getInvalidations() {
+		return invalidations.get();
+	}
+
+	@Override
+	public void clear() {
+		synchronized (entries) {
+			invalidationFloor = ++sequence;
+			spaceInvalidations.clear();
+			entries.clear();
+			evictionQueue.clear();
+			entriesBySpace.clear();
+			usedBytes = 0;
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package de.imc.mirror.persistenceservice.connectors;
+
+/**
+ * Management interface of the query result cache.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public interface ResultCacheConnectorMBean {
+	/**
+	 * Returns the number of cached query results.
+	 * @return Number of cache entries.
+	 */
+	public int getCacheSize();
+
+	/**
+	 * Returns the estimated memory occupied by the cached query results.
+	 * @return Size in bytes.
+	 */
+	public long getUsedBytes();
+
+	/**
+	 * Returns the estimated memory the cached query results may occupy.
+	 * @return Size in bytes.
+	 */
+	public long getMaxBytes();
+
+	/**
+	 * Returns the number of space queries answered from the cache.
+	 * @return Number of cache hits.
+	 */
+	public long getCacheHits();
+
+	/**
+	 * Returns the number of space queries passed to the storage engine.
+	 * @return Number of cache misses.
+	 */
+	public long getCacheMisses();
+
+	/**
+	 * Returns the share of space queries answered from the cache.
+	 * @return Hit rate between <code>0</code> and <code>1</code>.
+	 */
+	public double getCacheHitRate();
+
+	/**
+	 * Returns the number of query results removed from the cache to stay within the memory limit.
+	 * @return Number of evictions.
+	 */
+	public long getEvictions();
+
+	/**
+	 * Returns the number of cached query results removed because data objects of their space were stored, deleted or expired.
+	 * @return Number of invalidations.
+	 */
+	public long getInvalidations();
+
+	/**
+	 * Removes all query results from the cache.
+	 */
+	public void clear();
+}
@@ -5,6 +5,8 @@ import org.dom4j.Element;
 
 import de.imc.mirror.persistenceservice.DataObject;
 import de.imc.mirror.persistenceservice.Filter;
+import de.imc.mirror.persistenceservice.SQLCondition;
+import de.imc.mirror.persistenceservice.connectors.AbstractSQLConnector;
 
 /**
  * Filter for data model information.
@@ -13,6 +15,7 @@ import de.imc.mirror.persistenceservice.Filter;
 public class DataModelFilter implements Filter {
 	private String namespace;
 	private String version;
+	private SQLCondition sqlCondition;
 	
 	/**
 	 * Creates a filter based on a filter property entry of a query.
@@ -25,6 +28,11 @@ public class DataModelFilter implements Filter {
 			throw new IllegalArgumentException("A model namespace is required but missing.");
 		}
 		version = xmlElement.attributeValue("version");
+		if (version != null) {
+			sqlCondition = new SQLCondition(AbstractSQLConnector.COLUMN_NAMESPACE + " = " + SQLCondition.CASE_SENSITIVE_PARAMETER + " AND " + AbstractSQLConnector.COLUMN_MODELVERSION + " = " + SQLCondition.CASE_SENSITIVE_PARAMETER, namespace, version);
+		} else {
+			sqlCondition = new SQLCondition(AbstractSQLConnector.COLUMN_NAMESPACE + " = " + SQLCondition.CASE_SENSITIVE_PARAMETER, namespace);
+		}
 	}
 
 	@Override
@@ -41,4 +49,20 @@ public class DataModelFilter implements Filter {
 		}
 		return true;
 	}
+	
+	@Override
+	public SQLCondition getSQLCondition() {
+		return sqlCondition;
+	}
+	
+	@Override
+	public int getEvaluationCost() {
+		return COST_COMPARE;
+	}
+	
+	@Override
+	public String getCanonicalForm() {
+		// the namespace is prefixed with its length, as it may contain the separator
+		return "datamodel:" + namespace.length() + ":" + namespace + (version != null ? ":" + version : "");
+	}
 }
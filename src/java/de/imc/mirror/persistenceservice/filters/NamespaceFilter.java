@@ -1,10 +1,14 @@
 package de.imc.mirror.persistenceservice.filters;
 
+import java.util.regex.Pattern;
+
 import org.dom4j.DocumentException;
 import org.dom4j.Element;
 
 import de.imc.mirror.persistenceservice.DataObject;
 import de.imc.mirror.persistenceservice.Filter;
+import de.imc.mirror.persistenceservice.SQLCondition;
+import de.imc.mirror.persistenceservice.connectors.AbstractSQLConnector;
 
 /**
  * Filter for specific namespaces.
@@ -38,11 +42,13 @@ public class NamespaceFilter implements Filter {
 	
 	private String compareString;
 	private CompareType compareType;
+	private Pattern pattern;
+	private SQLCondition sqlCondition;
 	
 	/**
 	 * Creates a namespace filter based on the properties given in the query.
 	 * @param xmlElement XML element specifying the filter properties.
-	 * @throws IllegalArgumentException Failed to retrieve required properties from the element.
+	 * @throws IllegalArgumentException Failed to retrieve required properties from the element, or the regular expression is invalid.
 	 */
 	public NamespaceFilter(Element xmlElement) throws IllegalArgumentException {
 		String compareTypeString = xmlElement.attributeValue("compareType");
@@ -64,6 +70,19 @@ public class NamespaceFilter implements Filter {
 		if (compareString == null || compareString.isEmpty()) {
 			throw new IllegalArgumentException("Compare string is missing.");
 		}
+		
+		switch (compareType) {
+		case STRICT:
+			sqlCondition = new SQLCondition(AbstractSQLConnector.COLUMN_NAMESPACE + " = " + SQLCondition.CASE_SENSITIVE_PARAMETER, compareString);
+			break;
+		case CONTAINS:
+			sqlCondition = new SQLCondition(AbstractSQLConnector.COLUMN_NAMESPACE + " LIKE " + SQLCondition.CASE_SENSITIVE_PARAMETER + " ESCAPE '" + SQLCondition.LIKE_ESCAPE_CHARACTER + "'", "%" + SQLCondition.escapeLikePattern(compareString) + "%");
+			break;
+		default:
+			// Regular expressions are evaluated for each data object.
+			pattern = Pattern.compile(compareString);
+			sqlCondition = null;
+		}
 	}
 
 	@Override
@@ -81,11 +100,33 @@ public class NamespaceFilter implements Filter {
 			}
 			break;
 		case REGEX:
-			if (!objectNamespace.matches(compareString)) {
+			if (!pattern.matcher(objectNamespace).matches()) {
 				return false;
 			}
 			break;
 		}
 		return true;
 	}
+	
+	@Override
+	public SQLCondition getSQLCondition() {
+		return sqlCondition;
+	}
+	
+	@Override
+	public int getEvaluationCost() {
+		switch (compareType) {
+		case STRICT:
+			return COST_COMPARE;
+		case CONTAINS:
+			return COST_MATCH;
+		default:
+			return COST_REGEX;
+		}
+	}
+	
+	@Override
+	public String getCanonicalForm() {
+		return "namespace:" + compareType + ":" + compareString;
+	}
 }
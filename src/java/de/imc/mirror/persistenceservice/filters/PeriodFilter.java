@@ -9,6 +9,8 @@ import org.dom4j.Element;
 
 import de.imc.mirror.persistenceservice.DataObject;
 import de.imc.mirror.persistenceservice.Filter;
+import de.imc.mirror.persistenceservice.SQLCondition;
+import de.imc.mirror.persistenceservice.connectors.AbstractSQLConnector;
 
 
 /**
@@ -17,6 +19,7 @@ import de.imc.mirror.persistenceservice.Filter;
  */
 public class PeriodFilter implements Filter {
 	private Date from, to;
+	private SQLCondition sqlCondition;
 
 	/**
 	 * Generates a filter based on the related XML element of a query. 
@@ -35,6 +38,29 @@ public class PeriodFilter implements Filter {
 		if (toString != null) {
 			to = DatatypeConverter.parseDateTime(toString).getTime();
 		}
+		if (from != null && to != null) {
+			sqlCondition = new SQLCondition(AbstractSQLConnector.COLUMN_TIMESTAMP + " >= ? AND " + AbstractSQLConnector.COLUMN_TIMESTAMP + " <= ?", from.getTime(), to.getTime());
+		} else if (from != null) {
+			sqlCondition = new SQLCondition(AbstractSQLConnector.COLUMN_TIMESTAMP + " >= ?", from.getTime());
+		} else {
+			sqlCondition = new SQLCondition(AbstractSQLConnector.COLUMN_TIMESTAMP + " <= ?", to.getTime());
+		}
+	}
+
+	/**
+	 * Returns the start of the period.
+	 * @return Earliest timestamp accepted, or <code>null</code> if the period is open.
+	 */
+	public Date getFrom() {
+		return from;
+	}
+
+	/**
+	 * Returns the end of the period.
+	 * @return Latest timestamp accepted, or <code>null</code> if the period is open.
+	 */
+	public Date getTo() {
+		return to;
 	}
 
 	@Override
@@ -51,4 +77,19 @@ public class PeriodFilter implements Filter {
 		}
 		return true;
 	}
+	
+	@Override
+	public SQLCondition getSQLCondition() {
+		return sqlCondition;
+	}
+	
+	@Override
+	public int getEvaluationCost() {
+		return COST_DECODE;
+	}
+	
+	@Override
+	public String getCanonicalForm() {
+		return "period:" + (from != null ? from.getTime() : "") + ":" + (to != null ? to.getTime() : "");
+	}
 }
@@ -5,6 +5,8 @@ import org.dom4j.Element;
 
 import de.imc.mirror.persistenceservice.DataObject;
 import de.imc.mirror.persistenceservice.Filter;
+import de.imc.mirror.persistenceservice.SQLCondition;
+import de.imc.mirror.persistenceservice.connectors.AbstractSQLConnector;
 
 /**
  * Filters data objects by their publisher.
@@ -14,6 +16,7 @@ import de.imc.mirror.persistenceservice.Filter;
 public class PublisherFilter implements Filter {
 	
 	private String publisher;
+	private SQLCondition sqlCondition;
 	
 	/**
 	 * Creates the filter based on the properties given with a query request.
@@ -26,6 +29,7 @@ public class PublisherFilter implements Filter {
 		if (publisher == null || publisher.trim().isEmpty()) {
 			throw new IllegalArgumentException("Missing bare-JID or full-JID of the data object publisher.");
 		}
+		sqlCondition = new SQLCondition(AbstractSQLConnector.COLUMN_PUBLISHER + " LIKE " + SQLCondition.CASE_SENSITIVE_PARAMETER + " ESCAPE '" + SQLCondition.LIKE_ESCAPE_CHARACTER + "'", SQLCondition.escapeLikePattern(publisher) + "%");
 	}
 
 	@Override
@@ -36,4 +40,19 @@ public class PublisherFilter implements Filter {
 		}
 		return true;
 	}
+	
+	@Override
+	public SQLCondition getSQLCondition() {
+		return sqlCondition;
+	}
+	
+	@Override
+	public int getEvaluationCost() {
+		return COST_MATCH;
+	}
+	
+	@Override
+	public String getCanonicalForm() {
+		return "publisher:" + publisher;
+	}
 }
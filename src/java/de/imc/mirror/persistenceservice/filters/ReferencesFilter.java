@@ -5,6 +5,8 @@ import org.dom4j.Element;
 
 import de.imc.mirror.persistenceservice.DataObject;
 import de.imc.mirror.persistenceservice.Filter;
+import de.imc.mirror.persistenceservice.SQLCondition;
+import de.imc.mirror.persistenceservice.connectors.AbstractSQLConnector;
 
 /**
  * Filters data objects by the content of their ref-attributes.
@@ -13,6 +15,7 @@ import de.imc.mirror.persistenceservice.Filter;
  */
 public class ReferencesFilter implements Filter {
 	private String referenceId;
+	private SQLCondition sqlCondition;
 	
 	/**
 	 * Creates the filter based on the properties given with a query request.
@@ -24,6 +27,7 @@ public class ReferencesFilter implements Filter {
 		if (referenceId == null || referenceId.trim().isEmpty()) {
 			throw new IllegalArgumentException("The filter requires an reference id.");
 		}
+		sqlCondition = new SQLCondition(AbstractSQLConnector.COLUMN_REF + " = " + SQLCondition.CASE_SENSITIVE_PARAMETER, referenceId);
 	}
 
 	@Override
@@ -34,4 +38,19 @@ public class ReferencesFilter implements Filter {
 		}
 		return true;
 	}
+	
+	@Override
+	public SQLCondition getSQLCondition() {
+		return sqlCondition;
+	}
+	
+	@Override
+	public int getEvaluationCost() {
+		return COST_COMPARE;
+	}
+	
+	@Override
+	public String getCanonicalForm() {
+		return "references:" + referenceId;
+	}
 }
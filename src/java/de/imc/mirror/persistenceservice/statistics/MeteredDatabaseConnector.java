@@ -0,0 +1,306 @@
+package de.imc.mirror.persistenceservice.statistics;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.dom4j.DocumentException;
+
+import de.imc.mirror.persistenceservice.DataObject;
+import de.imc.mirror.persistenceservice.DataObjectHandler;
+import de.imc.mirror.persistenceservice.DataObjectMetadata;
+import de.imc.mirror.persistenceservice.DatabaseConnector;
+import de.imc.mirror.persistenceservice.FilterSet;
+import de.imc.mirror.persistenceservice.PageRequest;
+import de.imc.mirror.persistenceservice.ResultPage;
+import de.imc.mirror.persistenceservice.Space;
+import de.imc.mirror.persistenceservice.exceptions.DBAccessException;
+
+/**
+ * Database connector decorator recording the latency and errors of all operations.
+ * For queries, the number of data objects returned and rejected by filters is recorded as well.
+ * Paged queries are recorded separately from unpaged ones, both expiration operations are recorded as <code>deleteExpiredDataObjects</code>.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public class MeteredDatabaseConnector implements DatabaseConnector {
+	private final DatabaseConnector connector;
+	private final OperationStatistics storeDataObject;
+	private final OperationStatistics storeDataObjects;
+	private final OperationStatistics retrieveObjectsForSpace;
+	private final OperationStatistics retrieveObjects;
+	private final OperationStatistics retrieveObjectsForSpacesPage;
+	private final OperationStatistics retrieveObjectsPage;
+	private final OperationStatistics streamObjectsForSpaces;
+	private final OperationStatistics streamObjects;
+	private final OperationStatistics retrieveObject;
+	private final OperationStatistics deleteObjectsForSpace;
+	private final OperationStatistics deleteObjects;
+	private final OperationStatistics retrieveSpacesForObjects;
+	private final OperationStatistics retrieveMetadataForObjects;
+	private final OperationStatistics deleteExpiredDataObjects;
+	private final OperationStatistics trainCompressionDictionaries;
+	private final OperationStatistics compressDataObjects;
+	
+	/**
+	 * Creates a decorator for a database connector.
+	 * @param connector Connector to delegate all operations to.
+	 * @param statistics Registry to create the statistics of the operations in.
+	 */
+	public MeteredDatabaseConnector(DatabaseConnector connector, ServiceStatistics statistics) {
+		this.connector = connector;
+		this.storeDataObject = statistics.getDatabaseStatistics("storeDataObject");
+		this.storeDataObjects = statistics.getDatabaseStatistics("storeDataObjects");
+		this.retrieveObjectsForSpace = statistics.getDatabaseStatistics("retrieveObjectsForSpace");
+		this.retrieveObjects = statistics.getDatabaseStatistics("retrieveObjects");
+		this.retrieveObjectsForSpacesPage = statistics.getDatabaseStatistics("retrieveObjectsForSpacesPage");
+		this.retrieveObjectsPage = statistics.getDatabaseStatistics("retrieveObjectsPage");
+		this.streamObjectsForSpaces = statistics.getDatabaseStatistics("streamObjectsForSpaces");
+		this.streamObjects = statistics.getDatabaseStatistics("streamObjects");
+		this.retrieveObject = statistics.getDatabaseStatistics("retrieveObject");
+		this.deleteObjectsForSpace = statistics.getDatabaseStatistics("deleteObjectsForSpace");
+		this.deleteObjects = statistics.getDatabaseStatistics("deleteObjects");
+		this.retrieveSpacesForObjects = statistics.getDatabaseStatistics("retrieveSpacesForObjects");
+		this.retrieveMetadataForObjects = statistics.getDatabaseStatistics("retrieveMetadataForObjects");
+		this.deleteExpiredDataObjects = statistics.getDatabaseStatistics("deleteExpiredDataObjects");
+		this.trainCompressionDictionaries = statistics.getDatabaseStatistics("trainCompressionDictionaries");
+		this.compressDataObjects = statistics.getDatabaseStatistics("compressDataObjects");
+	}
+
+	@Override
+	public void initialize() {
+		connector.initialize();
+	}
+
+	@Override
+	public void storeDataObject(DataObject dataObject) throws DBAccessException, DocumentException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			connector.storeDataObject(dataObject);
+			failed = false;
+		} finally {
+			storeDataObject.record(System.nanoTime() - start, failed);
+		}
+	}
+
+	@Override
+	public void storeDataObjects(Collection<DataObject> dataObjects) throws DBAccessException, DocumentException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			connector.storeDataObjects(dataObjects);
+			failed = false;
+		} finally {
+			storeDataObjects.record(System.nanoTime() - start, failed);
+		}
+	}
+
+	@Override
+	public List<DataObject> retrieveObjectsForSpace(Space space, FilterSet filterSet) throws DBAccessException {
+		long start = System.nanoTime();
+		long rejectedObjects = filterSet.getRejectedObjects();
+		boolean failed = true;
+		try {
+			List<DataObject> dataObjects = connector.retrieveObjectsForSpace(space, filterSet);
+			retrieveObjectsForSpace.recordObjects(dataObjects.size(), filterSet.getRejectedObjects() - rejectedObjects);
+			failed = false;
+			return dataObjects;
+		} finally {
+			retrieveObjectsForSpace.record(System.nanoTime() - start, failed);
+		}
+	}
+
+	@Override
+	public List<DataObject> retrieveObjects(Set<String> objectIds, FilterSet filterSet) throws DBAccessException {
+		long start = System.nanoTime();
+		long rejectedObjects = filterSet.getRejectedObjects();
+		boolean failed = true;
+		try {
+			List<DataObject> dataObjects = connector.retrieveObjects(objectIds, filterSet);
+			retrieveObjects.recordObjects(dataObjects.size(), filterSet.getRejectedObjects() - rejectedObjects);
+			failed = false;
+			return dataObjects;
+		} finally {
+			retrieveObjects.record(System.nanoTime() - start, failed);
+		}
+	}
+
+	@Override
+	public ResultPage retrieveObjectsForSpaces(Set<String> spaceIds, FilterSet filterSet, PageRequest pageRequest) throws DBAccessException {
+		long start = System.nanoTime();
+		long rejectedObjects = filterSet.getRejectedObjects();
+		boolean failed = true;
+		try {
+			ResultPage resultPage = connector.retrieveObjectsForSpaces(spaceIds, filterSet, pageRequest);
+			retrieveObjectsForSpacesPage.recordObjects(resultPage.getDataObjects().size(), filterSet.getRejectedObjects() - rejectedObjects);
+			failed = false;
+			return resultPage;
+		} finally {
+			retrieveObjectsForSpacesPage.record(System.nanoTime() - start, failed);
+		}
+	}
+
+	@Override
+	public ResultPage retrieveObjects(Set<String> objectIds, FilterSet filterSet, PageRequest pageRequest) throws DBAccessException {
+		long start = System.nanoTime();
+		long rejectedObjects = filterSet.getRejectedObjects();
+		boolean failed = true;
+		try {
+			ResultPage resultPage = connector.retrieveObjects(objectIds, filterSet, pageRequest);
+			retrieveObjectsPage.recordObjects(resultPage.getDataObjects().size(), filterSet.getRejectedObjects() - rejectedObjects);
+			failed = false;
+			return resultPage;
+		} finally {
+			retrieveObjectsPage.record(System.nanoTime() - start, failed);
+		}
+	}
+
+	@Override
+	public int streamObjectsForSpaces(Set<String> spaceIds, FilterSet filterSet, DataObjectHandler handler) throws DBAccessException {
+		long start = System.nanoTime();
+		long rejectedObjects = filterSet.getRejectedObjects();
+		boolean failed = true;
+		try {
+			int objectCount = connector.streamObjectsForSpaces(spaceIds, filterSet, handler);
+			streamObjectsForSpaces.recordObjects(objectCount, filterSet.getRejectedObjects() - rejectedObjects);
+			failed = false;
+			return objectCount;
+		} finally {
+			streamObjectsForSpaces.record(System.nanoTime() - start, failed);
+		}
+	}
+
+	@Override
+	public int streamObjects(Set<String> objectIds, FilterSet filterSet, DataObjectHandler handler) throws DBAccessException {
+		long start = System.nanoTime();
+		long rejectedObjects = filterSet.getRejectedObjects();
+		boolean failed = true;
+		try {
+			int objectCount = connector.streamObjects(objectIds, filterSet, handler);
+			streamObjects.recordObjects(objectCount, filterSet.getRejectedObjects() - rejectedObjects);
+			failed = false;
+			return objectCount;
+		} finally {
+			streamObjects.record(System.nanoTime() - start, failed);
+		}
+	}
+
+	@Override
+	public DataObject retrieveObject(String objectId) throws DBAccessException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			DataObject dataObject = connector.retrieveObject(objectId);
+			retrieveObject.recordObjects(dataObject != null ? 1 : 0, 0);
+			failed = false;
+			return dataObject;
+		} finally {
+			retrieveObject.record(System.nanoTime() - start, failed);
+		}
+	}
+
+	@Override
+	public int deleteObjectsForSpace(String spaceId) throws DBAccessException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			int result = connector.deleteObjectsForSpace(spaceId);
+			failed = false;
+			return result;
+		} finally {
+			deleteObjectsForSpace.record(System.nanoTime() - start, failed);
+		}
+	}
+
+	@Override
+	public int deleteObjects(Set<String> objectIds) throws DBAccessException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			int result = connector.deleteObjects(objectIds);
+			failed = false;
+			return result;
+		} finally {
+			deleteObjects.record(System.nanoTime() - start, failed);
+		}
+	}
+
+	@Override
+	public Map<String, String> retrieveSpacesForObjects(Set<String> objectIds) throws DBAccessException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			Map<String, String> result = connector.retrieveSpacesForObjects(objectIds);
+			failed = false;
+			return result;
+		} finally {
+			retrieveSpacesForObjects.record(System.nanoTime() - start, failed);
+		}
+	}
+
+	@Override
+	public Map<String, DataObjectMetadata> retrieveMetadataForObjects(Set<String> objectIds) throws DBAccessException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			Map<String, DataObjectMetadata> result = connector.retrieveMetadataForObjects(objectIds);
+			failed = false;
+			return result;
+		} finally {
+			retrieveMetadataForObjects.record(System.nanoTime() - start, failed);
+		}
+	}
+
+	@Override
+	public int deleteExpiredDataObjects() throws DBAccessException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			int result = connector.deleteExpiredDataObjects();
+			failed = false;
+			return result;
+		} finally {
+			deleteExpiredDataObjects.record(System.nanoTime() - start, failed);
+		}
+	}
+
+	@Override
+	public int deleteExpiredDataObjects(int maxObjects, long timeBudget) throws DBAccessException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			int result = connector.deleteExpiredDataObjects(maxObjects, timeBudget);
+			failed = false;
+			return result;
+		} finally {
+			deleteExpiredDataObjects.record(System.nanoTime() - start, failed);
+		}
+	}
+
+	@Override
+	public int trainCompressionDictionaries() throws DBAccessException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			int result = connector.trainCompressionDictionaries();
+			failed = false;
+			return result;
+		} finally {
+			trainCompressionDictionaries.record(System.nanoTime() - start, failed);
+		}
+	}
+
+	@Override
+	public int compressDataObjects(int maxObjects) throws DBAccessException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			int result = connector.compressDataObjects(maxObjects);
+			failed = false;
+			return result;
+		} finally {
+			compressDataObjects.record(System.nanoTime() - start, failed);
+		}
+	}
+}
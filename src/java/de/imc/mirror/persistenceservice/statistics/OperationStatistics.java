@@ -0,0 +1,176 @@
+package de.imc.mirror.persistenceservice.statistics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Statistics of an operation, e.g., a request type or a database operation.
+ * Latencies are collected in a histogram with fixed buckets, so percentiles are approximated by the upper bound of the related bucket.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public class OperationStatistics implements OperationStatisticsMBean {
+	/**
+	 * Upper bounds of the histogram buckets in milliseconds. The last bucket collects all higher latencies.
+	 */
+	public static final long[] BUCKET_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+	
+	private final String name;
+	private final AtomicLong count;
+	private final AtomicLong errors;
+	private final AtomicLong totalTime;
+	private final AtomicLong maxTime;
+	private final AtomicLongArray buckets;
+	private final AtomicLong objectsReturned;
+	private final AtomicLong objectsFilteredOut;
+	
+	/**
+	 * Creates empty statistics.
+	 * @param name Name of the operation.
+	 */
+	public OperationStatistics(String name) {
+		this.name = name;
+		this.count = new AtomicLong();
+		this.errors = new AtomicLong();
+		this.totalTime = new AtomicLong();
+		this.maxTime = new AtomicLong();
+		this.buckets = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+		this.objectsReturned = new AtomicLong();
+		this.objectsFilteredOut = new AtomicLong();
+	}
+	
+	/**
+	 * Returns the name of the operation.
+	 * @return Operation name.
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Records an execution of the operation.
+	 * @param nanos Duration in nanoseconds.
+	 * @param failed <code>true</code> if the execution failed, otherwise <code>false</code>.
+	 */
+	public void record(long nanos, boolean failed) {
+		count.incrementAndGet();
+		if (failed) {
+			errors.incrementAndGet();
+		}
+		totalTime.addAndGet(nanos);
+		long max;
+		while (nanos > (max = maxTime.get()) && !maxTime.compareAndSet(max, nanos));
+		long millis = nanos / 1000000;
+		int bucket = 0;
+		while (bucket < BUCKET_BOUNDS.length && millis >= BUCKET_BOUNDS[bucket]) {
+			bucket++;
+		}
+		buckets.incrementAndGet(bucket);
+	}
+	
+	/**
+	 * Records the data objects processed by an execution of the operation.
+	 * @param returned Number of data objects returned.
+	 * @param filteredOut Number of data objects rejected by filters.
+	 */
+	public void recordObjects(long returned, long filteredOut) {
+		objectsReturned.addAndGet(returned);
+		objectsFilteredOut.addAndGet(filteredOut);
+	}
+	
+	@Override
+	public long getCount() {
+		return count.get();
+	}
+	
+	@Override
+	public long getErrors() {
+		return errors.get();
+	}
+	
+	@Override
+	public double getAverageLatency() {
+		long executions = count.get();
+		return executions > 0 ? totalTime.get() / (executions * 1000000d) : 0d;
+	}
+	
+	@Override
+	public double getMaxLatency() {
+		return maxTime.get() / 1000000d;
+	}
+	
+	/**
+	 * Returns an approximated percentile of the latencies.
+	 * @param percentile Percentile between <code>0</code> and <code>100</code>.
+	 * @return Upper bound of the bucket containing the percentile in milliseconds, the maximum latency for the last bucket, or <code>0</code> if nothing was recorded.
+	 */
+	public double getLatencyPercentile(double percentile) {
+		long[] histogram = getLatencyHistogram();
+		long total = 0;
+		for (long bucketCount : histogram) {
+			total += bucketCount;
+		}
+		if (total == 0) {
+			return 0d;
+		}
+		long rank = (long) Math.ceil(percentile / 100d * total);
+		long cumulated = 0;
+		for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+			cumulated += histogram[i];
+			if (cumulated >= rank) {
+				return BUCKET_BOUNDS[i];
+			}
+		}
+		return getMaxLatency();
+	}
+	
+	@Override
+	public double getLatency50thPercentile() {
+		return getLatencyPercentile(50);
+	}
+	
+	@Override
+	public double getLatency99thPercentile() {
+		return getLatencyPercentile(99);
+	}
+	
+	@Override
+	public double getLatency999thPercentile() {
+		return getLatencyPercentile(99.9);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * The array contains one entry per bucket of {@link #BUCKET_BOUNDS} and one entry for all higher latencies.
+	 */
+	@Override
+	public long[] getLatencyHistogram() {
+		long[] histogram = new long[buckets.length()];
+		for (int i = 0; i < histogram.length; i++) {
+			histogram[i] = buckets.get(i);
+		}
+		return histogram;
+	}
+	
+	@Override
+	public long getObjectsReturned() {
+		return objectsReturned.get();
+	}
+	
+	@Override
+	public long getObjectsFilteredOut() {
+		return objectsFilteredOut.get();
+	}
+	
+	@Override
+	public void reset() {
+		count.set(0);
+		errors.set(0);
+		totalTime.set(0);
+		maxTime.set(0);
+		for (int i = 0; i < buckets.length(); i++) {
+			buckets.set(i, 0);
+		}
+		objectsReturned.set(0);
+		objectsFilteredOut.set(0);
+	}
+}
@@ -0,0 +1,72 @@
+package de.imc.mirror.persistenceservice.statistics;
+
+/**
+ * Management interface for the statistics of an operation.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public interface OperationStatisticsMBean {
+	/**
+	 * Returns the number of executions.
+	 * @return Number of executions, including failed ones.
+	 */
+	public long getCount();
+	
+	/**
+	 * Returns the number of failed executions.
+	 * @return Number of errors.
+	 */
+	public long getErrors();
+	
+	/**
+	 * Returns the average latency of the executions.
+	 * @return Latency in milliseconds.
+	 */
+	public double getAverageLatency();
+	
+	/**
+	 * Returns the maximum latency of the executions.
+	 * @return Latency in milliseconds.
+	 */
+	public double getMaxLatency();
+	
+	/**
+	 * Returns the median of the latencies.
+	 * @return Approximated latency in milliseconds.
+	 */
+	public double getLatency50thPercentile();
+	
+	/**
+	 * Returns the 99th percentile of the latencies.
+	 * @return Approximated latency in milliseconds.
+	 */
+	public double getLatency99thPercentile();
+	
+	/**
+	 * Returns the 99.9th percentile of the latencies.
+	 * @return Approximated latency in milliseconds.
+	 */
+	public double getLatency999thPercentile();
+	
+	/**
+	 * Returns the number of executions per latency bucket.
+	 * @return Number of executions per bucket.
+	 */
+	public long[] getLatencyHistogram();
+	
+	/**
+	 * Returns the number of data objects returned by the executions.
+	 * @return Number of data objects.
+	 */
+	public long getObjectsReturned();
+	
+	/**
+	 * Returns the number of data objects rejected by filters during the executions.
+	 * @return Number of data objects.
+	 */
+	public long getObjectsFilteredOut();
+	
+	/**
+	 * Resets all values.
+	 */
+	public void reset();
+}
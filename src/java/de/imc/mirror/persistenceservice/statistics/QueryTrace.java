@@ -0,0 +1,233 @@
+package de.imc.mirror.persistenceservice.statistics;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Execution trace of a single query.
+ * The processing time is split into phases. Exactly one phase is active at a time, switching the phase stops the previous one.
+ * A trace is created when the query is received and handed over to the worker processing it. It is not used concurrently and therefore not thread-safe.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public class QueryTrace {
+	/**
+	 * Processing phases of a query.
+	 */
+	public enum Phase {
+		QUEUE, // waiting for a worker thread
+		PARSE, // parsing of the request, including targets, filters and paging information
+		SPACES, // space lookups, including requests to the Spaces Service
+		DATABASE, // database access, including the evaluation of Java filters
+		RESPONSE; // creation of the response, including streamed chunks
+	}
+
+	private final String queryId;
+	private final String requester;
+	private final long start;
+	private final long[] phaseTimes;
+	private Phase currentPhase;
+	private long phaseStart;
+	private long totalTime;
+	private String target;
+	private Collection<String> targetIds;
+	private String filters;
+	private boolean paged;
+	private boolean streamed;
+	private long rowsScanned;
+	private long rowsReturned;
+	private String error;
+
+	/**
+	 * Creates a trace and starts the queue phase.
+	 * @param queryId Identifier of the query IQ.
+	 * @param requester JID of the requester.
+	 */
+	public QueryTrace(String queryId, String requester) {
+		this.queryId = queryId;
+		this.requester = requester;
+		this.phaseTimes = new long[Phase.values().length];
+		this.start = System.nanoTime();
+		this.phaseStart = start;
+		this.currentPhase = Phase.QUEUE;
+	}
+
+	/**
+	 * Stops the current phase and starts the given one.
+	 * @param phase Phase to start.
+	 * @return Phase which was active before, or <code>null</code> if the trace is finished.
+	 */
+	public Phase enter(Phase phase) {
+		Phase previousPhase = currentPhase;
+		long now = System.nanoTime();
+		if (previousPhase != null) {
+			phaseTimes[previousPhase.ordinal()] += now - phaseStart;
+		}
+		currentPhase = phase;
+		phaseStart = now;
+		return previousPhase;
+	}
+
+	/**
+	 * Stops the current phase and the trace.
+	 */
+	public void finish() {
+		if (currentPhase != null) {
+			enter(null);
+			totalTime = phaseStart - start;
+		}
+	}
+
+	/**
+	 * Sets the targets of the query.
+	 * @param target Name of the target element.
+	 * @param targetIds Identifiers of the queried spaces or data objects.
+	 */
+	public void setTarget(String target, Collection<String> targetIds) {
+		this.target = target;
+		this.targetIds = targetIds;
+	}
+
+	/**
+	 * Sets the filters of the query.
+	 * @param filters XML string of the filter element.
+	 */
+	public void setFilters(String filters) {
+		this.filters = filters;
+	}
+
+	/**
+	 * Sets the result mode of the query.
+	 * @param paged <code>true</code> if a result page is requested.
+	 * @param streamed <code>true</code> if the result is streamed.
+	 */
+	public void setResultMode(boolean paged, boolean streamed) {
+		this.paged = paged;
+		this.streamed = streamed;
+	}
+
+	/**
+	 * Sets the number of rows processed.
+	 * @param rowsScanned Number of rows read from the database, including rows rejected by Java filters.
+	 * @param rowsReturned Number of data objects returned to the requester.
+	 */
+	public void setRows(long rowsScanned, long rowsReturned) {
+		this.rowsScanned = rowsScanned;
+		this.rowsReturned = rowsReturned;
+	}
+
+	/**
+	 * Marks the query as failed.
+	 * @param error Error condition returned to the requester.
+	 */
+	public void setError(String error) {
+		this.error = error;
+	}
+
+	/**
+	 * Returns the time spent in a phase.
+	 * @param phase Phase to return time for.
+	 * @return Time in milliseconds.
+	 */
+	public double getPhaseTime(Phase phase) {
+		return phaseTimes[phase.ordinal()] / 1000000d;
+	}
+
+	/**
+	 * Returns the total processing time of the query.
+	 * @return Time in milliseconds, or <code>0</code> if the trace is not finished.
+	 */
+	public double getTotalTime() {
+		return totalTime / 1000000d;
+	}
+
+	/**
+	 * Returns the trace as single line JSON object.
+	 * @return JSON string.
+	 */
+	public String toJSON() {
+		StringBuilder builder = new StringBuilder(256);
+		builder.append("{\"queryId\":");
+		appendString(builder, queryId);
+		builder.append(",\"requester\":");
+		appendString(builder, requester);
+		builder.append(",\"target\":");
+		appendString(builder, target);
+		builder.append(",\"targetIds\":[");
+		if (targetIds != null) {
+			Iterator<String> iterator = targetIds.iterator();
+			while (iterator.hasNext()) {
+				appendString(builder, iterator.next());
+				if (iterator.hasNext()) {
+					builder.append(',');
+				}
+			}
+		}
+		builder.append("],\"paged\":").append(paged);
+		builder.append(",\"streamed\":").append(streamed);
+		builder.append(",\"filters\":");
+		appendString(builder, filters);
+		builder.append(",\"totalMs\":").append(formatTime(totalTime));
+		builder.append(",\"phasesMs\":{");
+		for (Phase phase : Phase.values()) {
+			if (phase.ordinal() > 0) {
+				builder.append(',');
+			}
+			builder.append('"').append(phase.toString().toLowerCase()).append("\":").append(formatTime(phaseTimes[phase.ordinal()]));
+		}
+		builder.append("},\"rowsScanned\":").append(rowsScanned);
+		builder.append(",\"rowsReturned\":").append(rowsReturned);
+		builder.append(",\"error\":");
+		appendString(builder, error);
+		builder.append('}');
+		return builder.toString();
+	}
+
+	/**
+	 * Formats a time with a precision of microseconds.
+	 * @param nanos Time in nanoseconds.
+	 * @return Time in milliseconds.
+	 */
+	private static String formatTime(long nanos) {
+		return String.valueOf(Math.round(nanos / 1000d) / 1000d);
+	}
+
+	/**
+	 * Appends a JSON string value.
+	 * @param builder Builder to append value to.
+	 * @param value String to append, may be <code>null</code>.
+	 */
+	private static void appendString(StringBuilder builder, String value) {
+		if (value == null) {
+			builder.append("null");
+			return;
+		}
+		builder.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				builder.append("\\\"");
+				break;
+			case '\\':
+				builder.append("\\\\");
+				break;
+			case '\n':
+				builder.append("\\n");
+				break;
+			case '\r':
+				builder.append("\\r");
+				break;
+			case '\t':
+				builder.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					builder.append(String.format("\\u%04x", (int) c));
+				} else {
+					builder.append(c);
+				}
+			}
+		}
+		builder.append('"');
+	}
+}
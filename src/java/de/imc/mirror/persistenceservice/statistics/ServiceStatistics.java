@@ -0,0 +1,151 @@
+package de.imc.mirror.persistenceservice.statistics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry for the runtime statistics of the service.
+ * The statistics are published as MBeans in the domain {@value #JMX_DOMAIN} of the platform MBean server.
+ * @author simon.schwantzer(at)im-c.de
+ */
+public class ServiceStatistics {
+	private static final Logger log = LoggerFactory.getLogger(ServiceStatistics.class);
+	
+	/**
+	 * Domain of the object names of all MBeans registered by the service.
+	 */
+	public static final String JMX_DOMAIN = "de.imc.mirror.persistenceservice";
+	
+	private final ConcurrentMap<String, OperationStatistics> requestStatistics;
+	private final ConcurrentMap<String, OperationStatistics> databaseStatistics;
+	private final List<ObjectName> registeredNames;
+	
+	/**
+	 * Creates an empty registry.
+	 */
+	public ServiceStatistics() {
+		this.requestStatistics = new ConcurrentHashMap<String, OperationStatistics>();
+		this.databaseStatistics = new ConcurrentHashMap<String, OperationStatistics>();
+		this.registeredNames = new ArrayList<ObjectName>();
+	}
+	
+	private static OperationStatistics getOrCreate(ConcurrentMap<String, OperationStatistics> statisticsMap, String name) {
+		OperationStatistics statistics = statisticsMap.get(name);
+		if (statistics == null) {
+			statistics = new OperationStatistics(name);
+			OperationStatistics existingStatistics = statisticsMap.putIfAbsent(name, statistics);
+			if (existingStatistics != null) {
+				statistics = existingStatistics;
+			}
+		}
+		return statistics;
+	}
+	
+	/**
+	 * Returns the statistics for a request type, e.g., <code>query</code>. The statistics are created if necessary.
+	 * @param requestType Name of the request type.
+	 * @return Request statistics.
+	 */
+	public OperationStatistics getRequestStatistics(String requestType) {
+		return getOrCreate(requestStatistics, requestType);
+	}
+	
+	/**
+	 * Returns the statistics for a database operation. The statistics are created if necessary.
+	 * @param operation Name of the operation.
+	 * @return Database operation statistics.
+	 */
+	public OperationStatistics getDatabaseStatistics(String operation) {
+		return getOrCreate(databaseStatistics, operation);
+	}
+	
+	/**
+	 * Returns the statistics of all request types.
+	 * @return Unmodifiable map of request type names to statistics, sorted by name.
+	 */
+	public Map<String, OperationStatistics> getAllRequestStatistics() {
+		return Collections.unmodifiableMap(new TreeMap<String, OperationStatistics>(requestStatistics));
+	}
+	
+	/**
+	 * Returns the statistics of all database operations.
+	 * @return Unmodifiable map of operation names to statistics, sorted by name.
+	 */
+	public Map<String, OperationStatistics> getAllDatabaseStatistics() {
+		return Collections.unmodifiableMap(new TreeMap<String, OperationStatistics>(databaseStatistics));
+	}
+	
+	/**
+	 * Resets the statistics of all requests types and database operations.
+	 */
+	public void reset() {
+		for (OperationStatistics statistics : requestStatistics.values()) {
+			statistics.reset();
+		}
+		for (OperationStatistics statistics : databaseStatistics.values()) {
+			statistics.reset();
+		}
+	}
+	
+	/**
+	 * Registers an MBean with the platform MBean server. Failures are logged.
+	 * @param mbean Object implementing a standard MBean interface.
+	 * @param type Value of the <code>type</code> key of the object name.
+	 * @param name Value of the <code>name</code> key of the object name, or <code>null</code> if the type identifies the MBean.
+	 */
+	public synchronized void registerMBean(Object mbean, String type, String name) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=" + type + (name != null ? ",name=" + ObjectName.quote(name) : ""));
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			server.registerMBean(mbean, objectName);
+			registeredNames.add(objectName);
+		} catch (JMException e) {
+			log.warn("Failed to register MBean of type " + type + ".", e);
+		}
+	}
+	
+	/**
+	 * Registers the statistics of all request types and database operations as MBeans.
+	 */
+	public void registerStatisticsMBeans() {
+		for (OperationStatistics statistics : requestStatistics.values()) {
+			registerMBean(statistics, "Request", statistics.getName());
+		}
+		for (OperationStatistics statistics : databaseStatistics.values()) {
+			registerMBean(statistics, "Database", statistics.getName());
+		}
+	}
+	
+	/**
+	 * Unregisters all MBeans registered with this registry.
+	 */
+	public synchronized void unregisterMBeans() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (ObjectName objectName : registeredNames) {
+			try {
+				if (server.isRegistered(objectName)) {
+					server.unregisterMBean(objectName);
+				}
+			} catch (JMException e) {
+				log.warn("Failed to unregister MBean " + objectName + ".", e);
+			}
+		}
+		registeredNames.clear();
+	}
+}
@@ -1,5 +1,10 @@
+<%@page import="java.util.Date"%>
+<%@page import="de.imc.mirror.persistenceservice.CompressionJob"%>
+<%@page import="de.imc.mirror.persistenceservice.DataExpirationScheduler"%>
+<%@page import="de.imc.mirror.persistenceservice.PersistencePlugin"%>
 <%@page import="org.jivesoftware.util.JiveGlobals"%>
 <%@page import="org.jivesoftware.util.ParamUtils"%>
+<%@page import="org.jivesoftware.util.StringUtils"%>
 <%@ taglib uri="http://java.sun.com/jstl/fmt_rt" prefix="fmt" %>
 <jsp:useBean id="webManager" class="org.jivesoftware.util.WebManager" />
 
@@ -9,14 +14,99 @@
 	
 	// parse parameters
 	boolean save = ParamUtils.getBooleanParameter(request, "save");
+	boolean cleanup = ParamUtils.getBooleanParameter(request, "cleanup");
+	boolean compress = ParamUtils.getBooleanParameter(request, "compress");
+	
+	DataExpirationScheduler expirationScheduler = null;
+	CompressionJob compressionJob = null;
+	PersistencePlugin plugin = PersistencePlugin.getInstance();
+	if (plugin != null && plugin.getPersistenceService() != null) {
+		expirationScheduler = plugin.getPersistenceService().getExpirationScheduler();
+		compressionJob = plugin.getPersistenceService().getCompressionJob();
+	}
+	
+	if (cleanup && expirationScheduler != null) {
+		expirationScheduler.runNow();
+		response.sendRedirect("persistence-settings.jsp?cleanupStarted=true");
+		return;
+	}
+	
+	if (compress && compressionJob != null) {
+		compressionJob.runNow();
+		response.sendRedirect("persistence-settings.jsp?compressionStarted=true");
+		return;
+	}
 
 	if (save) {
 		boolean allowDelete = ParamUtils.getBooleanParameter(request, "allowPublishersToDelete", false);
 		JiveGlobals.setProperty("msf.persistence.allowPublishersToDelete", Boolean.toString(allowDelete));
+		boolean writeBehind = ParamUtils.getBooleanParameter(request, "writeBehind", false);
+		JiveGlobals.setProperty("msf.persistence.ingest.writeBehind", Boolean.toString(writeBehind));
+		JiveGlobals.setProperty("msf.persistence.ingest.durability", "immediate".equals(request.getParameter("durability")) ? "immediate" : "commit");
+		JiveGlobals.setProperty("msf.persistence.ingest.queueCapacity", Integer.toString(ParamUtils.getIntParameter(request, "queueCapacity", 10000)));
+		JiveGlobals.setProperty("msf.persistence.ingest.writerThreads", Integer.toString(ParamUtils.getIntParameter(request, "writerThreads", 1)));
+		JiveGlobals.setProperty("msf.persistence.ingest.maxBatchSize", Integer.toString(ParamUtils.getIntParameter(request, "maxBatchSize", 200)));
+		JiveGlobals.setProperty("msf.persistence.ingest.lingerTime", Long.toString(ParamUtils.getLongParameter(request, "lingerTime", 20)));
+		JiveGlobals.setProperty("msf.persistence.workers.insert.lanes", Integer.toString(ParamUtils.getIntParameter(request, "insertLanes", 4)));
+		for (String poolName : new String[] {"query", "delete"}) {
+			String threadsParameter = request.getParameter(poolName + "Threads");
+			if (threadsParameter != null) {
+				JiveGlobals.setProperty("msf.persistence.workers." + poolName + ".threads", Integer.toString(ParamUtils.getIntParameter(request, poolName + "Threads", 1)));
+			}
+			String queueSizeParameter = request.getParameter(poolName + "QueueSize");
+			if (queueSizeParameter != null) {
+				JiveGlobals.setProperty("msf.persistence.workers." + poolName + ".queueSize", Integer.toString(ParamUtils.getIntParameter(request, poolName + "QueueSize", 1)));
+			}
+		}
+		JiveGlobals.setProperty("msf.persistence.storage.engine", "log".equals(request.getParameter("engine")) ? "log" : "database");
+		boolean compression = ParamUtils.getBooleanParameter(request, "compression", false);
+		JiveGlobals.setProperty("msf.persistence.storage.compression", Boolean.toString(compression));
+		String binaryNamespacesParameter = ParamUtils.getParameter(request, "binaryNamespaces", true);
+		JiveGlobals.setProperty("msf.persistence.storage.binaryNamespaces", binaryNamespacesParameter != null ? binaryNamespacesParameter.trim() : "");
+		boolean hotTierEnabled = ParamUtils.getBooleanParameter(request, "hotTierEnabled", false);
+		JiveGlobals.setProperty("msf.persistence.hotTier.enabled", Boolean.toString(hotTierEnabled));
+		JiveGlobals.setProperty("msf.persistence.hotTier.maxBytes", Long.toString(ParamUtils.getLongParameter(request, "hotTierMaxBytes", 64 * 1024 * 1024)));
+		JiveGlobals.setProperty("msf.persistence.hotTier.window", Long.toString(ParamUtils.getLongParameter(request, "hotTierWindow", 3600000)));
+		boolean objectCacheEnabled = ParamUtils.getBooleanParameter(request, "objectCacheEnabled", false);
+		JiveGlobals.setProperty("msf.persistence.objectCache.enabled", Boolean.toString(objectCacheEnabled));
+		JiveGlobals.setProperty("msf.persistence.objectCache.maxBytes", Long.toString(ParamUtils.getLongParameter(request, "objectCacheMaxBytes", 16 * 1024 * 1024)));
+		boolean resultCacheEnabled = ParamUtils.getBooleanParameter(request, "resultCacheEnabled", false);
+		JiveGlobals.setProperty("msf.persistence.resultCache.enabled", Boolean.toString(resultCacheEnabled));
+		JiveGlobals.setProperty("msf.persistence.resultCache.maxBytes", Long.toString(ParamUtils.getLongParameter(request, "resultCacheMaxBytes", 32 * 1024 * 1024)));
+		JiveGlobals.setProperty("msf.persistence.expiration.slicePeriod", Long.toString(ParamUtils.getLongParameter(request, "slicePeriod", 60000)));
+		JiveGlobals.setProperty("msf.persistence.expiration.sliceSize", Integer.toString(ParamUtils.getIntParameter(request, "sliceSize", 2000)));
+		JiveGlobals.setProperty("msf.persistence.expiration.sliceTimeBudget", Long.toString(ParamUtils.getLongParameter(request, "sliceTimeBudget", 5000)));
+		JiveGlobals.setProperty("msf.persistence.expiration.latencyThreshold", Long.toString(ParamUtils.getLongParameter(request, "latencyThreshold", 250)));
 		response.sendRedirect("persistence-settings.jsp?settingsSaved=true");
 	}
 
 	boolean isDeletionAllowed = JiveGlobals.getBooleanProperty("msf.persistence.allowPublishersToDelete", false);
+	boolean isWriteBehindEnabled = JiveGlobals.getBooleanProperty("msf.persistence.ingest.writeBehind", false);
+	boolean isImmediateDurability = "immediate".equals(JiveGlobals.getProperty("msf.persistence.ingest.durability", "commit"));
+	int queueCapacity = JiveGlobals.getIntProperty("msf.persistence.ingest.queueCapacity", 10000);
+	int writerThreads = JiveGlobals.getIntProperty("msf.persistence.ingest.writerThreads", 1);
+	int maxBatchSize = JiveGlobals.getIntProperty("msf.persistence.ingest.maxBatchSize", 200);
+	long lingerTime = JiveGlobals.getLongProperty("msf.persistence.ingest.lingerTime", 20);
+	int insertLanes = JiveGlobals.getIntProperty("msf.persistence.workers.insert.lanes", 4);
+	int insertQueueSize = JiveGlobals.getIntProperty("msf.persistence.workers.insert.queueSize", 1000);
+	int queryThreads = JiveGlobals.getIntProperty("msf.persistence.workers.query.threads", 8);
+	int queryQueueSize = JiveGlobals.getIntProperty("msf.persistence.workers.query.queueSize", 200);
+	int deleteThreads = JiveGlobals.getIntProperty("msf.persistence.workers.delete.threads", 2);
+	int deleteQueueSize = JiveGlobals.getIntProperty("msf.persistence.workers.delete.queueSize", 200);
+	boolean isLogEngine = "log".equals(JiveGlobals.getProperty("msf.persistence.storage.engine", "database"));
+	boolean isCompressionEnabled = JiveGlobals.getBooleanProperty("msf.persistence.storage.compression", false);
+	String binaryNamespaces = JiveGlobals.getProperty("msf.persistence.storage.binaryNamespaces", "");
+	boolean isHotTierEnabled = JiveGlobals.getBooleanProperty("msf.persistence.hotTier.enabled", false);
+	long hotTierMaxBytes = JiveGlobals.getLongProperty("msf.persistence.hotTier.maxBytes", 64 * 1024 * 1024);
+	long hotTierWindow = JiveGlobals.getLongProperty("msf.persistence.hotTier.window", 3600000);
+	boolean isObjectCacheEnabled = JiveGlobals.getBooleanProperty("msf.persistence.objectCache.enabled", false);
+	long objectCacheMaxBytes = JiveGlobals.getLongProperty("msf.persistence.objectCache.maxBytes", 16 * 1024 * 1024);
+	boolean isResultCacheEnabled = JiveGlobals.getBooleanProperty("msf.persistence.resultCache.enabled", false);
+	long resultCacheMaxBytes = JiveGlobals.getLongProperty("msf.persistence.resultCache.maxBytes", 32 * 1024 * 1024);
+	long slicePeriod = JiveGlobals.getLongProperty("msf.persistence.expiration.slicePeriod", 60000);
+	int sliceSize = JiveGlobals.getIntProperty("msf.persistence.expiration.sliceSize", 2000);
+	long sliceTimeBudget = JiveGlobals.getLongProperty("msf.persistence.expiration.sliceTimeBudget", 5000);
+	long latencyThreshold = JiveGlobals.getLongProperty("msf.persistence.expiration.latencyThreshold", 250);
 %>
 <html>
 <head>
@@ -38,6 +128,32 @@
 	</table>
 </div>
    
+<% } else if (ParamUtils.getBooleanParameter(request, "cleanupStarted")) { %>
+
+<div class="jive-success">
+	<table cellpadding="0" cellspacing="0" border="0">
+		<tbody>
+			<tr>
+				<td class="jive-icon"><img src="images/success-16x16.gif" width="16" height="16" border="0"></td>
+				<td class="jive-icon-label">Cleanup of expired data objects started.</td>
+			</tr>
+		</tbody>
+	</table>
+</div>
+
+<% } else if (ParamUtils.getBooleanParameter(request, "compressionStarted")) { %>
+
+<div class="jive-success">
+	<table cellpadding="0" cellspacing="0" border="0">
+		<tbody>
+			<tr>
+				<td class="jive-icon"><img src="images/success-16x16.gif" width="16" height="16" border="0"></td>
+				<td class="jive-icon-label">Compression of stored data objects started.</td>
+			</tr>
+		</tbody>
+	</table>
+</div>
+
 <% } %>
 
 <form action="persistence-settings.jsp?save=true" method="post">
@@ -52,9 +168,245 @@
 		</tbody>
 	</table>
 </div>
+<div class="jive-contentBoxHeader">Inserts</div>
+<div class="jive-contentBox">
+	<p>Changes of these settings take effect when the plugin is restarted.</p>
+	<table cellpadding="3" cellspacing="0" border="0" width="100%">
+		<tbody>
+			<tr>
+				<td width="1%" align="center" nowrap><input type="checkbox" name="writeBehind" <%=isWriteBehindEnabled ? "checked=\"checked\"" : "" %>></td>
+				<td width="99%" align="left" colspan="2">Queue inserts and store them asynchronously in batches (write-behind).</td>
+			</tr>
+			<tr>
+				<td width="1%"></td>
+				<td nowrap>Respond to inserts</td>
+				<td width="99%">
+					<select name="durability">
+						<option value="commit" <%=!isImmediateDurability ? "selected" : "" %>>when the data objects are committed</option>
+						<option value="immediate" <%=isImmediateDurability ? "selected" : "" %>>when the data objects are queued</option>
+					</select>
+				</td>
+			</tr>
+			<tr>
+				<td width="1%"></td>
+				<td nowrap>Queue capacity (data objects)</td>
+				<td width="99%"><input type="text" name="queueCapacity" size="8" value="<%=queueCapacity %>"></td>
+			</tr>
+			<tr>
+				<td width="1%"></td>
+				<td nowrap>Writer threads</td>
+				<td width="99%"><input type="text" name="writerThreads" size="8" value="<%=writerThreads %>"></td>
+			</tr>
+			<tr>
+				<td width="1%"></td>
+				<td nowrap>Maximum batch size (data objects)</td>
+				<td width="99%"><input type="text" name="maxBatchSize" size="8" value="<%=maxBatchSize %>"></td>
+			</tr>
+			<tr>
+				<td width="1%"></td>
+				<td nowrap>Linger time (ms)</td>
+				<td width="99%"><input type="text" name="lingerTime" size="8" value="<%=lingerTime %>"></td>
+			</tr>
+		</tbody>
+	</table>
+</div>
+<div class="jive-contentBoxHeader">Request Processing</div>
+<div class="jive-contentBox">
+	<p>Inserts, queries and deletes are processed by separate worker pools. Inserts are processed in lanes with a single thread each, which keeps the order of the inserts for each space. Requests exceeding the queue size are rejected with a <i>resource-constraint</i> error. Changes of these settings take effect when the plugin is restarted.</p>
+	<table cellpadding="3" cellspacing="0" border="0">
+		<thead>
+			<tr>
+				<th></th>
+				<th align="left">Threads (lanes for inserts)</th>
+				<th align="left">Queue size (requests)</th>
+			</tr>
+		</thead>
+		<tbody>
+			<tr>
+				<td nowrap>Inserts</td>
+				<td><input type="text" name="insertLanes" size="8" value="<%=insertLanes %>"></td>
+				<td><input type="text" name="insertQueueSize" size="8" value="<%=insertQueueSize %>"></td>
+			</tr>
+			<tr>
+				<td nowrap>Queries</td>
+				<td><input type="text" name="queryThreads" size="8" value="<%=queryThreads %>"></td>
+				<td><input type="text" name="queryQueueSize" size="8" value="<%=queryQueueSize %>"></td>
+			</tr>
+			<tr>
+				<td nowrap>Deletes</td>
+				<td><input type="text" name="deleteThreads" size="8" value="<%=deleteThreads %>"></td>
+				<td><input type="text" name="deleteQueueSize" size="8" value="<%=deleteQueueSize %>"></td>
+			</tr>
+		</tbody>
+	</table>
+</div>
+<div class="jive-contentBoxHeader">Storage</div>
+<div class="jive-contentBox">
+	<p>Compressed data objects are stored in a binary format, using dictionaries trained for each namespace. Data objects of the listed namespaces are stored as binary XML instead, which is read without parsing the XML text. Data objects stored before are converted when the compression is started below.</p>
+	<p>The embedded log store keeps the data objects in segment files in the Openfire home directory instead of the Openfire database. Data objects are not migrated between the storage engines. A change of the storage engine takes effect when the plugin is restarted.</p>
+	<table cellpadding="3" cellspacing="0" border="0" width="100%">
+		<tbody>
+			<tr>
+				<td width="1%"></td>
+				<td nowrap>Storage engine</td>
+				<td width="99%">
+					<select name="engine">
+						<option value="database" <%=!isLogEngine ? "selected" : "" %>>Openfire database</option>
+						<option value="log" <%=isLogEngine ? "selected" : "" %>>Embedded log store</option>
+					</select>
+				</td>
+			</tr>
+			<tr>
+				<td width="1%" align="center" nowrap><input type="checkbox" name="compression" <%=isCompressionEnabled ? "checked=\"checked\"" : "" %>></td>
+				<td width="99%" align="left" colspan="2">Compress data objects when they are stored.</td>
+			</tr>
+			<tr>
+				<td width="1%"></td>
+				<td nowrap>Namespaces stored as binary XML (comma separated)</td>
+				<td width="99%"><input type="text" name="binaryNamespaces" size="60" value="<%=StringUtils.escapeForXML(binaryNamespaces) %>"></td>
+			</tr>
+		</tbody>
+	</table>
+</div>
+<div class="jive-contentBoxHeader">Hot Tier</div>
+<div class="jive-contentBox">
+	<p>The hot tier keeps the recent data objects of queried spaces in memory. Queries for a period starting within the time window are answered from memory. Changes take effect when the plugin is restarted.</p>
+	<table cellpadding="3" cellspacing="0" border="0" width="100%">
+		<tbody>
+			<tr>
+				<td width="1%" align="center" nowrap><input type="checkbox" name="hotTierEnabled" <%=isHotTierEnabled ? "checked=\"checked\"" : "" %>></td>
+				<td width="99%" align="left" colspan="2">Keep recent data objects in memory.</td>
+			</tr>
+			<tr>
+				<td width="1%"></td>
+				<td nowrap>Time window (ms)</td>
+				<td width="99%"><input type="text" name="hotTierWindow" size="10" value="<%=hotTierWindow %>"></td>
+			</tr>
+			<tr>
+				<td width="1%"></td>
+				<td nowrap>Maximum memory (bytes)</td>
+				<td width="99%"><input type="text" name="hotTierMaxBytes" size="10" value="<%=hotTierMaxBytes %>"></td>
+			</tr>
+		</tbody>
+	</table>
+</div>
+<div class="jive-contentBoxHeader">Object Cache</div>
+<div class="jive-contentBox">
+	<p>The object cache keeps data objects requested by their identifier in memory. Deleted and expired data objects are removed from the cache. Changes take effect when the plugin is restarted.</p>
+	<table cellpadding="3" cellspacing="0" border="0" width="100%">
+		<tbody>
+			<tr>
+				<td width="1%" align="center" nowrap><input type="checkbox" name="objectCacheEnabled" <%=isObjectCacheEnabled ? "checked=\"checked\"" : "" %>></td>
+				<td width="99%" align="left" colspan="2">Cache data objects requested by identifier.</td>
+			</tr>
+			<tr>
+				<td width="1%"></td>
+				<td nowrap>Maximum memory (bytes)</td>
+				<td width="99%"><input type="text" name="objectCacheMaxBytes" size="10" value="<%=objectCacheMaxBytes %>"></td>
+			</tr>
+		</tbody>
+	</table>
+</div>
+<div class="jive-contentBoxHeader">Result Cache</div>
+<div class="jive-contentBox">
+	<p>The result cache keeps the results of space queries in memory. A result is removed when data objects of its space are stored, deleted or expired. Changes take effect when the plugin is restarted.</p>
+	<table cellpadding="3" cellspacing="0" border="0" width="100%">
+		<tbody>
+			<tr>
+				<td width="1%" align="center" nowrap><input type="checkbox" name="resultCacheEnabled" <%=isResultCacheEnabled ? "checked=\"checked\"" : "" %>></td>
+				<td width="99%" align="left" colspan="2">Cache the results of space queries.</td>
+			</tr>
+			<tr>
+				<td width="1%"></td>
+				<td nowrap>Maximum memory (bytes)</td>
+				<td width="99%"><input type="text" name="resultCacheMaxBytes" size="10" value="<%=resultCacheMaxBytes %>"></td>
+			</tr>
+		</tbody>
+	</table>
+</div>
+<div class="jive-contentBoxHeader">Data Cleanup</div>
+<div class="jive-contentBox">
+	<p>Expired data objects are deleted in slices. Slices are postponed while the average query latency exceeds the threshold.</p>
+	<table cellpadding="3" cellspacing="0" border="0" width="100%">
+		<tbody>
+			<tr>
+				<td nowrap>Slice period (ms)</td>
+				<td width="99%"><input type="text" name="slicePeriod" size="8" value="<%=slicePeriod %>"></td>
+			</tr>
+			<tr>
+				<td nowrap>Maximum data objects per slice</td>
+				<td width="99%"><input type="text" name="sliceSize" size="8" value="<%=sliceSize %>"></td>
+			</tr>
+			<tr>
+				<td nowrap>Time budget per slice (ms)</td>
+				<td width="99%"><input type="text" name="sliceTimeBudget" size="8" value="<%=sliceTimeBudget %>"></td>
+			</tr>
+			<tr>
+				<td nowrap>Query latency threshold (ms)</td>
+				<td width="99%"><input type="text" name="latencyThreshold" size="8" value="<%=latencyThreshold %>"></td>
+			</tr>
+		</tbody>
+	</table>
+</div>
 <input type="submit" value="Save"/>
 </form>
 
+<% if (expirationScheduler != null) { %>
+<br/>
+<form action="persistence-settings.jsp?cleanup=true" method="post">
+<div class="jive-contentBoxHeader">Cleanup Status</div>
+<div class="jive-contentBox">
+	<table cellpadding="3" cellspacing="0" border="0" width="100%">
+		<tbody>
+			<tr>
+				<td nowrap>Last cleanup</td>
+				<td width="99%"><%=expirationScheduler.getLastRunTime() > 0 ? new Date(expirationScheduler.getLastRunTime()).toString() : "-" %><%=expirationScheduler.isRunning() ? " (running)" : "" %></td>
+			</tr>
+			<tr>
+				<td nowrap>Duration</td>
+				<td width="99%"><%=expirationScheduler.getLastRunDuration() %> ms</td>
+			</tr>
+			<tr>
+				<td nowrap>Deleted data objects</td>
+				<td width="99%"><%=expirationScheduler.getLastRunObjects() %> (<%=Math.round(expirationScheduler.getLastRunThroughput()) %> per second), <%=expirationScheduler.getTotalObjectsDeleted() %> in total</td>
+			</tr>
+			<tr>
+				<td nowrap>Postponed slices</td>
+				<td width="99%"><%=expirationScheduler.getPostponedSlices() %> (current period factor: <%=expirationScheduler.getBackoffFactor() %>)</td>
+			</tr>
+		</tbody>
+	</table>
+</div>
+<input type="submit" value="Delete expired data objects now"/>
+</form>
+<% } %>
+
+<% if (compressionJob != null) { %>
+<br/>
+<form action="persistence-settings.jsp?compress=true" method="post">
+<div class="jive-contentBoxHeader">Compression Status</div>
+<div class="jive-contentBox">
+	<table cellpadding="3" cellspacing="0" border="0" width="100%">
+		<tbody>
+			<tr>
+				<td nowrap>Last run</td>
+				<td width="99%"><%=compressionJob.getLastRunTime() > 0 ? new Date(compressionJob.getLastRunTime()).toString() : "-" %><%=compressionJob.isRunning() ? " (running)" : "" %></td>
+			</tr>
+			<tr>
+				<td nowrap>Compressed data objects</td>
+				<td width="99%"><%=compressionJob.getObjectsCompressed() %></td>
+			</tr>
+			<tr>
+				<td nowrap>Dictionaries created</td>
+				<td width="99%"><%=compressionJob.getDictionariesCreated() %></td>
+			</tr>
+		</tbody>
+	</table>
+</div>
+<input type="submit" value="Compress stored data objects now"/>
+</form>
+<% } %>
+
 
 </body>
 </html>
\ No newline at end of file
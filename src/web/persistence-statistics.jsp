@@ -0,0 +1,327 @@
+<%@page import="java.util.Date"%>
+<%@page import="java.util.Map"%>
+<%@page import="de.imc.mirror.persistenceservice.DataExpirationScheduler"%>
+<%@page import="de.imc.mirror.persistenceservice.IngestQueue"%>
+<%@page import="de.imc.mirror.persistenceservice.PersistencePlugin"%>
+<%@page import="de.imc.mirror.persistenceservice.PersistenceService"%>
+<%@page import="de.imc.mirror.persistenceservice.SpaceManager"%>
+<%@page import="de.imc.mirror.persistenceservice.StripedWorkerPoolMBean"%>
+<%@page import="de.imc.mirror.persistenceservice.WorkerPoolMBean"%>
+<%@page import="de.imc.mirror.persistenceservice.connectors.HotTierConnector"%>
+<%@page import="de.imc.mirror.persistenceservice.connectors.ObjectCacheConnector"%>
+<%@page import="de.imc.mirror.persistenceservice.connectors.ResultCacheConnector"%>
+<%@page import="de.imc.mirror.persistenceservice.statistics.OperationStatistics"%>
+<%@page import="de.imc.mirror.persistenceservice.statistics.ServiceStatistics"%>
+<%@page import="org.jivesoftware.util.ParamUtils"%>
+<%@ taglib uri="http://java.sun.com/jstl/fmt_rt" prefix="fmt" %>
+<jsp:useBean id="webManager" class="org.jivesoftware.util.WebManager" />
+
+<%
+	// initialize openfire objects
+	webManager.init(request, response, session, application, out);
+
+	// parse parameters
+	boolean reset = ParamUtils.getBooleanParameter(request, "reset");
+
+	PersistenceService service = null;
+	PersistencePlugin plugin = PersistencePlugin.getInstance();
+	if (plugin != null) {
+		service = plugin.getPersistenceService();
+	}
+
+	if (reset && service != null) {
+		service.getStatistics().reset();
+		if (service.getSpaceManager() != null) {
+			service.getSpaceManager().getSpaceRequestStatistics().reset();
+		}
+		response.sendRedirect("persistence-statistics.jsp?statisticsReset=true");
+		return;
+	}
+
+	ServiceStatistics statistics = service != null ? service.getStatistics() : null;
+	SpaceManager spaceManager = service != null ? service.getSpaceManager() : null;
+	IngestQueue ingestQueue = service != null ? service.getIngestQueue() : null;
+	DataExpirationScheduler expirationScheduler = service != null ? service.getExpirationScheduler() : null;
+	HotTierConnector hotTier = service != null ? service.getHotTier() : null;
+	ObjectCacheConnector objectCache = service != null ? service.getObjectCache() : null;
+	ResultCacheConnector resultCache = service != null ? service.getResultCache() : null;
+%>
+<html>
+<head>
+	<title>Persistence Statistics</title>
+	<meta name="pageID" content="persistence-statistics"/>
+</head>
+<body>
+
+<% if (ParamUtils.getBooleanParameter(request, "statisticsReset")) { %>
+
+<div class="jive-success">
+	<table cellpadding="0" cellspacing="0" border="0">
+		<tbody>
+			<tr>
+				<td class="jive-icon"><img src="images/success-16x16.gif" width="16" height="16" border="0"></td>
+				<td class="jive-icon-label">Statistics reset successfully.</td>
+			</tr>
+		</tbody>
+	</table>
+</div>
+
+<% } %>
+
+<% if (statistics == null) { %>
+<p>The Persistence Service is not running.</p>
+<% } else { %>
+<p>Latencies are given in milliseconds. Percentiles are approximated by the upper bound of the histogram bucket they fall into.</p>
+
+<div class="jive-contentBoxHeader">Requests</div>
+<div class="jive-contentBox">
+	<table cellpadding="3" cellspacing="0" border="0" width="100%">
+		<thead>
+			<tr>
+				<th align="left">Type</th>
+				<th align="right">Count</th>
+				<th align="right">Errors</th>
+				<th align="right">Average</th>
+				<th align="right">50th</th>
+				<th align="right">99th</th>
+				<th align="right">99.9th</th>
+				<th align="right">Maximum</th>
+			</tr>
+		</thead>
+		<tbody>
+<% for (Map.Entry<String, OperationStatistics> entry : statistics.getAllRequestStatistics().entrySet()) {
+	OperationStatistics operation = entry.getValue(); %>
+			<tr>
+				<td nowrap><%=entry.getKey() %></td>
+				<td align="right"><%=operation.getCount() %></td>
+				<td align="right"><%=operation.getErrors() %></td>
+				<td align="right"><%=String.format("%.2f", operation.getAverageLatency()) %></td>
+				<td align="right"><%=String.format("%.0f", operation.getLatency50thPercentile()) %></td>
+				<td align="right"><%=String.format("%.0f", operation.getLatency99thPercentile()) %></td>
+				<td align="right"><%=String.format("%.0f", operation.getLatency999thPercentile()) %></td>
+				<td align="right"><%=String.format("%.2f", operation.getMaxLatency()) %></td>
+			</tr>
+<% } %>
+		</tbody>
+	</table>
+</div>
+
+<% if (!service.getWorkerPools().isEmpty()) { %>
+<div class="jive-contentBoxHeader">Worker Pools</div>
+<div class="jive-contentBox">
+	<table cellpadding="3" cellspacing="0" border="0" width="100%">
+		<thead>
+			<tr>
+				<th align="left">Pool</th>
+				<th align="right">Active threads</th>
+				<th align="right">Queued requests</th>
+				<th align="right">Processed</th>
+				<th align="right">Rejected</th>
+				<th align="right">Lane imbalance</th>
+			</tr>
+		</thead>
+		<tbody>
+<% for (WorkerPoolMBean workerPool : service.getWorkerPools()) { %>
+			<tr>
+				<td nowrap><%=workerPool.getName() %></td>
+				<td align="right"><%=workerPool.getActiveThreads() %> of <%=workerPool.getThreads() %></td>
+				<td align="right"><%=workerPool.getQueueDepth() %> of <%=workerPool.getCapacity() %></td>
+				<td align="right"><%=workerPool.getCompletedRequests() %></td>
+				<td align="right"><%=workerPool.getRejectedRequests() %></td>
+				<td align="right"><%=workerPool instanceof StripedWorkerPoolMBean ? String.format("%.2f", ((StripedWorkerPoolMBean) workerPool).getLaneImbalance()) : "-" %></td>
+			</tr>
+<% } %>
+		</tbody>
+	</table>
+</div>
+<% } %>
+
+<div class="jive-contentBoxHeader">Database Operations</div>
+<div class="jive-contentBox">
+	<table cellpadding="3" cellspacing="0" border="0" width="100%">
+		<thead>
+			<tr>
+				<th align="left">Operation</th>
+				<th align="right">Count</th>
+				<th align="right">Errors</th>
+				<th align="right">Average</th>
+				<th align="right">50th</th>
+				<th align="right">99th</th>
+				<th align="right">99.9th</th>
+				<th align="right">Maximum</th>
+				<th align="right">Objects returned</th>
+				<th align="right">Objects filtered out</th>
+			</tr>
+		</thead>
+		<tbody>
+<% for (Map.Entry<String, OperationStatistics> entry : statistics.getAllDatabaseStatistics().entrySet()) {
+	OperationStatistics operation = entry.getValue(); %>
+			<tr>
+				<td nowrap><%=entry.getKey() %></td>
+				<td align="right"><%=operation.getCount() %></td>
+				<td align="right"><%=operation.getErrors() %></td>
+				<td align="right"><%=String.format("%.2f", operation.getAverageLatency()) %></td>
+				<td align="right"><%=String.format("%.0f", operation.getLatency50thPercentile()) %></td>
+				<td align="right"><%=String.format("%.0f", operation.getLatency99thPercentile()) %></td>
+				<td align="right"><%=String.format("%.0f", operation.getLatency999thPercentile()) %></td>
+				<td align="right"><%=String.format("%.2f", operation.getMaxLatency()) %></td>
+				<td align="right"><%=operation.getObjectsReturned() %></td>
+				<td align="right"><%=operation.getObjectsFilteredOut() %></td>
+			</tr>
+<% } %>
+		</tbody>
+	</table>
+</div>
+
+<% if (spaceManager != null) {
+	OperationStatistics spaceRequests = spaceManager.getSpaceRequestStatistics(); %>
+<div class="jive-contentBoxHeader">Spaces</div>
+<div class="jive-contentBox">
+	<table cellpadding="3" cellspacing="0" border="0" width="100%">
+		<tbody>
+			<tr>
+				<td nowrap>Cached spaces</td>
+				<td width="99%"><%=spaceManager.getCacheSize() %></td>
+			</tr>
+			<tr>
+				<td nowrap>Cache hits</td>
+				<td width="99%"><%=spaceManager.getCacheHits() %> of <%=spaceManager.getCacheHits() + spaceManager.getCacheMisses() %> lookups (<%=String.format("%.1f", spaceManager.getCacheHitRate() * 100) %>%)</td>
+			</tr>
+			<tr>
+				<td nowrap>Coalesced lookups</td>
+				<td width="99%"><%=spaceManager.getCoalescedRequests() %></td>
+			</tr>
+			<tr>
+				<td nowrap>Requests to the Spaces Service</td>
+				<td width="99%"><%=spaceRequests.getCount() %> (<%=spaceRequests.getErrors() %> failed)</td>
+			</tr>
+			<tr>
+				<td nowrap>Round trip time</td>
+				<td width="99%">average <%=String.format("%.2f", spaceRequests.getAverageLatency()) %> ms, 99th percentile <%=String.format("%.0f", spaceRequests.getLatency99thPercentile()) %> ms, maximum <%=String.format("%.2f", spaceRequests.getMaxLatency()) %> ms</td>
+			</tr>
+		</tbody>
+	</table>
+</div>
+<% } %>
+
+<% if (hotTier != null) { %>
+<div class="jive-contentBoxHeader">Hot Tier</div>
+<div class="jive-contentBox">
+	<table cellpadding="3" cellspacing="0" border="0" width="100%">
+		<tbody>
+			<tr>
+				<td nowrap>Spaces in memory</td>
+				<td width="99%"><%=hotTier.getSpaceCount() %> (<%=hotTier.getLoads() %> loaded, <%=hotTier.getEvictions() %> evicted)</td>
+			</tr>
+			<tr>
+				<td nowrap>Data objects in memory</td>
+				<td width="99%"><%=hotTier.getObjectCount() %> (<%=hotTier.getUsedBytes() / 1024 %> of <%=hotTier.getMaxBytes() / 1024 %> KB)</td>
+			</tr>
+			<tr>
+				<td nowrap>Queries answered from memory</td>
+				<td width="99%"><%=hotTier.getHits() %> of <%=hotTier.getHits() + hotTier.getMisses() %> space queries (<%=String.format("%.1f", hotTier.getHitRate() * 100) %>%)</td>
+			</tr>
+		</tbody>
+	</table>
+</div>
+<% } %>
+
+<% if (objectCache != null) { %>
+<div class="jive-contentBoxHeader">Object Cache</div>
+<div class="jive-contentBox">
+	<table cellpadding="3" cellspacing="0" border="0" width="100%">
+		<tbody>
+			<tr>
+				<td nowrap>Cached data objects</td>
+				<td width="99%"><%=objectCache.getCacheSize() %> (<%=objectCache.getUsedBytes() / 1024 %> of <%=objectCache.getMaxBytes() / 1024 %> KB)</td>
+			</tr>
+			<tr>
+				<td nowrap>Lookups answered from cache</td>
+				<td width="99%"><%=objectCache.getCacheHits() %> of <%=objectCache.getCacheHits() + objectCache.getCacheMisses() %> lookups (<%=String.format("%.1f", objectCache.getCacheHitRate() * 100) %>%)</td>
+			</tr>
+			<tr>
+				<td nowrap>Removed data objects</td>
+				<td width="99%"><%=objectCache.getEvictions() %> evicted, <%=objectCache.getInvalidations() %> deleted or expired</td>
+			</tr>
+		</tbody>
+	</table>
+</div>
+<% } %>
+
+<% if (resultCache != null) { %>
+<div class="jive-contentBoxHeader">Result Cache</div>
+<div class="jive-contentBox">
+	<table cellpadding="3" cellspacing="0" border="0" width="100%">
+		<tbody>
+			<tr>
+				<td nowrap>Cached query results</td>
+				<td width="99%"><%=resultCache.getCacheSize() %> (<%=resultCache.getUsedBytes() / 1024 %> of <%=resultCache.getMaxBytes() / 1024 %> KB)</td>
+			</tr>
+			<tr>
+				<td nowrap>Queries answered from cache</td>
+				<td width="99%"><%=resultCache.getCacheHits() %> of <%=resultCache.getCacheHits() + resultCache.getCacheMisses() %> space queries (<%=String.format("%.1f", resultCache.getCacheHitRate() * 100) %>%)</td>
+			</tr>
+			<tr>
+				<td nowrap>Removed query results</td>
+				<td width="99%"><%=resultCache.getEvictions() %> evicted, <%=resultCache.getInvalidations() %> invalidated</td>
+			</tr>
+		</tbody>
+	</table>
+</div>
+<% } %>
+
+<% if (ingestQueue != null) { %>
+<div class="jive-contentBoxHeader">Write-Behind Queue</div>
+<div class="jive-contentBox">
+	<table cellpadding="3" cellspacing="0" border="0" width="100%">
+		<tbody>
+			<tr>
+				<td nowrap>Queued data objects</td>
+				<td width="99%"><%=ingestQueue.getQueueDepth() %> of <%=ingestQueue.getCapacity() %></td>
+			</tr>
+			<tr>
+				<td nowrap>Committed</td>
+				<td width="99%"><%=ingestQueue.getCommittedObjects() %> data objects in <%=ingestQueue.getCommittedBatches() %> batches</td>
+			</tr>
+			<tr>
+				<td nowrap>Rejected / failed inserts</td>
+				<td width="99%"><%=ingestQueue.getRejectedRequests() %> / <%=ingestQueue.getFailedRequests() %></td>
+			</tr>
+			<tr>
+				<td nowrap>Commit latency</td>
+				<td width="99%">average <%=String.format("%.2f", ingestQueue.getAverageCommitLatency()) %> ms, last <%=String.format("%.2f", ingestQueue.getLastCommitLatency()) %> ms, maximum <%=String.format("%.2f", ingestQueue.getMaxCommitLatency()) %> ms</td>
+			</tr>
+		</tbody>
+	</table>
+</div>
+<% } %>
+
+<% if (expirationScheduler != null) { %>
+<div class="jive-contentBoxHeader">Data Cleanup</div>
+<div class="jive-contentBox">
+	<table cellpadding="3" cellspacing="0" border="0" width="100%">
+		<tbody>
+			<tr>
+				<td nowrap>Last cleanup</td>
+				<td width="99%"><%=expirationScheduler.getLastRunTime() > 0 ? new Date(expirationScheduler.getLastRunTime()).toString() : "-" %><%=expirationScheduler.isRunning() ? " (running)" : "" %></td>
+			</tr>
+			<tr>
+				<td nowrap>Cleanups performed</td>
+				<td width="99%"><%=expirationScheduler.getRunCount() %> (<%=expirationScheduler.getPostponedSlices() %> postponed)</td>
+			</tr>
+			<tr>
+				<td nowrap>Deleted data objects</td>
+				<td width="99%"><%=expirationScheduler.getTotalObjectsDeleted() %> in total, last cleanup <%=expirationScheduler.getLastRunObjects() %> in <%=expirationScheduler.getLastRunDuration() %> ms</td>
+			</tr>
+		</tbody>
+	</table>
+</div>
+<% } %>
+
+<form action="persistence-statistics.jsp?reset=true" method="post">
+<input type="submit" value="Reset statistics"/>
+</form>
+<% } %>
+
+</body>
+</html>